@@ -0,0 +1,276 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many configuration files in one program, a given number of them at a time, and writes a summary of the time and the trustworthiness of each of them at the end.
+ */
+public class CompactBatchRunner
+{
+	public static final String SUMMARY_HEADER="ConfigurationFile,Name,Status,Seconds,Projections,BestRedAndGrayTrustworthiness,BestRedTrustworthiness";
+	
+	public static class Job
+	{
+		private String configurationFileName_;
+		private String name_;
+		private String status_;
+		private double seconds_;
+		private int numberOfProjections_;
+		private double bestRedAndGrayTrustworthiness_;
+		private double bestRedTrustworthiness_;
+		
+		public Job(String configurationFileName)
+		{
+			configurationFileName_=configurationFileName;
+			name_="";
+			status_="not run";
+			seconds_=0;
+			numberOfProjections_=0;
+			bestRedAndGrayTrustworthiness_=-1;
+			bestRedTrustworthiness_=-1;
+		}
+		
+		public synchronized void SetName(String name)
+		{
+			name_=name==null?"":name;
+		}
+		
+		/**
+		 * Adds one projection of the configuration, for example one of its assorted configurations, given the best trustworthiness of its steps.
+		 */
+		public synchronized void AddProjection(double bestRedAndGrayTrustworthiness, double bestRedTrustworthiness)
+		{
+			numberOfProjections_++;
+			bestRedAndGrayTrustworthiness_=Math.max(bestRedAndGrayTrustworthiness_, bestRedAndGrayTrustworthiness);
+			bestRedTrustworthiness_=Math.max(bestRedTrustworthiness_, bestRedTrustworthiness);
+		}
+		
+		public String GetConfigurationFileName()
+		{
+			return configurationFileName_;
+		}
+		
+		public synchronized String GetName()
+		{
+			return name_;
+		}
+		
+		public synchronized String GetStatus()
+		{
+			return status_;
+		}
+		
+		public synchronized double GetSeconds()
+		{
+			return seconds_;
+		}
+		
+		public synchronized int GetNumberOfProjections()
+		{
+			return numberOfProjections_;
+		}
+		
+		public synchronized double GetBestRedAndGrayTrustworthiness()
+		{
+			return bestRedAndGrayTrustworthiness_;
+		}
+		
+		public synchronized double GetBestRedTrustworthiness()
+		{
+			return bestRedTrustworthiness_;
+		}
+		
+		public synchronized void SetStatus(String status)
+		{
+			status_=status;
+		}
+		
+		public synchronized void Finish(String status, double seconds)
+		{
+			status_=status;
+			seconds_=seconds;
+		}
+	}
+	
+	public static void Run(String[] args) throws Exception
+	{
+		int numberOfJobs=1;
+		String summaryFileName=null;
+		var configurationFileNames=new ArrayList<String>();
+		
+		for(int i=1;i<args.length;i++)
+		{
+			if(args[i].compareTo("--jobs")==0 && i+1<args.length)
+			{
+				numberOfJobs=Integer.parseInt(args[++i]);
+				if(numberOfJobs<1)
+				{
+					System.out.println("Bad number of jobs:"+args[i]);
+					return;
+				}
+			}
+			else if(args[i].compareTo("--summary")==0 && i+1<args.length)
+				summaryFileName=args[++i];
+			else
+			{
+				var file=new File(args[i]);
+				if(file.isDirectory())
+				{
+					var files=file.listFiles((folder,fileName)->fileName.toLowerCase().endsWith(".xml"));
+					Arrays.sort(files);
+					for(var configurationFile : files)
+						configurationFileNames.add(configurationFile.getPath());
+				}
+				else
+					configurationFileNames.add(args[i]);
+			}
+		}
+		
+		if(configurationFileNames.size()==0)
+		{
+			System.out.println("Usage guide:");
+			System.out.println("--batch [--jobs number] [--summary file] followed by configuration files or folders of configuration files (all their .xml files).");
+			System.out.println("--jobs is the number of configuration files which run at the same time, each with an equal share of the threads unless it sets NumberOfThreads. Default value: 1");
+			System.out.println("--summary is a csv file for the summary of the jobs, which is also printed at the end.");
+			System.out.println("");
+			return;
+		}
+		
+		System.out.println("Running "+configurationFileNames.size()+" configuration files, "+numberOfJobs+" at a time");
+		
+		var jobs=new ArrayList<Job>();
+		for(var configurationFileName : configurationFileNames)
+			jobs.add(new Job(configurationFileName));
+		
+		int numberOfConcurrentJobs=Math.min(numberOfJobs, jobs.size());
+		var executorService=Executors.newFixedThreadPool(numberOfJobs);
+		try
+		{
+			var futures=new ArrayList<Future<?>>();
+			for(var job : jobs)
+				futures.add(executorService.submit(()->runJob(job, numberOfConcurrentJobs)));
+			
+			for(var future : futures)
+			{
+				try
+				{
+					future.get();
+				}
+				catch (ExecutionException e)
+				{
+					// runJob records the failures of its configuration file, so only errors such as running out of memory get here.
+					System.out.println("Error");
+					System.out.println(e.getCause());
+				}
+			}
+		}
+		finally
+		{
+			executorService.shutdownNow();
+		}
+		
+		printSummary(jobs, summaryFileName);
+	}
+	
+	private static void runJob(Job job, int numberOfConcurrentJobs)
+	{
+		RunJob(job, ()->CompactCommandLineInterface.RunConfigurationFile(job.GetConfigurationFileName(), job, numberOfConcurrentJobs));
+	}
+	
+	/**
+	 * Runs a job which gives false for a bad configuration, recording its status and time.
+	 */
+	public static void RunJob(Job job, Callable<Boolean> run)
+	{
+		job.SetStatus("running");
+		long startTime=System.nanoTime();
+		String status;
+		try
+		{
+			if(run.call())
+				status="finished";
+			else
+				status="bad configuration";
+		}
+		catch (Exception e)
+		{
+			System.out.println("Error in the configuration: "+job.GetConfigurationFileName());
+			System.out.println(e.getMessage());
+			status="failed";
+		}
+		
+		job.Finish(status, (System.nanoTime()-startTime)/1e9);
+	}
+	
+	private static void printSummary(ArrayList<Job> jobs, String summaryFileName) throws Exception
+	{
+		var lines=new ArrayList<String>();
+		lines.add(SUMMARY_HEADER);
+		for(var job : jobs)
+			lines.add(GetSummaryLine(job));
+		
+		System.out.println("");
+		System.out.println("Batch summary:");
+		for(var line : lines)
+			System.out.println(line);
+		System.out.println("");
+		
+		if(summaryFileName!=null)
+		{
+			try(var printWriter=new PrintWriter(new File(summaryFileName), StandardCharsets.UTF_8))
+			{
+				for(var line : lines)
+					printWriter.println(line);
+			}
+			
+			System.out.println("Summary file: "+new File(summaryFileName).getCanonicalPath());
+			System.out.println("");
+		}
+	}
+	
+	/**
+	 * One csv line of the summary for the job, with the columns of SUMMARY_HEADER.
+	 */
+	public static String GetSummaryLine(Job job)
+	{
+		return csvField(job.GetConfigurationFileName())+","+csvField(job.GetName())+","+job.GetStatus()+","+String.format(Locale.ROOT, "%.3f", job.GetSeconds())+","+
+				job.GetNumberOfProjections()+","+formatTrustworthiness(job.GetBestRedAndGrayTrustworthiness())+","+formatTrustworthiness(job.GetBestRedTrustworthiness());
+	}
+	
+	private static String formatTrustworthiness(double trustworthiness)
+	{
+		if(trustworthiness<0)
+			return "";
+		
+		return String.format(Locale.ROOT, "%.6f", trustworthiness);
+	}
+	
+	private static String csvField(String value)
+	{
+		if(value.contains(",") || value.contains("\""))
+			return "\""+value.replace("\"", "\"\"")+"\"";
+		
+		return value;
+	}
+}
@@ -25,6 +25,12 @@ import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -44,10 +50,24 @@ public class CompactCommandLineInterface
 		System.out.println("Farshad Barahimi and Fernando Paulovich, \"Multi-point dimensionality reduction to improve projection layout reliability.\" , arXiv preprint (2021).");
 		System.out.println("");
 		
+		if(args.length>=1 && args[0].compareTo("--batch")==0)
+		{
+			CompactBatchRunner.Run(args);
+			return;
+		}
+		
+		if(args.length>=1 && args[0].compareTo("--server")==0)
+		{
+			CompactJobServer.Run(args);
+			return;
+		}
+		
 		if(args.length!=1)
 		{
 			System.out.println("Usage guide:");
 			System.out.println("This command line tool only accepts one argument which is the path to a confiugration file or --help to show more info.");
+			System.out.println("To run many configuration files in one program use --batch [--jobs number] [--summary file] followed by configuration files or folders of configuration files.");
+			System.out.println("To run a local server which takes configurations over HTTP use --server [--port number] [--jobs number] [--cache-megabytes number].");
 			System.out.println("");
 			return;
 		}
@@ -55,6 +75,8 @@ public class CompactCommandLineInterface
 		{
 			System.out.println("Usage guide:");
 			System.out.println("This command line tool only accepts one argument which is the path to a confiugration file or --help to show more info.");
+			System.out.println("To run many configuration files in one program use --batch [--jobs number] [--summary file] followed by configuration files or folders of configuration files.");
+			System.out.println("To run a local server which takes configurations over HTTP use --server [--port number] [--jobs number] [--cache-megabytes number].");
 			System.out.println("");
 			System.out.println("The structure of the configuration file is shown below but not all attributes are necessary.");
 			System.out.println("");
@@ -76,6 +98,24 @@ public class CompactCommandLineInterface
 			System.out.println("	MaxInputRows=\"\"");
 			System.out.println("	NumberOfThreads=\"\"");
 			System.out.println("	OverrideMaxNumberOfReplicates=\"\"");
+			System.out.println("	DistanceMatrixStorage=\"\"");
+			System.out.println("	DistanceRowCacheMegabytes=\"\"");
+			System.out.println("	DistanceKernel=\"\"");
+			System.out.println("	FuseDistanceTransforms=\"\"");
+			System.out.println("	FeatureStorage=\"\"");
+			System.out.println("	LabelFileName=\"\"");
+			System.out.println("	DatasetCache=\"\"");
+			System.out.println("	PreReductionMethod=\"\"");
+			System.out.println("	PreReductionDimensions=\"\"");
+			System.out.println("	UmapImplementation=\"\"");
+			System.out.println("	UmapDataExchange=\"\"");
+			System.out.println("	UmapWorker=\"\"");
+			System.out.println("	PreReductionCacheFolderName=\"\"");
+			System.out.println("	SweepConcurrency=\"\"");
+			System.out.println("	SweepThreadPolicy=\"\"");
+			System.out.println("	CheckpointFolderName=\"\"");
+			System.out.println("	CheckpointIterations=\"\"");
+			System.out.println("	ResumeFromCheckpoint=\"\"");
 			System.out.println("/>");
 			System.out.println("<!-- The attribute EvaluationNeighborhoodSize is optional. Default value: 10 -->");
 			System.out.println("<!-- The attribute UmapTo30DimensionsFirst is optional. Default value: false -->");
@@ -84,22 +124,69 @@ public class CompactCommandLineInterface
 			System.out.println("<!-- The attribute CosineNeighborhoodNormalization is optional. Default value: false -->");
 			System.out.println("<!-- The attribute AfterUmapTo30DimensionsMaxRows is optional. Not effective if no value is specified -->");
 			System.out.println("<!-- The attribute MaxInputRows is optional. Not effective if no value is specified -->");
-			System.out.println("<!-- The attribute NumberOfThreads is optional. Default value: 1 less than cpu cores -->");
+			System.out.println("<!-- The attribute NumberOfThreads is optional. Default value: 1 less than cpu cores, divided among the configurations of --batch or --server which run at the same time -->");
 			System.out.println("<!-- The attribute OverrideMaxNumberOfReplicates is optional. Does not override if no value is specified -->");
+			System.out.println("<!-- The attribute DistanceMatrixStorage is optional. Possible values: full, condensed_float32, condensed_float32_off_heap, memory_mapped, lazy. Default value: full -->");
+			System.out.println("<!-- The attribute DistanceRowCacheMegabytes is optional. Only effective for the lazy distance matrix storage. Default value: 256 -->");
+			System.out.println("<!-- The attribute DistanceKernel is optional. Possible values: tiled, pairwise. Default value: tiled -->");
+			System.out.println("<!-- The attribute FuseDistanceTransforms is optional. Possible values: true, false. Default value: false -->");
+			System.out.println("<!-- The attribute FeatureStorage is optional. Possible values: double, float32. Default value: double -->");
+			System.out.println("<!-- The attribute LabelFileName is optional. Only effective for the npy and npy_distance input file types. A .npy array or a text file with one label per line. All classes are 0 if no value is specified -->");
+			System.out.println("<!-- The attribute DatasetCache is optional. Possible values: true, false. Keeps a binary copy of csv and sparse input files next to them (.rgpcache) which later runs read instead. Default value: true -->");
+			System.out.println("<!-- The attribute PreReductionMethod is optional. Possible values: none, umap, pca. umap runs the Python UMAP script like UmapTo30DimensionsFirst, pca reduces in Java with PCA (classical MDS for distance input files). Default value: umap if UmapTo30DimensionsFirst is true, none otherwise -->");
+			System.out.println("<!-- The attribute PreReductionDimensions is optional. Only effective for the pca pre-reduction method and the java UMAP implementation. Default value: 30 -->");
+			System.out.println("<!-- The attribute UmapImplementation is optional. Possible values: python, java. java runs UMAP in the program without Python, starting from a PCA layout. Default value: python -->");
+			System.out.println("<!-- The attribute UmapDataExchange is optional. Possible values: csv, npy. Only effective for the python UMAP implementation. npy exchanges the data with the script as float32 .npy files, which needs only numpy and umap in Python. Default value: csv -->");
+			System.out.println("<!-- The attribute UmapWorker is optional. Possible values: true, false. Only effective for the python UMAP implementation. true runs the UMAP reductions of all the configurations in one Python process which imports umap once, exchanging the data as with UmapDataExchange npy. Default value: false -->");
+			System.out.println("<!-- The attribute PreReductionCacheFolderName is optional. A folder where the results of pre-reductions are kept and reused by later runs and assorted configurations with the same input and pre-reduction. Not effective if no value is specified -->");
+			System.out.println("<!-- The attribute SweepConcurrency is optional. Only effective for assorted configurations. The number of assorted configurations which run at the same time, all projecting the data read and prepared once. Default value: 1 -->");
+			System.out.println("<!-- The attribute SweepThreadPolicy is optional. Possible values: divide, all. Only effective if SweepConcurrency is more than 1. divide gives each of the assorted configurations running at the same time an equal share of NumberOfThreads, all gives each of them NumberOfThreads. Default value: divide -->");
+			System.out.println("<!-- The attribute CheckpointFolderName is optional. A folder where the projection writes checkpoints of its layout and a log of its steps, each of the assorted configurations in its own subfolder. The step log keeps every projected point of all the 1830 iterations, about 25 bytes per projected point per iteration, for example 7 MB for 150 data instances and 3 GB for 70000. Not effective if no value is specified -->");
+			System.out.println("<!-- The attribute CheckpointIterations is optional. Only effective if CheckpointFolderName is specified. phases or a comma separated list of iterations after which checkpoints are written. phases writes them after iterations 501, 951 and 1341 where the phases of the projection start. Default value: phases -->");
+			System.out.println("<!-- The attribute ResumeFromCheckpoint is optional. Possible values: true, false. Only effective if CheckpointFolderName is specified. true resumes the projection from the latest checkpoint in the folder, or starts it from the first iteration if there is none. Default value: false -->");
 			
 			System.out.println("");
 			return;
 		}
 		
-		String configurationFileName=args[0];
+		RunConfigurationFile(args[0], null, 1);
+	}
+	
+	/**
+	 * Runs one configuration file, adding the trustworthiness of its projections to the batch job if one is given,
+	 * while the given number of configurations run at the same time (see DivideThreads).
+	 * Returns false after printing the reason if the configuration file, the configuration or the input file is bad.
+	 */
+	static boolean RunConfigurationFile(String configurationFileName, CompactBatchRunner.Job job, int numberOfConcurrentConfigurations) throws Exception
+	{
 		var parameters = processConfigurationFile(configurationFileName);
 		
 		if(parameters==null)
 		{
 			System.out.println("Bad configuration file:"+configurationFileName);
-			return;
+			return false;
 		}
 		
+		DivideThreads(parameters, numberOfConcurrentConfigurations);
+		return RunConfiguration(parameters, job, null);
+	}
+	
+	/**
+	 * Gives each of the configurations running at the same time an equal share of the default number of threads, as SweepThreadPolicy="divide"
+	 * does for the assorted configurations, unless the configuration has its own NumberOfThreads.
+	 */
+	static void DivideThreads(HashMap<String,String> parameters, int numberOfConcurrentConfigurations)
+	{
+		if(numberOfConcurrentConfigurations>1 && !parameters.containsKey("NumberOfThreads"))
+			parameters.put("NumberOfThreads", Integer.toString(Math.max(1, (Runtime.getRuntime().availableProcessors()-1)/numberOfConcurrentConfigurations)));
+	}
+	
+	/**
+	 * Runs a configuration given by its attributes, whose file and folder names are already full paths (see ProcessConfiguration).
+	 * If a cache is given, the prepared data set is taken from it or added to it.
+	 */
+	static boolean RunConfiguration(HashMap<String,String> parameters, CompactBatchRunner.Job job, CompactPreparedDataSetCache preparedDataSetCache) throws Exception
+	{
 		if(parameters.containsKey("NumberOfNeighboorsForBuildingGraph") && !(parameters.containsKey("NumberOfNeighboursForBuildingGraph")))
 		{
 			parameters.put("NumberOfNeighboursForBuildingGraph", parameters.get("NumberOfNeighboorsForBuildingGraph"));
@@ -112,7 +199,9 @@ public class CompactCommandLineInterface
 				"OutputFolderName","InputFileClassColumnType","EvaluationNeighborhoodSize",
 				"UmapTo30DimensionsFirst","NumberOfNeighboursForBuildingGraph","VisualDensityAdjustmentParameter",
 				"CosineNeighborhoodNormalization","AfterUmapTo30DimensionsMaxRows","MaxInputRows",
-				"NumberOfThreads","OverrideMaxNumberOfReplicates"};
+				"NumberOfThreads","OverrideMaxNumberOfReplicates","DistanceMatrixStorage","DistanceRowCacheMegabytes",
+				"DistanceKernel","FuseDistanceTransforms","FeatureStorage","LabelFileName","DatasetCache","PreReductionMethod","PreReductionDimensions","UmapImplementation","UmapDataExchange","UmapWorker","PreReductionCacheFolderName",
+				"SweepConcurrency","SweepThreadPolicy","CheckpointFolderName","CheckpointIterations","ResumeFromCheckpoint"};
 		for(String parameter : parameters.keySet())
 		{
 			boolean validParameter=false;
@@ -123,12 +212,15 @@ public class CompactCommandLineInterface
 			if(!validParameter)
 			{
 				System.out.println("Error: Invalid attribute in the configuration file.");
-				return;
+				return false;
 			}
 		}
 		
 		System.out.println("Configuration:"+parameters);
 		
+		if(job!=null)
+			job.SetName(parameters.get("Name"));
+		
 		boolean assortedNumberOfNeighboursForBuildingGraph=false;
 		if(parameters.containsKey("NumberOfNeighboursForBuildingGraph"))
 			if(parameters.get("NumberOfNeighboursForBuildingGraph").compareTo("assorted")==0)
@@ -146,7 +238,8 @@ public class CompactCommandLineInterface
 		
 		if(!assortedNumberOfNeighboursForBuildingGraph && !assortedVisualDensityAdjustmentParameter)
 		{
-			runBasedOnParameters(parameters);
+			if(!runBasedOnParameters(parameters, job, preparedDataSetCache))
+				return false;
 			
 			System.out.println("");
 			System.out.println("Finished the configuration: "+ parameters.get("Name"));
@@ -155,51 +248,124 @@ public class CompactCommandLineInterface
 		}
 		else
 		{
-			String assortedFolderName=new File(new File(outputFolderName),"/assorted/").getCanonicalPath();
-			new File(assortedFolderName).mkdirs();
+			int sweepConcurrency=Integer.parseInt(parameters.getOrDefault("SweepConcurrency", "1"));
+			if(sweepConcurrency<1)
+			{
+				System.out.println("Bad sweep concurrency:"+parameters.get("SweepConcurrency"));
+				return false;
+			}
 			
-			for(int i=0;i<assortedList1.length;i++)
-			{	
-				String folderName1=new String(assortedFolderName);
-				
-				if(assortedNumberOfNeighboursForBuildingGraph)
-				{
-					parameters.put("NumberOfNeighboursForBuildingGraph", assortedList1[i]);
-					
-					folderName1=new File(new File(assortedFolderName),"/NumberOfNeighboursForBuildingGraph_"+assortedList1[i]+"/").getCanonicalPath();
-					new File(folderName1).mkdirs();
-				}
+			String sweepThreadPolicy=parameters.getOrDefault("SweepThreadPolicy", "divide").toLowerCase();
+			if(sweepThreadPolicy.compareTo("divide")!=0 && sweepThreadPolicy.compareTo("all")!=0)
+			{
+				System.out.println("Bad sweep thread policy:"+parameters.get("SweepThreadPolicy"));
+				return false;
+			}
+			
+			int numberOfThreads=Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+			if(parameters.containsKey("NumberOfThreads"))
+				numberOfThreads=Integer.parseInt(parameters.get("NumberOfThreads"));
+			
+			// The assorted configurations differ only in parameters of the projection itself, so they all project one prepared data set.
+			var preparedDataSet=prepare(parameters, preparedDataSetCache);
+			if(preparedDataSet==null)
+				return false;
+			
+			try
+			{
+				String assortedFolderName=new File(new File(outputFolderName),"/assorted/").getCanonicalPath();
+				new File(assortedFolderName).mkdirs();
 				
+				var assortedParametersList=new ArrayList<HashMap<String,String>>();
 				
-				for(int j=0;j<assortedList2.length;j++)
-				{
-					String folderName2=new String(folderName1);
+				for(int i=0;i<assortedList1.length;i++)
+				{	
+					String folderName1=new String(assortedFolderName);
 					
-					if(assortedVisualDensityAdjustmentParameter)
+					if(assortedNumberOfNeighboursForBuildingGraph)
 					{
-						parameters.put("VisualDensityAdjustmentParameter", assortedList2[j]);
+						parameters.put("NumberOfNeighboursForBuildingGraph", assortedList1[i]);
 						
-						folderName2=new File(new File(folderName1),"/VisualDensityAdjustmentParameter_"+assortedList2[j]+"/").getCanonicalPath();
-						new File(folderName2).mkdirs();	
+						folderName1=new File(new File(assortedFolderName),"/NumberOfNeighboursForBuildingGraph_"+assortedList1[i]+"/").getCanonicalPath();
+						new File(folderName1).mkdirs();
 					}
 					
-					parameters.put("OutputFolderName", folderName2);
 					
-					System.out.println("");
-					System.out.println("Starting one of the assorted configurations of the configuration: "+ parameters.get("Name"));
-										
-					runBasedOnParameters((HashMap<String,String>)(parameters.clone()));
-					
-					System.out.println("");
-					System.out.println("Finished one of the assorted configurations of the configuration: "+ parameters.get("Name"));
-					System.out.println("Output folder: "+ parameters.get("OutputFolderName"));
+					for(int j=0;j<assortedList2.length;j++)
+					{
+						String folderName2=new String(folderName1);
+						
+						if(assortedVisualDensityAdjustmentParameter)
+						{
+							parameters.put("VisualDensityAdjustmentParameter", assortedList2[j]);
+							
+							folderName2=new File(new File(folderName1),"/VisualDensityAdjustmentParameter_"+assortedList2[j]+"/").getCanonicalPath();
+							new File(folderName2).mkdirs();	
+						}
+						
+						parameters.put("OutputFolderName", folderName2);
+						
+						var assortedParameters=(HashMap<String,String>)(parameters.clone());
+						if(parameters.containsKey("CheckpointFolderName"))
+							assortedParameters.put("CheckpointFolderName", new File(new File(parameters.get("CheckpointFolderName")),
+									new File(assortedFolderName).toPath().relativize(new File(folderName2).toPath()).toString()).getCanonicalPath());
+						if(sweepConcurrency>1 && sweepThreadPolicy.compareTo("divide")==0)
+							assortedParameters.put("NumberOfThreads", Integer.toString(Math.max(1, numberOfThreads/sweepConcurrency)));
+						assortedParametersList.add(assortedParameters);
+						
+						if(!assortedVisualDensityAdjustmentParameter)
+							break;
+					}
 					
-					if(!assortedVisualDensityAdjustmentParameter)
+					if(!assortedNumberOfNeighboursForBuildingGraph)
 						break;
 				}
 				
-				if(!assortedNumberOfNeighboursForBuildingGraph)
-					break;
+				if(sweepConcurrency>1)
+					System.out.println("Running "+Math.min(sweepConcurrency, assortedParametersList.size())+" of the assorted configurations at a time");
+				
+				var executorService=Executors.newFixedThreadPool(sweepConcurrency);
+				try
+				{
+					var futures=new ArrayList<Future<Object>>();
+					for(var assortedParameters : assortedParametersList)
+						futures.add(executorService.submit(()->
+						{
+							System.out.println("");
+							System.out.println("Starting one of the assorted configurations of the configuration: "+ assortedParameters.get("Name"));
+							
+							projectBasedOnParameters(preparedDataSet, assortedParameters, job);
+							
+							System.out.println("");
+							System.out.println("Finished one of the assorted configurations of the configuration: "+ assortedParameters.get("Name"));
+							System.out.println("Output folder: "+ assortedParameters.get("OutputFolderName"));
+							return null;
+						}));
+					
+					for(var future : futures)
+					{
+						try
+						{
+							future.get();
+						}
+						catch (ExecutionException e)
+						{
+							if(e.getCause() instanceof Exception)
+								throw (Exception)e.getCause();
+							throw e;
+						}
+					}
+				}
+				finally
+				{
+					// The prepared data set is released only after the running projections stop using it.
+					executorService.shutdownNow();
+					executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+				}
+			}
+			finally
+			{
+				preparedDataSet.Release();
 			}
 			
 			System.out.println("");
@@ -208,9 +374,64 @@ public class CompactCommandLineInterface
 			System.out.println("");
 		}
 		
+		return true;
 	}
 	
-	private static void runBasedOnParameters(HashMap<String,String> parameters) throws Exception
+	private static boolean runBasedOnParameters(HashMap<String,String> parameters, CompactBatchRunner.Job job, CompactPreparedDataSetCache preparedDataSetCache) throws Exception
+	{
+		var preparedDataSet=prepare(parameters, preparedDataSetCache);
+		if(preparedDataSet==null)
+			return false;
+		
+		try
+		{
+			projectBasedOnParameters(preparedDataSet, parameters, job);
+		}
+		finally
+		{
+			preparedDataSet.Release();
+		}
+		return true;
+	}
+	
+	private static CompactPreparedDataSet prepare(HashMap<String,String> parameters, CompactPreparedDataSetCache preparedDataSetCache) throws Exception
+	{
+		if(preparedDataSetCache==null)
+			return prepareBasedOnParameters(parameters);
+		
+		return preparedDataSetCache.GetOrPrepare(GetPreparationKey(parameters), ()->prepareBasedOnParameters(parameters));
+	}
+	
+	/**
+	 * The attributes which decide the prepared data set, with the length and the modification time of the input files so that a changed file is prepared again.
+	 * The attributes which only change the projection or where its outputs are written are left out.
+	 */
+	static String GetPreparationKey(HashMap<String,String> parameters)
+	{
+		var projectionAttributes=new String[] {"Name","OutputFolderName","NumberOfNeighboursForBuildingGraph","VisualDensityAdjustmentParameter",
+				"OverrideMaxNumberOfReplicates","SweepConcurrency","SweepThreadPolicy",
+				"CheckpointFolderName","CheckpointIterations","ResumeFromCheckpoint"};
+		
+		var preparationParameters=new TreeMap<String,String>(parameters);
+		for(var projectionAttribute : projectionAttributes)
+			preparationParameters.remove(projectionAttribute);
+		
+		var key=new StringBuilder(preparationParameters.toString());
+		for(var attribute : new String[] {"InputFileName","LabelFileName"})
+			if(parameters.containsKey(attribute))
+			{
+				var file=new File(parameters.get(attribute));
+				key.append(","+attribute+":"+file.length()+":"+file.lastModified());
+			}
+		
+		return key.toString();
+	}
+	
+	/**
+	 * Reads the input file, runs the pre-reduction and precomputes the distances, the neighbors for evaluation and the distance transforms.
+	 * Returns null after printing the reason if the configuration or the input file is bad.
+	 */
+	private static CompactPreparedDataSet prepareBasedOnParameters(HashMap<String,String> parameters) throws Exception
 	{
 		String projectionMethodName=parameters.get("ProjectionMethod");
 		String inputFileType=parameters.get("InputFileType");
@@ -221,14 +442,12 @@ public class CompactCommandLineInterface
 		if(parameters.containsKey("EvaluationNeighborhoodSize"))
 			neighborhoodSizeForEvaluation=Integer.parseInt(parameters.get("EvaluationNeighborhoodSize"));
 		
-		CompactProjectionEvaluator.SetStaticNeighborhoodSize(neighborhoodSizeForEvaluation);
-		
 		if(projectionMethodName.toLowerCase().compareTo("red_gray_plus")==0 || projectionMethodName.toLowerCase().compareTo("redgrayplus")==0)
 			projectionMethodName="RedGrayPlus";
 		else
 		{
 			System.out.println("Bad input file:"+inputFileName);
-			return;
+			return null;
 		}
 					
 		
@@ -253,14 +472,45 @@ public class CompactCommandLineInterface
 			isClassColumnFirst=true;
 		
 		
+		var distanceMatrixStorage=CompactDistanceMatrixStorage.FULL;
+		String distanceMatrixStorageName=parameters.getOrDefault("DistanceMatrixStorage", "full").toLowerCase();
+		if(distanceMatrixStorageName.compareTo("condensed_float32")==0)
+			distanceMatrixStorage=CompactDistanceMatrixStorage.CONDENSED_FLOAT32;
+		else if(distanceMatrixStorageName.compareTo("condensed_float32_off_heap")==0)
+			distanceMatrixStorage=CompactDistanceMatrixStorage.CONDENSED_FLOAT32_OFF_HEAP;
+		else if(distanceMatrixStorageName.compareTo("memory_mapped")==0)
+			distanceMatrixStorage=CompactDistanceMatrixStorage.MEMORY_MAPPED;
+		else if(distanceMatrixStorageName.compareTo("lazy")==0)
+			distanceMatrixStorage=CompactDistanceMatrixStorage.LAZY;
+		else if(distanceMatrixStorageName.compareTo("full")!=0)
+		{
+			System.out.println("Bad distance matrix storage:"+parameters.get("DistanceMatrixStorage"));
+			return null;
+		}
+		
+		var featureStorage=CompactFeatureStorage.DOUBLE;
+		String featureStorageName=parameters.getOrDefault("FeatureStorage", "double").toLowerCase();
+		if(featureStorageName.compareTo("float32")==0)
+			featureStorage=CompactFeatureStorage.FLOAT32;
+		else if(featureStorageName.compareTo("double")!=0)
+		{
+			System.out.println("Bad feature storage:"+parameters.get("FeatureStorage"));
+			return null;
+		}
+		
+		boolean useDatasetCache=parameters.getOrDefault("DatasetCache", "true").toLowerCase().compareTo("false")!=0;
+		
 		CompactDataInstanceSet dataInstanceSet=null;
 		
 		if(inputFileType.toLowerCase().compareTo("csv_distance")==0)
 		{
 			var dataInstanceReader=new CompactDataInstanceReader();
+			dataInstanceReader.SetFeatureStorage(featureStorage);
+			if(parameters.containsKey("NumberOfThreads"))
+				dataInstanceReader.SetNumberOfThreads(Integer.parseInt(parameters.get("NumberOfThreads")));
 			try
 			{
-				dataInstanceSet=dataInstanceReader.ReadDataSetCsvDistance(inputFileName, isClassColumnText,isClassColumnFirst);
+				dataInstanceSet=dataInstanceReader.ReadDataSetCsvDistance(inputFileName, isClassColumnText,isClassColumnFirst,distanceMatrixStorage);
 			}
 			catch (Exception e) {
 				dataInstanceSet=null;
@@ -282,6 +532,10 @@ public class CompactCommandLineInterface
 			
 			
 			var dataInstanceReader=new CompactDataInstanceReader();
+			dataInstanceReader.SetFeatureStorage(featureStorage);
+			if(parameters.containsKey("NumberOfThreads"))
+				dataInstanceReader.SetNumberOfThreads(Integer.parseInt(parameters.get("NumberOfThreads")));
+			dataInstanceReader.SetUseDatasetCache(useDatasetCache);
 			try
 			{
 				dataInstanceSet=dataInstanceReader.ReadDataSetCsv(inputFileName, maxInputRows, ignoreRows, isClassColumnText,isClassColumnFirst);
@@ -292,9 +546,40 @@ public class CompactCommandLineInterface
 				dataInstanceSet=null;
 			}
 		}
+		else if(inputFileType.toLowerCase().compareTo("npy")==0)
+		{
+			int maxInputRows=-1;
+			if(parameters.containsKey("MaxInputRows"))
+				maxInputRows=Integer.parseInt(parameters.get("MaxInputRows"));
+			
+			var dataInstanceReader=new CompactDataInstanceReader();
+			dataInstanceReader.SetFeatureStorage(featureStorage);
+			try
+			{
+				dataInstanceSet=dataInstanceReader.ReadDataSetNpy(inputFileName, parameters.get("LabelFileName"), maxInputRows, isClassColumnText);
+			}
+			catch (Exception e) {
+				dataInstanceSet=null;
+			}
+		}
+		else if(inputFileType.toLowerCase().compareTo("npy_distance")==0)
+		{
+			var dataInstanceReader=new CompactDataInstanceReader();
+			try
+			{
+				dataInstanceSet=dataInstanceReader.ReadDataSetNpyDistance(inputFileName, parameters.get("LabelFileName"), isClassColumnText, distanceMatrixStorage);
+			}
+			catch (Exception e) {
+				dataInstanceSet=null;
+			}
+		}
 		else if(inputFileType.toLowerCase().startsWith("sparse"))
 		{	
 			var dataInstanceReader=new CompactDataInstanceReader();
+			dataInstanceReader.SetFeatureStorage(featureStorage);
+			if(parameters.containsKey("NumberOfThreads"))
+				dataInstanceReader.SetNumberOfThreads(Integer.parseInt(parameters.get("NumberOfThreads")));
+			dataInstanceReader.SetUseDatasetCache(useDatasetCache);
 			try
 			{
 				dataInstanceSet=dataInstanceReader.ReadDataSetSparse(inputFileName);
@@ -307,22 +592,170 @@ public class CompactCommandLineInterface
 		if(dataInstanceSet==null)
 		{
 			System.out.println("Bad input file:"+inputFileName);
-			return;
+			return null;
 		}
 		
-		if(useUmapTo30DimensionsFirst)
+		String preReductionMethod=parameters.getOrDefault("PreReductionMethod", useUmapTo30DimensionsFirst?"umap":"none").toLowerCase();
+		if(preReductionMethod.compareTo("none")!=0 && preReductionMethod.compareTo("umap")!=0 && preReductionMethod.compareTo("pca")!=0)
 		{
-			inputFileName=CompactScriptRunner.RunUmapTo30Dimensions(inputFileName, parameters, dataInstanceSet);
-			parameters.put("InputFileName", inputFileName);
-			var dataInstanceReader=new CompactDataInstanceReader();
-			boolean isImageCsv=false;
-			if(inputFileType.toLowerCase().compareTo("csv_image")==0)
-				isImageCsv=true;
-			dataInstanceSet=dataInstanceReader.ReadExternalProjectedDataSetAsInput(inputFileName);
-			if(isImageCsv)
-				dataInstanceSet.SetIsImageDataSet(isImageCsv);
+			System.out.println("Bad pre-reduction method:"+parameters.get("PreReductionMethod"));
+			return null;
+		}
+		
+		String umapImplementation=parameters.getOrDefault("UmapImplementation", "python").toLowerCase();
+		if(umapImplementation.compareTo("python")!=0 && umapImplementation.compareTo("java")!=0)
+		{
+			System.out.println("Bad UMAP implementation:"+parameters.get("UmapImplementation"));
+			return null;
+		}
+		
+		String umapDataExchange=parameters.getOrDefault("UmapDataExchange", "csv").toLowerCase();
+		if(umapDataExchange.compareTo("csv")!=0 && umapDataExchange.compareTo("npy")!=0)
+		{
+			System.out.println("Bad UMAP data exchange:"+parameters.get("UmapDataExchange"));
+			return null;
+		}
+		
+		boolean useUmapWorker=false;
+		if(parameters.containsKey("UmapWorker"))
+			if(parameters.get("UmapWorker").toLowerCase().compareTo("true")==0)
+				useUmapWorker=true;
+		
+		int preReductionDimensions=Integer.parseInt(parameters.getOrDefault("PreReductionDimensions", "30"));
+		
+		int afterUmapTo30DimensionsMaxRows=-1;
+		if(parameters.containsKey("AfterUmapTo30DimensionsMaxRows"))
+			afterUmapTo30DimensionsMaxRows=Integer.parseInt(parameters.get("AfterUmapTo30DimensionsMaxRows"));
+		
+		String preReductionCacheKey=null;
+		CompactDataInstanceSet cachedDataInstanceSet=null;
+		if(preReductionMethod.compareTo("none")!=0 && parameters.containsKey("PreReductionCacheFolderName"))
+		{
+			// The script gets the features as text or as doubles (the worker always uses npy), which gives different embeddings.
+			boolean isPythonUmap=preReductionMethod.compareTo("umap")==0 && umapImplementation.compareTo("python")==0;
+			String umapDataExchangeOption=isPythonUmap?(umapDataExchange.compareTo("npy")==0 || useUmapWorker?"npy":"csv"):"";
+			String preReductionOptions=preReductionMethod+","+(preReductionMethod.compareTo("umap")==0?umapImplementation:"")+","+umapDataExchangeOption+","+
+					(isPythonUmap?30:preReductionDimensions)+","+afterUmapTo30DimensionsMaxRows+","+featureStorage+",10";
+			preReductionCacheKey=CompactPreReductionCache.GetKey(dataInstanceSet, preReductionOptions);
+			cachedDataInstanceSet=CompactPreReductionCache.Read(parameters.get("PreReductionCacheFolderName"), preReductionCacheKey, dataInstanceSet, afterUmapTo30DimensionsMaxRows, featureStorage);
+		}
+		
+		if(cachedDataInstanceSet!=null)
+		{
+			System.out.println("Using the cached pre-reduction "+preReductionCacheKey);
+			boolean isImageDataSet=dataInstanceSet.GetIsImageDataSet();
+			dataInstanceSet=cachedDataInstanceSet;
+			if(isImageDataSet)
+				dataInstanceSet.SetIsImageDataSet(true);
+		}
+		else if(preReductionMethod.compareTo("pca")==0 || (preReductionMethod.compareTo("umap")==0 && umapImplementation.compareTo("java")==0))
+		{
+			int numberOfThreads=Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+			if(parameters.containsKey("NumberOfThreads"))
+				numberOfThreads=Integer.parseInt(parameters.get("NumberOfThreads"));
+			
+			boolean isImageDataSet=dataInstanceSet.GetIsImageDataSet();
+			if(preReductionMethod.compareTo("pca")==0)
+				dataInstanceSet=CompactPreReduction.ReduceWithPca(dataInstanceSet, preReductionDimensions, afterUmapTo30DimensionsMaxRows, featureStorage, numberOfThreads, 10);
+			else
+			{
+				System.out.println("");
+				System.out.println("Running UMAP to "+preReductionDimensions+" dimensions in Java");
+				dataInstanceSet=CompactUmapEmbedding.ReduceWithUmap(dataInstanceSet, preReductionDimensions, afterUmapTo30DimensionsMaxRows, featureStorage, numberOfThreads, 10);
+				System.out.println("Finished running UMAP to "+preReductionDimensions+" dimensions in Java");
+				System.out.println("");
+			}
+			if(isImageDataSet)
+				dataInstanceSet.SetIsImageDataSet(true);
+		}
+		else if(preReductionMethod.compareTo("umap")==0)
+		{
+			// The script runs in a stage of its own while this thread prepares the evaluation, which depends only on the features for evaluation,
+			// the original features (or dissimilarity rows) which the reduced data instance set has before the script gives its result.
+			final var originalDataInstanceSet=dataInstanceSet;
+			final boolean useNpy=umapDataExchange.compareTo("npy")==0 || useUmapWorker;
+			final boolean useWorker=useUmapWorker;
+			final String originalInputFileName=inputFileName;
+			final int numberOfThreadsForReading=parameters.containsKey("NumberOfThreads")?Integer.parseInt(parameters.get("NumberOfThreads")):Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+			var embeddingFuture=CompactScriptRunner.SupplyAsync(()->
+			{
+				if(useNpy)
+					return CompactScriptRunner.RunUmapTo30DimensionsWithNpy(parameters, originalDataInstanceSet, useWorker);
+				
+				String projectedFileName=CompactScriptRunner.RunUmapTo30Dimensions(originalInputFileName, parameters, originalDataInstanceSet);
+				if(projectedFileName==null)
+					return null;
+				try
+				{
+					return CompactScriptRunner.ReadUmapTo30DimensionsEmbedding(projectedFileName, numberOfThreadsForReading);
+				}
+				finally
+				{
+					new File(projectedFileName).delete();
+				}
+			});
+			
+			boolean isImageDataSet=dataInstanceSet.GetIsImageDataSet();
+			dataInstanceSet=CompactPreReduction.CreateReducedDataInstanceSet(originalDataInstanceSet, afterUmapTo30DimensionsMaxRows, featureStorage);
+			if(isImageDataSet || inputFileType.toLowerCase().compareTo("csv_image")==0)
+				dataInstanceSet.SetIsImageDataSet(true);
+			
+			configureDataInstanceSet(dataInstanceSet, parameters, distanceMatrixStorage, outputFolderName);
+			dataInstanceSet.PreComputeDistancesForEvaluation();
+			dataInstanceSet.ComputeNeighborsForEvaluation(neighborhoodSizeForEvaluation);
+			
+			double[] embedding=null;
+			try
+			{
+				embedding=embeddingFuture.join();
+			}
+			catch (CompletionException e)
+			{
+				System.out.println("Error");
+				System.out.println(e.getCause().getMessage());
+			}
+			
+			if(embedding==null)
+			{
+				System.out.println("The UMAP script did not give its result");
+				return null;
+			}
+			
+			CompactPreReduction.SetReducedFeatures(dataInstanceSet, embedding, 30, featureStorage);
+		}
+		
+		if(preReductionCacheKey!=null && cachedDataInstanceSet==null)
+		{
+			try
+			{
+				CompactPreReductionCache.Write(parameters.get("PreReductionCacheFolderName"), preReductionCacheKey, dataInstanceSet);
+			}
+			catch (IOException e)
+			{
+				System.out.println("Could not write the pre-reduction cache: "+e.getMessage());
+			}
 		}
 				
+		dataInstanceSet.SetIsRedGray(true);
+		
+		new File(outputFolderName).mkdirs();
+		
+		configureDataInstanceSet(dataInstanceSet, parameters, distanceMatrixStorage, outputFolderName);
+		
+		boolean isCosine=parameters.getOrDefault("CosineNeighborhoodNormalization", "false").toLowerCase().compareTo("true")==0;
+		
+		boolean fuseDistanceTransforms=parameters.getOrDefault("FuseDistanceTransforms", "false").toLowerCase().compareTo("true")==0;
+		
+		return CompactPreparedDataSet.Prepare(dataInstanceSet, neighborhoodSizeForEvaluation, isCosine, fuseDistanceTransforms);
+	}
+	
+	/**
+	 * Projects a data set given by prepareBasedOnParameters and writes the outputs to the output folder of the configuration.
+	 */
+	private static void projectBasedOnParameters(CompactPreparedDataSet preparedDataSet, HashMap<String,String> parameters, CompactBatchRunner.Job job) throws Exception
+	{
+		String outputFolderName=parameters.get("OutputFolderName");
+		
 		CompactProjectionMethod projectionMethod=null;
 		
 		if(parameters.containsKey("NumberOfThreads") &&
@@ -331,24 +764,17 @@ public class CompactCommandLineInterface
 		else
 			projectionMethod=new RedGrayPlusProjectionMethodMultiThreaded();
 		
-		dataInstanceSet.SetIsRedGray(true);
-		
 		new File(outputFolderName).mkdirs();
 		
-		dataInstanceSet.SetDataInstanceIndices();
-		
-		dataInstanceSet.PreComputeDistances();
-		dataInstanceSet.PreComputeDistancesForEvaluation();
-		
-		dataInstanceSet.ComputeNeighborsForEvaluation(neighborhoodSizeForEvaluation);
-		
-		if(parameters.getOrDefault("CosineNeighborhoodNormalization", "false").toLowerCase().compareTo("true")==0)
-			dataInstanceSet.TransformPreComputedDistances("Cosine for original space");
-					
-		dataInstanceSet.TransformPreComputedDistances("Neighbourhood normalized for original space");
-		
+		var projectionOutput=projectionMethod.Project(preparedDataSet, parameters);
+		var dataInstanceSet=projectionOutput.GetDataInstanceSet();
 		
-		var projectionOutput=projectionMethod.Project(dataInstanceSet, parameters);
+		if(dataInstanceSet.GetPreComputedDistances() instanceof CompactLazyDistanceMatrix)
+		{
+			var lazyDistanceMatrix=(CompactLazyDistanceMatrix)dataInstanceSet.GetPreComputedDistances();
+			System.out.println("Lazy distance row cache of "+lazyDistanceMatrix.GetMaximumNumberOfCachedRows()+" rows: "+
+					lazyDistanceMatrix.GetHits()+" hits, "+lazyDistanceMatrix.GetMisses()+" misses");
+		}
 		
 		double projectionFrameWidth=1500;
 		
@@ -380,8 +806,8 @@ public class CompactCommandLineInterface
 			}			
 		}
 		
-		projectionOutput.SetDataInstanceSet(dataInstanceSet);
-		
+		if(job!=null)
+			job.AddProjection(bestRedAndGrayTrustworthinessStep.GetRedAndGrayTrustworthiness(), bestRedTrustworthinessStep.GetRedTrustworthiness());
 		
 		outputProjectionStep(lastStep,outputFolderName,"RedGrayPlus_Iteration"+(projectionSteps.size()-1)+"_LastIteration", projectionOutput);
 		outputProjectionStep(bestRedAndGrayTrustworthinessStep,outputFolderName,"RedGrayPlus_Iteration"+bestRedAndGrayTrustworthinessStepIndex+"_BestRedAndGrayTrustworthiness", projectionOutput);
@@ -412,6 +838,22 @@ public class CompactCommandLineInterface
 			for(int i=0;i<parametersNamedNodeMap.getLength();i++)
 				parameters.put(parametersNamedNodeMap.item(i).getNodeName(), parametersNamedNodeMap.item(i).getNodeValue());
 			
+			return ProcessConfiguration(parameters, new File(configurationFileName).getParentFile());
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Checks that the necessary attributes are given and makes the file and folder names full paths, taking relative ones from the given folder.
+	 * Returns null if an attribute is missing.
+	 */
+	static HashMap<String,String> ProcessConfiguration(HashMap<String,String> parameters, File folder)
+	{
+		try
+		{
 			if(!(parameters.containsKey("Name")))
 				return null;
 			
@@ -431,8 +873,12 @@ public class CompactCommandLineInterface
 				return null;
 			
 			
-			parameters.put("InputFileName",new File(new File(configurationFileName).getParent(),parameters.get("InputFileName")).getCanonicalPath());
-			parameters.put("OutputFolderName",new File(new File(configurationFileName).getParent(),parameters.get("OutputFolderName")).getCanonicalPath());
+			parameters.put("InputFileName",new File(folder,parameters.get("InputFileName")).getCanonicalPath());
+			parameters.put("OutputFolderName",new File(folder,parameters.get("OutputFolderName")).getCanonicalPath());
+			if(parameters.containsKey("PreReductionCacheFolderName"))
+				parameters.put("PreReductionCacheFolderName",new File(folder,parameters.get("PreReductionCacheFolderName")).getCanonicalPath());
+			if(parameters.containsKey("CheckpointFolderName"))
+				parameters.put("CheckpointFolderName",new File(folder,parameters.get("CheckpointFolderName")).getCanonicalPath());
 			
 			return parameters;
 		}
@@ -442,6 +888,19 @@ public class CompactCommandLineInterface
 		}
 	}
 	
+	private static void configureDataInstanceSet(CompactDataInstanceSet dataInstanceSet, HashMap<String,String> parameters, CompactDistanceMatrixStorage distanceMatrixStorage, String outputFolderName) throws IOException
+	{
+		dataInstanceSet.SetDataInstanceIndices();
+		dataInstanceSet.SetDistanceMatrixStorage(distanceMatrixStorage);
+		dataInstanceSet.SetTemporaryFolderName(new File(new File(outputFolderName),"/Temp/").getCanonicalPath());
+		if(parameters.containsKey("DistanceRowCacheMegabytes"))
+			dataInstanceSet.SetLazyDistanceCacheSize(Long.parseLong(parameters.get("DistanceRowCacheMegabytes"))*1024*1024);
+		if(parameters.getOrDefault("DistanceKernel", "tiled").toLowerCase().compareTo("pairwise")==0)
+			dataInstanceSet.SetUseTiledDistanceKernel(false);
+		if(parameters.containsKey("NumberOfThreads"))
+			dataInstanceSet.SetNumberOfThreads(Integer.parseInt(parameters.get("NumberOfThreads")));
+	}
+	
 	private static void outputProjectionStep(CompactProjectionStep projectionStep, String outputFolderName, String prefix, CompactProjectionOutput projectionOutput) throws IOException
 	{
 		var box=projectionOutput.GetContainingBox();
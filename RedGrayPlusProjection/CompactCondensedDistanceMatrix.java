@@ -0,0 +1,113 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+public class CompactCondensedDistanceMatrix extends CompactWritableDistanceMatrix
+{
+	// The upper triangle (including the diagonal) is stored row by row as float32 values.
+	// Values are split into chunks because a java array or buffer cannot hold more than 2^31-1 elements.
+	private static final int CHUNK_SHIFT=27;
+	private static final int CHUNK_MASK=(1<<CHUNK_SHIFT)-1;
+	
+	private int size_;
+	private long numberOfValues_;
+	private float[][] chunks_;
+	private FloatBuffer[] offHeapChunks_;
+	
+	public CompactCondensedDistanceMatrix(int size, boolean offHeap)
+	{
+		size_=size;
+		numberOfValues_=((long)size*(size+1))/2;
+		
+		int numberOfChunks=(int)((numberOfValues_+CHUNK_MASK)>>>CHUNK_SHIFT);
+		
+		if(offHeap)
+			offHeapChunks_=new FloatBuffer[numberOfChunks];
+		else
+			chunks_=new float[numberOfChunks][];
+		
+		for(int i=0;i<numberOfChunks;i++)
+		{
+			int chunkSize=(int)Math.min(1L<<CHUNK_SHIFT, numberOfValues_-((long)i<<CHUNK_SHIFT));
+			if(offHeap)
+				offHeapChunks_[i]=ByteBuffer.allocateDirect(chunkSize*4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+			else
+				chunks_[i]=new float[chunkSize];
+		}
+	}
+	
+	private long valueIndex(int index1, int index2)
+	{
+		if(index1>index2)
+		{
+			int temp=index1;
+			index1=index2;
+			index2=temp;
+		}
+		
+		return (long)index1*size_-((long)index1*(index1-1))/2+(index2-index1);
+	}
+	
+	@Override
+	public int GetSize()
+	{
+		return size_;
+	}
+	
+	@Override
+	public double Get(int index1, int index2)
+	{
+		long valueIndex=valueIndex(index1, index2);
+		int chunk=(int)(valueIndex>>>CHUNK_SHIFT);
+		int offset=(int)(valueIndex&CHUNK_MASK);
+		
+		if(chunks_!=null)
+			return chunks_[chunk][offset];
+		else
+			return offHeapChunks_[chunk].get(offset);
+	}
+	
+	@Override
+	public void Set(int index1, int index2, double distance)
+	{
+		long valueIndex=valueIndex(index1, index2);
+		int chunk=(int)(valueIndex>>>CHUNK_SHIFT);
+		int offset=(int)(valueIndex&CHUNK_MASK);
+		
+		if(chunks_!=null)
+			chunks_[chunk][offset]=(float)distance;
+		else
+			offHeapChunks_[chunk].put(offset, (float)distance);
+	}
+	
+	@Override
+	public boolean IsSymmetric()
+	{
+		return true;
+	}
+	
+	@Override
+	public long GetSizeInBytes()
+	{
+		return numberOfValues_*4;
+	}
+	
+	public boolean IsOffHeap()
+	{
+		return offHeapChunks_!=null;
+	}
+}
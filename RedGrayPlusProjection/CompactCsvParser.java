@@ -0,0 +1,620 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a comma separated file by memory mapping it in chunks which end at line ends and parsing the chunks on several threads,
+ * with numbers parsed directly from the bytes instead of through strings. The lines are then given to a consumer one by one in the order of the file,
+ * so the reading loops keep their line by line logic (a line with one token ends the data, rows can be skipped or limited, text classes are numbered in order).
+ * The tokens of a line are the ones String.split(",") gives, so trailing empty tokens are dropped, and lines end with \n, \r or \r\n like for BufferedReader.readLine.
+ * A gzip compressed file is read through a CompactGzipInputStream instead of being mapped, so its decompression runs on its own thread ahead of the parsing.
+ */
+public class CompactCsvParser
+{
+	public static final int LAST_COLUMN=-1;
+	public static final int NO_COLUMN=-2;
+	
+	private static final int CHUNK_SIZE=8*1024*1024;
+	private static final int MAXIMUM_NUMBER_OF_FAST_DIGITS=18;
+	private static final double[] POWERS_OF_TEN= {1e0,1e1,1e2,1e3,1e4,1e5,1e6,1e7,1e8,1e9,1e10,1e11,1e12,1e13,1e14,1e15,1e16,1e17,1e18,1e19,1e20,1e21,1e22};
+	
+	private RandomAccessFile file_;
+	private FileChannel fileChannel_;
+	private long fileSize_;
+	private long position_;
+	private InputStream inputStream_;
+	private byte[] remainder_;
+	private int remainderLength_;
+	private boolean isEndOfStream_;
+	private Chunk pendingChunk_;
+	private int classColumn_;
+	private int ignoredColumn_;
+	private boolean isClassColumnText_;
+	private int numberOfThreads_;
+	private Charset charset_;
+	
+	/**
+	 * The class column is a column index, LAST_COLUMN or NO_COLUMN. The ignored column is a column index or NO_COLUMN. All the other columns are features.
+	 */
+	public CompactCsvParser(String fileName, int classColumn, int ignoredColumn, boolean isClassColumnText, int numberOfThreads) throws IOException
+	{
+		if(CompactGzipInputStream.IsGzipFile(fileName))
+		{
+			inputStream_=new CompactGzipInputStream(fileName);
+			remainder_=new byte[0];
+			remainderLength_=0;
+			isEndOfStream_=false;
+		}
+		else
+		{
+			file_=new RandomAccessFile(fileName, "r");
+			fileChannel_=file_.getChannel();
+			fileSize_=fileChannel_.size();
+			position_=0;
+		}
+		pendingChunk_=null;
+		classColumn_=classColumn;
+		ignoredColumn_=ignoredColumn;
+		isClassColumnText_=isClassColumnText;
+		numberOfThreads_=Math.max(1, numberOfThreads);
+		charset_=Charset.defaultCharset();
+	}
+	
+	public void Close() throws IOException
+	{
+		if(inputStream_!=null)
+			inputStream_.close();
+		else
+		{
+			fileChannel_.close();
+			file_.close();
+		}
+	}
+	
+	/**
+	 * Reads the first line as a string, for a header, so the parsing starts after it. Returns null for an empty file.
+	 */
+	public String ReadFirstLine() throws IOException
+	{
+		var chunk=readChunk();
+		if(chunk==null)
+			return null;
+		
+		int end=chunk.start_;
+		while(end<chunk.length_ && chunk.bytes_[end]!='\n' && chunk.bytes_[end]!='\r')
+			end++;
+		
+		int next=end;
+		if(next<chunk.length_ && chunk.bytes_[next]=='\r' && next+1<chunk.length_ && chunk.bytes_[next+1]=='\n')
+			next++;
+		if(next<chunk.length_)
+			next++;
+		
+		int start=chunk.start_;
+		
+		// The rest of the chunk is parsed later.
+		chunk.start_=next;
+		pendingChunk_=chunk;
+		return new String(chunk.bytes_, start, end-start, charset_);
+	}
+	
+	public interface LineConsumer
+	{
+		/**
+		 * Returns false to stop the reading.
+		 */
+		boolean Accept(ParsedLines lines, int line) throws Exception;
+	}
+	
+	public void Parse(LineConsumer lineConsumer) throws Exception
+	{
+		ExecutorService executorService=Executors.newFixedThreadPool(numberOfThreads_, runnable->
+		{
+			var thread=new Thread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		try
+		{
+			var parsedChunks=new ArrayDeque<Future<ParsedLines>>();
+			boolean isEndOfFile=false;
+			
+			while(true)
+			{
+				while(!isEndOfFile && parsedChunks.size()<2*numberOfThreads_)
+				{
+					var chunk=readChunk();
+					if(chunk==null)
+						isEndOfFile=true;
+					else
+						parsedChunks.add(executorService.submit(()->parseChunk(chunk)));
+				}
+				
+				if(parsedChunks.isEmpty())
+					return;
+				
+				ParsedLines lines=null;
+				try
+				{
+					lines=parsedChunks.poll().get();
+				}
+				catch (ExecutionException e)
+				{
+					if(e.getCause() instanceof Exception)
+						throw (Exception)e.getCause();
+					throw e;
+				}
+				
+				for(int line=0;line<lines.numberOfLines_;line++)
+					if(!lineConsumer.Accept(lines, line))
+						return;
+			}
+		}
+		finally
+		{
+			executorService.shutdownNow();
+		}
+	}
+	
+	private static class Chunk
+	{
+		private byte[] bytes_;
+		private int start_;
+		private int length_;
+		
+		private Chunk(byte[] bytes, int length)
+		{
+			bytes_=bytes;
+			start_=0;
+			length_=length;
+		}
+	}
+	
+	/**
+	 * The next part of the file which ends at the end of a line, or at the end of the file.
+	 */
+	private Chunk readChunk() throws IOException
+	{
+		if(pendingChunk_!=null)
+		{
+			var chunk=pendingChunk_;
+			pendingChunk_=null;
+			return chunk;
+		}
+		
+		if(inputStream_!=null)
+			return readStreamChunk();
+		
+		long remaining=fileSize_-position_;
+		if(remaining<=0)
+			return null;
+		
+		int size=(int)Math.min(remaining, CHUNK_SIZE);
+		while(true)
+		{
+			var bytes=new byte[size];
+			fileChannel_.map(FileChannel.MapMode.READ_ONLY, position_, size).get(bytes);
+			
+			int length=size==remaining?size:chunkLength(bytes, size);
+			
+			if(length!=-1)
+			{
+				position_+=length;
+				return new Chunk(bytes, length);
+			}
+			
+			// A line longer than the chunk.
+			if(size>Integer.MAX_VALUE/2)
+				throw new IOException("A line of the file is too long");
+			size=(int)Math.min(remaining, 2L*size);
+		}
+	}
+	
+	/**
+	 * The next part of the decompressed stream which ends at the end of a line, or at the end of the stream.
+	 * The bytes after the last line end are kept for the next chunk.
+	 */
+	private Chunk readStreamChunk() throws IOException
+	{
+		if(isEndOfStream_ && remainderLength_==0)
+			return null;
+		
+		int size=CHUNK_SIZE;
+		while(true)
+		{
+			if(size<=remainderLength_)
+			{
+				if(size>Integer.MAX_VALUE/2)
+					throw new IOException("A line of the file is too long");
+				size*=2;
+				continue;
+			}
+			
+			var bytes=new byte[size];
+			System.arraycopy(remainder_, 0, bytes, 0, remainderLength_);
+			int length=remainderLength_;
+			
+			while(!isEndOfStream_ && length<size)
+			{
+				int count=inputStream_.read(bytes, length, size-length);
+				if(count<0)
+					isEndOfStream_=true;
+				else
+					length+=count;
+			}
+			
+			int chunkLength=isEndOfStream_?length:chunkLength(bytes, length);
+			
+			if(chunkLength==-1)
+			{
+				// A line longer than the chunk.
+				remainder_=bytes;
+				remainderLength_=length;
+				continue;
+			}
+			
+			remainder_=Arrays.copyOfRange(bytes, chunkLength, length);
+			remainderLength_=length-chunkLength;
+			
+			if(chunkLength==0)
+				return null;
+			return new Chunk(bytes, chunkLength);
+		}
+	}
+	
+	/**
+	 * The length of the longest prefix which ends at the end of a line, or -1 if there is no line end.
+	 */
+	private static int chunkLength(byte[] bytes, int length)
+	{
+		for(int i=length-1;i>=0;i--)
+			if(bytes[i]=='\n')
+				return i+1;
+		
+		// A \r at the very end could be the first half of a \r\n, so it only ends a line if it is not the last byte.
+		for(int i=length-2;i>=0;i--)
+			if(bytes[i]=='\r')
+				return i+1;
+		
+		return -1;
+	}
+	
+	/**
+	 * The lines of a chunk, with the features of all the lines in one array. A line which can not be parsed keeps its error,
+	 * which is only thrown if the line is used (see ThrowIfError), because the reading may stop before it.
+	 */
+	public static class ParsedLines
+	{
+		private int numberOfLines_;
+		private int[] numberOfTokens_;
+		private int[] featureStarts_;
+		private double[] features_;
+		private int[] classes_;
+		private String[] classNames_;
+		private boolean[] hasClass_;
+		private Exception[] errors_;
+		
+		private ParsedLines()
+		{
+			numberOfLines_=0;
+			numberOfTokens_=new int[256];
+			featureStarts_=new int[257];
+			features_=new double[4096];
+			classes_=new int[256];
+			classNames_=null;
+			hasClass_=new boolean[256];
+			errors_=null;
+		}
+		
+		public int GetNumberOfTokens(int line)
+		{
+			return numberOfTokens_[line];
+		}
+		
+		public int GetNumberOfFeatures(int line)
+		{
+			return featureStarts_[line+1]-featureStarts_[line];
+		}
+		
+		public double GetFeature(int line, int feature)
+		{
+			return features_[featureStarts_[line]+feature];
+		}
+		
+		public void CopyFeatures(int line, int firstFeature, double[] destination, int count)
+		{
+			System.arraycopy(features_, featureStarts_[line]+firstFeature, destination, 0, count);
+		}
+		
+		public boolean HasClass(int line)
+		{
+			return hasClass_[line];
+		}
+		
+		public int GetClass(int line)
+		{
+			return classes_[line];
+		}
+		
+		public String GetClassName(int line)
+		{
+			return classNames_[line];
+		}
+		
+		public void ThrowIfError(int line) throws Exception
+		{
+			if(errors_!=null && errors_[line]!=null)
+				throw errors_[line];
+		}
+		
+		private void addLine(int numberOfTokens)
+		{
+			if(numberOfLines_==numberOfTokens_.length)
+			{
+				int length=2*numberOfLines_;
+				numberOfTokens_=Arrays.copyOf(numberOfTokens_, length);
+				featureStarts_=Arrays.copyOf(featureStarts_, length+1);
+				classes_=Arrays.copyOf(classes_, length);
+				hasClass_=Arrays.copyOf(hasClass_, length);
+				if(classNames_!=null)
+					classNames_=Arrays.copyOf(classNames_, length);
+				if(errors_!=null)
+					errors_=Arrays.copyOf(errors_, length);
+			}
+			
+			numberOfTokens_[numberOfLines_]=numberOfTokens;
+			featureStarts_[numberOfLines_+1]=featureStarts_[numberOfLines_];
+			numberOfLines_++;
+		}
+		
+		private void addFeature(double feature)
+		{
+			int size=featureStarts_[numberOfLines_];
+			if(size==features_.length)
+				features_=Arrays.copyOf(features_, 2*size);
+			features_[size]=feature;
+			featureStarts_[numberOfLines_]=size+1;
+		}
+		
+		private void setError(int line, Exception error)
+		{
+			if(errors_==null)
+				errors_=new Exception[numberOfTokens_.length];
+			if(errors_[line]==null)
+				errors_[line]=error;
+		}
+		
+		private void setClassName(int line, String className)
+		{
+			if(classNames_==null)
+				classNames_=new String[numberOfTokens_.length];
+			classNames_[line]=className;
+		}
+	}
+	
+	private ParsedLines parseChunk(Chunk chunk)
+	{
+		var lines=new ParsedLines();
+		byte[] bytes=chunk.bytes_;
+		int length=chunk.length_;
+		var tokenStarts=new int[64];
+		var tokenEnds=new int[64];
+		
+		int start=chunk.start_;
+		while(start<length)
+		{
+			int end=start;
+			while(end<length && bytes[end]!='\n' && bytes[end]!='\r')
+				end++;
+			
+			int numberOfTokens=0;
+			if(end==start)
+				numberOfTokens=1;
+			else
+			{
+				int tokenStart=start;
+				for(int i=start;i<=end;i++)
+				{
+					if(i==end || bytes[i]==',')
+					{
+						if(numberOfTokens==tokenStarts.length)
+						{
+							tokenStarts=Arrays.copyOf(tokenStarts, 2*numberOfTokens);
+							tokenEnds=Arrays.copyOf(tokenEnds, 2*numberOfTokens);
+						}
+						tokenStarts[numberOfTokens]=tokenStart;
+						tokenEnds[numberOfTokens]=i;
+						numberOfTokens++;
+						tokenStart=i+1;
+					}
+				}
+				
+				while(numberOfTokens>0 && tokenStarts[numberOfTokens-1]==tokenEnds[numberOfTokens-1])
+					numberOfTokens--;
+			}
+			
+			int line=lines.numberOfLines_;
+			lines.addLine(numberOfTokens);
+			
+			// A line with one token ends the data, so it is not parsed.
+			if(numberOfTokens!=1)
+			{
+				int classColumn=classColumn_==LAST_COLUMN?numberOfTokens-1:classColumn_;
+				
+				for(int i=0;i<numberOfTokens;i++)
+				{
+					if(i==ignoredColumn_)
+						continue;
+					
+					try
+					{
+						if(i==classColumn)
+						{
+							lines.hasClass_[line]=true;
+							if(isClassColumnText_)
+								lines.setClassName(line, new String(bytes, tokenStarts[i], tokenEnds[i]-tokenStarts[i], charset_));
+							else
+								lines.classes_[line]=parseInt(bytes, tokenStarts[i], tokenEnds[i]);
+						}
+						else
+							lines.addFeature(parseDouble(bytes, tokenStarts[i], tokenEnds[i]));
+					}
+					catch (NumberFormatException e)
+					{
+						lines.setError(line, e);
+						if(i!=classColumn)
+							lines.addFeature(Double.NaN);
+					}
+				}
+			}
+			
+			start=end;
+			if(start<length && bytes[start]=='\r')
+				start++;
+			if(start<length && bytes[start]=='\n' && (start==end || bytes[end]=='\r'))
+				start++;
+		}
+		
+		return lines;
+	}
+	
+	private int parseInt(byte[] bytes, int start, int end)
+	{
+		int i=start;
+		boolean isNegative=false;
+		if(i<end && (bytes[i]=='-' || bytes[i]=='+'))
+		{
+			isNegative=bytes[i]=='-';
+			i++;
+		}
+		
+		if(i==end || end-i>9)
+			return Integer.parseInt(new String(bytes, start, end-start, charset_));
+		
+		int value=0;
+		for(;i<end;i++)
+		{
+			int digit=bytes[i]-'0';
+			if(digit<0 || digit>9)
+				return Integer.parseInt(new String(bytes, start, end-start, charset_));
+			value=value*10+digit;
+		}
+		
+		return isNegative?-value:value;
+	}
+	
+	/**
+	 * Plain decimal numbers with at most 18 significant digits, a mantissa of at most 2^53 and a power of ten of at most 22 are exact
+	 * with one multiplication or division of doubles, so they give the same value as Double.parseDouble. Anything else is given to Double.parseDouble.
+	 * The mantissa of 19 digits could overflow the long, as in the %.20f numbers the UMAP script writes, so those are given to Double.parseDouble too.
+	 */
+	private double parseDouble(byte[] bytes, int start, int end)
+	{
+		int i=start;
+		boolean isNegative=false;
+		if(i<end && (bytes[i]=='-' || bytes[i]=='+'))
+		{
+			isNegative=bytes[i]=='-';
+			i++;
+		}
+		
+		long mantissa=0;
+		int numberOfDigits=0;
+		int exponent=0;
+		boolean hasDigits=false;
+		
+		for(;i<end && bytes[i]>='0' && bytes[i]<='9';i++)
+		{
+			hasDigits=true;
+			int digit=bytes[i]-'0';
+			if(mantissa==0 && digit==0)
+				continue;
+			if(++numberOfDigits>MAXIMUM_NUMBER_OF_FAST_DIGITS)
+				return parseDoubleSlowly(bytes, start, end);
+			mantissa=mantissa*10+digit;
+		}
+		
+		if(i<end && bytes[i]=='.')
+		{
+			for(i++;i<end && bytes[i]>='0' && bytes[i]<='9';i++)
+			{
+				hasDigits=true;
+				int digit=bytes[i]-'0';
+				exponent--;
+				if(mantissa==0 && digit==0)
+					continue;
+				if(++numberOfDigits>MAXIMUM_NUMBER_OF_FAST_DIGITS)
+					return parseDoubleSlowly(bytes, start, end);
+				mantissa=mantissa*10+digit;
+			}
+		}
+		
+		if(!hasDigits)
+			return parseDoubleSlowly(bytes, start, end);
+		
+		if(i<end && (bytes[i]=='e' || bytes[i]=='E'))
+		{
+			i++;
+			boolean isExponentNegative=false;
+			if(i<end && (bytes[i]=='-' || bytes[i]=='+'))
+			{
+				isExponentNegative=bytes[i]=='-';
+				i++;
+			}
+			
+			if(i==end || end-i>3)
+				return parseDoubleSlowly(bytes, start, end);
+			
+			int explicitExponent=0;
+			for(;i<end && bytes[i]>='0' && bytes[i]<='9';i++)
+				explicitExponent=explicitExponent*10+(bytes[i]-'0');
+			
+			exponent+=isExponentNegative?-explicitExponent:explicitExponent;
+		}
+		
+		if(i!=end)
+			return parseDoubleSlowly(bytes, start, end);
+		
+		if(mantissa==0)
+			return isNegative?-0.0:0.0;
+		
+		if(mantissa>(1L<<53) || exponent<-22 || exponent>22)
+			return parseDoubleSlowly(bytes, start, end);
+		
+		double value=mantissa;
+		if(exponent>0)
+			value*=POWERS_OF_TEN[exponent];
+		else if(exponent<0)
+			value/=POWERS_OF_TEN[-exponent];
+		
+		return isNegative?-value:value;
+	}
+	
+	private double parseDoubleSlowly(byte[] bytes, int start, int end)
+	{
+		return Double.parseDouble(new String(bytes, start, end-start, charset_));
+	}
+}
@@ -18,8 +18,10 @@ import java.util.ArrayList;
 
 public class CompactDataInstance
 {
-	private ArrayList<Double> features_;
-	private ArrayList<Double> featuresForEvaluation_;
+	private CompactFeatureMatrix featureMatrix_;
+	private int featureRow_;
+	private CompactFeatureMatrix featureMatrixForEvaluation_;
+	private int featureRowForEvaluation_;
 	private ArrayList<Integer> classes_;
 	private ArrayList<CompactProjectedPoint> projectedPoints_;
 	private ArrayList<CompactProjectedPoint> evaluationProjectedPoints_;
@@ -33,8 +35,10 @@ public class CompactDataInstance
 	
 	public CompactDataInstance()
 	{
-		features_=new ArrayList<Double>();
-		featuresForEvaluation_=new ArrayList<Double>();
+		featureMatrix_=null;
+		featureRow_=-1;
+		featureMatrixForEvaluation_=null;
+		featureRowForEvaluation_=-1;
 		classes_=new ArrayList<Integer>();
 		projectedPoints_=new ArrayList<CompactProjectedPoint>();
 		evaluationProjectedPoints_=new ArrayList<CompactProjectedPoint>();
@@ -47,9 +51,38 @@ public class CompactDataInstance
 	}
 	
 	
-	public ArrayList<Double> GetFeatures()
+	public int GetNumberOfFeatures()
 	{
-		return features_;
+		if(featureMatrix_==null)
+			return 0;
+		return featureMatrix_.GetNumberOfFeatures();
+	}
+	
+	public CompactFeatureMatrix GetFeatureMatrix()
+	{
+		return featureMatrix_;
+	}
+	
+	public int GetFeatureRow()
+	{
+		return featureRow_;
+	}
+	
+	/**
+	 * Makes the features of this data instance a view of one row of a feature matrix, usually the one of its data instance set.
+	 */
+	public void SetFeatures(CompactFeatureMatrix featureMatrix, int featureRow)
+	{
+		featureMatrix_=featureMatrix;
+		featureRow_=featureRow;
+	}
+	
+	public void SetFeatures(double[] features)
+	{
+		var featureMatrix=new CompactDenseFeatureMatrix(1, features.length, false);
+		for(int k=0;k<features.length;k++)
+			featureMatrix.Set(0, k, features[k]);
+		SetFeatures(featureMatrix, 0);
 	}
 	
 	public ArrayList<Integer> GetClasses()
@@ -59,7 +92,7 @@ public class CompactDataInstance
 	
 	public double GetFeature(int dimention)
 	{
-		return features_.get(dimention);
+		return featureMatrix_.Get(featureRow_, dimention);
 	}
 	
 	public int GetClass(int index)
@@ -90,8 +123,7 @@ public class CompactDataInstance
 	public CompactDataInstance Clone()
 	{
 		var dataInstance=new CompactDataInstance();
-		for(int i=0;i<features_.size();i++)
-			dataInstance.GetFeatures().add(features_.get(i));
+		dataInstance.SetFeatures(featureMatrix_, featureRow_);
 		
 		for(int i=0;i<classes_.size();i++)
 			dataInstance.GetClasses().add(classes_.get(i));
@@ -104,6 +136,24 @@ public class CompactDataInstance
 		return dataInstance;
 	}
 	
+	/**
+	 * A data instance with the same features, features for evaluation, classes and images, which shares the feature matrices and the images
+	 * but has its own projected points and neighbors, for another projection of the same data.
+	 */
+	public CompactDataInstance CreateView()
+	{
+		var dataInstance=new CompactDataInstance();
+		dataInstance.SetFeatures(featureMatrix_, featureRow_);
+		dataInstance.SetFeaturesForEvaluation(featureMatrixForEvaluation_, featureRowForEvaluation_);
+		dataInstance.GetClasses().addAll(classes_);
+		dataInstance.SetIndexInDataInstanceSet(indexInDataInstanceSet_);
+		dataInstance.digitImage_=digitImage_;
+		dataInstance.digitImageRed_=digitImageRed_;
+		dataInstance.digitImageGray_=digitImageGray_;
+		
+		return dataInstance;
+	}
+	
 	public double DistanceTo(CompactDataInstance dataInstance)
 	{
 		if(dataInstanceSet_!=null)
@@ -111,11 +161,22 @@ public class CompactDataInstance
 			if(dataInstanceSet_.IsDistancesPreComputed())
 				return dataInstanceSet_.GetPreComputedDistance(indexInDataInstanceSet_, dataInstance.GetIndexInDataInstanceSet());
 			else if(dataInstanceSet_.GetUseDissimilarityInsteadOfDistance())
-				return dataInstanceSet_.GetDisSimiliraties()[indexInDataInstanceSet_][dataInstance.GetIndexInDataInstanceSet()];
+				return dataInstanceSet_.GetDisSimilarity(indexInDataInstanceSet_, dataInstance.GetIndexInDataInstanceSet());
 		}
 		
+		return FeatureDistanceTo(dataInstance);
+	}
+	
+	/**
+	 * The euclidean distance between the features, ignoring any precomputed distances or dissimilarities.
+	 */
+	public double FeatureDistanceTo(CompactDataInstance dataInstance)
+	{
+		if(featureMatrix_ instanceof CompactSparseFeatureMatrix && dataInstance.GetFeatureMatrix()==featureMatrix_)
+			return Math.sqrt(((CompactSparseFeatureMatrix)featureMatrix_).SquaredEuclideanDistance(featureRow_, dataInstance.GetFeatureRow()));
+		
 		double sum=0;
-		for(int i=0;i<features_.size();i++)
+		for(int i=0;i<GetNumberOfFeatures();i++)
 			sum+=Math.pow(this.GetFeature(i)-dataInstance.GetFeature(i),2);
 		
 		return Math.sqrt(sum);
@@ -128,15 +189,27 @@ public class CompactDataInstance
 			if(dataInstanceSet_.IsDistancesForEvaluationPreComputed())
 				return dataInstanceSet_.GetPreComputedDistanceForEvaluation(indexInDataInstanceSet_, dataInstance.GetIndexInDataInstanceSet());
 			else if(dataInstanceSet_.GetUseDissimilarityInsteadOfDistance())
-				return dataInstanceSet_.GetDisSimiliraties()[indexInDataInstanceSet_][dataInstance.GetIndexInDataInstanceSet()];
+				return dataInstanceSet_.GetDisSimilarity(indexInDataInstanceSet_, dataInstance.GetIndexInDataInstanceSet());
 		}
 		
-		if(featuresForEvaluation_.size()==0)
+		if(GetNumberOfFeaturesForEvaluation()==0)
 			return this.DistanceTo(dataInstance);
 		
+		return EvaluationFeatureDistanceTo(dataInstance);
+	}
+	
+	/**
+	 * The euclidean distance between the features for evaluation (or the features if there are no features for evaluation),
+	 * ignoring any precomputed distances or dissimilarities.
+	 */
+	public double EvaluationFeatureDistanceTo(CompactDataInstance dataInstance)
+	{
+		if(GetNumberOfFeaturesForEvaluation()==0)
+			return FeatureDistanceTo(dataInstance);
+		
 		double sum=0;
-		for(int i=0;i<featuresForEvaluation_.size();i++)
-			sum+=Math.pow(this.GetFeaturesForEvaluation().get(i)-dataInstance.GetFeaturesForEvaluation().get(i),2);
+		for(int i=0;i<GetNumberOfFeaturesForEvaluation();i++)
+			sum+=Math.pow(this.GetFeatureForEvaluation(i)-dataInstance.GetFeatureForEvaluation(i),2);
 		
 		return Math.sqrt(sum);
 	}
@@ -174,18 +247,45 @@ public class CompactDataInstance
 		dataInstanceSet_=dataInstanceSet;
 	}
 	
-	public ArrayList<Double> GetFeaturesForEvaluation()
+	public int GetNumberOfFeaturesForEvaluation()
+	{
+		if(featureMatrixForEvaluation_==null)
+			return 0;
+		return featureMatrixForEvaluation_.GetNumberOfFeatures();
+	}
+	
+	public double GetFeatureForEvaluation(int dimention)
+	{
+		return featureMatrixForEvaluation_.Get(featureRowForEvaluation_, dimention);
+	}
+	
+	public CompactFeatureMatrix GetFeatureMatrixForEvaluation()
+	{
+		return featureMatrixForEvaluation_;
+	}
+	
+	public int GetFeatureRowForEvaluation()
 	{
-		return featuresForEvaluation_;
+		return featureRowForEvaluation_;
+	}
+	
+	public void SetFeaturesForEvaluation(CompactFeatureMatrix featureMatrixForEvaluation, int featureRowForEvaluation)
+	{
+		featureMatrixForEvaluation_=featureMatrixForEvaluation;
+		featureRowForEvaluation_=featureRowForEvaluation;
 	}
 	
 	public void BuildDigitImage(int imageHeight)
 	{
-		var featuresForEvaluation=featuresForEvaluation_;
-		if(featuresForEvaluation.size()==0)
-			featuresForEvaluation=features_;
+		var featureMatrix=featureMatrixForEvaluation_;
+		int featureRow=featureRowForEvaluation_;
+		if(GetNumberOfFeaturesForEvaluation()==0)
+		{
+			featureMatrix=featureMatrix_;
+			featureRow=featureRow_;
+		}
 		
-		int imageWidth=featuresForEvaluation.size()/imageHeight;
+		int imageWidth=featureMatrix.GetNumberOfFeatures()/imageHeight;
 		
 		var digitImage=new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_BYTE_GRAY);
 		var digitImageRed=new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
@@ -197,8 +297,8 @@ public class CompactDataInstance
 		for(int i=0;i<imageWidth;i++)
 			for(int j=0;j<imageHeight;j++)
 			{
-				pixels[i*imageWidth+j]=featuresForEvaluation.get(i*imageWidth+j).intValue();
-				pixelsRed[i*imageWidth*3+j*3]=featuresForEvaluation.get(i*imageWidth+j).intValue();
+				pixels[i*imageWidth+j]=(int)featureMatrix.Get(featureRow, i*imageWidth+j);
+				pixelsRed[i*imageWidth*3+j*3]=(int)featureMatrix.Get(featureRow, i*imageWidth+j);
 				pixelsRed[i*imageWidth*3+j*3+1]=0;
 				pixelsRed[i*imageWidth*3+j*3+2]=0;
 				pixelsGray[i*imageWidth+j]=pixels[i*imageWidth+j]/2 +127;
@@ -13,7 +13,8 @@
 package RedGrayPlusProjection;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -21,6 +22,37 @@ import java.util.HashSet;
 
 public class CompactDataInstanceReader
 {	
+	private CompactFeatureStorage featureStorage_;
+	private int numberOfThreads_;
+	private boolean useDatasetCache_;
+	
+	public CompactDataInstanceReader()
+	{
+		featureStorage_=CompactFeatureStorage.DOUBLE;
+		numberOfThreads_=Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+		useDatasetCache_=false;
+	}
+	
+	public void SetFeatureStorage(CompactFeatureStorage featureStorage)
+	{
+		featureStorage_=featureStorage;
+	}
+	
+	/**
+	 * The number of threads which parse the chunks of the csv files.
+	 */
+	public void SetNumberOfThreads(int numberOfThreads)
+	{
+		numberOfThreads_=Math.max(1, numberOfThreads);
+	}
+	
+	/**
+	 * With the dataset cache the csv and sparse readers keep a binary copy of what they read next to the input file and read that copy in later runs (see CompactDatasetCache).
+	 */
+	public void SetUseDatasetCache(boolean useDatasetCache)
+	{
+		useDatasetCache_=useDatasetCache;
+	}
 	
 	public CompactDataInstanceSet ReadExternalProjectedDataSetAsInput(String fileName) throws Exception
 	{
@@ -28,30 +60,23 @@ public class CompactDataInstanceReader
 		CompactDataInstanceSet dataInstanceSet=null;
 		dataInstanceSet=new CompactDataInstanceSet();
 		
-		int numberOfOriginalFeatures=0;
+		var dataInstances=dataInstanceSet.GetDataInstances();
+		var featureMatrixBuilder=new CompactFeatureMatrixBuilder(featureStorage_);
+		var featureMatrixForEvaluationBuilder=new CompactFeatureMatrixBuilder(featureStorage_);
+		
+		var csvParser=new CompactCsvParser(fileName, 1, 0, false, numberOfThreads_);
 		
-		if (true)
+		try
 		{
-			var bufferReader = new BufferedReader(new FileReader(fileName));
-
-			String line = "";
-			
-			var dataInstances=dataInstanceSet.GetDataInstances();
-			
-			boolean firstLine=true;
+			String firstLine=csvParser.ReadFirstLine();
 			
-			while ((line = bufferReader.readLine()) != null)
-			{	
-				String delimiterRegex = ",";
-				var tokens = line.split(delimiterRegex);
-
-				if (tokens.length == 1)
-					break;
+			if(firstLine!=null)
+			{
+				var tokens = firstLine.split(",");
 				
-				if(firstLine)
+				if (tokens.length != 1)
 				{
-					firstLine=false;
-					
+					int numberOfOriginalFeatures=0;
 					for (int i = 0; i < tokens.length; i++)
 					{
 						var token = tokens[i];
@@ -61,194 +86,281 @@ public class CompactDataInstanceReader
 							break;
 						}
 					}
-					continue;
-				}
-				
-				var dataInstance=new CompactDataInstance();
-
-				for (int i = 0; i < tokens.length; i++)
-				{
-					var token = tokens[i];
 					
-					if(i==0)
+					final int numberOfFeaturesForEvaluation=Math.max(0, numberOfOriginalFeatures);
+					var features=new double[1][0];
+					var featuresForEvaluation=new double[1][0];
+					
+					csvParser.Parse((lines, line)->
 					{
+						if (lines.GetNumberOfTokens(line) == 1)
+							return false;
 						
-					}
-					else if(i==1)
-					{
-						int classNumber=Integer.parseInt(token);
-						dataInstance.GetClasses().add(classNumber);
-					}
-					else if(i>=2 && i<2+numberOfOriginalFeatures)
-					{
-						double feature=Double.parseDouble(token);
-						dataInstance.GetFeaturesForEvaluation().add(feature);
-					}
-					else if(i>1)
-					{
-						double feature=Double.parseDouble(token);
-						dataInstance.GetFeatures().add(feature);
-					}
+						lines.ThrowIfError(line);
+						
+						var dataInstance=new CompactDataInstance();
+						if(lines.HasClass(line))
+							dataInstance.GetClasses().add(lines.GetClass(line));
+						
+						int numberOfFeatures=lines.GetNumberOfFeatures(line);
+						int numberOfLineFeaturesForEvaluation=Math.min(numberOfFeaturesForEvaluation, numberOfFeatures);
+						if(features[0].length<numberOfFeatures)
+						{
+							features[0]=new double[numberOfFeatures];
+							featuresForEvaluation[0]=new double[numberOfFeatures];
+						}
+						
+						lines.CopyFeatures(line, 0, featuresForEvaluation[0], numberOfLineFeaturesForEvaluation);
+						lines.CopyFeatures(line, numberOfLineFeaturesForEvaluation, features[0], numberOfFeatures-numberOfLineFeaturesForEvaluation);
+						
+						featureMatrixBuilder.AddRow(features[0], numberOfFeatures-numberOfLineFeaturesForEvaluation);
+						featureMatrixForEvaluationBuilder.AddRow(featuresForEvaluation[0], numberOfLineFeaturesForEvaluation);
+						dataInstances.add(dataInstance);
+						return true;
+					});
 				}
-				
-				dataInstances.add(dataInstance);
 			}
-
-			bufferReader.close();
 		}
+		finally
+		{
+			csvParser.Close();
+		}
+		
+		dataInstanceSet.SetFeatureMatrix(featureMatrixBuilder.Build());
+		dataInstanceSet.SetFeatureMatrixForEvaluation(featureMatrixForEvaluationBuilder.Build());
 		
 		return dataInstanceSet;
 	}
 
 	public CompactDataInstanceSet ReadDataSetCsv(String fileName,int maxInputRows, int ignoreRows, boolean isClassColumnText, boolean isClassColumnFirst) throws Exception
+	{
+		String cacheOptions="csv,"+maxInputRows+","+ignoreRows+","+isClassColumnText+","+isClassColumnFirst+","+featureStorage_;
+		
+		var dataInstanceSet=readCachedDataSet(fileName, cacheOptions);
+		if(dataInstanceSet!=null)
+			return dataInstanceSet;
+		
+		dataInstanceSet=readDataSetCsv(fileName, maxInputRows, ignoreRows, isClassColumnText, isClassColumnFirst);
+		writeCachedDataSet(fileName, cacheOptions, dataInstanceSet);
+		
+		return dataInstanceSet;
+	}
+	
+	private CompactDataInstanceSet readDataSetCsv(String fileName,int maxInputRows, int ignoreRows, boolean isClassColumnText, boolean isClassColumnFirst) throws Exception
 	{	
 		var dataInstanceSet=new CompactDataInstanceSet();
 		
-		var bufferReader = new BufferedReader(new FileReader(fileName));
-
-		String line = "";
-		
 		var categoryToInt=new HashMap<String,Integer>();
-					
 		
 		var dataInstances=dataInstanceSet.GetDataInstances();
+		var featureMatrixBuilder=new CompactFeatureMatrixBuilder(featureStorage_);
+		var features=new double[1][0];
+		var lineNumber=new int[1];
 		
-		int lineNumber=0;
+		var csvParser=new CompactCsvParser(fileName, isClassColumnFirst?0:CompactCsvParser.LAST_COLUMN, CompactCsvParser.NO_COLUMN, isClassColumnText, numberOfThreads_);
 		
-		while ((line = bufferReader.readLine()) != null)
+		try
 		{
-			lineNumber++;
-			
-			CompactDataInstance dataInstance=null;
-			
-			String delimiterRegex = ",";
-			var tokens = line.split(delimiterRegex);
-
-			if (tokens.length == 1)
-				break;
-			
-			if(maxInputRows!=-1 && dataInstances.size()==maxInputRows)
-				break;
-			
-			if(ignoreRows!=-1 && lineNumber<=ignoreRows)
-				continue;
-			
-			dataInstance = new CompactDataInstance();
-
-			for (int i = 0; i < tokens.length; i++)
+			csvParser.Parse((lines, line)->
 			{
-				var token = tokens[i];
-				if((!isClassColumnFirst && i==tokens.length-1) || (isClassColumnFirst && i==0))
+				lineNumber[0]++;
+				
+				if (lines.GetNumberOfTokens(line) == 1)
+					return false;
+				
+				if(maxInputRows!=-1 && dataInstances.size()==maxInputRows)
+					return false;
+				
+				if(ignoreRows!=-1 && lineNumber[0]<=ignoreRows)
+					return true;
+				
+				lines.ThrowIfError(line);
+				
+				var dataInstance = new CompactDataInstance();
+				if(lines.HasClass(line))
 				{
 					if(isClassColumnText)
 					{
+						var token=lines.GetClassName(line);
 						if(!categoryToInt.containsKey(token))
 							categoryToInt.put(token, categoryToInt.size());
 						
 						dataInstance.GetClasses().add(categoryToInt.get(token));
 					}
 					else
-						dataInstance.GetClasses().add(Integer.parseInt(token));
-				}
-				else
-				{
-					dataInstance.GetFeatures().add(Double.parseDouble(token));
+						dataInstance.GetClasses().add(lines.GetClass(line));
 				}
-								
-			}
-			
-			dataInstances.add(dataInstance);
+				
+				int numberOfFeatures=lines.GetNumberOfFeatures(line);
+				if(features[0].length<numberOfFeatures)
+					features[0]=new double[numberOfFeatures];
+				lines.CopyFeatures(line, 0, features[0], numberOfFeatures);
+				
+				featureMatrixBuilder.AddRow(features[0], numberOfFeatures);
+				dataInstances.add(dataInstance);
+				return true;
+			});
+		}
+		finally
+		{
+			csvParser.Close();
 		}
-
-		bufferReader.close();
 		
+		dataInstanceSet.SetFeatureMatrix(featureMatrixBuilder.Build());
+		if(isClassColumnText)
+			dataInstanceSet.SetClassNames(classNames(categoryToInt));
 		
 		return dataInstanceSet;
 	}
 	
 	public CompactDataInstanceSet ReadDataSetCsvDistance(String fileName, boolean isClassColumnText, boolean isClassColumnFirst) throws Exception
+	{
+		return ReadDataSetCsvDistance(fileName, isClassColumnText, isClassColumnFirst, CompactDistanceMatrixStorage.FULL);
+	}
+	
+	public CompactDataInstanceSet ReadDataSetCsvDistance(String fileName, boolean isClassColumnText, boolean isClassColumnFirst, CompactDistanceMatrixStorage distanceMatrixStorage) throws Exception
 	{	
+		// With the memory mapped storage the text matrix is converted once into a binary file next to it and later runs map that file directly.
+		String mappedFileName=fileName+".rgpdist";
+		CompactMappedDistanceMatrix mappedDistanceMatrix=null;
 		
+		if(distanceMatrixStorage==CompactDistanceMatrixStorage.MEMORY_MAPPED)
+		{
+			mappedDistanceMatrix=CompactMappedDistanceMatrix.OpenForSource(mappedFileName, fileName, isClassColumnFirst, isClassColumnText);
+			if(mappedDistanceMatrix!=null)
+			{
+				var dataInstanceSet=new CompactDataInstanceSet();
+				dataInstanceSet.SetDistanceMatrixStorage(distanceMatrixStorage);
+				dataInstanceSet.SetDissimilarityMatrix(mappedDistanceMatrix);
+				
+				for(int i=0;i<mappedDistanceMatrix.GetSize();i++)
+				{
+					var dataInstance=new CompactDataInstance();
+					dataInstance.GetClasses().add(mappedDistanceMatrix.GetClass(i));
+					dataInstanceSet.GetDataInstances().add(dataInstance);
+				}
+				
+				dataInstanceSet.SetDataInstanceIndices();
+				dataInstanceSet.SetUseDissimilarityInsteadOfDistance(true);
+				
+				return dataInstanceSet;
+			}
+		}
 				
-		var bufferReader = new BufferedReader(new FileReader(fileName));
-
-		String line = "";
-		
 		var categoryToInt=new HashMap<String,Integer>();
-					
-		CompactDataInstanceSet dataInstanceSet=null;
 		
-		ArrayList<CompactDataInstance> dataInstances=null;
+		var dataInstanceSets=new CompactDataInstanceSet[1];
+		var mappedDistanceMatrices=new CompactMappedDistanceMatrix[1];
+		var disSimilarities=new double[1][0];
+		var rowLengths=new int[1][64];
+		var numberOfRows=new int[1];
 		
-		int lineNumber=0;
+		// The rows are parsed on several threads and written in order, so each value left of the diagonal finds its mirrored value already written.
+		var csvParser=new CompactCsvParser(fileName, isClassColumnFirst?0:CompactCsvParser.LAST_COLUMN, CompactCsvParser.NO_COLUMN, isClassColumnText, numberOfThreads_);
 		
-		while ((line = bufferReader.readLine()) != null)
+		try
 		{
-			lineNumber++;
-			
-			CompactDataInstance dataInstance=null;
-			if(lineNumber==1)
-			{ 
-				var tokens = line.split(",");
-				
-				dataInstanceSet=new CompactDataInstanceSet(tokens.length-1);
-				dataInstances=dataInstanceSet.GetDataInstances();
+			csvParser.Parse((lines, line)->
+			{
+				int row=numberOfRows[0];
 				
-				for(int i=0;i<tokens.length-1;i++)
-				{
-					dataInstance=new CompactDataInstance();
-					dataInstances.add(dataInstance);
+				if(row==0)
+				{ 
+					int size=lines.GetNumberOfTokens(line)-1;
+					
+					if(distanceMatrixStorage==CompactDistanceMatrixStorage.MEMORY_MAPPED)
+					{
+						mappedDistanceMatrices[0]=CompactMappedDistanceMatrix.CreateForSource(mappedFileName, size, fileName, isClassColumnFirst, isClassColumnText);
+						dataInstanceSets[0]=new CompactDataInstanceSet();
+						dataInstanceSets[0].SetDistanceMatrixStorage(distanceMatrixStorage);
+						dataInstanceSets[0].SetDissimilarityMatrix(mappedDistanceMatrices[0]);
+					}
+					else
+						dataInstanceSets[0]=new CompactDataInstanceSet(size, distanceMatrixStorage);
+					
+					for(int i=0;i<size;i++)
+						dataInstanceSets[0].GetDataInstances().add(new CompactDataInstance());
 				}
-			}
-			
-			dataInstance=dataInstances.get(lineNumber-1);
-						
-			String delimiterRegex = ",";
-			var tokens = line.split(delimiterRegex);
-
-			if (tokens.length == 1)
-				break;
-			
-
-			for (int i = 0; i < tokens.length; i++)
-			{
-				var token = tokens[i];
-				if((!isClassColumnFirst && i==tokens.length-1) || (isClassColumnFirst && i==0))
+				
+				var dataInstance=dataInstanceSets[0].GetDataInstances().get(row);
+				
+				if (lines.GetNumberOfTokens(line) == 1)
+					return false;
+				
+				lines.ThrowIfError(line);
+				
+				if(lines.HasClass(line))
 				{
 					if(isClassColumnText)
 					{
+						var token=lines.GetClassName(line);
 						if(!categoryToInt.containsKey(token))
 							categoryToInt.put(token, categoryToInt.size());
 						
 						dataInstance.GetClasses().add(categoryToInt.get(token));
 					}
 					else
-						dataInstance.GetClasses().add(Integer.parseInt(token));
+						dataInstance.GetClasses().add(lines.GetClass(line));
+					
+					if(mappedDistanceMatrices[0]!=null)
+						mappedDistanceMatrices[0].SetClass(row, dataInstance.GetClass(0));
 				}
-				else
-				{
-					dataInstanceSet.SetDisSimilarity(lineNumber-1, i, Double.parseDouble(token));
-				}		
-			}
+				
+				int numberOfDisSimilarities=lines.GetNumberOfFeatures(line);
+				if(disSimilarities[0].length<numberOfDisSimilarities)
+					disSimilarities[0]=new double[numberOfDisSimilarities];
+				lines.CopyFeatures(line, 0, disSimilarities[0], numberOfDisSimilarities);
+				
+				dataInstanceSets[0].SetDisSimilaritiesFromRow(row, disSimilarities[0], numberOfDisSimilarities);
+				
+				if(row==rowLengths[0].length)
+					rowLengths[0]=Arrays.copyOf(rowLengths[0], 2*row);
+				rowLengths[0][row]=numberOfDisSimilarities;
+				numberOfRows[0]++;
+				return true;
+			});
+		}
+		finally
+		{
+			csvParser.Close();
 		}
-
-		bufferReader.close();
+		
+		var dataInstanceSet=dataInstanceSets[0];
+		
+		if(mappedDistanceMatrices[0]!=null)
+			mappedDistanceMatrices[0].MarkComplete();
 		
 		dataInstanceSet.SetDataInstanceIndices();
 		dataInstanceSet.SetUseDissimilarityInsteadOfDistance(true);
-		dataInstanceSet.SymmetrizeDisSimmilarities();
+		dataInstanceSet.SymmetrizeShortDisSimilarityRows(rowLengths[0], numberOfRows[0]);
+		if(isClassColumnText)
+			dataInstanceSet.SetClassNames(classNames(categoryToInt));
 		
 		return dataInstanceSet;
 	}
 	
 	public CompactDataInstanceSet ReadDataSetSparse(String fileName) throws Exception
+	{
+		String cacheOptions="sparse";
+		
+		var dataInstanceSet=readCachedDataSet(fileName, cacheOptions);
+		if(dataInstanceSet!=null)
+			return dataInstanceSet;
+		
+		dataInstanceSet=readDataSetSparse(fileName);
+		writeCachedDataSet(fileName, cacheOptions, dataInstanceSet);
+		
+		return dataInstanceSet;
+	}
+	
+	private CompactDataInstanceSet readDataSetSparse(String fileName) throws Exception
 	{
 		
 		CompactDataInstanceSet dataInstanceSet=null;
 		dataInstanceSet=new CompactDataInstanceSet();
 		
 		
-		var bufferReader = new BufferedReader(new FileReader(fileName));
+		var bufferReader = new BufferedReader(new InputStreamReader(CompactGzipInputStream.Open(fileName)));
 		
 		bufferReader.readLine();
 		bufferReader.readLine();
@@ -258,10 +370,11 @@ public class CompactDataInstanceReader
 
 		String line = "";
 		var dataInstances=dataInstanceSet.GetDataInstances();
+		var featureMatrix=new CompactSparseFeatureMatrix(numberOfAttributes);
+		int[] indices=new int[0];
+		double[] values=new double[0];
 		
 		var dataInstance=new CompactDataInstance();
-		for(int i=0;i<numberOfAttributes;i++)
-			dataInstance.GetFeatures().add(0.0);
 		
 		while ((line = bufferReader.readLine()) != null)
 		{	
@@ -272,25 +385,244 @@ public class CompactDataInstanceReader
 			if (tokens.length == 1)
 				break;
 
+			if(indices.length<tokens.length)
+			{
+				indices=new int[tokens.length];
+				values=new double[tokens.length];
+			}
+			
+			int count=0;
 			for (int i = 1; i < tokens.length-1; i++)
 			{
 				var token = tokens[i];
 				
-				int index=Integer.parseInt(token.split(":")[0]);
-				double value=Double.parseDouble(token.split(":")[1]);
-				dataInstance.GetFeatures().set(index,value);
+				int separator=token.indexOf(':');
+				indices[count]=Integer.parseInt(token.substring(0, separator));
+				values[count]=Double.parseDouble(token.substring(separator+1));
+				count++;
 			}
 			
 			dataInstance.GetClasses().add((int)(Double.parseDouble(tokens[tokens.length-1])+0.1));
 			
+			featureMatrix.AddRow(indices, values, count);
 			dataInstances.add(dataInstance);
 			dataInstance = new CompactDataInstance();
-			for(int i=0;i<numberOfAttributes;i++)
-				dataInstance.GetFeatures().add(0.0);
 		}
 
 		bufferReader.close();
 		
+		featureMatrix.Trim();
+		dataInstanceSet.SetFeatureMatrix(featureMatrix);
+		
 		return dataInstanceSet;
 	}
+	
+	/**
+	 * Reads a two dimensional .npy array of features, one row per data instance, straight into the primitive feature storage.
+	 * The classes come from the label file (see ReadLabels), or are all 0 if there is no label file.
+	 */
+	public CompactDataInstanceSet ReadDataSetNpy(String fileName, String labelFileName, int maxInputRows, boolean isClassColumnText) throws Exception
+	{
+		var dataInstanceSet=new CompactDataInstanceSet();
+		var npyFile=CompactNpyFile.Open(fileName);
+		
+		try
+		{
+			int numberOfRows=npyFile.GetNumberOfRows();
+			int numberOfFeatures=npyFile.GetNumberOfColumns();
+			int numberOfFileRows=numberOfRows;
+			if(maxInputRows!=-1 && maxInputRows<numberOfRows)
+				numberOfRows=maxInputRows;
+			
+			if((long)numberOfRows*numberOfFeatures>Integer.MAX_VALUE-8)
+				throw new IllegalArgumentException("Too many features for a dense feature matrix: "+numberOfRows+" rows of "+numberOfFeatures+" features");
+			
+			int numberOfValues=numberOfRows*numberOfFeatures;
+			CompactDenseFeatureMatrix featureMatrix=null;
+			
+			if(!npyFile.IsFortranOrder() || numberOfFeatures==1)
+			{
+				if(featureStorage_==CompactFeatureStorage.FLOAT32)
+				{
+					var values=new float[numberOfValues];
+					npyFile.ReadFloats(0, values, 0, numberOfValues);
+					featureMatrix=new CompactDenseFeatureMatrix(values, numberOfRows, numberOfFeatures);
+				}
+				else
+				{
+					var values=new double[numberOfValues];
+					npyFile.ReadDoubles(0, values, 0, numberOfValues);
+					featureMatrix=new CompactDenseFeatureMatrix(values, numberOfRows, numberOfFeatures);
+				}
+			}
+			else
+			{
+				// In Fortran order each column is contiguous, so the columns are read one by one into the rows.
+				featureMatrix=new CompactDenseFeatureMatrix(numberOfRows, numberOfFeatures, featureStorage_==CompactFeatureStorage.FLOAT32);
+				var column=new double[numberOfRows];
+				for(int j=0;j<numberOfFeatures;j++)
+				{
+					npyFile.ReadDoubles((long)j*numberOfFileRows, column, 0, numberOfRows);
+					for(int i=0;i<numberOfRows;i++)
+						featureMatrix.Set(i, j, column[i]);
+				}
+			}
+			
+			var classes=ReadLabels(labelFileName, numberOfRows, isClassColumnText);
+			var dataInstances=dataInstanceSet.GetDataInstances();
+			for(int i=0;i<numberOfRows;i++)
+			{
+				var dataInstance=new CompactDataInstance();
+				dataInstance.GetClasses().add(classes[i]);
+				dataInstances.add(dataInstance);
+			}
+			
+			dataInstanceSet.SetFeatureMatrix(featureMatrix);
+		}
+		finally
+		{
+			npyFile.Close();
+		}
+		
+		return dataInstanceSet;
+	}
+	
+	/**
+	 * Reads a square .npy array of dissimilarities straight into the distance matrix storage, symmetrizing like ReadDataSetCsvDistance.
+	 * The classes come from the label file (see ReadLabels), or are all 0 if there is no label file.
+	 */
+	public CompactDataInstanceSet ReadDataSetNpyDistance(String fileName, String labelFileName, boolean isClassColumnText, CompactDistanceMatrixStorage distanceMatrixStorage) throws Exception
+	{
+		CompactDataInstanceSet dataInstanceSet=null;
+		var npyFile=CompactNpyFile.Open(fileName);
+		
+		try
+		{
+			int size=npyFile.GetNumberOfRows();
+			if(npyFile.GetNumberOfDimensions()!=2 || npyFile.GetNumberOfColumns()!=size)
+				throw new IOException("Expected a square npy array of dissimilarities: "+fileName);
+			
+			var classes=ReadLabels(labelFileName, size, isClassColumnText);
+			
+			dataInstanceSet=new CompactDataInstanceSet(size, distanceMatrixStorage);
+			var dataInstances=dataInstanceSet.GetDataInstances();
+			for(int i=0;i<size;i++)
+			{
+				var dataInstance=new CompactDataInstance();
+				dataInstance.GetClasses().add(classes[i]);
+				dataInstances.add(dataInstance);
+			}
+			
+			// In Fortran order the rows of the file are the columns of the matrix, which gives the same matrix once it is symmetrized.
+			var disSimilarities=new double[size];
+			for(int i=0;i<size;i++)
+			{
+				npyFile.ReadDoubles((long)i*size, disSimilarities, 0, size);
+				dataInstanceSet.SetDisSimilaritiesFromRow(i, disSimilarities, size);
+			}
+		}
+		finally
+		{
+			npyFile.Close();
+		}
+		
+		dataInstanceSet.SetDataInstanceIndices();
+		dataInstanceSet.SetUseDissimilarityInsteadOfDistance(true);
+		
+		return dataInstanceSet;
+	}
+	
+	/**
+	 * Reads the classes of the first numberOfRows data instances from a label file, which is either a one dimensional .npy array of numbers
+	 * or a text file with one label per line. Text labels are numbered in the order they first appear. Without a label file all the classes are 0.
+	 */
+	public int[] ReadLabels(String labelFileName, int numberOfRows, boolean isClassColumnText) throws Exception
+	{
+		var classes=new int[numberOfRows];
+		if(labelFileName==null)
+			return classes;
+		
+		if(labelFileName.toLowerCase().endsWith(".npy"))
+		{
+			var npyFile=CompactNpyFile.Open(labelFileName);
+			try
+			{
+				if(npyFile.GetNumberOfRows()<numberOfRows || npyFile.GetNumberOfColumns()!=1)
+					throw new IOException("Expected at least "+numberOfRows+" labels in a one dimensional npy array: "+labelFileName);
+				
+				var labels=new double[numberOfRows];
+				npyFile.ReadDoubles(0, labels, 0, numberOfRows);
+				for(int i=0;i<numberOfRows;i++)
+					classes[i]=(int)Math.round(labels[i]);
+			}
+			finally
+			{
+				npyFile.Close();
+			}
+			
+			return classes;
+		}
+		
+		var categoryToInt=new HashMap<String,Integer>();
+		int numberOfLabels=0;
+		
+		try(var bufferReader=new BufferedReader(new InputStreamReader(CompactGzipInputStream.Open(labelFileName))))
+		{
+			String line="";
+			while (numberOfLabels<numberOfRows && (line = bufferReader.readLine()) != null)
+			{
+				var token=line.trim();
+				if(isClassColumnText)
+				{
+					if(!categoryToInt.containsKey(token))
+						categoryToInt.put(token, categoryToInt.size());
+					
+					classes[numberOfLabels++]=categoryToInt.get(token);
+				}
+				else
+					classes[numberOfLabels++]=Integer.parseInt(token);
+			}
+		}
+		
+		if(numberOfLabels<numberOfRows)
+			throw new IOException("Expected at least "+numberOfRows+" labels: "+labelFileName);
+		
+		return classes;
+	}
+	
+	private CompactDataInstanceSet readCachedDataSet(String fileName, String cacheOptions)
+	{
+		if(!useDatasetCache_)
+			return null;
+		
+		return CompactDatasetCache.Read(fileName, cacheOptions);
+	}
+	
+	/**
+	 * A cache which can not be written, for example in a read only folder, only means the next run parses the file again.
+	 */
+	private void writeCachedDataSet(String fileName, String cacheOptions, CompactDataInstanceSet dataInstanceSet)
+	{
+		if(!useDatasetCache_)
+			return;
+		
+		try
+		{
+			CompactDatasetCache.Write(fileName, cacheOptions, dataInstanceSet);
+		}
+		catch (IOException e)
+		{
+			System.out.println("Warning: Could not write the dataset cache "+CompactDatasetCache.GetCacheFileName(fileName));
+		}
+	}
+	
+	private static ArrayList<String> classNames(HashMap<String,Integer> categoryToInt)
+	{
+		var classNames=new ArrayList<String>(categoryToInt.size());
+		for(int i=0;i<categoryToInt.size();i++)
+			classNames.add(null);
+		for(var entry : categoryToInt.entrySet())
+			classNames.set(entry.getValue(), entry.getKey());
+		return classNames;
+	}
 }
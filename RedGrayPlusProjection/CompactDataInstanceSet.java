@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.PriorityQueue;
 import java.util.Random;
 
@@ -23,28 +24,143 @@ import java.util.Random;
 public class CompactDataInstanceSet
 {
 	private ArrayList<CompactDataInstance> dataInstances_;
-	private double[][] disSimilarities_;
+	private CompactFeatureMatrix featureMatrix_;
+	private CompactFeatureMatrix featureMatrixForEvaluation_;
+	private CompactWritableDistanceMatrix disSimilarities_;
 	private boolean useDissimilarityInsteadOfDistance_;
 	private boolean isDistancesPreComputed_;
 	private boolean isDistancesForEvaluationPreComputed_;
-	private double[][] distances_;
-	private double[][] distancesForEvaluation_;
+	private boolean isNeighborsForEvaluationComputed_;
+	private boolean isDistancesTransformed_;
+	private boolean isDistancesCosine_;
+	private CompactSparseInvertedIndex sparseInvertedIndex_;
+	private CompactDistanceMatrix distances_;
+	private CompactDistanceMatrix distancesForEvaluation_;
+	private CompactDistanceMatrixStorage distanceMatrixStorage_;
+	private String temporaryFolderName_;
+	private long lazyDistanceCacheSizeInBytes_;
+	private boolean useTiledDistanceKernel_;
+	private int numberOfThreads_;
+	private int neighborhoodSizeForEvaluation_;
 	private boolean isRedGray_;
 	private boolean isImageDataInstanceSet_;
+	private ArrayList<String> classNames_;
 		
 	public ArrayList<CompactDataInstance> GetDataInstances()
 	{
 		return dataInstances_;
 	}
 	
-	public double[][] GetDisSimiliraties()
+	/**
+	 * The text of each class number when the classes were read as text, in the order they first appeared. It is null when the classes were read as numbers.
+	 */
+	public ArrayList<String> GetClassNames()
+	{
+		return classNames_;
+	}
+	
+	public void SetClassNames(ArrayList<String> classNames)
+	{
+		classNames_=classNames;
+	}
+	
+	public CompactFeatureMatrix GetFeatureMatrix()
+	{
+		return featureMatrix_;
+	}
+	
+	/**
+	 * Makes the data instance at each index a view of the row with the same index.
+	 */
+	public void SetFeatureMatrix(CompactFeatureMatrix featureMatrix)
+	{
+		featureMatrix_=featureMatrix;
+		sparseInvertedIndex_=null;
+		for(int i=0;i<dataInstances_.size();i++)
+			dataInstances_.get(i).SetFeatures(featureMatrix, i);
+	}
+	
+	/**
+	 * The inverted index of the features, built the first time it is asked for. It is null unless the features are the rows of a sparse feature matrix.
+	 */
+	public synchronized CompactSparseInvertedIndex GetSparseInvertedIndex()
+	{
+		if(sparseInvertedIndex_==null && CompactSparseInvertedIndex.IsApplicable(dataInstances_))
+			sparseInvertedIndex_=new CompactSparseInvertedIndex((CompactSparseFeatureMatrix)dataInstances_.get(0).GetFeatureMatrix());
+		
+		return sparseInvertedIndex_;
+	}
+	
+	public CompactFeatureMatrix GetFeatureMatrixForEvaluation()
+	{
+		return featureMatrixForEvaluation_;
+	}
+	
+	public void SetFeatureMatrixForEvaluation(CompactFeatureMatrix featureMatrixForEvaluation)
+	{
+		featureMatrixForEvaluation_=featureMatrixForEvaluation;
+		for(int i=0;i<dataInstances_.size();i++)
+			dataInstances_.get(i).SetFeaturesForEvaluation(featureMatrixForEvaluation, i);
+	}
+	
+	public CompactWritableDistanceMatrix GetDisSimiliraties()
 	{
 		return disSimilarities_;
 	}
 	
+	public double GetDisSimilarity(int i,int j)
+	{
+		return disSimilarities_.Get(i, j);
+	}
+	
 	public void SetDisSimilarity(int i,int j, double disSimilarity)
 	{
-		disSimilarities_[i][j]=disSimilarity;
+		disSimilarities_.Set(i, j, disSimilarity);
+	}
+	
+	/**
+	 * Sets the dissimilarities of a row while the matrix is being read row by row in increasing row order, and symmetrizes them while writing:
+	 * a value left of the diagonal is averaged with the value read earlier for the mirrored position, so no pass of SymmetrizeDisSimmilarities is needed afterwards.
+	 * The result is the same as setting all the values and then calling SymmetrizeDisSimmilarities, except for rows shorter than the matrix (see SymmetrizeShortDisSimilarityRows).
+	 */
+	public void SetDisSimilaritiesFromRow(int row, double[] disSimilarities, int numberOfDisSimilarities)
+	{
+		boolean isSymmetric=disSimilarities_.IsSymmetric();
+		
+		for(int column=0;column<numberOfDisSimilarities;column++)
+		{
+			double disSimilarity=disSimilarities[column];
+			
+			if(column<row)
+			{
+				disSimilarity=(disSimilarities_.Get(column, row)+disSimilarity)/2.0;
+				if(!isSymmetric)
+					disSimilarities_.Set(column, row, disSimilarity);
+			}
+			
+			disSimilarities_.Set(row, column, disSimilarity);
+		}
+	}
+	
+	/**
+	 * Completes the symmetrization of SetDisSimilaritiesFromRow for the positions left of the diagonal which no row gave a value for,
+	 * because the row was shorter or was not in the file. Rows after the given lengths count as empty.
+	 */
+	public void SymmetrizeShortDisSimilarityRows(int[] rowLengths, int numberOfRows)
+	{
+		if(disSimilarities_.IsSymmetric())
+			return;
+		
+		for(int j=0;j<disSimilarities_.GetSize();j++)
+		{
+			int rowLength=j<numberOfRows?rowLengths[j]:0;
+			for(int i=Math.max(0, Math.min(rowLength, j));i<j;i++)
+			{
+				double symmetricSimilarity=(disSimilarities_.Get(i, j)+disSimilarities_.Get(j, i))/2.0;
+				disSimilarities_.Set(i, j, symmetricSimilarity);
+				disSimilarities_.Set(j, i, symmetricSimilarity);
+			}
+		}
 	}
 	
 	public CompactDataInstanceSet()
@@ -53,21 +169,30 @@ public class CompactDataInstanceSet
 	}
 	
 	public CompactDataInstanceSet(int disSimiliratiesSize)
+	{
+		this(disSimiliratiesSize,CompactDistanceMatrixStorage.FULL);
+	}
+	
+	public CompactDataInstanceSet(int disSimiliratiesSize, CompactDistanceMatrixStorage distanceMatrixStorage)
 	{
 		dataInstances_=new ArrayList<CompactDataInstance>();
+		featureMatrix_=null;
+		featureMatrixForEvaluation_=null;
 		
 		useDissimilarityInsteadOfDistance_=false;
 		isDistancesPreComputed_=false;
 		
-		disSimilarities_=new double[disSimiliratiesSize][disSimiliratiesSize];
-		for(int i=0;i<disSimiliratiesSize;i++)
-		{
-			for(int j=0;j<disSimiliratiesSize;j++)
-				disSimilarities_[i][j]=0;
-		}
+		distanceMatrixStorage_=distanceMatrixStorage;
+		temporaryFolderName_=null;
+		lazyDistanceCacheSizeInBytes_=256L*1024*1024;
+		useTiledDistanceKernel_=true;
+		numberOfThreads_=Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+		neighborhoodSizeForEvaluation_=10;
+		disSimilarities_=CompactDistanceMatrix.Create(disSimiliratiesSize, distanceMatrixStorage_);
 		
 		isRedGray_=false;
 		isImageDataInstanceSet_=false;
+		classNames_=null;
 	}
 	
 	public boolean GetUseDissimilarityInsteadOfDistance()
@@ -83,13 +208,13 @@ public class CompactDataInstanceSet
 	
 	public CompactDataInstanceSet Clone()
 	{
-		var dataInstanceSet=new CompactDataInstanceSet(disSimilarities_.length);
+		var dataInstanceSet=new CompactDataInstanceSet(disSimilarities_.GetSize(),distanceMatrixStorage_);
 		for(int i=0;i<dataInstances_.size();i++)
 			dataInstanceSet.GetDataInstances().add(dataInstances_.get(i).Clone());
+		dataInstanceSet.featureMatrix_=featureMatrix_;
+		dataInstanceSet.classNames_=classNames_;
 		
-		for(int i=0;i<disSimilarities_.length;i++)
-			for(int j=0;j<disSimilarities_.length;j++)
-				dataInstanceSet.SetDisSimilarity(i, j, disSimilarities_[i][j]);
+		disSimilarities_.CopyTo(dataInstanceSet.GetDisSimiliraties());
 		
 		dataInstanceSet.SetUseDissimilarityInsteadOfDistance(useDissimilarityInsteadOfDistance_);
 		
@@ -98,6 +223,82 @@ public class CompactDataInstanceSet
 	
 	
 	
+	/**
+	 * A data instance set for another projection of the same prepared data, which can run at the same time as the projections of this set and its other views.
+	 * Its data instances are views of the data instances of this set (see CompactDataInstance.CreateView) with the same neighbors for evaluation,
+	 * and it shares the feature matrices, the dissimilarities and the precomputed distance matrices, which must not change while the views are in use.
+	 */
+	public CompactDataInstanceSet CreateView()
+	{
+		var dataInstanceSet=new CompactDataInstanceSet(1, distanceMatrixStorage_);
+		for(int i=0;i<dataInstances_.size();i++)
+			dataInstanceSet.dataInstances_.add(dataInstances_.get(i).CreateView());
+		dataInstanceSet.SetDataInstanceIndices();
+		
+		for(int i=0;i<dataInstances_.size();i++)
+		{
+			var neighborsForEvaluation=dataInstanceSet.dataInstances_.get(i).GetNeighborsForEvaluation();
+			for(var neighborForEvaluation : dataInstances_.get(i).GetNeighborsForEvaluation())
+				neighborsForEvaluation.add(dataInstanceSet.dataInstances_.get(neighborForEvaluation.GetIndexInDataInstanceSet()));
+		}
+		
+		dataInstanceSet.featureMatrix_=featureMatrix_;
+		dataInstanceSet.featureMatrixForEvaluation_=featureMatrixForEvaluation_;
+		dataInstanceSet.disSimilarities_=disSimilarities_;
+		dataInstanceSet.useDissimilarityInsteadOfDistance_=useDissimilarityInsteadOfDistance_;
+		dataInstanceSet.isDistancesPreComputed_=isDistancesPreComputed_;
+		dataInstanceSet.isDistancesForEvaluationPreComputed_=isDistancesForEvaluationPreComputed_;
+		dataInstanceSet.isNeighborsForEvaluationComputed_=isNeighborsForEvaluationComputed_;
+		dataInstanceSet.isDistancesTransformed_=isDistancesTransformed_;
+		dataInstanceSet.isDistancesCosine_=isDistancesCosine_;
+		dataInstanceSet.sparseInvertedIndex_=sparseInvertedIndex_;
+		dataInstanceSet.distances_=distances_;
+		dataInstanceSet.distancesForEvaluation_=distancesForEvaluation_;
+		dataInstanceSet.temporaryFolderName_=temporaryFolderName_;
+		dataInstanceSet.lazyDistanceCacheSizeInBytes_=lazyDistanceCacheSizeInBytes_;
+		dataInstanceSet.useTiledDistanceKernel_=useTiledDistanceKernel_;
+		dataInstanceSet.numberOfThreads_=numberOfThreads_;
+		dataInstanceSet.neighborhoodSizeForEvaluation_=neighborhoodSizeForEvaluation_;
+		dataInstanceSet.isRedGray_=isRedGray_;
+		dataInstanceSet.isImageDataInstanceSet_=isImageDataInstanceSet_;
+		dataInstanceSet.classNames_=classNames_;
+		
+		return dataInstanceSet;
+	}
+	
+	/**
+	 * The approximate number of bytes of the feature matrices, the dissimilarities, the precomputed distance matrices and the data instances, counting each shared matrix once.
+	 */
+	public long GetSizeInBytes()
+	{
+		var matrices=Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+		long sizeInBytes=0;
+		
+		for(var featureMatrix : new CompactFeatureMatrix[] {featureMatrix_, featureMatrixForEvaluation_})
+			if(featureMatrix!=null && matrices.add(featureMatrix))
+				sizeInBytes+=featureMatrix.GetSizeInBytes();
+		
+		for(var distanceMatrix : new CompactDistanceMatrix[] {disSimilarities_, distances_, distancesForEvaluation_})
+			if(distanceMatrix!=null && matrices.add(distanceMatrix))
+				sizeInBytes+=distanceMatrix.GetSizeInBytes();
+		
+		for(int i=0;i<dataInstances_.size();i++)
+			sizeInBytes+=256+8L*dataInstances_.get(i).GetNeighborsForEvaluation().size();
+		
+		return sizeInBytes;
+	}
+	
+	/**
+	 * Closes the distance matrices (see CompactDistanceMatrix.Close). The views of the data instance set share them, so they must not be used after it either.
+	 */
+	public void Close()
+	{
+		var matrices=Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+		for(var distanceMatrix : new CompactDistanceMatrix[] {disSimilarities_, distances_, distancesForEvaluation_})
+			if(distanceMatrix!=null && matrices.add(distanceMatrix))
+				distanceMatrix.Close();
+	}
+	
 	public void ComputeNeighbors(int numberOfNeighbors)
 	{
 		for(int i=0;i<dataInstances_.size();i++)
@@ -137,6 +338,8 @@ public class CompactDataInstanceSet
 	
 	public void ComputeNeighborsForEvaluation(int numberOfNeighbors)
 	{
+		isNeighborsForEvaluationComputed_=true;
+		
 		for(int i=0;i<dataInstances_.size();i++)
 		{
 			var dataInstance1=dataInstances_.get(i);
@@ -172,6 +375,11 @@ public class CompactDataInstanceSet
 		}
 	}
 	
+	public boolean IsNeighborsForEvaluationComputed()
+	{
+		return isNeighborsForEvaluationComputed_;
+	}
+	
 	public double GetMaximumDistance()
 	{
 		double maximumDistance=0;
@@ -214,15 +422,79 @@ public class CompactDataInstanceSet
 	
 	public void SymmetrizeDisSimmilarities()
 	{
+		if(disSimilarities_.IsSymmetric())
+			return;
+		
 		for(int i=0;i<dataInstances_.size();i++)
 			for(int j=i+1;j<dataInstances_.size();j++)
 			{
-				double symmetricSimilarity=(disSimilarities_[i][j]+disSimilarities_[j][i])/2.0;
-				disSimilarities_[i][j]=symmetricSimilarity;
-				disSimilarities_[j][i]=symmetricSimilarity;
+				double symmetricSimilarity=(disSimilarities_.Get(i, j)+disSimilarities_.Get(j, i))/2.0;
+				disSimilarities_.Set(i, j, symmetricSimilarity);
+				disSimilarities_.Set(j, i, symmetricSimilarity);
 			}
 	}
 	
+	public CompactDistanceMatrixStorage GetDistanceMatrixStorage()
+	{
+		return distanceMatrixStorage_;
+	}
+	
+	public void SetDistanceMatrixStorage(CompactDistanceMatrixStorage distanceMatrixStorage)
+	{
+		distanceMatrixStorage_=distanceMatrixStorage;
+	}
+	
+	public void SetTemporaryFolderName(String temporaryFolderName)
+	{
+		temporaryFolderName_=temporaryFolderName;
+	}
+	
+	public void SetLazyDistanceCacheSize(long lazyDistanceCacheSizeInBytes)
+	{
+		lazyDistanceCacheSizeInBytes_=lazyDistanceCacheSizeInBytes;
+	}
+	
+	public void SetUseTiledDistanceKernel(boolean useTiledDistanceKernel)
+	{
+		useTiledDistanceKernel_=useTiledDistanceKernel;
+	}
+	
+	public void SetNumberOfThreads(int numberOfThreads)
+	{
+		numberOfThreads_=Math.max(1, numberOfThreads);
+	}
+	
+	/**
+	 * The neighborhood size of the trustworthiness of the projections of this set (see CompactProjectionStep). Default value: 10
+	 */
+	public int GetNeighborhoodSizeForEvaluation()
+	{
+		return neighborhoodSizeForEvaluation_;
+	}
+	
+	public void SetNeighborhoodSizeForEvaluation(int neighborhoodSizeForEvaluation)
+	{
+		neighborhoodSizeForEvaluation_=neighborhoodSizeForEvaluation;
+	}
+	
+	public CompactDistanceMatrix GetPreComputedDistances()
+	{
+		return distances_;
+	}
+	
+	public CompactDistanceMatrix GetPreComputedDistancesForEvaluation()
+	{
+		return distancesForEvaluation_;
+	}
+	
+	private CompactDistanceMatrix createDistanceMatrix(boolean forEvaluation)
+	{
+		if(distanceMatrixStorage_==CompactDistanceMatrixStorage.LAZY)
+			return new CompactLazyDistanceMatrix(this, forEvaluation, lazyDistanceCacheSizeInBytes_);
+		
+		return CompactDistanceMatrix.Create(dataInstances_.size(), distanceMatrixStorage_, temporaryFolderName_);
+	}
+	
 	public boolean IsDistancesPreComputed()
 	{
 		return isDistancesPreComputed_;
@@ -231,16 +503,67 @@ public class CompactDataInstanceSet
 	public void PreComputeDistances()
 	{
 		isDistancesPreComputed_=false;
-		distances_=new double[dataInstances_.size()][dataInstances_.size()];
+		isDistancesTransformed_=false;
+		isDistancesCosine_=false;
+		distances_=createDistanceMatrix(false);
+		
+		if(distances_ instanceof CompactLazyDistanceMatrix)
+		{
+			isDistancesPreComputed_=true;
+			return;
+		}
+		
+		var distances=(CompactWritableDistanceMatrix)distances_;
+		
+		if(!useDissimilarityInsteadOfDistance_ && CompactSparseDistanceKernel.IsApplicable(dataInstances_))
+		{
+			new CompactSparseDistanceKernel(dataInstances_).ComputeEuclideanDistances(distances, numberOfThreads_);
+			isDistancesPreComputed_=true;
+			return;
+		}
+		
+		if(useTiledDistanceKernel_ && !useDissimilarityInsteadOfDistance_)
+		{
+			new CompactDistanceKernel(dataInstances_, false).ComputeEuclideanDistances(distances, numberOfThreads_);
+			isDistancesPreComputed_=true;
+			return;
+		}
+		
 		for(int i=0;i<dataInstances_.size();i++)
-			for(int j=0;j<dataInstances_.size();j++)
+			for(int j=(distances.IsSymmetric()?i:0);j<dataInstances_.size();j++)
 			{
-				distances_[i][j]=dataInstances_.get(i).DistanceTo(dataInstances_.get(j));
+				distances.Set(i, j, dataInstances_.get(i).DistanceTo(dataInstances_.get(j)));
 			}
 		
 		isDistancesPreComputed_=true;
 	}
 	
+	/**
+	 * Precomputes the distances with the "Cosine for original space" (if asked) and "Neighbourhood normalized for original space" transforms applied,
+	 * writing the matrix only once when the tiled kernel can be used. Otherwise it is the same as precomputing and then transforming.
+	 */
+	public void PreComputeTransformedDistances(boolean isCosine)
+	{
+		if(!useTiledDistanceKernel_ || useDissimilarityInsteadOfDistance_ || distanceMatrixStorage_==CompactDistanceMatrixStorage.LAZY ||
+				CompactSparseDistanceKernel.IsApplicable(dataInstances_))
+		{
+			PreComputeDistances();
+			if(isCosine)
+				TransformPreComputedDistances("Cosine for original space");
+			TransformPreComputedDistances("Neighbourhood normalized for original space");
+			return;
+		}
+		
+		releaseSharedEvaluationDistances();
+		isDistancesPreComputed_=false;
+		var distances=CompactDistanceMatrix.Create(dataInstances_.size(), distanceMatrixStorage_, temporaryFolderName_);
+		distances_=distances;
+		new CompactDistanceKernel(dataInstances_, false).ComputeNeighbourhoodNormalizedDistances(distances, isCosine, 20, numberOfThreads_);
+		isDistancesPreComputed_=true;
+		isDistancesTransformed_=true;
+		isDistancesCosine_=isCosine;
+	}
+	
 	public boolean IsDistancesForEvaluationPreComputed()
 	{
 		return isDistancesForEvaluationPreComputed_;
@@ -249,121 +572,175 @@ public class CompactDataInstanceSet
 	public void PreComputeDistancesForEvaluation()
 	{
 		isDistancesForEvaluationPreComputed_=false;
-		distancesForEvaluation_=new double[dataInstances_.size()][dataInstances_.size()];
+		
+		// The dissimilarity matrix already holds the evaluation distances, so it is read directly instead of being copied.
+		if(useDissimilarityInsteadOfDistance_ && disSimilarities_.GetSize()==dataInstances_.size())
+		{
+			distancesForEvaluation_=disSimilarities_;
+			isDistancesForEvaluationPreComputed_=true;
+			return;
+		}
+		
+		// Without features for evaluation the evaluation distances are the untransformed distances, so the same matrix is shared until it is transformed.
+		if(!useDissimilarityInsteadOfDistance_ && (dataInstances_.size()==0 || dataInstances_.get(0).GetNumberOfFeaturesForEvaluation()==0) &&
+				isDistancesPreComputed_ && !(distances_ instanceof CompactLazyDistanceMatrix))
+		{
+			if(isDistancesTransformed_)
+				distancesForEvaluation_=new CompactLazyDistanceMatrix(this, true, lazyDistanceCacheSizeInBytes_);
+			else
+				distancesForEvaluation_=distances_;
+			isDistancesForEvaluationPreComputed_=true;
+			return;
+		}
+		
+		distancesForEvaluation_=createDistanceMatrix(true);
+		
+		if(distancesForEvaluation_ instanceof CompactLazyDistanceMatrix)
+		{
+			isDistancesForEvaluationPreComputed_=true;
+			return;
+		}
+		
+		var distancesForEvaluation=(CompactWritableDistanceMatrix)distancesForEvaluation_;
+		
+		if(!useDissimilarityInsteadOfDistance_ && dataInstances_.get(0).GetNumberOfFeaturesForEvaluation()==0 && CompactSparseDistanceKernel.IsApplicable(dataInstances_))
+		{
+			new CompactSparseDistanceKernel(dataInstances_).ComputeEuclideanDistances(distancesForEvaluation, numberOfThreads_);
+			isDistancesForEvaluationPreComputed_=true;
+			return;
+		}
+		
+		if(useTiledDistanceKernel_ && !useDissimilarityInsteadOfDistance_)
+		{
+			new CompactDistanceKernel(dataInstances_, true).ComputeEuclideanDistances(distancesForEvaluation, numberOfThreads_);
+			isDistancesForEvaluationPreComputed_=true;
+			return;
+		}
+		
 		for(int i=0;i<dataInstances_.size();i++)
-			for(int j=0;j<dataInstances_.size();j++)
+			for(int j=(distancesForEvaluation.IsSymmetric()?i:0);j<dataInstances_.size();j++)
 			{
-				distancesForEvaluation_[i][j]=dataInstances_.get(i).EvaluationDistanceTo(dataInstances_.get(j));
+				distancesForEvaluation.Set(i, j, dataInstances_.get(i).EvaluationDistanceTo(dataInstances_.get(j)));
 			}
 		
 		isDistancesForEvaluationPreComputed_=true;
 	}
 	
+	/**
+	 * The layout distances are about to be transformed in place, so shared evaluation distances are from now on computed on demand from the features.
+	 * This only happens after the neighbors for evaluation are computed in the usual order of the steps, so the evaluation never needs a full second matrix.
+	 */
+	private void releaseSharedEvaluationDistances()
+	{
+		if(distancesForEvaluation_!=null && distancesForEvaluation_==distances_)
+			distancesForEvaluation_=new CompactLazyDistanceMatrix(this, true, lazyDistanceCacheSizeInBytes_);
+	}
+	
 	public void TransformPreComputedDistances(String transformation)
 	{
+		releaseSharedEvaluationDistances();
+		isDistancesTransformed_=true;
+		
 		if (transformation.compareTo("Neighbourhood normalized for original space")==0)
 		{
 			
-			double[] m=new double[dataInstances_.size()];
-			double temp=Math.tan(1);
 			int z=20;
-			this.ComputeNeighbors(z);
-			for(int i=0;i<dataInstances_.size();i++)
+			double[] m=null;
+			// The radii of cosine distances of sparse features only need the rows which share a feature.
+			if(isDistancesCosine_ && GetSparseInvertedIndex()!=null)
+				m=CompactDistanceTransformer.NeighbourhoodNormalizationFactors(GetSparseInvertedIndex().ComputeNearestCosineDistances(z, numberOfThreads_));
+			else
+				m=CompactDistanceTransformer.ComputeNeighbourhoodNormalizationFactors(distances_, z, numberOfThreads_);
+			
+			if(distances_ instanceof CompactLazyDistanceMatrix)
 			{
-				var dataInstance=dataInstances_.get(i);				
-				double diz=dataInstance.GetNeighbors().get(z-1).DistanceTo(dataInstance);
-				m[i]=temp/diz;
-				dataInstance.GetNeighbors().clear();
+				((CompactLazyDistanceMatrix)distances_).SetNeighbourhoodNormalizationFactors(m);
+				return;
 			}
 			
-			for(int i=0;i<dataInstances_.size();i++)
-				for(int j=0;j<dataInstances_.size();j++)
-					distances_[i][j]=(Math.atan(distances_[i][j]*m[i])+Math.atan(distances_[i][j]*m[j]))/2.0;
+			CompactDistanceTransformer.ApplyNeighbourhoodNormalization((CompactWritableDistanceMatrix)distances_, m, numberOfThreads_);
 		}
 		else if(transformation.compareTo("Cosine for original space")==0)
 		{
-			for(int i=0;i<dataInstances_.size();i++)
-				for(int j=0;j<dataInstances_.size();j++)
-				{
-					var dataInstance1=dataInstances_.get(i);
-					var dataInstance2=dataInstances_.get(j);
-					
-					distances_[i][j]=0;
-					double temp1=0;
-					double temp2=0;
-					for(int k=0;k<dataInstance1.GetFeatures().size();k++)
-					{
-						distances_[i][j]+=dataInstance1.GetFeature(k)*dataInstance2.GetFeature(k);
-						temp1+=dataInstance1.GetFeature(k)*dataInstance1.GetFeature(k);
-						temp2+=dataInstance2.GetFeature(k)*dataInstance2.GetFeature(k);
-					}
-					if(temp1<1e-7)
-						temp1=1e-7;
-					if(temp2<1e-7)
-						temp2=1e-7;
-					
-					distances_[i][j]/=Math.sqrt(temp1);
-					distances_[i][j]/=Math.sqrt(temp2);
-					distances_[i][j]=1-distances_[i][j];
-				}
-					
+			isDistancesCosine_=true;
+			
+			if(distances_ instanceof CompactLazyDistanceMatrix)
+			{
+				((CompactLazyDistanceMatrix)distances_).SetIsCosine(true);
+				return;
+			}
+			
+			var distances=(CompactWritableDistanceMatrix)distances_;
+			if(GetSparseInvertedIndex()!=null)
+				GetSparseInvertedIndex().ComputeCosineDistances(distances, numberOfThreads_);
+			else if(CompactSparseDistanceKernel.IsApplicable(dataInstances_))
+				new CompactSparseDistanceKernel(dataInstances_).ComputeCosineDistances(distances, numberOfThreads_);
+			else
+				new CompactDistanceKernel(dataInstances_, false).ComputeCosineDistances(distances, numberOfThreads_);
 		}
 	}
 	
 	public void TransformEvaluationPreComputedDistances(String transformation)
 	{
+		// Shared evaluation distances get their own matrix before they are transformed. A lazy one computes the same distances from the features or the dissimilarities.
+		if(distancesForEvaluation_==disSimilarities_ || distancesForEvaluation_==distances_)
+		{
+			var sharedDistances=distancesForEvaluation_;
+			distancesForEvaluation_=createDistanceMatrix(true);
+			if(!(distancesForEvaluation_ instanceof CompactLazyDistanceMatrix))
+				sharedDistances.CopyTo((CompactWritableDistanceMatrix)distancesForEvaluation_);
+		}
+		
 		if (transformation.compareTo("Neighbourhood normalized for original space")==0)
 		{
 			
-			double[] m=new double[dataInstances_.size()];
-			double temp=Math.tan(1);
 			int z=20;
-			this.ComputeNeighborsForEvaluation(z);
-			for(int i=0;i<dataInstances_.size();i++)
+			double[] m=CompactDistanceTransformer.ComputeNeighbourhoodNormalizationFactors(distancesForEvaluation_, z, numberOfThreads_);
+			
+			if(distancesForEvaluation_ instanceof CompactLazyDistanceMatrix)
 			{
-				var dataInstance=dataInstances_.get(i);				
-				double diz=dataInstance.GetNeighborsForEvaluation().get(z-1).EvaluationDistanceTo(dataInstance);
-				m[i]=temp/diz;
-				dataInstance.GetNeighborsForEvaluation().clear();
+				((CompactLazyDistanceMatrix)distancesForEvaluation_).SetNeighbourhoodNormalizationFactors(m);
+				return;
 			}
 			
-			for(int i=0;i<dataInstances_.size();i++)
-				for(int j=0;j<dataInstances_.size();j++)
-					distancesForEvaluation_[i][j]=(Math.atan(distancesForEvaluation_[i][j]*m[i])+Math.atan(distancesForEvaluation_[i][j]*m[j]))/2.0;
+			CompactDistanceTransformer.ApplyNeighbourhoodNormalization((CompactWritableDistanceMatrix)distancesForEvaluation_, m, numberOfThreads_);
 		}
 		else if(transformation.compareTo("Cosine for original space")==0)
 		{
+			if(distancesForEvaluation_ instanceof CompactLazyDistanceMatrix)
+			{
+				((CompactLazyDistanceMatrix)distancesForEvaluation_).SetIsCosine(true);
+				return;
+			}
+			
+			var distancesForEvaluation=(CompactWritableDistanceMatrix)distancesForEvaluation_;
 			for(int i=0;i<dataInstances_.size();i++)
-				for(int j=0;j<dataInstances_.size();j++)
+				for(int j=(distancesForEvaluation.IsSymmetric()?i:0);j<dataInstances_.size();j++)
 				{
 					var dataInstance1=dataInstances_.get(i);
 					var dataInstance2=dataInstances_.get(j);
 					
-					distancesForEvaluation_[i][j]=0;
+					double distance=0;
 					double temp1=0;
 					double temp2=0;
-					var features1=dataInstance1.GetFeatures();
-					var features2=dataInstance2.GetFeatures();
-					if(dataInstance1.GetFeaturesForEvaluation().size()>0)
-					{
-						features1=dataInstance1.GetFeaturesForEvaluation();
-						features2=dataInstance2.GetFeaturesForEvaluation();
-					}
+					boolean useFeaturesForEvaluation=dataInstance1.GetNumberOfFeaturesForEvaluation()>0;
 					
-					for(int k=0;k<dataInstance1.GetFeatures().size();k++)
+					for(int k=0;k<dataInstance1.GetNumberOfFeatures();k++)
 					{
-						distancesForEvaluation_[i][j]+=features1.get(k)*features2.get(k);
-						temp1+=features1.get(k)*features2.get(k);
-						temp2+=features2.get(k)*features2.get(k);
+						double feature1=useFeaturesForEvaluation?dataInstance1.GetFeatureForEvaluation(k):dataInstance1.GetFeature(k);
+						double feature2=useFeaturesForEvaluation?dataInstance2.GetFeatureForEvaluation(k):dataInstance2.GetFeature(k);
+						distance+=feature1*feature2;
+						temp1+=feature1*feature2;
+						temp2+=feature2*feature2;
 					}
 					if(temp1<1e-7)
 						temp1=1e-7;
 					if(temp2<1e-7)
 						temp2=1e-7;
 					
-					distancesForEvaluation_[i][j]/=Math.sqrt(temp1);
-					distancesForEvaluation_[i][j]/=Math.sqrt(temp2);
-					distancesForEvaluation_[i][j]=1-distancesForEvaluation_[i][j];
+					distance/=Math.sqrt(temp1);
+					distance/=Math.sqrt(temp2);
+					distancesForEvaluation.Set(i, j, 1-distance);
 				}
 					
 		}
@@ -371,12 +748,12 @@ public class CompactDataInstanceSet
 	
 	public double GetPreComputedDistance(int index1,int index2)
 	{
-		return distances_[index1][index2];
+		return distances_.Get(index1, index2);
 	}
 	
 	public double GetPreComputedDistanceForEvaluation(int index1,int index2)
 	{
-		return distancesForEvaluation_[index1][index2];
+		return distancesForEvaluation_.Get(index1, index2);
 	}
 	
 	public void SetIsRedGray(boolean isRedGray)
@@ -395,9 +772,9 @@ public class CompactDataInstanceSet
 		
 		if(isImageDataSet)
 		{
-			int imageHeight=(int)(Math.sqrt(dataInstances_.get(0).GetFeaturesForEvaluation().size())+0.1);
+			int imageHeight=(int)(Math.sqrt(dataInstances_.get(0).GetNumberOfFeaturesForEvaluation())+0.1);
 			if(imageHeight==0)
-				imageHeight=(int)(Math.sqrt(dataInstances_.get(0).GetFeatures().size())+0.1);
+				imageHeight=(int)(Math.sqrt(dataInstances_.get(0).GetNumberOfFeatures())+0.1);
 			
 			for(int i=0;i<dataInstances_.size();i++)
 				dataInstances_.get(i).BuildDigitImage(imageHeight);
@@ -410,6 +787,11 @@ public class CompactDataInstanceSet
 	}
 	
 	public void SetDissimilarityMatrix(double[][] newDissimilarities)
+	{
+		disSimilarities_=new CompactFullDistanceMatrix(newDissimilarities);
+	}
+	
+	public void SetDissimilarityMatrix(CompactWritableDistanceMatrix newDissimilarities)
 	{
 		disSimilarities_=newDissimilarities;
 	}
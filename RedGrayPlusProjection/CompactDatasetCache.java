@@ -0,0 +1,440 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+
+/**
+ * A binary copy of a data instance set read from a text file, kept in a file next to it, so later runs on the same file map the binary copy instead of parsing the text.
+ * The copy is keyed by the length, the modification time and a hash of the beginning and the end of the source file, and by the options the set was read with.
+ * It holds the classes, the class names and the feature matrix (dense in double or float32, or sparse).
+ */
+public class CompactDatasetCache
+{
+	// File layout: magic, version and header length, the header (key, sizes and class names), then the classes and the matrix arrays starting at multiples of 8 bytes.
+	private static final long MAGIC=0x5247504341434831L;
+	private static final int VERSION=1;
+	private static final int SAMPLE_SIZE=64*1024;
+	private static final int WINDOW_SIZE=256*1024*1024;
+	private static final int DENSE_DOUBLE=0;
+	private static final int DENSE_FLOAT32=1;
+	private static final int SPARSE=2;
+	
+	public static String GetCacheFileName(String sourceFileName)
+	{
+		return sourceFileName+".rgpcache";
+	}
+	
+	/**
+	 * Returns null if there is no cache for the source file and options, or the source file has changed since the cache was written.
+	 */
+	public static CompactDataInstanceSet Read(String sourceFileName, String options)
+	{
+		var cacheFile=new File(GetCacheFileName(sourceFileName));
+		if(!cacheFile.exists())
+			return null;
+		
+		try(var file=new RandomAccessFile(cacheFile, "r"); var fileChannel=file.getChannel())
+		{
+			if(fileChannel.size()<16)
+				return null;
+			
+			var preamble=fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, 16).order(ByteOrder.LITTLE_ENDIAN);
+			if(preamble.getLong(0)!=MAGIC || preamble.getInt(8)!=VERSION)
+				return null;
+			
+			int headerLength=preamble.getInt(12);
+			if(headerLength<0 || 16L+headerLength>fileChannel.size())
+				return null;
+			
+			var header=fileChannel.map(FileChannel.MapMode.READ_ONLY, 16, headerLength).order(ByteOrder.LITTLE_ENDIAN);
+			var sourceFile=new File(sourceFileName);
+			if(header.getLong()!=sourceFile.length() || header.getLong()!=sourceFile.lastModified())
+				return null;
+			if(header.getLong()!=contentHash(sourceFileName))
+				return null;
+			if(readString(header).compareTo(options)!=0)
+				return null;
+			
+			int numberOfRows=header.getInt();
+			int numberOfFeatures=header.getInt();
+			int matrixType=header.getInt();
+			long numberOfNonZeros=header.getLong();
+			
+			int numberOfClassNames=header.getInt();
+			ArrayList<String> classNames=null;
+			if(numberOfClassNames>=0)
+			{
+				classNames=new ArrayList<String>();
+				for(int i=0;i<numberOfClassNames;i++)
+					classNames.add(readString(header));
+			}
+			
+			long position=align(16L+headerLength);
+			var classes=new int[numberOfRows];
+			position=readInts(fileChannel, position, classes);
+			
+			CompactFeatureMatrix featureMatrix=null;
+			if(matrixType==DENSE_DOUBLE)
+			{
+				var values=new double[numberOfRows*numberOfFeatures];
+				readDoubles(fileChannel, position, values);
+				featureMatrix=new CompactDenseFeatureMatrix(values, numberOfRows, numberOfFeatures);
+			}
+			else if(matrixType==DENSE_FLOAT32)
+			{
+				var values=new float[numberOfRows*numberOfFeatures];
+				readFloats(fileChannel, position, values);
+				featureMatrix=new CompactDenseFeatureMatrix(values, numberOfRows, numberOfFeatures);
+			}
+			else if(matrixType==SPARSE)
+			{
+				var rowStarts=new int[numberOfRows+1];
+				var columnIndices=new int[(int)numberOfNonZeros];
+				var values=new double[(int)numberOfNonZeros];
+				position=readInts(fileChannel, position, rowStarts);
+				position=readInts(fileChannel, position, columnIndices);
+				readDoubles(fileChannel, position, values);
+				featureMatrix=new CompactSparseFeatureMatrix(numberOfFeatures, numberOfRows, rowStarts, columnIndices, values);
+			}
+			else
+				return null;
+			
+			var dataInstanceSet=new CompactDataInstanceSet();
+			var dataInstances=dataInstanceSet.GetDataInstances();
+			for(int i=0;i<numberOfRows;i++)
+			{
+				var dataInstance=new CompactDataInstance();
+				dataInstance.GetClasses().add(classes[i]);
+				dataInstances.add(dataInstance);
+			}
+			
+			dataInstanceSet.SetFeatureMatrix(featureMatrix);
+			dataInstanceSet.SetClassNames(classNames);
+			
+			return dataInstanceSet;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes the cache of a data instance set just read from the source file with the given options. Sets which do not fit the cache
+	 * (no feature matrix, features not the rows of one matrix or not one class per data instance) are not written.
+	 * The file is written under another name and then renamed, so a run never maps a partly written cache.
+	 */
+	public static void Write(String sourceFileName, String options, CompactDataInstanceSet dataInstanceSet) throws IOException
+	{
+		var featureMatrix=dataInstanceSet.GetFeatureMatrix();
+		var dataInstances=dataInstanceSet.GetDataInstances();
+		if(featureMatrix==null || featureMatrix.GetNumberOfRows()!=dataInstances.size())
+			return;
+		
+		var classes=new int[dataInstances.size()];
+		for(int i=0;i<dataInstances.size();i++)
+		{
+			var dataInstance=dataInstances.get(i);
+			if(dataInstance.GetClasses().size()!=1 || dataInstance.GetFeatureMatrix()!=featureMatrix || dataInstance.GetFeatureRow()!=i)
+				return;
+			classes[i]=dataInstance.GetClass(0);
+		}
+		
+		int matrixType;
+		long numberOfNonZeros=0;
+		if(featureMatrix instanceof CompactSparseFeatureMatrix)
+		{
+			matrixType=SPARSE;
+			numberOfNonZeros=((CompactSparseFeatureMatrix)featureMatrix).GetRowStart(featureMatrix.GetNumberOfRows());
+		}
+		else if(featureMatrix instanceof CompactDenseFeatureMatrix && ((CompactDenseFeatureMatrix)featureMatrix).GetDoubleValues()!=null)
+			matrixType=DENSE_DOUBLE;
+		else if(featureMatrix instanceof CompactDenseFeatureMatrix)
+			matrixType=DENSE_FLOAT32;
+		else
+			return;
+		
+		var sourceFile=new File(sourceFileName);
+		var classNames=dataInstanceSet.GetClassNames();
+		
+		var header=new ByteArrayBuilder();
+		header.PutLong(sourceFile.length());
+		header.PutLong(sourceFile.lastModified());
+		header.PutLong(contentHash(sourceFileName));
+		header.PutString(options);
+		header.PutInt(featureMatrix.GetNumberOfRows());
+		header.PutInt(featureMatrix.GetNumberOfFeatures());
+		header.PutInt(matrixType);
+		header.PutLong(numberOfNonZeros);
+		header.PutInt(classNames==null?-1:classNames.size());
+		if(classNames!=null)
+			for(var className : classNames)
+				header.PutString(className);
+		
+		var cacheFile=new File(GetCacheFileName(sourceFileName)).getCanonicalFile();
+		var temporaryFile=File.createTempFile(cacheFile.getName()+".", ".tmp", cacheFile.getParentFile());
+		
+		try
+		{
+			try(var file=new RandomAccessFile(temporaryFile, "rw"); var fileChannel=file.getChannel())
+			{
+				var preamble=ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+				preamble.putLong(MAGIC).putInt(VERSION).putInt(header.GetLength()).flip();
+				writeFully(fileChannel, preamble, 0);
+				writeFully(fileChannel, ByteBuffer.wrap(header.GetBytes(), 0, header.GetLength()), 16);
+				
+				long position=align(16L+header.GetLength());
+				position=writeInts(fileChannel, position, classes, classes.length);
+				
+				if(matrixType==SPARSE)
+				{
+					var sparseFeatureMatrix=(CompactSparseFeatureMatrix)featureMatrix;
+					var rowStarts=new int[featureMatrix.GetNumberOfRows()+1];
+					for(int i=0;i<rowStarts.length;i++)
+						rowStarts[i]=sparseFeatureMatrix.GetRowStart(i);
+					position=writeInts(fileChannel, position, rowStarts, rowStarts.length);
+					position=writeInts(fileChannel, position, sparseFeatureMatrix.GetColumnIndices(), (int)numberOfNonZeros);
+					writeDoubles(fileChannel, position, sparseFeatureMatrix.GetValues(), (int)numberOfNonZeros);
+				}
+				else
+				{
+					int numberOfValues=featureMatrix.GetNumberOfRows()*featureMatrix.GetNumberOfFeatures();
+					var denseFeatureMatrix=(CompactDenseFeatureMatrix)featureMatrix;
+					if(matrixType==DENSE_DOUBLE)
+						writeDoubles(fileChannel, position, denseFeatureMatrix.GetDoubleValues(), numberOfValues);
+					else
+						writeFloats(fileChannel, position, denseFeatureMatrix.GetFloatValues(), numberOfValues);
+				}
+			}
+			
+			try
+			{
+				Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			temporaryFile.delete();
+		}
+	}
+	
+	/**
+	 * A hash of the length and of the first and last bytes of the file. Hashing the whole file would cost as much reading as the parsing the cache saves,
+	 * so this only catches the changes the length and the modification time miss, such as a copy which keeps the modification time.
+	 */
+	private static long contentHash(String fileName) throws IOException
+	{
+		MessageDigest messageDigest;
+		try
+		{
+			messageDigest=MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IOException(e);
+		}
+		
+		try(var file=new RandomAccessFile(fileName, "r"); var fileChannel=file.getChannel())
+		{
+			long length=fileChannel.size();
+			var buffer=ByteBuffer.allocate((int)Math.min(length, SAMPLE_SIZE));
+			
+			readFully(fileChannel, buffer, 0);
+			messageDigest.update(buffer.array(), 0, buffer.limit());
+			
+			buffer.clear();
+			readFully(fileChannel, buffer, Math.max(0, length-SAMPLE_SIZE));
+			messageDigest.update(buffer.array(), 0, buffer.limit());
+			
+			messageDigest.update(ByteBuffer.allocate(8).putLong(length).array());
+		}
+		
+		return ByteBuffer.wrap(messageDigest.digest()).getLong();
+	}
+	
+	private static long align(long position)
+	{
+		return (position+7)&~7L;
+	}
+	
+	private static String readString(ByteBuffer buffer)
+	{
+		var bytes=new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static void readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException
+	{
+		while(buffer.hasRemaining())
+		{
+			int count=fileChannel.read(buffer, position);
+			if(count<0)
+				break;
+			position+=count;
+		}
+		buffer.flip();
+	}
+	
+	private static void writeFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException
+	{
+		while(buffer.hasRemaining())
+			position+=fileChannel.write(buffer, position);
+	}
+	
+	private static long readInts(FileChannel fileChannel, long position, int[] values) throws IOException
+	{
+		for(int offset=0;offset<values.length;)
+		{
+			int count=Math.min(values.length-offset, WINDOW_SIZE/4);
+			fileChannel.map(FileChannel.MapMode.READ_ONLY, position, 4L*count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values, offset, count);
+			position+=4L*count;
+			offset+=count;
+		}
+		return align(position);
+	}
+	
+	private static long readDoubles(FileChannel fileChannel, long position, double[] values) throws IOException
+	{
+		for(int offset=0;offset<values.length;)
+		{
+			int count=Math.min(values.length-offset, WINDOW_SIZE/8);
+			fileChannel.map(FileChannel.MapMode.READ_ONLY, position, 8L*count).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(values, offset, count);
+			position+=8L*count;
+			offset+=count;
+		}
+		return align(position);
+	}
+	
+	private static long readFloats(FileChannel fileChannel, long position, float[] values) throws IOException
+	{
+		for(int offset=0;offset<values.length;)
+		{
+			int count=Math.min(values.length-offset, WINDOW_SIZE/4);
+			fileChannel.map(FileChannel.MapMode.READ_ONLY, position, 4L*count).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(values, offset, count);
+			position+=4L*count;
+			offset+=count;
+		}
+		return align(position);
+	}
+	
+	private static long writeInts(FileChannel fileChannel, long position, int[] values, int numberOfValues) throws IOException
+	{
+		var buffer=ByteBuffer.allocate(1024*1024).order(ByteOrder.LITTLE_ENDIAN);
+		for(int offset=0;offset<numberOfValues;)
+		{
+			int count=Math.min(numberOfValues-offset, buffer.capacity()/4);
+			buffer.clear();
+			buffer.asIntBuffer().put(values, offset, count);
+			buffer.limit(4*count);
+			writeFully(fileChannel, buffer, position);
+			position+=4L*count;
+			offset+=count;
+		}
+		return align(position);
+	}
+	
+	private static long writeDoubles(FileChannel fileChannel, long position, double[] values, int numberOfValues) throws IOException
+	{
+		var buffer=ByteBuffer.allocate(1024*1024).order(ByteOrder.LITTLE_ENDIAN);
+		for(int offset=0;offset<numberOfValues;)
+		{
+			int count=Math.min(numberOfValues-offset, buffer.capacity()/8);
+			buffer.clear();
+			buffer.asDoubleBuffer().put(values, offset, count);
+			buffer.limit(8*count);
+			writeFully(fileChannel, buffer, position);
+			position+=8L*count;
+			offset+=count;
+		}
+		return align(position);
+	}
+	
+	private static long writeFloats(FileChannel fileChannel, long position, float[] values, int numberOfValues) throws IOException
+	{
+		var buffer=ByteBuffer.allocate(1024*1024).order(ByteOrder.LITTLE_ENDIAN);
+		for(int offset=0;offset<numberOfValues;)
+		{
+			int count=Math.min(numberOfValues-offset, buffer.capacity()/4);
+			buffer.clear();
+			buffer.asFloatBuffer().put(values, offset, count);
+			buffer.limit(4*count);
+			writeFully(fileChannel, buffer, position);
+			position+=4L*count;
+			offset+=count;
+		}
+		return align(position);
+	}
+	
+	private static class ByteArrayBuilder
+	{
+		private ByteBuffer buffer_=ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+		
+		private void ensureCapacity(int count)
+		{
+			if(buffer_.remaining()>=count)
+				return;
+			
+			var buffer=ByteBuffer.allocate(Math.max(2*buffer_.capacity(), buffer_.position()+count)).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.put(buffer_.array(), 0, buffer_.position());
+			buffer_=buffer;
+		}
+		
+		public void PutInt(int value)
+		{
+			ensureCapacity(4);
+			buffer_.putInt(value);
+		}
+		
+		public void PutLong(long value)
+		{
+			ensureCapacity(8);
+			buffer_.putLong(value);
+		}
+		
+		public void PutString(String value)
+		{
+			var bytes=value.getBytes(StandardCharsets.UTF_8);
+			PutInt(bytes.length);
+			ensureCapacity(bytes.length);
+			buffer_.put(bytes);
+		}
+		
+		public byte[] GetBytes()
+		{
+			return buffer_.array();
+		}
+		
+		public int GetLength()
+		{
+			return buffer_.position();
+		}
+	}
+}
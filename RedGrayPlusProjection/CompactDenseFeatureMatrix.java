@@ -0,0 +1,113 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+/**
+ * A row-major matrix in one primitive array, of doubles or (to halve the memory) of floats.
+ */
+public class CompactDenseFeatureMatrix extends CompactFeatureMatrix
+{
+	private double[] values_;
+	private float[] floatValues_;
+	private int numberOfRows_;
+	private int numberOfFeatures_;
+	
+	public CompactDenseFeatureMatrix(int numberOfRows, int numberOfFeatures, boolean isFloat)
+	{
+		if((long)numberOfRows*numberOfFeatures>Integer.MAX_VALUE-8)
+			throw new IllegalArgumentException("Too many features for a dense feature matrix: "+numberOfRows+" rows of "+numberOfFeatures+" features");
+		
+		numberOfRows_=numberOfRows;
+		numberOfFeatures_=numberOfFeatures;
+		if(isFloat)
+			floatValues_=new float[numberOfRows*numberOfFeatures];
+		else
+			values_=new double[numberOfRows*numberOfFeatures];
+	}
+	
+	public CompactDenseFeatureMatrix(double[] values, int numberOfRows, int numberOfFeatures)
+	{
+		values_=values;
+		numberOfRows_=numberOfRows;
+		numberOfFeatures_=numberOfFeatures;
+	}
+	
+	public CompactDenseFeatureMatrix(float[] floatValues, int numberOfRows, int numberOfFeatures)
+	{
+		floatValues_=floatValues;
+		numberOfRows_=numberOfRows;
+		numberOfFeatures_=numberOfFeatures;
+	}
+	
+	@Override
+	public int GetNumberOfRows()
+	{
+		return numberOfRows_;
+	}
+	
+	@Override
+	public int GetNumberOfFeatures()
+	{
+		return numberOfFeatures_;
+	}
+	
+	@Override
+	public double Get(int row, int feature)
+	{
+		if(values_!=null)
+			return values_[row*numberOfFeatures_+feature];
+		return floatValues_[row*numberOfFeatures_+feature];
+	}
+	
+	@Override
+	public void Set(int row, int feature, double value)
+	{
+		if(values_!=null)
+			values_[row*numberOfFeatures_+feature]=value;
+		else
+			floatValues_[row*numberOfFeatures_+feature]=(float)value;
+	}
+	
+	@Override
+	public long GetSizeInBytes()
+	{
+		if(values_!=null)
+			return values_.length*8L;
+		else
+			return floatValues_.length*4L;
+	}
+	
+	@Override
+	public void CopyRow(int row, double[] destination)
+	{
+		int offset=row*numberOfFeatures_;
+		if(values_!=null)
+			System.arraycopy(values_, offset, destination, 0, numberOfFeatures_);
+		else
+			for(int k=0;k<numberOfFeatures_;k++)
+				destination[k]=floatValues_[offset+k];
+	}
+	
+	/**
+	 * The backing array of a matrix of doubles, so distance kernels can read it without copying. It is null for a matrix of floats.
+	 */
+	public double[] GetDoubleValues()
+	{
+		return values_;
+	}
+	
+	public float[] GetFloatValues()
+	{
+		return floatValues_;
+	}
+}
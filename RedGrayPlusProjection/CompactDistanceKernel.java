@@ -0,0 +1,395 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes euclidean distance matrices the way matrix multiplication libraries do:
+ * the squared distance is |x|^2 + |y|^2 - 2 x.y over contiguous primitive feature rows,
+ * only the upper triangle is computed and it is split into cache sized tiles which are spread over a fork join pool.
+ */
+public class CompactDistanceKernel
+{
+	private static final int TILE_SIZE=64;
+	private static final int FEATURE_BLOCK_SIZE=256;
+	private static final int TILES_PER_TASK=4;
+	
+	private double[] features_;
+	private int numberOfRows_;
+	private int numberOfFeatures_;
+	private double[] squaredNorms_;
+	private boolean isCosine_;
+	private double[] neighbourhoodNormalizationFactors_;
+	
+	public CompactDistanceKernel(ArrayList<CompactDataInstance> dataInstances, boolean forEvaluation)
+	{
+		numberOfRows_=dataInstances.size();
+		
+		boolean useFeaturesForEvaluation=forEvaluation && numberOfRows_>0 && dataInstances.get(0).GetNumberOfFeaturesForEvaluation()>0;
+		
+		numberOfFeatures_=0;
+		CompactFeatureMatrix featureMatrix=null;
+		if(numberOfRows_>0)
+		{
+			if(useFeaturesForEvaluation)
+			{
+				numberOfFeatures_=dataInstances.get(0).GetNumberOfFeaturesForEvaluation();
+				featureMatrix=dataInstances.get(0).GetFeatureMatrixForEvaluation();
+			}
+			else
+			{
+				numberOfFeatures_=dataInstances.get(0).GetNumberOfFeatures();
+				featureMatrix=dataInstances.get(0).GetFeatureMatrix();
+			}
+		}
+		
+		// All the row offsets below are int products of a row index and the number of features, bounded by this.
+		if((long)numberOfRows_*numberOfFeatures_>Integer.MAX_VALUE-8)
+			throw new IllegalArgumentException("Too many features for the dense distance kernel: "+numberOfRows_+" rows of "+numberOfFeatures_+" features");
+		
+		// When the data instances are the rows of one matrix of doubles in the same order, its array is used as it is.
+		boolean isSharedMatrix=featureMatrix instanceof CompactDenseFeatureMatrix && ((CompactDenseFeatureMatrix)featureMatrix).GetDoubleValues()!=null &&
+				featureMatrix.GetNumberOfRows()==numberOfRows_;
+		for(int i=0;i<numberOfRows_ && isSharedMatrix;i++)
+		{
+			var dataInstance=dataInstances.get(i);
+			if(useFeaturesForEvaluation)
+				isSharedMatrix=dataInstance.GetFeatureMatrixForEvaluation()==featureMatrix && dataInstance.GetFeatureRowForEvaluation()==i;
+			else
+				isSharedMatrix=dataInstance.GetFeatureMatrix()==featureMatrix && dataInstance.GetFeatureRow()==i;
+		}
+		
+		if(isSharedMatrix)
+			features_=((CompactDenseFeatureMatrix)featureMatrix).GetDoubleValues();
+		else
+		{
+			features_=new double[numberOfRows_*numberOfFeatures_];
+			for(int i=0;i<numberOfRows_;i++)
+			{
+				var dataInstance=dataInstances.get(i);
+				int offset=i*numberOfFeatures_;
+				for(int k=0;k<numberOfFeatures_;k++)
+					features_[offset+k]=useFeaturesForEvaluation?dataInstance.GetFeatureForEvaluation(k):dataInstance.GetFeature(k);
+			}
+		}
+		
+		squaredNorms_=new double[numberOfRows_];
+		for(int i=0;i<numberOfRows_;i++)
+		{
+			double squaredNorm=0;
+			int offset=i*numberOfFeatures_;
+			for(int k=0;k<numberOfFeatures_;k++)
+				squaredNorm+=features_[offset+k]*features_[offset+k];
+			squaredNorms_[i]=squaredNorm;
+		}
+	}
+	
+	public int GetNumberOfRows()
+	{
+		return numberOfRows_;
+	}
+	
+	public void ComputeEuclideanDistances(CompactWritableDistanceMatrix distances, int numberOfThreads)
+	{
+		isCosine_=false;
+		neighbourhoodNormalizationFactors_=null;
+		computeTiles(distances, numberOfThreads);
+	}
+	
+	/**
+	 * Writes one minus the cosine similarity, the same values as the "Cosine for original space" transform.
+	 */
+	public void ComputeCosineDistances(CompactWritableDistanceMatrix distances, int numberOfThreads)
+	{
+		isCosine_=true;
+		neighbourhoodNormalizationFactors_=null;
+		computeTiles(distances, numberOfThreads);
+	}
+	
+	/**
+	 * Writes the euclidean or cosine distances with the "Neighbourhood normalized for original space" transform already applied,
+	 * so the matrix is written only once. The radii of the neighbourhoods need a read only pass over all the dot products first.
+	 */
+	public void ComputeNeighbourhoodNormalizedDistances(CompactWritableDistanceMatrix distances, boolean isCosine, int numberOfNeighbors, int numberOfThreads)
+	{
+		isCosine_=isCosine;
+		neighbourhoodNormalizationFactors_=null;
+		
+		int numberOfTileRows=(numberOfRows_+TILE_SIZE-1)/TILE_SIZE;
+		var nearestDistances=new double[numberOfRows_][Math.max(1, Math.min(numberOfNeighbors, numberOfRows_-1))];
+		var forkJoinPool=new ForkJoinPool(Math.max(1, numberOfThreads));
+		try
+		{
+			forkJoinPool.invoke(new NearestDistancesTask(nearestDistances, null, 0, numberOfTileRows));
+		}
+		finally
+		{
+			forkJoinPool.shutdown();
+		}
+		
+		neighbourhoodNormalizationFactors_=CompactDistanceTransformer.NeighbourhoodNormalizationFactors(nearestDistances);
+		computeTiles(distances, numberOfThreads);
+		neighbourhoodNormalizationFactors_=null;
+	}
+	
+	/**
+	 * Fills the rows of nearestIndices and nearestDistances (allocated by the caller, all of the same length) with the nearest other rows by euclidean distance,
+	 * in ascending order of distance and with ties in ascending order of index. Rows are shortened when there are fewer other rows than their length.
+	 */
+	public void ComputeEuclideanNearestNeighbors(int[][] nearestIndices, double[][] nearestDistances, int numberOfThreads)
+	{
+		isCosine_=false;
+		neighbourhoodNormalizationFactors_=null;
+		
+		int numberOfTileRows=(numberOfRows_+TILE_SIZE-1)/TILE_SIZE;
+		var forkJoinPool=new ForkJoinPool(Math.max(1, numberOfThreads));
+		try
+		{
+			forkJoinPool.invoke(new NearestDistancesTask(nearestDistances, nearestIndices, 0, numberOfTileRows));
+		}
+		finally
+		{
+			forkJoinPool.shutdown();
+		}
+	}
+	
+	private void computeTiles(CompactWritableDistanceMatrix distances, int numberOfThreads)
+	{
+		int numberOfTileRows=(numberOfRows_+TILE_SIZE-1)/TILE_SIZE;
+		int numberOfTiles=(numberOfTileRows*(numberOfTileRows+1))/2;
+		
+		var tileRows=new int[numberOfTiles];
+		var tileColumns=new int[numberOfTiles];
+		int tile=0;
+		for(int i=0;i<numberOfTileRows;i++)
+			for(int j=i;j<numberOfTileRows;j++)
+			{
+				tileRows[tile]=i;
+				tileColumns[tile]=j;
+				tile++;
+			}
+		
+		var forkJoinPool=new ForkJoinPool(Math.max(1, numberOfThreads));
+		try
+		{
+			forkJoinPool.invoke(new TileTask(distances, tileRows, tileColumns, 0, numberOfTiles));
+		}
+		finally
+		{
+			forkJoinPool.shutdown();
+		}
+	}
+	
+	private void computeDots(int tileRow, int tileColumn, double[] dots, double[] transposedColumns)
+	{
+		int rowStart=tileRow*TILE_SIZE;
+		int rowEnd=Math.min(rowStart+TILE_SIZE, numberOfRows_);
+		int columnStart=tileColumn*TILE_SIZE;
+		int columnEnd=Math.min(columnStart+TILE_SIZE, numberOfRows_);
+		int numberOfColumns=columnEnd-columnStart;
+		
+		Arrays.fill(dots, 0);
+		
+		for(int featureStart=0;featureStart<numberOfFeatures_;featureStart+=FEATURE_BLOCK_SIZE)
+		{
+			int featureEnd=Math.min(featureStart+FEATURE_BLOCK_SIZE, numberOfFeatures_);
+			
+			// The column rows of the block are packed transposed so the innermost loop runs over contiguous memory and can be vectorized.
+			for(int j=0;j<numberOfColumns;j++)
+			{
+				int offset=(columnStart+j)*numberOfFeatures_;
+				for(int k=featureStart;k<featureEnd;k++)
+					transposedColumns[(k-featureStart)*TILE_SIZE+j]=features_[offset+k];
+			}
+			
+			for(int i=rowStart;i<rowEnd;i++)
+			{
+				int offset=i*numberOfFeatures_;
+				int dotsOffset=(i-rowStart)*TILE_SIZE;
+				for(int k=featureStart;k<featureEnd;k++)
+				{
+					double feature=features_[offset+k];
+					int transposedOffset=(k-featureStart)*TILE_SIZE;
+					for(int j=0;j<numberOfColumns;j++)
+						dots[dotsOffset+j]+=feature*transposedColumns[transposedOffset+j];
+				}
+			}
+		}
+	}
+	
+	private double transformedDistance(int index1, int index2, double dot)
+	{
+		// The order of the operations must not depend on which of the two is the row, so both halves of the matrix agree to the last bit.
+		if(index1>index2)
+		{
+			int temp=index1;
+			index1=index2;
+			index2=temp;
+		}
+		
+		double distance;
+		if(isCosine_)
+		{
+			// The same clamping of the squared norms as the "Cosine for original space" transform.
+			distance=1-dot/Math.sqrt(Math.max(squaredNorms_[index1], 1e-7))/Math.sqrt(Math.max(squaredNorms_[index2], 1e-7));
+		}
+		else
+		{
+			if(index1==index2)
+				return 0;
+			distance=Math.sqrt(Math.max(squaredNorms_[index1]+squaredNorms_[index2]-2*dot, 0));
+		}
+		
+		if(neighbourhoodNormalizationFactors_!=null)
+			distance=(Math.atan(distance*neighbourhoodNormalizationFactors_[index1])+Math.atan(distance*neighbourhoodNormalizationFactors_[index2]))/2.0;
+		
+		return distance;
+	}
+	
+	private void computeTile(CompactWritableDistanceMatrix distances, int tileRow, int tileColumn, double[] dots, double[] transposedColumns)
+	{
+		int rowStart=tileRow*TILE_SIZE;
+		int rowEnd=Math.min(rowStart+TILE_SIZE, numberOfRows_);
+		int columnStart=tileColumn*TILE_SIZE;
+		int columnEnd=Math.min(columnStart+TILE_SIZE, numberOfRows_);
+		boolean isDiagonalTile=tileRow==tileColumn;
+		
+		computeDots(tileRow, tileColumn, dots, transposedColumns);
+		
+		boolean isSymmetric=distances.IsSymmetric();
+		for(int i=rowStart;i<rowEnd;i++)
+			for(int j=(isDiagonalTile?i:columnStart);j<columnEnd;j++)
+			{
+				double distance=transformedDistance(i, j, dots[(i-rowStart)*TILE_SIZE+(j-columnStart)]);
+				
+				distances.Set(i, j, distance);
+				if(!isSymmetric)
+					distances.Set(j, i, distance);
+			}
+	}
+	
+	/**
+	 * Keeps the smallest distances of each row of a band of tile rows, over all the tile columns, so no two tasks share a row.
+	 */
+	private void computeNearestDistances(int tileRow, double[][] nearestDistances, int[][] nearestIndices, double[] dots, double[] transposedColumns)
+	{
+		int rowStart=tileRow*TILE_SIZE;
+		int rowEnd=Math.min(rowStart+TILE_SIZE, numberOfRows_);
+		int numberOfTileRows=(numberOfRows_+TILE_SIZE-1)/TILE_SIZE;
+		int[] counts=new int[rowEnd-rowStart];
+		
+		for(int tileColumn=0;tileColumn<numberOfTileRows;tileColumn++)
+		{
+			int columnStart=tileColumn*TILE_SIZE;
+			int columnEnd=Math.min(columnStart+TILE_SIZE, numberOfRows_);
+			
+			computeDots(tileRow, tileColumn, dots, transposedColumns);
+			
+			for(int i=rowStart;i<rowEnd;i++)
+				for(int j=columnStart;j<columnEnd;j++)
+				{
+					if(i==j)
+						continue;
+					double distance=transformedDistance(i, j, dots[(i-rowStart)*TILE_SIZE+(j-columnStart)]);
+					if(nearestIndices!=null)
+						counts[i-rowStart]=CompactDistanceTransformer.InsertSorted(nearestDistances[i], nearestIndices[i], counts[i-rowStart], distance, j);
+					else
+						counts[i-rowStart]=CompactDistanceTransformer.InsertSorted(nearestDistances[i], counts[i-rowStart], distance);
+				}
+		}
+		
+		for(int i=rowStart;i<rowEnd;i++)
+			if(counts[i-rowStart]<nearestDistances[i].length)
+			{
+				nearestDistances[i]=Arrays.copyOf(nearestDistances[i], counts[i-rowStart]);
+				if(nearestIndices!=null)
+					nearestIndices[i]=Arrays.copyOf(nearestIndices[i], counts[i-rowStart]);
+			}
+	}
+	
+	private class TileTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private CompactWritableDistanceMatrix distances_;
+		private int[] tileRows_;
+		private int[] tileColumns_;
+		private int start_;
+		private int end_;
+		
+		public TileTask(CompactWritableDistanceMatrix distances, int[] tileRows, int[] tileColumns, int start, int end)
+		{
+			distances_=distances;
+			tileRows_=tileRows;
+			tileColumns_=tileColumns;
+			start_=start;
+			end_=end;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(end_-start_<=TILES_PER_TASK)
+			{
+				var dots=new double[TILE_SIZE*TILE_SIZE];
+				var transposedColumns=new double[FEATURE_BLOCK_SIZE*TILE_SIZE];
+				for(int tile=start_;tile<end_;tile++)
+					computeTile(distances_, tileRows_[tile], tileColumns_[tile], dots, transposedColumns);
+				return;
+			}
+			
+			int middle=(start_+end_)>>>1;
+			invokeAll(new TileTask(distances_, tileRows_, tileColumns_, start_, middle),
+					new TileTask(distances_, tileRows_, tileColumns_, middle, end_));
+		}
+	}
+	
+	private class NearestDistancesTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private double[][] nearestDistances_;
+		private int[][] nearestIndices_;
+		private int start_;
+		private int end_;
+		
+		public NearestDistancesTask(double[][] nearestDistances, int[][] nearestIndices, int start, int end)
+		{
+			nearestDistances_=nearestDistances;
+			nearestIndices_=nearestIndices;
+			start_=start;
+			end_=end;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(end_-start_<=1)
+			{
+				var dots=new double[TILE_SIZE*TILE_SIZE];
+				var transposedColumns=new double[FEATURE_BLOCK_SIZE*TILE_SIZE];
+				for(int tileRow=start_;tileRow<end_;tileRow++)
+					computeNearestDistances(tileRow, nearestDistances_, nearestIndices_, dots, transposedColumns);
+				return;
+			}
+			
+			int middle=(start_+end_)>>>1;
+			invokeAll(new NearestDistancesTask(nearestDistances_, nearestIndices_, start_, middle),
+					new NearestDistancesTask(nearestDistances_, nearestIndices_, middle, end_));
+		}
+	}
+}
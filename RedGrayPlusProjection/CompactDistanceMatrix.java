@@ -0,0 +1,82 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public abstract class CompactDistanceMatrix
+{
+	public abstract int GetSize();
+	
+	public abstract double Get(int index1, int index2);
+	
+	/**
+	 * A symmetric matrix stores one value for both (index1,index2) and (index2,index1),
+	 * so writing one of them also changes the other.
+	 */
+	public abstract boolean IsSymmetric();
+	
+	/**
+	 * The approximate number of bytes the matrix keeps in memory, on or off the heap. Memory mapped matrices count the size of their file,
+	 * which is paged into memory as it is read and which is on the disk until the matrix is closed.
+	 */
+	public abstract long GetSizeInBytes();
+	
+	/**
+	 * Releases what the garbage collector does not release by itself, like the scratch file of a memory mapped matrix. The matrix must not be used after it is closed.
+	 */
+	public void Close()
+	{
+	}
+	
+	public void CopyTo(CompactWritableDistanceMatrix distanceMatrix)
+	{
+		int size=Math.min(this.GetSize(), distanceMatrix.GetSize());
+		boolean onlyUpperTriangle=this.IsSymmetric() || distanceMatrix.IsSymmetric();
+		
+		for(int i=0;i<size;i++)
+			for(int j=(onlyUpperTriangle?i:0);j<size;j++)
+				distanceMatrix.Set(i, j, this.Get(i, j));
+	}
+	
+	public static CompactWritableDistanceMatrix Create(int size, CompactDistanceMatrixStorage distanceMatrixStorage)
+	{
+		return Create(size, distanceMatrixStorage, null);
+	}
+	
+	/**
+	 * The folder name is only used by the memory mapped storage for its scratch files. If it is null the system temporary folder is used.
+	 * A lazy matrix is computed from a data instance set (see CompactLazyDistanceMatrix), so a matrix which has to be stored uses the condensed storage instead.
+	 */
+	public static CompactWritableDistanceMatrix Create(int size, CompactDistanceMatrixStorage distanceMatrixStorage, String temporaryFolderName)
+	{
+		if(distanceMatrixStorage==CompactDistanceMatrixStorage.MEMORY_MAPPED)
+		{
+			try
+			{
+				return CompactMappedDistanceMatrix.CreateTemporary(size, temporaryFolderName);
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+		else if(distanceMatrixStorage==CompactDistanceMatrixStorage.CONDENSED_FLOAT32 || distanceMatrixStorage==CompactDistanceMatrixStorage.LAZY)
+			return new CompactCondensedDistanceMatrix(size, false);
+		else if(distanceMatrixStorage==CompactDistanceMatrixStorage.CONDENSED_FLOAT32_OFF_HEAP)
+			return new CompactCondensedDistanceMatrix(size, true);
+		else
+			return new CompactFullDistanceMatrix(size);
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The parallel stage of the distance transforms: the radii of the neighbourhoods are found with a selection per row
+ * and the transforms are applied to blocks of rows spread over a fork join pool, each cell of a symmetric matrix being visited once.
+ */
+public class CompactDistanceTransformer
+{
+	private static final int ROWS_PER_TASK=16;
+	
+	/**
+	 * Inserts a distance into the ascending list of the smallest distances seen so far and returns the new number of distances in it.
+	 */
+	public static int InsertSorted(double[] nearestDistances, int count, double distance)
+	{
+		if(count==nearestDistances.length)
+		{
+			if(!(distance<nearestDistances[count-1]))
+				return count;
+			count--;
+		}
+		
+		int position=count;
+		while(position>0 && nearestDistances[position-1]>distance)
+		{
+			nearestDistances[position]=nearestDistances[position-1];
+			position--;
+		}
+		nearestDistances[position]=distance;
+		
+		return count+1;
+	}
+	
+	/**
+	 * The same as InsertSorted, also keeping the index of each distance in the same position of nearestIndices.
+	 */
+	public static int InsertSorted(double[] nearestDistances, int[] nearestIndices, int count, double distance, int index)
+	{
+		if(count==nearestDistances.length)
+		{
+			if(!(distance<nearestDistances[count-1]))
+				return count;
+			count--;
+		}
+		
+		int position=count;
+		while(position>0 && nearestDistances[position-1]>distance)
+		{
+			nearestDistances[position]=nearestDistances[position-1];
+			nearestIndices[position]=nearestIndices[position-1];
+			position--;
+		}
+		nearestDistances[position]=distance;
+		nearestIndices[position]=index;
+		
+		return count+1;
+	}
+	
+	public static double[] NeighbourhoodNormalizationFactors(double[][] nearestDistances)
+	{
+		double[] m=new double[nearestDistances.length];
+		double temp=Math.tan(1);
+		for(int i=0;i<nearestDistances.length;i++)
+			m[i]=temp/nearestDistances[i][nearestDistances[i].length-1];
+		
+		return m;
+	}
+	
+	/**
+	 * The factors of the "Neighbourhood normalized for original space" transform, the tangent of one divided by the distance to the neighbour of the given rank.
+	 */
+	public static double[] ComputeNeighbourhoodNormalizationFactors(CompactDistanceMatrix distances, int numberOfNeighbors, int numberOfThreads)
+	{
+		int size=distances.GetSize();
+		var nearestDistances=new double[size][Math.max(1, Math.min(numberOfNeighbors, size-1))];
+		
+		var forkJoinPool=new ForkJoinPool(Math.max(1, numberOfThreads));
+		try
+		{
+			forkJoinPool.invoke(new RowTask(distances, null, nearestDistances, null, 0, size));
+		}
+		finally
+		{
+			forkJoinPool.shutdown();
+		}
+		
+		return NeighbourhoodNormalizationFactors(nearestDistances);
+	}
+	
+	public static void ApplyNeighbourhoodNormalization(CompactWritableDistanceMatrix distances, double[] m, int numberOfThreads)
+	{
+		var forkJoinPool=new ForkJoinPool(Math.max(1, numberOfThreads));
+		try
+		{
+			forkJoinPool.invoke(new RowTask(distances, distances, null, m, 0, distances.GetSize()));
+		}
+		finally
+		{
+			forkJoinPool.shutdown();
+		}
+	}
+	
+	private static class RowTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private CompactDistanceMatrix distances_;
+		private CompactWritableDistanceMatrix writableDistances_;
+		private double[][] nearestDistances_;
+		private double[] m_;
+		private int start_;
+		private int end_;
+		
+		/**
+		 * The writable distances are only given for applying the factors, for which they are the same matrix as the distances.
+		 */
+		public RowTask(CompactDistanceMatrix distances, CompactWritableDistanceMatrix writableDistances, double[][] nearestDistances, double[] m, int start, int end)
+		{
+			distances_=distances;
+			writableDistances_=writableDistances;
+			nearestDistances_=nearestDistances;
+			m_=m;
+			start_=start;
+			end_=end;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(end_-start_>ROWS_PER_TASK)
+			{
+				int middle=(start_+end_)>>>1;
+				invokeAll(new RowTask(distances_, writableDistances_, nearestDistances_, m_, start_, middle),
+						new RowTask(distances_, writableDistances_, nearestDistances_, m_, middle, end_));
+				return;
+			}
+			
+			int size=distances_.GetSize();
+			for(int i=start_;i<end_;i++)
+			{
+				if(nearestDistances_!=null)
+				{
+					int count=0;
+					for(int j=0;j<size;j++)
+						if(i!=j)
+							count=InsertSorted(nearestDistances_[i], count, distances_.Get(i, j));
+				}
+				else
+				{
+					for(int j=(distances_.IsSymmetric()?i:0);j<size;j++)
+					{
+						double distance=distances_.Get(i, j);
+						writableDistances_.Set(i, j, (Math.atan(distance*m_[i])+Math.atan(distance*m_[j]))/2.0);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+/**
+ * The features of all the data instances of a data instance set in one matrix, one row per data instance.
+ * A data instance is a view of one row (see CompactDataInstance.SetFeatures), so the features are never stored as boxed values.
+ */
+public abstract class CompactFeatureMatrix
+{
+	public abstract int GetNumberOfRows();
+	
+	public abstract int GetNumberOfFeatures();
+	
+	public abstract double Get(int row, int feature);
+	
+	public abstract void Set(int row, int feature, double value);
+	
+	/**
+	 * The approximate number of bytes the matrix keeps in memory.
+	 */
+	public abstract long GetSizeInBytes();
+	
+	public void CopyRow(int row, double[] destination)
+	{
+		for(int k=0;k<GetNumberOfFeatures();k++)
+			destination[k]=Get(row, k);
+	}
+	
+	public static CompactFeatureMatrix Create(int numberOfRows, int numberOfFeatures, CompactFeatureStorage featureStorage)
+	{
+		return new CompactDenseFeatureMatrix(numberOfRows, numberOfFeatures, featureStorage==CompactFeatureStorage.FLOAT32);
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.util.Arrays;
+
+/**
+ * Collects the rows of a feature matrix while a file is read, when the number of rows is not known in advance.
+ * The rows are appended to one growing primitive array, so no boxed values are created.
+ */
+public class CompactFeatureMatrixBuilder
+{
+	private double[] values_;
+	private float[] floatValues_;
+	private int numberOfRows_;
+	private int numberOfFeatures_;
+	private int size_;
+	
+	public CompactFeatureMatrixBuilder(CompactFeatureStorage featureStorage)
+	{
+		numberOfRows_=0;
+		numberOfFeatures_=-1;
+		size_=0;
+		if(featureStorage==CompactFeatureStorage.FLOAT32)
+			floatValues_=new float[1024];
+		else
+			values_=new double[1024];
+	}
+	
+	public int GetNumberOfRows()
+	{
+		return numberOfRows_;
+	}
+	
+	public void AddRow(double[] row, int numberOfFeatures)
+	{
+		if(numberOfFeatures_==-1)
+			numberOfFeatures_=numberOfFeatures;
+		else if(numberOfFeatures!=numberOfFeatures_)
+			throw new IllegalArgumentException("Row "+(numberOfRows_+1)+" has "+numberOfFeatures+" features instead of "+numberOfFeatures_);
+		
+		ensureCapacity((long)size_+numberOfFeatures);
+		
+		if(values_!=null)
+			System.arraycopy(row, 0, values_, size_, numberOfFeatures);
+		else
+			for(int k=0;k<numberOfFeatures;k++)
+				floatValues_[size_+k]=(float)row[k];
+		
+		size_+=numberOfFeatures;
+		numberOfRows_++;
+	}
+	
+	private void ensureCapacity(long capacity)
+	{
+		if(capacity>Integer.MAX_VALUE-8)
+			throw new IllegalArgumentException("Too many features for a dense feature matrix: more than "+numberOfRows_+" rows of "+numberOfFeatures_+" features");
+		
+		int length=values_!=null?values_.length:floatValues_.length;
+		if(capacity<=length)
+			return;
+		
+		int newLength=(int)Math.min(Integer.MAX_VALUE-8, Math.max(capacity, (long)length*2));
+		if(values_!=null)
+			values_=Arrays.copyOf(values_, newLength);
+		else
+			floatValues_=Arrays.copyOf(floatValues_, newLength);
+	}
+	
+	public CompactFeatureMatrix Build()
+	{
+		int numberOfFeatures=Math.max(0, numberOfFeatures_);
+		
+		if(values_!=null)
+			return new CompactDenseFeatureMatrix(Arrays.copyOf(values_, size_), numberOfRows_, numberOfFeatures);
+		else
+			return new CompactDenseFeatureMatrix(Arrays.copyOf(floatValues_, size_), numberOfRows_, numberOfFeatures);
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+public class CompactFullDistanceMatrix extends CompactWritableDistanceMatrix
+{
+	private double[][] distances_;
+	
+	public CompactFullDistanceMatrix(int size)
+	{
+		distances_=new double[size][size];
+	}
+	
+	public CompactFullDistanceMatrix(double[][] distances)
+	{
+		distances_=distances;
+	}
+	
+	@Override
+	public int GetSize()
+	{
+		return distances_.length;
+	}
+	
+	@Override
+	public double Get(int index1, int index2)
+	{
+		return distances_[index1][index2];
+	}
+	
+	@Override
+	public void Set(int index1, int index2, double distance)
+	{
+		distances_[index1][index2]=distance;
+	}
+	
+	@Override
+	public boolean IsSymmetric()
+	{
+		return false;
+	}
+	
+	@Override
+	public long GetSizeInBytes()
+	{
+		return (long)distances_.length*distances_.length*8;
+	}
+}
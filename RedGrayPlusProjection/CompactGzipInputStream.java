@@ -0,0 +1,177 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a gzip compressed file with the decompression on its own thread, a few blocks ahead of the reader,
+ * so decompressing the next blocks overlaps with parsing the current one.
+ */
+public class CompactGzipInputStream extends InputStream
+{
+	private static final int BLOCK_SIZE=1024*1024;
+	private static final int NUMBER_OF_BLOCKS=8;
+	private static final byte[] END_OF_STREAM=new byte[0];
+	
+	private ArrayBlockingQueue<byte[]> blocks_;
+	private Thread thread_;
+	private volatile IOException error_;
+	private byte[] block_;
+	private int position_;
+	private boolean isEndOfStream_;
+	
+	/**
+	 * Whether the file starts with the gzip magic number, whatever its name is.
+	 */
+	public static boolean IsGzipFile(String fileName)
+	{
+		try(var inputStream=new FileInputStream(fileName))
+		{
+			return inputStream.read()==0x1f && inputStream.read()==0x8b;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+	
+	/**
+	 * Opens the file through a CompactGzipInputStream if it is gzip compressed, and as it is otherwise.
+	 */
+	public static InputStream Open(String fileName) throws IOException
+	{
+		if(IsGzipFile(fileName))
+			return new CompactGzipInputStream(fileName);
+		return new FileInputStream(fileName);
+	}
+	
+	public CompactGzipInputStream(String fileName) throws IOException
+	{
+		var gzipInputStream=new GZIPInputStream(new FileInputStream(fileName), 64*1024);
+		
+		blocks_=new ArrayBlockingQueue<byte[]>(NUMBER_OF_BLOCKS);
+		block_=null;
+		position_=0;
+		isEndOfStream_=false;
+		error_=null;
+		
+		thread_=new Thread(()->decompress(gzipInputStream), "gzip decompression");
+		thread_.setDaemon(true);
+		thread_.start();
+	}
+	
+	private void decompress(GZIPInputStream gzipInputStream)
+	{
+		try
+		{
+			try(gzipInputStream)
+			{
+				boolean isEndOfFile=false;
+				while(!isEndOfFile)
+				{
+					var block=new byte[BLOCK_SIZE];
+					int length=0;
+					while(length<BLOCK_SIZE)
+					{
+						int count=gzipInputStream.read(block, length, BLOCK_SIZE-length);
+						if(count<0)
+						{
+							isEndOfFile=true;
+							break;
+						}
+						length+=count;
+					}
+					
+					if(length>0)
+						blocks_.put(length==BLOCK_SIZE?block:Arrays.copyOf(block, length));
+				}
+			}
+			catch (IOException e)
+			{
+				error_=e;
+			}
+			
+			blocks_.put(END_OF_STREAM);
+		}
+		catch (InterruptedException e)
+		{
+			// The stream was closed before the end of the file.
+		}
+	}
+	
+	private boolean nextBlock() throws IOException
+	{
+		if(isEndOfStream_)
+			return false;
+		
+		try
+		{
+			block_=blocks_.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the decompression", e);
+		}
+		position_=0;
+		
+		if(block_==END_OF_STREAM)
+		{
+			isEndOfStream_=true;
+			if(error_!=null)
+				throw error_;
+			return false;
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public int read() throws IOException
+	{
+		while(block_==null || position_==block_.length)
+			if(!nextBlock())
+				return -1;
+		
+		return block_[position_++]&0xff;
+	}
+	
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException
+	{
+		if(length==0)
+			return 0;
+		
+		while(block_==null || position_==block_.length)
+			if(!nextBlock())
+				return -1;
+		
+		int count=Math.min(length, block_.length-position_);
+		System.arraycopy(block_, position_, bytes, offset, count);
+		position_+=count;
+		return count;
+	}
+	
+	@Override
+	public void close()
+	{
+		thread_.interrupt();
+		blocks_.clear();
+	}
+}
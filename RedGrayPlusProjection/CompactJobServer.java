@@ -0,0 +1,359 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A server on a local HTTP port which runs projection jobs, a given number of them at a time, keeping the prepared data sets in a cache (see CompactPreparedDataSetCache)
+ * so that later jobs on the same data do not read and prepare it again. It only listens on the loopback address.
+ * 
+ * POST /jobs with the configuration as the XML of a configuration file or as form attributes queues a job and gives its id. Relative file and folder names are taken from the working folder of the server.
+ * GET /jobs gives the summary of all jobs (see CompactBatchRunner), GET /jobs/id the status of one job, GET /cache the state of the cache
+ * and POST /shutdown stops the server after the queued jobs.
+ * 
+ * A web page open in a browser can also send requests to the loopback address, so POST requests with an Origin header are refused and the others need
+ * what a page can not send without a CORS preflight, which the server never allows: the XML with an application/xml or text/xml content type,
+ * and the form attributes and /shutdown with a CLIENT_HEADER header. The XML may not have a document type declaration, so it can not read local files through entities.
+ */
+public class CompactJobServer
+{
+	public static final String CLIENT_HEADER="X-RedGrayPlus-Client";
+	
+	private HttpServer httpServer_;
+	private ExecutorService requestExecutor_;
+	private ExecutorService jobExecutor_;
+	private int numberOfJobs_;
+	private CompactPreparedDataSetCache preparedDataSetCache_;
+	private ArrayList<CompactBatchRunner.Job> jobs_;
+	private ArrayList<String> outputFolderNames_;
+	private CountDownLatch stopped_;
+	
+	public CompactJobServer(int port, int numberOfJobs, long cacheSizeInBytes) throws IOException
+	{
+		httpServer_=HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		requestExecutor_=createRequestExecutor();
+		jobExecutor_=Executors.newFixedThreadPool(numberOfJobs);
+		numberOfJobs_=numberOfJobs;
+		preparedDataSetCache_=new CompactPreparedDataSetCache(cacheSizeInBytes);
+		jobs_=new ArrayList<CompactBatchRunner.Job>();
+		outputFolderNames_=new ArrayList<String>();
+		stopped_=new CountDownLatch(1);
+		
+		httpServer_.setExecutor(requestExecutor_);
+		httpServer_.createContext("/jobs", exchange->handle(exchange, this::handleJobs));
+		httpServer_.createContext("/cache", exchange->handle(exchange, this::handleCache));
+		httpServer_.createContext("/shutdown", exchange->handle(exchange, this::handleShutdown));
+	}
+	
+	public static void Run(String[] args) throws Exception
+	{
+		int port=8035;
+		int numberOfJobs=1;
+		long cacheMegabytes=1024;
+		
+		for(int i=1;i<args.length;i++)
+		{
+			if(args[i].compareTo("--port")==0 && i+1<args.length)
+				port=Integer.parseInt(args[++i]);
+			else if(args[i].compareTo("--jobs")==0 && i+1<args.length)
+				numberOfJobs=Integer.parseInt(args[++i]);
+			else if(args[i].compareTo("--cache-megabytes")==0 && i+1<args.length)
+				cacheMegabytes=Long.parseLong(args[++i]);
+			else
+			{
+				System.out.println("Usage guide:");
+				System.out.println("--server [--port number] [--jobs number] [--cache-megabytes number]");
+				System.out.println("--port is the local HTTP port, 0 for any free port. Default value: 8035");
+				System.out.println("--jobs is the number of jobs which run at the same time, each with an equal share of the threads unless it sets NumberOfThreads. Default value: 1");
+				System.out.println("--cache-megabytes is the memory for the prepared data sets kept for later jobs. Default value: 1024");
+				System.out.println("POST the configuration XML to /jobs with the content type application/xml, or its attributes as a form with the "+CLIENT_HEADER+" header");
+				System.out.println("");
+				return;
+			}
+		}
+		
+		if(numberOfJobs<1)
+		{
+			System.out.println("Bad number of jobs:"+numberOfJobs);
+			return;
+		}
+		
+		var jobServer=new CompactJobServer(port, numberOfJobs, cacheMegabytes*1024*1024);
+		jobServer.Start();
+		System.out.println("Listening on http://"+InetAddress.getLoopbackAddress().getHostAddress()+":"+jobServer.GetPort()+"/jobs");
+		System.out.println("");
+		
+		jobServer.WaitUntilStopped();
+		System.out.println("Stopped the server");
+	}
+	
+	public void Start()
+	{
+		httpServer_.start();
+	}
+	
+	public int GetPort()
+	{
+		return httpServer_.getAddress().getPort();
+	}
+	
+	/**
+	 * Stops taking requests. The queued jobs still run.
+	 */
+	public void Stop()
+	{
+		httpServer_.stop(1);
+		requestExecutor_.shutdown();
+		jobExecutor_.shutdown();
+		stopped_.countDown();
+	}
+	
+	public void WaitUntilStopped() throws InterruptedException
+	{
+		stopped_.await();
+		jobExecutor_.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+	}
+	
+	/**
+	 * Virtual threads for the requests where the runtime has them (Java 21 and later), since the program is also built for older runtimes.
+	 */
+	private static ExecutorService createRequestExecutor()
+	{
+		try
+		{
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool();
+		}
+	}
+	
+	private interface RequestHandler
+	{
+		void Handle(HttpExchange exchange) throws Exception;
+	}
+	
+	private static void handle(HttpExchange exchange, RequestHandler requestHandler) throws IOException
+	{
+		try
+		{
+			requestHandler.Handle(exchange);
+		}
+		catch (Exception e)
+		{
+			respond(exchange, 500, "Error: "+e.getMessage()+"\n");
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+	
+	private void handleJobs(HttpExchange exchange) throws Exception
+	{
+		String path=exchange.getRequestURI().getPath();
+		String method=exchange.getRequestMethod();
+		
+		if(path.compareTo("/jobs")==0 || path.compareTo("/jobs/")==0)
+		{
+			if(method.compareTo("POST")==0)
+				submitJob(exchange);
+			else if(method.compareTo("GET")==0)
+			{
+				var text=new StringBuilder("Id,"+CompactBatchRunner.SUMMARY_HEADER+"\n");
+				synchronized(jobs_)
+				{
+					for(int i=0;i<jobs_.size();i++)
+						text.append(i+","+CompactBatchRunner.GetSummaryLine(jobs_.get(i))+"\n");
+				}
+				respond(exchange, 200, text.toString());
+			}
+			else
+				respond(exchange, 405, "Only GET and POST\n");
+			return;
+		}
+		
+		int id;
+		try
+		{
+			id=Integer.parseInt(path.substring("/jobs/".length()));
+		}
+		catch (NumberFormatException e)
+		{
+			respond(exchange, 404, "No such job\n");
+			return;
+		}
+		
+		CompactBatchRunner.Job job;
+		String outputFolderName;
+		synchronized(jobs_)
+		{
+			if(id<0 || id>=jobs_.size())
+			{
+				respond(exchange, 404, "No such job\n");
+				return;
+			}
+			job=jobs_.get(id);
+			outputFolderName=outputFolderNames_.get(id);
+		}
+		
+		respond(exchange, 200, "Id="+id+"\nName="+job.GetName()+"\nStatus="+job.GetStatus()+"\nSeconds="+job.GetSeconds()+"\nProjections="+job.GetNumberOfProjections()+
+				"\nBestRedAndGrayTrustworthiness="+job.GetBestRedAndGrayTrustworthiness()+"\nBestRedTrustworthiness="+job.GetBestRedTrustworthiness()+
+				"\nOutputFolderName="+outputFolderName+"\n");
+	}
+	
+	/**
+	 * Refuses a POST request which a web page could have sent (see the class comment) and returns false.
+	 */
+	private static boolean checkPostRequest(HttpExchange exchange, boolean needsClientHeader) throws IOException
+	{
+		if(exchange.getRequestHeaders().containsKey("Origin"))
+		{
+			respond(exchange, 403, "Requests from web pages are not accepted\n");
+			return false;
+		}
+		
+		if(needsClientHeader && !exchange.getRequestHeaders().containsKey(CLIENT_HEADER))
+		{
+			respond(exchange, 403, "The "+CLIENT_HEADER+" header is necessary\n");
+			return false;
+		}
+		
+		return true;
+	}
+	
+	private static String getContentType(HttpExchange exchange)
+	{
+		String contentType=exchange.getRequestHeaders().getFirst("Content-Type");
+		if(contentType==null)
+			return "";
+		
+		int index=contentType.indexOf(';');
+		return (index<0?contentType:contentType.substring(0, index)).trim().toLowerCase();
+	}
+	
+	private void submitJob(HttpExchange exchange) throws Exception
+	{
+		String contentType=getContentType(exchange);
+		boolean isXml=contentType.compareTo("application/xml")==0 || contentType.compareTo("text/xml")==0;
+		if(!isXml && contentType.compareTo("application/x-www-form-urlencoded")!=0)
+		{
+			respond(exchange, 415, "The content type must be application/xml, text/xml or application/x-www-form-urlencoded\n");
+			return;
+		}
+		
+		if(!checkPostRequest(exchange, !isXml))
+			return;
+		
+		String body=new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).trim();
+		
+		var parameters=new HashMap<String,String>();
+		if(isXml)
+		{
+			var documentBuilderFactory=DocumentBuilderFactory.newInstance();
+			documentBuilderFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			documentBuilderFactory.setXIncludeAware(false);
+			documentBuilderFactory.setExpandEntityReferences(false);
+			
+			var parametersNamedNodeMap=documentBuilderFactory.newDocumentBuilder().
+					parse(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))).getDocumentElement().getAttributes();
+			for(int i=0;i<parametersNamedNodeMap.getLength();i++)
+				parameters.put(parametersNamedNodeMap.item(i).getNodeName(), parametersNamedNodeMap.item(i).getNodeValue());
+		}
+		else
+		{
+			for(var attribute : body.split("&"))
+			{
+				int index=attribute.indexOf('=');
+				if(index>0)
+					parameters.put(URLDecoder.decode(attribute.substring(0, index), StandardCharsets.UTF_8), URLDecoder.decode(attribute.substring(index+1), StandardCharsets.UTF_8));
+			}
+		}
+		
+		var processedParameters=CompactCommandLineInterface.ProcessConfiguration(parameters, new File(System.getProperty("user.dir")));
+		if(processedParameters==null)
+		{
+			respond(exchange, 400, "Bad configuration: Name, ProjectionMethod, InputFileType, InputFileName, OutputFolderName and InputFileClassColumnType are necessary\n");
+			return;
+		}
+		
+		CompactCommandLineInterface.DivideThreads(processedParameters, numberOfJobs_);
+		
+		int id;
+		CompactBatchRunner.Job job;
+		synchronized(jobs_)
+		{
+			id=jobs_.size();
+			job=new CompactBatchRunner.Job("job "+id);
+			job.SetStatus("queued");
+			jobs_.add(job);
+			outputFolderNames_.add(processedParameters.get("OutputFolderName"));
+		}
+		
+		final var queuedJob=job;
+		jobExecutor_.submit(()->CompactBatchRunner.RunJob(queuedJob, ()->CompactCommandLineInterface.RunConfiguration(processedParameters, queuedJob, preparedDataSetCache_)));
+		
+		respond(exchange, 202, "Id="+id+"\nStatus=queued\n");
+	}
+	
+	private void handleCache(HttpExchange exchange) throws Exception
+	{
+		respond(exchange, 200, "PreparedDataSets="+preparedDataSetCache_.GetNumberOfPreparedDataSets()+"\nMegabytes="+preparedDataSetCache_.GetSizeInBytes()/(1024*1024)+
+				"\nMaximumMegabytes="+preparedDataSetCache_.GetMaximumSizeInBytes()/(1024*1024)+"\nHits="+preparedDataSetCache_.GetHits()+"\nMisses="+preparedDataSetCache_.GetMisses()+"\n");
+	}
+	
+	private void handleShutdown(HttpExchange exchange) throws Exception
+	{
+		if(exchange.getRequestMethod().compareTo("POST")!=0)
+		{
+			respond(exchange, 405, "Only POST\n");
+			return;
+		}
+		
+		if(!checkPostRequest(exchange, true))
+			return;
+		
+		respond(exchange, 200, "Stopping after the queued jobs\n");
+		
+		// The server waits for the running requests when it stops, so it is stopped from another thread than this request.
+		var stopThread=new Thread(this::Stop);
+		stopThread.start();
+	}
+	
+	private static void respond(HttpExchange exchange, int statusCode, String text) throws IOException
+	{
+		var bytes=text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(statusCode, bytes.length);
+		exchange.getResponseBody().write(bytes);
+	}
+}
@@ -0,0 +1,244 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Computes rows of a distance matrix on demand from the features (or the dissimilarities) of a data instance set
+ * and keeps the most recently used rows in a bounded cache, so the memory used is a budget instead of growing with the square of the number of points.
+ * The cosine and neighbourhood normalization transformations are applied while a row is computed.
+ * Cached rows are read without a lock, so the projection threads do not wait for each other. Only a missing row takes the lock of the cache to be put in,
+ * in place of a row which was not read since the clock hand last passed it (the clock approximation of least recently used).
+ */
+public class CompactLazyDistanceMatrix extends CompactDistanceMatrix
+{
+	private CompactDataInstanceSet dataInstanceSet_;
+	private boolean forEvaluation_;
+	private int size_;
+	private int maximumNumberOfCachedRows_;
+	private AtomicReferenceArray<double[]> cachedRows_;
+	private boolean[] isRecentlyUsed_;
+	private int[] cachedRowIndices_;
+	private int numberOfCachedRows_;
+	private int clockHand_;
+	private boolean isCosine_;
+	private double[] neighbourhoodNormalizationFactors_;
+	private LongAdder hits_;
+	private LongAdder misses_;
+	
+	public CompactLazyDistanceMatrix(CompactDataInstanceSet dataInstanceSet, boolean forEvaluation, long cacheSizeInBytes)
+	{
+		dataInstanceSet_=dataInstanceSet;
+		forEvaluation_=forEvaluation;
+		size_=dataInstanceSet.GetDataInstances().size();
+		maximumNumberOfCachedRows_=(int)Math.max(1, Math.min(size_, cacheSizeInBytes/(8L*Math.max(size_, 1))));
+		cachedRows_=new AtomicReferenceArray<double[]>(size_);
+		isRecentlyUsed_=new boolean[size_];
+		cachedRowIndices_=new int[maximumNumberOfCachedRows_];
+		numberOfCachedRows_=0;
+		clockHand_=0;
+		isCosine_=false;
+		neighbourhoodNormalizationFactors_=null;
+		hits_=new LongAdder();
+		misses_=new LongAdder();
+	}
+	
+	@Override
+	public int GetSize()
+	{
+		return size_;
+	}
+	
+	@Override
+	public double Get(int index1, int index2)
+	{
+		var row=cachedRows_.get(index1);
+		if(row!=null)
+		{
+			markRecentlyUsed(index1);
+			hits_.increment();
+			return row[index2];
+		}
+		
+		row=cachedRows_.get(index2);
+		if(row!=null)
+		{
+			markRecentlyUsed(index2);
+			hits_.increment();
+			return row[index1];
+		}
+		
+		misses_.increment();
+		row=computeRow(index1);
+		cacheRow(index1, row);
+		return row[index2];
+	}
+	
+	@Override
+	public boolean IsSymmetric()
+	{
+		return true;
+	}
+	
+	@Override
+	public long GetSizeInBytes()
+	{
+		return (long)maximumNumberOfCachedRows_*size_*8+9L*size_+(neighbourhoodNormalizationFactors_==null?0:neighbourhoodNormalizationFactors_.length*8L);
+	}
+	
+	public void SetIsCosine(boolean isCosine)
+	{
+		isCosine_=isCosine;
+		clearCachedRows();
+	}
+	
+	public void SetNeighbourhoodNormalizationFactors(double[] neighbourhoodNormalizationFactors)
+	{
+		neighbourhoodNormalizationFactors_=neighbourhoodNormalizationFactors;
+		clearCachedRows();
+	}
+	
+	public long GetHits()
+	{
+		return hits_.sum();
+	}
+	
+	public long GetMisses()
+	{
+		return misses_.sum();
+	}
+	
+	public int GetMaximumNumberOfCachedRows()
+	{
+		return maximumNumberOfCachedRows_;
+	}
+	
+	/**
+	 * The flag is only a hint for the clock hand, so it is written without a lock, and only when it changes so the threads do not keep writing the same memory.
+	 */
+	private void markRecentlyUsed(int index)
+	{
+		if(!isRecentlyUsed_[index])
+			isRecentlyUsed_[index]=true;
+	}
+	
+	private synchronized void cacheRow(int index, double[] row)
+	{
+		// Another thread may have computed the same row meanwhile.
+		if(cachedRows_.get(index)!=null)
+			return;
+		
+		if(numberOfCachedRows_<maximumNumberOfCachedRows_)
+			cachedRowIndices_[numberOfCachedRows_++]=index;
+		else
+		{
+			// The readers keep setting the flags while the hand clears them, so after two turns the row under the hand is replaced anyway.
+			for(int i=0;i<2*maximumNumberOfCachedRows_ && isRecentlyUsed_[cachedRowIndices_[clockHand_]];i++)
+			{
+				isRecentlyUsed_[cachedRowIndices_[clockHand_]]=false;
+				clockHand_=(clockHand_+1)%maximumNumberOfCachedRows_;
+			}
+			
+			cachedRows_.set(cachedRowIndices_[clockHand_], null);
+			cachedRowIndices_[clockHand_]=index;
+			clockHand_=(clockHand_+1)%maximumNumberOfCachedRows_;
+		}
+		
+		isRecentlyUsed_[index]=false;
+		cachedRows_.set(index, row);
+	}
+	
+	private synchronized void clearCachedRows()
+	{
+		for(int i=0;i<numberOfCachedRows_;i++)
+		{
+			cachedRows_.set(cachedRowIndices_[i], null);
+			isRecentlyUsed_[cachedRowIndices_[i]]=false;
+		}
+		
+		numberOfCachedRows_=0;
+		clockHand_=0;
+	}
+	
+	private double[] computeRow(int index)
+	{
+		var dataInstances=dataInstanceSet_.GetDataInstances();
+		var dataInstance1=dataInstances.get(index);
+		var row=new double[size_];
+		
+		var sparseInvertedIndex=dataInstanceSet_.GetSparseInvertedIndex();
+		if(isCosine_ && sparseInvertedIndex!=null && !(forEvaluation_ && dataInstance1.GetNumberOfFeaturesForEvaluation()>0))
+		{
+			sparseInvertedIndex.ComputeCosineRow(index, row, new double[size_], new boolean[size_], new int[size_]);
+			if(neighbourhoodNormalizationFactors_!=null)
+				for(int j=0;j<size_;j++)
+					row[j]=(Math.atan(row[j]*neighbourhoodNormalizationFactors_[index])+Math.atan(row[j]*neighbourhoodNormalizationFactors_[j]))/2.0;
+			
+			return row;
+		}
+		
+		for(int j=0;j<size_;j++)
+		{
+			var dataInstance2=dataInstances.get(j);
+			
+			double distance;
+			if(isCosine_)
+				distance=cosineDistance(dataInstance1, dataInstance2);
+			else if(dataInstanceSet_.GetUseDissimilarityInsteadOfDistance())
+				distance=dataInstanceSet_.GetDisSimilarity(index, j);
+			else if(forEvaluation_)
+				distance=dataInstance1.EvaluationFeatureDistanceTo(dataInstance2);
+			else
+				distance=dataInstance1.FeatureDistanceTo(dataInstance2);
+			
+			if(neighbourhoodNormalizationFactors_!=null)
+				distance=(Math.atan(distance*neighbourhoodNormalizationFactors_[index])+Math.atan(distance*neighbourhoodNormalizationFactors_[j]))/2.0;
+			
+			row[j]=distance;
+		}
+		
+		return row;
+	}
+	
+	private double cosineDistance(CompactDataInstance dataInstance1, CompactDataInstance dataInstance2)
+	{
+		boolean useFeaturesForEvaluation=forEvaluation_ && dataInstance1.GetNumberOfFeaturesForEvaluation()>0;
+		if(!useFeaturesForEvaluation && dataInstance1.GetFeatureMatrix() instanceof CompactSparseFeatureMatrix &&
+				dataInstance2.GetFeatureMatrix()==dataInstance1.GetFeatureMatrix())
+			return ((CompactSparseFeatureMatrix)dataInstance1.GetFeatureMatrix()).CosineDistance(dataInstance1.GetFeatureRow(), dataInstance2.GetFeatureRow());
+		
+		int numberOfFeatures=useFeaturesForEvaluation?dataInstance1.GetNumberOfFeaturesForEvaluation():dataInstance1.GetNumberOfFeatures();
+		
+		double distance=0;
+		double temp1=0;
+		double temp2=0;
+		for(int k=0;k<numberOfFeatures;k++)
+		{
+			double feature1=useFeaturesForEvaluation?dataInstance1.GetFeatureForEvaluation(k):dataInstance1.GetFeature(k);
+			double feature2=useFeaturesForEvaluation?dataInstance2.GetFeatureForEvaluation(k):dataInstance2.GetFeature(k);
+			distance+=feature1*feature2;
+			temp1+=feature1*feature1;
+			temp2+=feature2*feature2;
+		}
+		if(temp1<1e-7)
+			temp1=1e-7;
+		if(temp2<1e-7)
+			temp2=1e-7;
+		
+		distance/=Math.sqrt(temp1);
+		distance/=Math.sqrt(temp2);
+		return 1-distance;
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class CompactMappedDistanceMatrix extends CompactWritableDistanceMatrix
+{
+	// File layout: a 64 byte header (with the size, the length and modification time of the source file, whether the conversion is complete and the class column options), one int class per row and then the condensed upper triangle (including the diagonal) as float32 values.
+	// The operating system pages the values in and out, so the matrix may be larger than the available memory.
+	private static final int CHUNK_SHIFT=27;
+	private static final int CHUNK_MASK=(1<<CHUNK_SHIFT)-1;
+	private static final long MAGIC=0x5247504449535432L;
+	private static final int HEADER_SIZE=64;
+	
+	private int size_;
+	private String fileName_;
+	private boolean isTemporary_;
+	private MappedByteBuffer header_;
+	private MappedByteBuffer mappedClasses_;
+	private IntBuffer classes_;
+	private MappedByteBuffer[] mappedChunks_;
+	private FloatBuffer[] chunks_;
+	
+	private CompactMappedDistanceMatrix(String fileName, int size) throws IOException
+	{
+		fileName_=fileName;
+		size_=size;
+		isTemporary_=false;
+		
+		long numberOfValues=((long)size*(size+1))/2;
+		long valuesPosition=HEADER_SIZE+4L*size;
+		
+		try(var file=new RandomAccessFile(fileName, "rw"); var fileChannel=file.getChannel())
+		{
+			file.setLength(valuesPosition+4*numberOfValues);
+			
+			header_=fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header_.order(ByteOrder.LITTLE_ENDIAN);
+			
+			mappedClasses_=fileChannel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, 4L*size);
+			classes_=mappedClasses_.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			
+			int numberOfChunks=(int)((numberOfValues+CHUNK_MASK)>>>CHUNK_SHIFT);
+			mappedChunks_=new MappedByteBuffer[numberOfChunks];
+			chunks_=new FloatBuffer[numberOfChunks];
+			for(int i=0;i<numberOfChunks;i++)
+			{
+				long chunkPosition=(long)i<<CHUNK_SHIFT;
+				long chunkSize=Math.min(1L<<CHUNK_SHIFT, numberOfValues-chunkPosition);
+				mappedChunks_[i]=fileChannel.map(FileChannel.MapMode.READ_WRITE, valuesPosition+4*chunkPosition, 4*chunkSize);
+				chunks_[i]=mappedChunks_[i].order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+			}
+		}
+	}
+	
+	/**
+	 * Creates a scratch matrix file which is deleted when the matrix is closed, or at the latest when the program exits.
+	 */
+	public static CompactMappedDistanceMatrix CreateTemporary(int size, String folderName) throws IOException
+	{
+		File folder=null;
+		if(folderName!=null)
+		{
+			folder=new File(folderName);
+			folder.mkdirs();
+		}
+		
+		var file=File.createTempFile("distances_", ".rgpdist", folder);
+		file.deleteOnExit();
+		
+		var distanceMatrix=new CompactMappedDistanceMatrix(file.getCanonicalPath(), size);
+		distanceMatrix.isTemporary_=true;
+		distanceMatrix.writeHeader(size, -1, -1, 0, false);
+		return distanceMatrix;
+	}
+	
+	/**
+	 * Creates a matrix file converted from the given source file with the given class column options. The file is only reused by OpenForSource after MarkComplete is called.
+	 */
+	public static CompactMappedDistanceMatrix CreateForSource(String fileName, int size, String sourceFileName, boolean isClassColumnFirst, boolean isClassColumnText) throws IOException
+	{
+		var sourceFile=new File(sourceFileName);
+		var distanceMatrix=new CompactMappedDistanceMatrix(fileName, size);
+		distanceMatrix.writeHeader(size, sourceFile.length(), sourceFile.lastModified(), parseOptions(isClassColumnFirst, isClassColumnText), false);
+		return distanceMatrix;
+	}
+	
+	/**
+	 * Opens a matrix file previously converted from the given source file with the given class column options.
+	 * Returns null if the file does not exist, its conversion did not finish, it was converted with other class column options or the source file has changed since.
+	 */
+	public static CompactMappedDistanceMatrix OpenForSource(String fileName, String sourceFileName, boolean isClassColumnFirst, boolean isClassColumnText) throws IOException
+	{
+		var file=new File(fileName);
+		var sourceFile=new File(sourceFileName);
+		if(!file.exists() || file.length()<HEADER_SIZE)
+			return null;
+		
+		int size;
+		try(var randomAccessFile=new RandomAccessFile(file, "r"); var fileChannel=randomAccessFile.getChannel())
+		{
+			var header=fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			
+			if(header.getLong(0)!=MAGIC)
+				return null;
+			
+			size=header.getInt(8);
+			
+			if(header.getLong(12)!=sourceFile.length() || header.getLong(20)!=sourceFile.lastModified() || header.getInt(28)!=1)
+				return null;
+			
+			if(header.getInt(32)!=parseOptions(isClassColumnFirst, isClassColumnText))
+				return null;
+			
+			if(file.length()!=HEADER_SIZE+4L*size+4*(((long)size*(size+1))/2))
+				return null;
+		}
+		
+		return new CompactMappedDistanceMatrix(fileName, size);
+	}
+	
+	private static int parseOptions(boolean isClassColumnFirst, boolean isClassColumnText)
+	{
+		return (isClassColumnFirst?1:0)|(isClassColumnText?2:0);
+	}
+	
+	private void writeHeader(int size, long sourceLength, long sourceLastModified, int parseOptions, boolean isComplete)
+	{
+		header_.putLong(0, MAGIC);
+		header_.putInt(8, size);
+		header_.putLong(12, sourceLength);
+		header_.putLong(20, sourceLastModified);
+		header_.putInt(28, isComplete?1:0);
+		header_.putInt(32, parseOptions);
+	}
+	
+	public void MarkComplete()
+	{
+		mappedClasses_.force();
+		for(int i=0;i<mappedChunks_.length;i++)
+			mappedChunks_[i].force();
+		
+		header_.putInt(28, 1);
+		header_.force();
+	}
+	
+	public String GetFileName()
+	{
+		return fileName_;
+	}
+	
+	public int GetClass(int index)
+	{
+		return classes_.get(index);
+	}
+	
+	public void SetClass(int index, int classNumber)
+	{
+		classes_.put(index, classNumber);
+	}
+	
+	private long valueIndex(int index1, int index2)
+	{
+		if(index1>index2)
+		{
+			int temp=index1;
+			index1=index2;
+			index2=temp;
+		}
+		
+		return (long)index1*size_-((long)index1*(index1-1))/2+(index2-index1);
+	}
+	
+	@Override
+	public int GetSize()
+	{
+		return size_;
+	}
+	
+	@Override
+	public double Get(int index1, int index2)
+	{
+		long valueIndex=valueIndex(index1, index2);
+		return chunks_[(int)(valueIndex>>>CHUNK_SHIFT)].get((int)(valueIndex&CHUNK_MASK));
+	}
+	
+	@Override
+	public void Set(int index1, int index2, double distance)
+	{
+		long valueIndex=valueIndex(index1, index2);
+		chunks_[(int)(valueIndex>>>CHUNK_SHIFT)].put((int)(valueIndex&CHUNK_MASK), (float)distance);
+	}
+	
+	@Override
+	public boolean IsSymmetric()
+	{
+		return true;
+	}
+	
+	@Override
+	public long GetSizeInBytes()
+	{
+		return HEADER_SIZE+4L*size_+4*(((long)size_*(size_+1))/2);
+	}
+	
+	/**
+	 * Drops the mappings and deletes the file of a scratch matrix. A file converted from a source file is kept for later runs.
+	 * The mapped pages are unmapped by the garbage collector, but the space of a deleted file is given back once they are.
+	 */
+	@Override
+	public void Close()
+	{
+		header_=null;
+		mappedClasses_=null;
+		classes_=null;
+		mappedChunks_=null;
+		chunks_=null;
+		
+		if(isTemporary_)
+			new File(fileName_).delete();
+	}
+}
@@ -0,0 +1,384 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+
+/**
+ * A NumPy .npy file (format versions 1 to 3) of numbers, read through a memory mapped file channel.
+ * The values are read in bulk into primitive arrays, converted only when the type of the file is not the type of the array.
+ * WriteFloats and WriteDoubles write a two dimensional array row by row through a file channel, so the whole array never has to be in memory.
+ */
+public class CompactNpyFile
+{
+	private static final int WINDOW_SIZE=64*1024*1024;
+	private static final int WRITE_BUFFER_SIZE=1024*1024;
+	private static final int HEADER_ALIGNMENT=64;
+	private static final Pattern DESCRIPTION_PATTERN=Pattern.compile("'descr'\\s*:\\s*'([^']*)'");
+	private static final Pattern FORTRAN_ORDER_PATTERN=Pattern.compile("'fortran_order'\\s*:\\s*(True|False)");
+	private static final Pattern SHAPE_PATTERN=Pattern.compile("'shape'\\s*:\\s*\\(([^)]*)\\)");
+	
+	private RandomAccessFile file_;
+	private FileChannel fileChannel_;
+	private char dataType_;
+	private int itemSize_;
+	private ByteOrder byteOrder_;
+	private boolean isFortranOrder_;
+	private long[] shape_;
+	private long dataOffset_;
+	
+	private MappedByteBuffer window_;
+	private long windowStart_;
+	private long windowEnd_;
+	
+	private CompactNpyFile()
+	{
+	}
+	
+	public static CompactNpyFile Open(String fileName) throws IOException
+	{
+		var npyFile=new CompactNpyFile();
+		npyFile.file_=new RandomAccessFile(fileName, "r");
+		npyFile.fileChannel_=npyFile.file_.getChannel();
+		
+		try
+		{
+			npyFile.readHeader(fileName);
+		}
+		catch (IOException e)
+		{
+			npyFile.Close();
+			throw e;
+		}
+		
+		return npyFile;
+	}
+	
+	public interface RowSource
+	{
+		void GetRow(int row, double[] values);
+	}
+	
+	/**
+	 * Writes a C order little-endian float32 array (format version 1) of numberOfRows rows, asking rowSource for the rows one after the other.
+	 */
+	public static void WriteFloats(String fileName, int numberOfRows, int numberOfColumns, RowSource rowSource) throws IOException
+	{
+		write(fileName, numberOfRows, numberOfColumns, rowSource, true);
+	}
+	
+	/**
+	 * The same as WriteFloats, with float64 values.
+	 */
+	public static void WriteDoubles(String fileName, int numberOfRows, int numberOfColumns, RowSource rowSource) throws IOException
+	{
+		write(fileName, numberOfRows, numberOfColumns, rowSource, false);
+	}
+	
+	private static void write(String fileName, int numberOfRows, int numberOfColumns, RowSource rowSource, boolean isFloat32) throws IOException
+	{
+		var header=new StringBuilder("{'descr': '"+(isFloat32?"<f4":"<f8")+"', 'fortran_order': False, 'shape': ("+numberOfRows+", "+numberOfColumns+"), }");
+		while((10+header.length()+1)%HEADER_ALIGNMENT!=0)
+			header.append(' ');
+		header.append('\n');
+		
+		int itemSize=isFloat32?Float.BYTES:Double.BYTES;
+		
+		try(var fileChannel=FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+		{
+			var buffer=ByteBuffer.allocateDirect(Math.max(WRITE_BUFFER_SIZE, 10+header.length())).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.put((byte)0x93).put("NUMPY".getBytes(StandardCharsets.ISO_8859_1)).put((byte)1).put((byte)0);
+			buffer.putShort((short)header.length());
+			buffer.put(header.toString().getBytes(StandardCharsets.ISO_8859_1));
+			
+			var row=new double[numberOfColumns];
+			for(int i=0;i<numberOfRows;i++)
+			{
+				rowSource.GetRow(i, row);
+				for(int j=0;j<numberOfColumns;j++)
+				{
+					if(buffer.remaining()<itemSize)
+						writeBuffer(fileChannel, buffer);
+					if(isFloat32)
+						buffer.putFloat((float)row[j]);
+					else
+						buffer.putDouble(row[j]);
+				}
+			}
+			writeBuffer(fileChannel, buffer);
+		}
+	}
+	
+	private static void writeBuffer(FileChannel fileChannel, ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
+		while(buffer.hasRemaining())
+			fileChannel.write(buffer);
+		buffer.clear();
+	}
+	
+	public void Close() throws IOException
+	{
+		window_=null;
+		fileChannel_.close();
+		file_.close();
+	}
+	
+	private void readHeader(String fileName) throws IOException
+	{
+		var preamble=ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+		fileChannel_.read(preamble, 0);
+		preamble.flip();
+		
+		if(preamble.remaining()<10 || (preamble.get(0)&0xff)!=0x93 || preamble.get(1)!='N' || preamble.get(2)!='U' || preamble.get(3)!='M' || preamble.get(4)!='P' || preamble.get(5)!='Y')
+			throw new IOException("Not a npy file: "+fileName);
+		
+		int majorVersion=preamble.get(6);
+		long headerLength;
+		int headerStart;
+		if(majorVersion==1)
+		{
+			headerLength=preamble.getShort(8)&0xffff;
+			headerStart=10;
+		}
+		else if(preamble.remaining()>=12)
+		{
+			headerLength=preamble.getInt(8)&0xffffffffL;
+			headerStart=12;
+		}
+		else
+			throw new IOException("Not a npy file: "+fileName);
+		
+		if(headerLength>1024*1024)
+			throw new IOException("Bad npy header: "+fileName);
+		
+		var headerBuffer=ByteBuffer.allocate((int)headerLength);
+		fileChannel_.read(headerBuffer, headerStart);
+		String header=new String(headerBuffer.array(), 0, headerBuffer.position(), majorVersion>=3?StandardCharsets.UTF_8:StandardCharsets.ISO_8859_1);
+		dataOffset_=headerStart+headerLength;
+		
+		var descriptionMatcher=DESCRIPTION_PATTERN.matcher(header);
+		var fortranOrderMatcher=FORTRAN_ORDER_PATTERN.matcher(header);
+		var shapeMatcher=SHAPE_PATTERN.matcher(header);
+		if(!descriptionMatcher.find() || !fortranOrderMatcher.find() || !shapeMatcher.find())
+			throw new IOException("Bad npy header: "+fileName);
+		
+		String description=descriptionMatcher.group(1);
+		if(description.length()<3)
+			throw new IOException("Unsupported npy data type: "+description);
+		
+		char byteOrder=description.charAt(0);
+		if(byteOrder=='>')
+			byteOrder_=ByteOrder.BIG_ENDIAN;
+		else if(byteOrder=='<' || byteOrder=='|')
+			byteOrder_=ByteOrder.LITTLE_ENDIAN;
+		else if(byteOrder=='=')
+			byteOrder_=ByteOrder.nativeOrder();
+		else
+			throw new IOException("Unsupported npy data type: "+description);
+		
+		dataType_=description.charAt(1);
+		try
+		{
+			itemSize_=Integer.parseInt(description.substring(2));
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IOException("Unsupported npy data type: "+description);
+		}
+		
+		boolean isSupported=false;
+		if(dataType_=='f')
+			isSupported=itemSize_==4 || itemSize_==8;
+		else if(dataType_=='i' || dataType_=='u')
+			isSupported=itemSize_==1 || itemSize_==2 || itemSize_==4 || itemSize_==8;
+		else if(dataType_=='b')
+			isSupported=itemSize_==1;
+		if(!isSupported)
+			throw new IOException("Unsupported npy data type: "+description);
+		
+		isFortranOrder_=fortranOrderMatcher.group(1).compareTo("True")==0;
+		
+		var dimensions=shapeMatcher.group(1).split(",");
+		int numberOfDimensions=0;
+		for(var dimension : dimensions)
+			if(dimension.trim().length()>0)
+				numberOfDimensions++;
+		
+		shape_=new long[numberOfDimensions];
+		numberOfDimensions=0;
+		for(var dimension : dimensions)
+			if(dimension.trim().length()>0)
+				shape_[numberOfDimensions++]=Long.parseLong(dimension.trim().replace("L", ""));
+		
+		if(dataOffset_+GetNumberOfElements()*itemSize_>fileChannel_.size())
+			throw new IOException("The npy file is shorter than its shape: "+fileName);
+	}
+	
+	public int GetNumberOfDimensions()
+	{
+		return shape_.length;
+	}
+	
+	public long GetDimension(int dimension)
+	{
+		return shape_[dimension];
+	}
+	
+	public long GetNumberOfElements()
+	{
+		long numberOfElements=1;
+		for(long dimension : shape_)
+			numberOfElements*=dimension;
+		return numberOfElements;
+	}
+	
+	/**
+	 * The number of rows of a one or two dimensional array.
+	 */
+	public int GetNumberOfRows() throws IOException
+	{
+		if(shape_.length==0 || shape_.length>2 || shape_[0]>Integer.MAX_VALUE)
+			throw new IOException("Expected a one or two dimensional npy array");
+		return (int)shape_[0];
+	}
+	
+	/**
+	 * The number of columns of a two dimensional array, 1 for a one dimensional array.
+	 */
+	public int GetNumberOfColumns() throws IOException
+	{
+		GetNumberOfRows();
+		if(shape_.length==1)
+			return 1;
+		if(shape_[1]>Integer.MAX_VALUE)
+			throw new IOException("Expected a one or two dimensional npy array");
+		return (int)shape_[1];
+	}
+	
+	/**
+	 * In Fortran order the first index changes fastest, so the elements of a two dimensional array are stored column by column.
+	 */
+	public boolean IsFortranOrder()
+	{
+		return isFortranOrder_;
+	}
+	
+	public boolean IsFloat32()
+	{
+		return dataType_=='f' && itemSize_==4;
+	}
+	
+	public boolean IsFloat64()
+	{
+		return dataType_=='f' && itemSize_==8;
+	}
+	
+	/**
+	 * Reads count elements in the order of the file, starting at the given element.
+	 */
+	public void ReadDoubles(long firstElement, double[] destination, int offset, int count) throws IOException
+	{
+		while(count>0)
+		{
+			int numberOfElements=mapWindow(firstElement, count);
+			var buffer=window_.duplicate().order(byteOrder_);
+			buffer.position((int)(dataOffset_+firstElement*itemSize_-windowStart_));
+			
+			if(IsFloat64())
+				buffer.asDoubleBuffer().get(destination, offset, numberOfElements);
+			else
+				for(int k=0;k<numberOfElements;k++)
+					destination[offset+k]=getElement(buffer, buffer.position()+k*itemSize_);
+			
+			firstElement+=numberOfElements;
+			offset+=numberOfElements;
+			count-=numberOfElements;
+		}
+	}
+	
+	/**
+	 * Reads count elements in the order of the file, starting at the given element.
+	 */
+	public void ReadFloats(long firstElement, float[] destination, int offset, int count) throws IOException
+	{
+		while(count>0)
+		{
+			int numberOfElements=mapWindow(firstElement, count);
+			var buffer=window_.duplicate().order(byteOrder_);
+			buffer.position((int)(dataOffset_+firstElement*itemSize_-windowStart_));
+			
+			if(IsFloat32())
+				buffer.asFloatBuffer().get(destination, offset, numberOfElements);
+			else
+				for(int k=0;k<numberOfElements;k++)
+					destination[offset+k]=(float)getElement(buffer, buffer.position()+k*itemSize_);
+			
+			firstElement+=numberOfElements;
+			offset+=numberOfElements;
+			count-=numberOfElements;
+		}
+	}
+	
+	/**
+	 * Maps a window of the file which starts at or before the given element, reusing the current window if the element is in it,
+	 * and returns how many of the requested elements are in the window.
+	 */
+	private int mapWindow(long firstElement, int count) throws IOException
+	{
+		long start=dataOffset_+firstElement*itemSize_;
+		
+		if(window_==null || start<windowStart_ || start+itemSize_>windowEnd_)
+		{
+			long remaining=fileChannel_.size()-start;
+			long size=Math.min(remaining, Math.max(WINDOW_SIZE, Math.min((long)count*itemSize_, Integer.MAX_VALUE-7)));
+			size-=size%itemSize_;
+			window_=fileChannel_.map(FileChannel.MapMode.READ_ONLY, start, size);
+			windowStart_=start;
+			windowEnd_=start+size;
+		}
+		
+		return (int)Math.min(count, (windowEnd_-start)/itemSize_);
+	}
+	
+	private double getElement(ByteBuffer buffer, int position)
+	{
+		if(dataType_=='f')
+			return itemSize_==4?buffer.getFloat(position):buffer.getDouble(position);
+		
+		if(dataType_=='b')
+			return buffer.get(position)!=0?1:0;
+		
+		boolean isUnsigned=dataType_=='u';
+		if(itemSize_==1)
+			return isUnsigned?(buffer.get(position)&0xff):buffer.get(position);
+		if(itemSize_==2)
+			return isUnsigned?(buffer.getShort(position)&0xffff):buffer.getShort(position);
+		if(itemSize_==4)
+			return isUnsigned?(buffer.getInt(position)&0xffffffffL):buffer.getInt(position);
+		
+		long value=buffer.getLong(position);
+		if(isUnsigned && value<0)
+			return (value>>>1)*2.0+(value&1);
+		return value;
+	}
+}
@@ -0,0 +1,708 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reduces the data instances to a few dimensions in the program before the projection, as an alternative to the UMAP script of CompactScriptRunner.
+ * Features are reduced with PCA and dissimilarities with classical MDS, both computed with a randomized SVD (Halko, Martinsson and Tropp):
+ * the range of the matrix is found by multiplying it by a random gaussian matrix with a few power iterations, and an exact SVD is computed in that small range.
+ * The reduced data instance set has the reduced coordinates as features and the original features (or dissimilarity rows) as features for evaluation,
+ * like the data instance set ReadExternalProjectedDataSetAsInput reads from the output of the script.
+ */
+public class CompactPreReduction
+{
+	private static final int OVERSAMPLING=10;
+	private static final int NUMBER_OF_POWER_ITERATIONS=4;
+	private static final int ROWS_PER_TASK=64;
+	
+	public static CompactDataInstanceSet ReduceWithPca(CompactDataInstanceSet dataInstanceSet, int numberOfDimensions, int maxRows, CompactFeatureStorage featureStorage, int numberOfThreads, long seed)
+	{
+		var forkJoinPool=new ForkJoinPool(Math.max(1, numberOfThreads));
+		try
+		{
+			var embedding=ComputePcaEmbedding(dataInstanceSet, numberOfDimensions, seed, forkJoinPool);
+			numberOfDimensions=embedding.length/Math.max(1, dataInstanceSet.GetDataInstances().size());
+			
+			return CreateReducedDataInstanceSet(dataInstanceSet, embedding, numberOfDimensions, maxRows, featureStorage);
+		}
+		finally
+		{
+			forkJoinPool.shutdown();
+		}
+	}
+	
+	/**
+	 * The PCA (or classical MDS) embedding of all the data instances, row-major. It has fewer than numberOfDimensions values per data instance
+	 * when there are fewer features or data instances than that, so the number of dimensions is the length of the result divided by the number of data instances.
+	 */
+	public static double[] ComputePcaEmbedding(CompactDataInstanceSet dataInstanceSet, int numberOfDimensions, long seed, ForkJoinPool forkJoinPool)
+	{
+		LinearOperator linearOperator=null;
+		if(dataInstanceSet.GetUseDissimilarityInsteadOfDistance())
+			linearOperator=new DoubleCenteredSquaredDissimilarities(dataInstanceSet, forkJoinPool);
+		else if(CompactSparseInvertedIndex.IsApplicable(dataInstanceSet.GetDataInstances()))
+			linearOperator=new CenteredSparseFeatures((CompactSparseFeatureMatrix)dataInstanceSet.GetDataInstances().get(0).GetFeatureMatrix(), dataInstanceSet.GetDataInstances().size(), forkJoinPool);
+		else
+			linearOperator=new CenteredDenseFeatures(dataInstanceSet, forkJoinPool);
+		
+		numberOfDimensions=Math.min(numberOfDimensions, Math.min(linearOperator.GetNumberOfRows(), linearOperator.GetNumberOfColumns()));
+		
+		return randomizedSvdEmbedding(linearOperator, numberOfDimensions, seed, dataInstanceSet.GetUseDissimilarityInsteadOfDistance(), forkJoinPool);
+	}
+	
+	/**
+	 * The reduced data instance set for an embedding with numberOfDimensions values per data instance: the embedding as features and the original features,
+	 * or the dissimilarity rows for a dissimilarity input, as features for evaluation. Only the first maxRows data instances are kept, unless maxRows is -1.
+	 */
+	public static CompactDataInstanceSet CreateReducedDataInstanceSet(CompactDataInstanceSet dataInstanceSet, double[] embedding, int numberOfDimensions, int maxRows, CompactFeatureStorage featureStorage)
+	{
+		var reducedDataInstanceSet=CreateReducedDataInstanceSet(dataInstanceSet, maxRows, featureStorage);
+		SetReducedFeatures(reducedDataInstanceSet, embedding, numberOfDimensions, featureStorage);
+		return reducedDataInstanceSet;
+	}
+	
+	/**
+	 * The reduced data instance set before its embedding is known: the classes and the features for evaluation, without features.
+	 * Everything which depends only on the features for evaluation can be computed on it while the embedding is computed, and SetReducedFeatures completes it.
+	 */
+	public static CompactDataInstanceSet CreateReducedDataInstanceSet(CompactDataInstanceSet dataInstanceSet, int maxRows, CompactFeatureStorage featureStorage)
+	{
+		var dataInstances=dataInstanceSet.GetDataInstances();
+		int size=dataInstances.size();
+		int numberOfRows=maxRows!=-1?Math.min(maxRows, size):size;
+		
+		var reducedDataInstanceSet=new CompactDataInstanceSet();
+		var reducedDataInstances=reducedDataInstanceSet.GetDataInstances();
+		for(int i=0;i<numberOfRows;i++)
+		{
+			var dataInstance=new CompactDataInstance();
+			dataInstance.GetClasses().addAll(dataInstances.get(i).GetClasses());
+			reducedDataInstances.add(dataInstance);
+		}
+		
+		var featureMatrix=dataInstanceSet.GetFeatureMatrix();
+		boolean isFeatureMatrixShared=!dataInstanceSet.GetUseDissimilarityInsteadOfDistance() && featureMatrix!=null && featureMatrix.GetNumberOfRows()==numberOfRows;
+		for(int i=0;i<size && isFeatureMatrixShared;i++)
+			if(dataInstances.get(i).GetFeatureMatrix()!=featureMatrix || dataInstances.get(i).GetFeatureRow()!=i)
+				isFeatureMatrixShared=false;
+		
+		if(isFeatureMatrixShared)
+			reducedDataInstanceSet.SetFeatureMatrixForEvaluation(featureMatrix);
+		else
+		{
+			var featureMatrixForEvaluationBuilder=new CompactFeatureMatrixBuilder(featureStorage);
+			var features=new double[0];
+			for(int i=0;i<numberOfRows;i++)
+			{
+				var dataInstance=dataInstances.get(i);
+				int numberOfFeatures=dataInstanceSet.GetUseDissimilarityInsteadOfDistance()?size:dataInstance.GetNumberOfFeatures();
+				if(features.length<numberOfFeatures)
+					features=new double[numberOfFeatures];
+				
+				if(dataInstanceSet.GetUseDissimilarityInsteadOfDistance())
+					for(int j=0;j<size;j++)
+						features[j]=dataInstanceSet.GetDisSimilarity(i, j);
+				else
+					for(int j=0;j<numberOfFeatures;j++)
+						features[j]=dataInstance.GetFeature(j);
+				
+				featureMatrixForEvaluationBuilder.AddRow(features, numberOfFeatures);
+			}
+			reducedDataInstanceSet.SetFeatureMatrixForEvaluation(featureMatrixForEvaluationBuilder.Build());
+		}
+		
+		reducedDataInstanceSet.SetClassNames(dataInstanceSet.GetClassNames());
+		
+		return reducedDataInstanceSet;
+	}
+	
+	/**
+	 * Sets the first rows of the embedding (numberOfDimensions values per row, at least one row per data instance) as the features of a reduced data instance set.
+	 */
+	public static void SetReducedFeatures(CompactDataInstanceSet reducedDataInstanceSet, double[] embedding, int numberOfDimensions, CompactFeatureStorage featureStorage)
+	{
+		int numberOfRows=reducedDataInstanceSet.GetDataInstances().size();
+		
+		var featureMatrixBuilder=new CompactFeatureMatrixBuilder(featureStorage);
+		var row=new double[numberOfDimensions];
+		for(int i=0;i<numberOfRows;i++)
+		{
+			System.arraycopy(embedding, i*numberOfDimensions, row, 0, numberOfDimensions);
+			featureMatrixBuilder.AddRow(row, numberOfDimensions);
+		}
+		reducedDataInstanceSet.SetFeatureMatrix(featureMatrixBuilder.Build());
+	}
+	
+	/**
+	 * The rows of the embedding (row-major, numberOfDimensions values per row). For PCA these are the scores U*S of the centered features.
+	 * For classical MDS the matrix is symmetric and its eigenvalues are the Rayleigh quotients of the singular vectors, so the embedding is U*sqrt(max(eigenvalue, 0)).
+	 * The sign of each dimension is chosen so its entry of largest magnitude is positive.
+	 */
+	private static double[] randomizedSvdEmbedding(LinearOperator linearOperator, int numberOfDimensions, long seed, boolean isSymmetric, ForkJoinPool forkJoinPool)
+	{
+		int numberOfRows=linearOperator.GetNumberOfRows();
+		int numberOfColumns=linearOperator.GetNumberOfColumns();
+		int rank=Math.min(numberOfDimensions+OVERSAMPLING, Math.min(numberOfRows, numberOfColumns));
+		
+		var random=new Random(seed);
+		var omega=new double[numberOfColumns*rank];
+		for(int i=0;i<omega.length;i++)
+			omega[i]=random.nextGaussian();
+		
+		var y=new double[numberOfRows*rank];
+		var z=new double[numberOfColumns*rank];
+		
+		linearOperator.Multiply(omega, rank, y);
+		orthonormalizeColumns(y, numberOfRows, rank);
+		for(int iteration=0;iteration<NUMBER_OF_POWER_ITERATIONS;iteration++)
+		{
+			linearOperator.MultiplyTransposed(y, rank, z);
+			orthonormalizeColumns(z, numberOfColumns, rank);
+			linearOperator.Multiply(z, rank, y);
+			orthonormalizeColumns(y, numberOfRows, rank);
+		}
+		
+		// B=Q^T*A is rank by numberOfColumns, computed as (A^T*Q)^T. Its left singular vectors are the eigenvectors of B*B^T.
+		linearOperator.MultiplyTransposed(y, rank, z);
+		var gram=new double[rank*rank];
+		for(int p=0;p<rank;p++)
+			for(int q=p;q<rank;q++)
+			{
+				double sum=0;
+				for(int j=0;j<numberOfColumns;j++)
+					sum+=z[j*rank+p]*z[j*rank+q];
+				gram[p*rank+q]=sum;
+				gram[q*rank+p]=sum;
+			}
+		
+		var eigenvalues=new double[rank];
+		var eigenvectors=new double[rank*rank];
+		SymmetricEigenDecomposition(gram, rank, eigenvalues, eigenvectors);
+		
+		// U=Q*U_B for the leading dimensions.
+		var u=new double[numberOfRows*numberOfDimensions];
+		forkJoinPool.invoke(new RangeTask(0, numberOfRows, (start, end)->
+		{
+			for(int i=start;i<end;i++)
+				for(int c=0;c<numberOfDimensions;c++)
+				{
+					double sum=0;
+					for(int p=0;p<rank;p++)
+						sum+=y[i*rank+p]*eigenvectors[p*rank+c];
+					u[i*numberOfDimensions+c]=sum;
+				}
+		}));
+		
+		var scales=new double[numberOfDimensions];
+		if(isSymmetric)
+		{
+			var au=new double[numberOfRows*numberOfDimensions];
+			linearOperator.Multiply(u, numberOfDimensions, au);
+			for(int c=0;c<numberOfDimensions;c++)
+			{
+				double eigenvalue=0;
+				for(int i=0;i<numberOfRows;i++)
+					eigenvalue+=u[i*numberOfDimensions+c]*au[i*numberOfDimensions+c];
+				scales[c]=Math.sqrt(Math.max(eigenvalue, 0));
+			}
+		}
+		else
+			for(int c=0;c<numberOfDimensions;c++)
+				scales[c]=Math.sqrt(Math.max(eigenvalues[c], 0));
+		
+		for(int c=0;c<numberOfDimensions;c++)
+		{
+			int largest=0;
+			for(int i=1;i<numberOfRows;i++)
+				if(Math.abs(u[i*numberOfDimensions+c])>Math.abs(u[largest*numberOfDimensions+c]))
+					largest=i;
+			if(u[largest*numberOfDimensions+c]<0)
+				scales[c]=-scales[c];
+		}
+		
+		for(int i=0;i<numberOfRows;i++)
+			for(int c=0;c<numberOfDimensions;c++)
+				u[i*numberOfDimensions+c]*=scales[c];
+		
+		return u;
+	}
+	
+	/**
+	 * Modified Gram-Schmidt on the columns of a row-major matrix, done twice for accuracy. A column which is (numerically) in the span of the previous ones becomes zero.
+	 */
+	private static void orthonormalizeColumns(double[] matrix, int numberOfRows, int numberOfColumns)
+	{
+		var columns=new double[numberOfColumns][numberOfRows];
+		for(int i=0;i<numberOfRows;i++)
+			for(int c=0;c<numberOfColumns;c++)
+				columns[c][i]=matrix[i*numberOfColumns+c];
+		
+		for(int c=0;c<numberOfColumns;c++)
+		{
+			var column=columns[c];
+			double originalNorm=Math.sqrt(dotProduct(column, column));
+			
+			for(int pass=0;pass<2;pass++)
+				for(int p=0;p<c;p++)
+				{
+					double projection=dotProduct(columns[p], column);
+					var previousColumn=columns[p];
+					for(int i=0;i<numberOfRows;i++)
+						column[i]-=projection*previousColumn[i];
+				}
+			
+			double norm=Math.sqrt(dotProduct(column, column));
+			double scale=norm>1e-12*originalNorm && norm>0?1/norm:0;
+			for(int i=0;i<numberOfRows;i++)
+				column[i]*=scale;
+		}
+		
+		for(int i=0;i<numberOfRows;i++)
+			for(int c=0;c<numberOfColumns;c++)
+				matrix[i*numberOfColumns+c]=columns[c][i];
+	}
+	
+	private static double dotProduct(double[] vector1, double[] vector2)
+	{
+		double sum=0;
+		for(int i=0;i<vector1.length;i++)
+			sum+=vector1[i]*vector2[i];
+		return sum;
+	}
+	
+	/**
+	 * Cyclic Jacobi eigenvalue algorithm for a small symmetric matrix (row-major, overwritten). The eigenvalues are sorted in decreasing order
+	 * and the eigenvector of eigenvalue c is column c of the eigenvectors matrix.
+	 */
+	public static void SymmetricEigenDecomposition(double[] matrix, int size, double[] eigenvalues, double[] eigenvectors)
+	{
+		var a=matrix;
+		var v=new double[size*size];
+		for(int i=0;i<size;i++)
+			v[i*size+i]=1;
+		
+		for(int sweep=0;sweep<100;sweep++)
+		{
+			double offDiagonal=0;
+			double diagonal=0;
+			for(int p=0;p<size;p++)
+			{
+				diagonal+=a[p*size+p]*a[p*size+p];
+				for(int q=p+1;q<size;q++)
+					offDiagonal+=a[p*size+q]*a[p*size+q];
+			}
+			if(offDiagonal<=1e-30*diagonal || offDiagonal==0)
+				break;
+			
+			for(int p=0;p<size;p++)
+				for(int q=p+1;q<size;q++)
+				{
+					double apq=a[p*size+q];
+					if(apq==0)
+						continue;
+					
+					double theta=(a[q*size+q]-a[p*size+p])/(2*apq);
+					double t=(theta>=0?1:-1)/(Math.abs(theta)+Math.sqrt(theta*theta+1));
+					double c=1/Math.sqrt(t*t+1);
+					double s=t*c;
+					
+					for(int k=0;k<size;k++)
+					{
+						double akp=a[k*size+p];
+						double akq=a[k*size+q];
+						a[k*size+p]=c*akp-s*akq;
+						a[k*size+q]=s*akp+c*akq;
+					}
+					for(int k=0;k<size;k++)
+					{
+						double apk=a[p*size+k];
+						double aqk=a[q*size+k];
+						a[p*size+k]=c*apk-s*aqk;
+						a[q*size+k]=s*apk+c*aqk;
+					}
+					for(int k=0;k<size;k++)
+					{
+						double vkp=v[k*size+p];
+						double vkq=v[k*size+q];
+						v[k*size+p]=c*vkp-s*vkq;
+						v[k*size+q]=s*vkp+c*vkq;
+					}
+				}
+		}
+		
+		var order=new Integer[size];
+		for(int i=0;i<size;i++)
+			order[i]=i;
+		Arrays.sort(order, (i, j)->Double.compare(a[j*size+j], a[i*size+i]));
+		
+		for(int c=0;c<size;c++)
+		{
+			eigenvalues[c]=a[order[c]*size+order[c]];
+			for(int k=0;k<size;k++)
+				eigenvectors[k*size+c]=v[k*size+order[c]];
+		}
+	}
+	
+	/**
+	 * A matrix given by its products with row-major matrices of a few columns.
+	 */
+	private interface LinearOperator
+	{
+		int GetNumberOfRows();
+		
+		int GetNumberOfColumns();
+		
+		/**
+		 * result=A*matrix, for a matrix of GetNumberOfColumns() rows and the given number of columns.
+		 */
+		void Multiply(double[] matrix, int numberOfColumns, double[] result);
+		
+		/**
+		 * result=A^T*matrix, for a matrix of GetNumberOfRows() rows and the given number of columns.
+		 */
+		void MultiplyTransposed(double[] matrix, int numberOfColumns, double[] result);
+	}
+	
+	/**
+	 * The features minus their means. The products are computed from the features and corrected for the means, so the centered matrix is not stored.
+	 */
+	private static class CenteredDenseFeatures implements LinearOperator
+	{
+		private double[] values_;
+		private int numberOfRows_;
+		private int numberOfFeatures_;
+		private double[] means_;
+		private ForkJoinPool forkJoinPool_;
+		
+		public CenteredDenseFeatures(CompactDataInstanceSet dataInstanceSet, ForkJoinPool forkJoinPool)
+		{
+			var dataInstances=dataInstanceSet.GetDataInstances();
+			numberOfRows_=dataInstances.size();
+			numberOfFeatures_=numberOfRows_>0?dataInstances.get(0).GetNumberOfFeatures():0;
+			forkJoinPool_=forkJoinPool;
+			
+			// When the data instances are the rows of one matrix of doubles in the same order, its array is used as it is.
+			var featureMatrix=dataInstanceSet.GetFeatureMatrix();
+			boolean isSharedMatrix=featureMatrix instanceof CompactDenseFeatureMatrix && ((CompactDenseFeatureMatrix)featureMatrix).GetDoubleValues()!=null &&
+					featureMatrix.GetNumberOfRows()==numberOfRows_;
+			for(int i=0;i<numberOfRows_ && isSharedMatrix;i++)
+				isSharedMatrix=dataInstances.get(i).GetFeatureMatrix()==featureMatrix && dataInstances.get(i).GetFeatureRow()==i;
+			
+			if(isSharedMatrix)
+				values_=((CompactDenseFeatureMatrix)featureMatrix).GetDoubleValues();
+			else
+			{
+				values_=new double[numberOfRows_*numberOfFeatures_];
+				for(int i=0;i<numberOfRows_;i++)
+					for(int f=0;f<numberOfFeatures_;f++)
+						values_[i*numberOfFeatures_+f]=dataInstances.get(i).GetFeature(f);
+			}
+			
+			means_=new double[numberOfFeatures_];
+			for(int i=0;i<numberOfRows_;i++)
+				for(int f=0;f<numberOfFeatures_;f++)
+					means_[f]+=values_[i*numberOfFeatures_+f];
+			for(int f=0;f<numberOfFeatures_;f++)
+				means_[f]/=Math.max(1, numberOfRows_);
+		}
+		
+		@Override
+		public int GetNumberOfRows()
+		{
+			return numberOfRows_;
+		}
+		
+		@Override
+		public int GetNumberOfColumns()
+		{
+			return numberOfFeatures_;
+		}
+		
+		@Override
+		public void Multiply(double[] matrix, int numberOfColumns, double[] result)
+		{
+			var meanProducts=new double[numberOfColumns];
+			for(int f=0;f<numberOfFeatures_;f++)
+				for(int c=0;c<numberOfColumns;c++)
+					meanProducts[c]+=means_[f]*matrix[f*numberOfColumns+c];
+			
+			forkJoinPool_.invoke(new RangeTask(0, numberOfRows_, (start, end)->
+			{
+				for(int i=start;i<end;i++)
+				{
+					int offset=i*numberOfColumns;
+					for(int c=0;c<numberOfColumns;c++)
+						result[offset+c]=-meanProducts[c];
+					for(int f=0;f<numberOfFeatures_;f++)
+					{
+						double value=values_[i*numberOfFeatures_+f];
+						if(value==0)
+							continue;
+						for(int c=0;c<numberOfColumns;c++)
+							result[offset+c]+=value*matrix[f*numberOfColumns+c];
+					}
+				}
+			}));
+		}
+		
+		@Override
+		public void MultiplyTransposed(double[] matrix, int numberOfColumns, double[] result)
+		{
+			var columnSums=new double[numberOfColumns];
+			for(int i=0;i<numberOfRows_;i++)
+				for(int c=0;c<numberOfColumns;c++)
+					columnSums[c]+=matrix[i*numberOfColumns+c];
+			
+			// Each task owns a range of features, so the sums over the rows are in the same order whatever the number of threads.
+			forkJoinPool_.invoke(new RangeTask(0, numberOfFeatures_, (start, end)->
+			{
+				for(int f=start;f<end;f++)
+					for(int c=0;c<numberOfColumns;c++)
+						result[f*numberOfColumns+c]=-means_[f]*columnSums[c];
+				
+				for(int i=0;i<numberOfRows_;i++)
+				{
+					int offset=i*numberOfColumns;
+					for(int f=start;f<end;f++)
+					{
+						double value=values_[i*numberOfFeatures_+f];
+						if(value==0)
+							continue;
+						for(int c=0;c<numberOfColumns;c++)
+							result[f*numberOfColumns+c]+=value*matrix[offset+c];
+					}
+				}
+			}));
+		}
+	}
+	
+	/**
+	 * The sparse features minus their means, without making the matrix dense. The transposed products go through a transposed copy of the matrix.
+	 */
+	private static class CenteredSparseFeatures implements LinearOperator
+	{
+		private CompactSparseFeatureMatrix featureMatrix_;
+		private int numberOfRows_;
+		private int numberOfFeatures_;
+		private int[] columnStarts_;
+		private int[] rowIndices_;
+		private double[] columnValues_;
+		private double[] means_;
+		private ForkJoinPool forkJoinPool_;
+		
+		public CenteredSparseFeatures(CompactSparseFeatureMatrix featureMatrix, int numberOfRows, ForkJoinPool forkJoinPool)
+		{
+			featureMatrix_=featureMatrix;
+			numberOfRows_=numberOfRows;
+			numberOfFeatures_=featureMatrix.GetNumberOfFeatures();
+			forkJoinPool_=forkJoinPool;
+			
+			var columnIndices=featureMatrix.GetColumnIndices();
+			var values=featureMatrix.GetValues();
+			
+			columnStarts_=new int[numberOfFeatures_+1];
+			for(int i=0;i<numberOfRows_;i++)
+				for(int k=featureMatrix.GetRowStart(i);k<featureMatrix.GetRowEnd(i);k++)
+					columnStarts_[columnIndices[k]+1]++;
+			for(int f=0;f<numberOfFeatures_;f++)
+				columnStarts_[f+1]+=columnStarts_[f];
+			
+			rowIndices_=new int[columnStarts_[numberOfFeatures_]];
+			columnValues_=new double[columnStarts_[numberOfFeatures_]];
+			var positions=columnStarts_.clone();
+			means_=new double[numberOfFeatures_];
+			for(int i=0;i<numberOfRows_;i++)
+				for(int k=featureMatrix.GetRowStart(i);k<featureMatrix.GetRowEnd(i);k++)
+				{
+					int position=positions[columnIndices[k]]++;
+					rowIndices_[position]=i;
+					columnValues_[position]=values[k];
+					means_[columnIndices[k]]+=values[k];
+				}
+			for(int f=0;f<numberOfFeatures_;f++)
+				means_[f]/=Math.max(1, numberOfRows_);
+		}
+		
+		@Override
+		public int GetNumberOfRows()
+		{
+			return numberOfRows_;
+		}
+		
+		@Override
+		public int GetNumberOfColumns()
+		{
+			return numberOfFeatures_;
+		}
+		
+		@Override
+		public void Multiply(double[] matrix, int numberOfColumns, double[] result)
+		{
+			var meanProducts=new double[numberOfColumns];
+			for(int f=0;f<numberOfFeatures_;f++)
+				for(int c=0;c<numberOfColumns;c++)
+					meanProducts[c]+=means_[f]*matrix[f*numberOfColumns+c];
+			
+			var columnIndices=featureMatrix_.GetColumnIndices();
+			var values=featureMatrix_.GetValues();
+			
+			forkJoinPool_.invoke(new RangeTask(0, numberOfRows_, (start, end)->
+			{
+				for(int i=start;i<end;i++)
+				{
+					int offset=i*numberOfColumns;
+					for(int c=0;c<numberOfColumns;c++)
+						result[offset+c]=-meanProducts[c];
+					for(int k=featureMatrix_.GetRowStart(i);k<featureMatrix_.GetRowEnd(i);k++)
+						for(int c=0;c<numberOfColumns;c++)
+							result[offset+c]+=values[k]*matrix[columnIndices[k]*numberOfColumns+c];
+				}
+			}));
+		}
+		
+		@Override
+		public void MultiplyTransposed(double[] matrix, int numberOfColumns, double[] result)
+		{
+			var columnSums=new double[numberOfColumns];
+			for(int i=0;i<numberOfRows_;i++)
+				for(int c=0;c<numberOfColumns;c++)
+					columnSums[c]+=matrix[i*numberOfColumns+c];
+			
+			forkJoinPool_.invoke(new RangeTask(0, numberOfFeatures_, (start, end)->
+			{
+				for(int f=start;f<end;f++)
+				{
+					int offset=f*numberOfColumns;
+					for(int c=0;c<numberOfColumns;c++)
+						result[offset+c]=-means_[f]*columnSums[c];
+					for(int k=columnStarts_[f];k<columnStarts_[f+1];k++)
+						for(int c=0;c<numberOfColumns;c++)
+							result[offset+c]+=columnValues_[k]*matrix[rowIndices_[k]*numberOfColumns+c];
+				}
+			}));
+		}
+	}
+	
+	/**
+	 * The matrix of classical MDS, -1/2*J*D2*J with D2 the squared dissimilarities and J the centering matrix. It is symmetric, so both products are the same.
+	 */
+	private static class DoubleCenteredSquaredDissimilarities implements LinearOperator
+	{
+		private CompactDataInstanceSet dataInstanceSet_;
+		private int size_;
+		private ForkJoinPool forkJoinPool_;
+		
+		public DoubleCenteredSquaredDissimilarities(CompactDataInstanceSet dataInstanceSet, ForkJoinPool forkJoinPool)
+		{
+			dataInstanceSet_=dataInstanceSet;
+			size_=dataInstanceSet.GetDataInstances().size();
+			forkJoinPool_=forkJoinPool;
+		}
+		
+		@Override
+		public int GetNumberOfRows()
+		{
+			return size_;
+		}
+		
+		@Override
+		public int GetNumberOfColumns()
+		{
+			return size_;
+		}
+		
+		@Override
+		public void Multiply(double[] matrix, int numberOfColumns, double[] result)
+		{
+			var centeredMatrix=matrix.clone();
+			centerColumns(centeredMatrix, numberOfColumns);
+			
+			forkJoinPool_.invoke(new RangeTask(0, size_, (start, end)->
+			{
+				for(int i=start;i<end;i++)
+				{
+					int offset=i*numberOfColumns;
+					for(int c=0;c<numberOfColumns;c++)
+						result[offset+c]=0;
+					for(int j=0;j<size_;j++)
+					{
+						double disSimilarity=dataInstanceSet_.GetDisSimilarity(i, j);
+						double squaredDisSimilarity=-0.5*disSimilarity*disSimilarity;
+						for(int c=0;c<numberOfColumns;c++)
+							result[offset+c]+=squaredDisSimilarity*centeredMatrix[j*numberOfColumns+c];
+					}
+				}
+			}));
+			
+			centerColumns(result, numberOfColumns);
+		}
+		
+		@Override
+		public void MultiplyTransposed(double[] matrix, int numberOfColumns, double[] result)
+		{
+			Multiply(matrix, numberOfColumns, result);
+		}
+		
+		private void centerColumns(double[] matrix, int numberOfColumns)
+		{
+			var means=new double[numberOfColumns];
+			for(int i=0;i<size_;i++)
+				for(int c=0;c<numberOfColumns;c++)
+					means[c]+=matrix[i*numberOfColumns+c];
+			for(int c=0;c<numberOfColumns;c++)
+				means[c]/=Math.max(1, size_);
+			for(int i=0;i<size_;i++)
+				for(int c=0;c<numberOfColumns;c++)
+					matrix[i*numberOfColumns+c]-=means[c];
+		}
+	}
+	
+	private interface RangeBody
+	{
+		void Compute(int start, int end);
+	}
+	
+	private static class RangeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private int start_;
+		private int end_;
+		private RangeBody rangeBody_;
+		
+		public RangeTask(int start, int end, RangeBody rangeBody)
+		{
+			start_=start;
+			end_=end;
+			rangeBody_=rangeBody;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(end_-start_>ROWS_PER_TASK)
+			{
+				int middle=(start_+end_)>>>1;
+				invokeAll(new RangeTask(start_, middle, rangeBody_), new RangeTask(middle, end_, rangeBody_));
+				return;
+			}
+			
+			rangeBody_.Compute(start_, end_);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A folder of pre-reduction results, each kept in a .npy file named after a SHA-256 hash of everything the result depends on:
+ * the values the pre-reduction reads (the features, or the dissimilarity rows) and the options of the pre-reduction.
+ * Only the reduced coordinates are kept. The classes and the features for evaluation of a cached result are taken from the data instance set in memory,
+ * so a run which finds its result in the folder builds the same reduced data instance set as the run which wrote it, without running the pre-reduction.
+ */
+public class CompactPreReductionCache
+{
+	private static final int VERSION=2;
+	private static final int HASH_BUFFER_SIZE=1024*1024;
+	
+	/**
+	 * The hexadecimal SHA-256 hash which names the result of a pre-reduction of the data instance set with the given options.
+	 */
+	public static String GetKey(CompactDataInstanceSet dataInstanceSet, String options) throws IOException
+	{
+		MessageDigest messageDigest;
+		try
+		{
+			messageDigest=MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IOException(e);
+		}
+		
+		var dataInstances=dataInstanceSet.GetDataInstances();
+		boolean useDisSimilarities=dataInstanceSet.GetUseDissimilarityInsteadOfDistance();
+		int numberOfColumns=useDisSimilarities?dataInstances.size():(dataInstances.size()>0?dataInstances.get(0).GetNumberOfFeatures():0);
+		
+		messageDigest.update((VERSION+","+options+","+useDisSimilarities+","+dataInstances.size()+","+numberOfColumns+";").getBytes(StandardCharsets.UTF_8));
+		
+		var buffer=ByteBuffer.allocate(HASH_BUFFER_SIZE);
+		for(int i=0;i<dataInstances.size();i++)
+		{
+			var dataInstance=dataInstances.get(i);
+			for(int j=0;j<numberOfColumns;j++)
+			{
+				if(buffer.remaining()<Double.BYTES)
+					updateDigest(messageDigest, buffer);
+				buffer.putDouble(useDisSimilarities?dataInstanceSet.GetDisSimilarity(i, j):dataInstance.GetFeature(j));
+			}
+		}
+		updateDigest(messageDigest, buffer);
+		
+		var stringBuilder=new StringBuilder();
+		for(byte value : messageDigest.digest())
+			stringBuilder.append(String.format("%02x", value&0xff));
+		return stringBuilder.toString();
+	}
+	
+	/**
+	 * The reduced data instance set of a cached result, built like CompactPreReduction.CreateReducedDataInstanceSet builds it,
+	 * or null if the folder has no result for the key.
+	 */
+	public static CompactDataInstanceSet Read(String folderName, String key, CompactDataInstanceSet dataInstanceSet, int maxRows, CompactFeatureStorage featureStorage)
+	{
+		var cacheFile=new File(new File(folderName), key+".npy");
+		if(!cacheFile.exists())
+			return null;
+		
+		int size=dataInstanceSet.GetDataInstances().size();
+		int numberOfRows=maxRows!=-1?Math.min(maxRows, size):size;
+		
+		try
+		{
+			var npyFile=CompactNpyFile.Open(cacheFile.getCanonicalPath());
+			try
+			{
+				if(npyFile.GetNumberOfRows()!=numberOfRows)
+					return null;
+				
+				int numberOfDimensions=npyFile.GetNumberOfColumns();
+				var embedding=new double[numberOfRows*numberOfDimensions];
+				npyFile.ReadDoubles(0, embedding, 0, embedding.length);
+				
+				return CompactPreReduction.CreateReducedDataInstanceSet(dataInstanceSet, embedding, numberOfDimensions, maxRows, featureStorage);
+			}
+			finally
+			{
+				npyFile.Close();
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Keeps the features of a reduced data instance set as the result for the key. The file is written under another name and then renamed,
+	 * so concurrent runs never read a partly written result.
+	 */
+	public static void Write(String folderName, String key, CompactDataInstanceSet reducedDataInstanceSet) throws IOException
+	{
+		var reducedDataInstances=reducedDataInstanceSet.GetDataInstances();
+		int numberOfDimensions=reducedDataInstances.size()>0?reducedDataInstances.get(0).GetNumberOfFeatures():0;
+		
+		var folder=new File(folderName).getCanonicalFile();
+		folder.mkdirs();
+		var cacheFile=new File(folder, key+".npy");
+		var temporaryFile=File.createTempFile(key+".", ".tmp", folder);
+		
+		try
+		{
+			CompactNpyFile.WriteDoubles(temporaryFile.getCanonicalPath(), reducedDataInstances.size(), numberOfDimensions, (row, values)->
+			{
+				var reducedDataInstance=reducedDataInstances.get(row);
+				for(int j=0;j<values.length;j++)
+					values[j]=reducedDataInstance.GetFeature(j);
+			});
+			
+			try
+			{
+				Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			temporaryFile.delete();
+		}
+	}
+	
+	private static void updateDigest(MessageDigest messageDigest, ByteBuffer buffer)
+	{
+		messageDigest.update(buffer.array(), 0, buffer.position());
+		buffer.clear();
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+/**
+ * A data instance set with its distances, distances for evaluation, neighbors for evaluation and distance transforms precomputed, which does not change after it is prepared.
+ * Projections are made from views of it (see CreateDataInstanceSet and CompactProjectionMethod), so any number of projections, also at the same time, need only one preparation.
+ */
+public final class CompactPreparedDataSet
+{
+	private final CompactDataInstanceSet dataInstanceSet_;
+	private final int neighborhoodSizeForEvaluation_;
+	private final boolean isCosine_;
+	private int numberOfUsers_;
+	
+	private CompactPreparedDataSet(CompactDataInstanceSet dataInstanceSet, int neighborhoodSizeForEvaluation, boolean isCosine)
+	{
+		dataInstanceSet_=dataInstanceSet;
+		neighborhoodSizeForEvaluation_=neighborhoodSizeForEvaluation;
+		isCosine_=isCosine;
+		numberOfUsers_=1;
+	}
+	
+	/**
+	 * Prepares a data instance set whose data instance indices, distance matrix storage and number of threads are already set. The data instance set must not be used
+	 * directly after it is prepared. The distances for evaluation and the neighbors for evaluation are kept if they are already computed.
+	 * The caller is the first user of the prepared data set (see Release).
+	 */
+	public static CompactPreparedDataSet Prepare(CompactDataInstanceSet dataInstanceSet, int neighborhoodSizeForEvaluation, boolean isCosine, boolean fuseDistanceTransforms)
+	{
+		if(fuseDistanceTransforms)
+		{
+			dataInstanceSet.PreComputeTransformedDistances(isCosine);
+			prepareEvaluation(dataInstanceSet, neighborhoodSizeForEvaluation);
+		}
+		else
+		{
+			dataInstanceSet.PreComputeDistances();
+			prepareEvaluation(dataInstanceSet, neighborhoodSizeForEvaluation);
+			
+			if(isCosine)
+				dataInstanceSet.TransformPreComputedDistances("Cosine for original space");
+			
+			dataInstanceSet.TransformPreComputedDistances("Neighbourhood normalized for original space");
+		}
+		
+		return new CompactPreparedDataSet(dataInstanceSet, neighborhoodSizeForEvaluation, isCosine);
+	}
+	
+	private static void prepareEvaluation(CompactDataInstanceSet dataInstanceSet, int neighborhoodSizeForEvaluation)
+	{
+		if(!dataInstanceSet.IsDistancesForEvaluationPreComputed())
+			dataInstanceSet.PreComputeDistancesForEvaluation();
+		
+		if(!dataInstanceSet.IsNeighborsForEvaluationComputed())
+			dataInstanceSet.ComputeNeighborsForEvaluation(neighborhoodSizeForEvaluation);
+	}
+	
+	/**
+	 * A new view of the prepared data instance set, with its own projected points and neighbors, for one projection.
+	 */
+	public CompactDataInstanceSet CreateDataInstanceSet()
+	{
+		return dataInstanceSet_.CreateView();
+	}
+	
+	/**
+	 * Adds a user of the prepared data set, like a cache keeping it, which calls Release when it no longer uses it. Returns false if the data set is already closed.
+	 */
+	public synchronized boolean Acquire()
+	{
+		if(numberOfUsers_==0)
+			return false;
+		
+		numberOfUsers_++;
+		return true;
+	}
+	
+	/**
+	 * Removes a user of the prepared data set. The last one closes the prepared data instance set (see CompactDataInstanceSet.Close), so scratch files
+	 * of memory mapped distances are deleted as soon as no projection or cache uses them.
+	 */
+	public void Release()
+	{
+		boolean isUnused;
+		synchronized(this)
+		{
+			isUnused=--numberOfUsers_==0;
+		}
+		
+		if(isUnused)
+			dataInstanceSet_.Close();
+	}
+	
+	public int GetNumberOfDataInstances()
+	{
+		return dataInstanceSet_.GetDataInstances().size();
+	}
+	
+	/**
+	 * The approximate number of bytes of the prepared data instance set (see CompactDataInstanceSet.GetSizeInBytes), not counting the views.
+	 */
+	public long GetSizeInBytes()
+	{
+		return dataInstanceSet_.GetSizeInBytes();
+	}
+	
+	public int GetNeighborhoodSizeForEvaluation()
+	{
+		return neighborhoodSizeForEvaluation_;
+	}
+	
+	public boolean GetIsCosine()
+	{
+		return isCosine_;
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Keeps prepared data sets in memory for later configurations with the same input and preparation, dropping the least recently used ones
+ * when their total size (see CompactPreparedDataSet.GetSizeInBytes) is more than the maximum size. A data set which is being prepared
+ * is prepared only once, with the other configurations asking for it waiting for it.
+ */
+public class CompactPreparedDataSetCache
+{
+	private long maximumSizeInBytes_;
+	private long sizeInBytes_;
+	private LinkedHashMap<String,CompactPreparedDataSet> preparedDataSets_;
+	private HashMap<String,CompletableFuture<CompactPreparedDataSet>> preparations_;
+	private long hits_;
+	private long misses_;
+	
+	public CompactPreparedDataSetCache(long maximumSizeInBytes)
+	{
+		maximumSizeInBytes_=maximumSizeInBytes;
+		sizeInBytes_=0;
+		preparedDataSets_=new LinkedHashMap<String,CompactPreparedDataSet>(16, 0.75f, true);
+		preparations_=new HashMap<String,CompletableFuture<CompactPreparedDataSet>>();
+		hits_=0;
+		misses_=0;
+	}
+	
+	/**
+	 * The prepared data set for the key, which is prepared by the given preparation if it is not kept. The preparation can give null
+	 * for a bad configuration or input file, which is not kept. The caller is a user of the prepared data set and calls Release on it when its projections are made.
+	 */
+	public CompactPreparedDataSet GetOrPrepare(String key, Callable<CompactPreparedDataSet> preparation) throws Exception
+	{
+		CompletableFuture<CompactPreparedDataSet> preparationFuture;
+		synchronized(this)
+		{
+			var preparedDataSet=preparedDataSets_.get(key);
+			if(preparedDataSet!=null && preparedDataSet.Acquire())
+			{
+				hits_++;
+				return preparedDataSet;
+			}
+			
+			preparationFuture=preparations_.get(key);
+			if(preparationFuture==null)
+			{
+				misses_++;
+				preparations_.put(key, new CompletableFuture<CompactPreparedDataSet>());
+			}
+			else
+				hits_++;
+		}
+		
+		if(preparationFuture!=null)
+		{
+			CompactPreparedDataSet preparedDataSet;
+			try
+			{
+				preparedDataSet=preparationFuture.join();
+			}
+			catch (CompletionException e)
+			{
+				if(e.getCause() instanceof Exception)
+					throw (Exception)e.getCause();
+				throw e;
+			}
+			
+			if(preparedDataSet==null)
+				return null;
+			
+			// A data set which was not kept, or was already dropped again, can be closed by the time this configuration asks for it, and is prepared again.
+			synchronized(this)
+			{
+				if(preparedDataSet.Acquire())
+					return preparedDataSet;
+			}
+			return GetOrPrepare(key, preparation);
+		}
+		
+		CompactPreparedDataSet preparedDataSet;
+		try
+		{
+			preparedDataSet=preparation.call();
+		}
+		catch (Exception e)
+		{
+			CompletableFuture<CompactPreparedDataSet> failedPreparation;
+			synchronized(this)
+			{
+				failedPreparation=preparations_.remove(key);
+			}
+			failedPreparation.completeExceptionally(e);
+			throw e;
+		}
+		
+		CompletableFuture<CompactPreparedDataSet> finishedPreparation;
+		synchronized(this)
+		{
+			finishedPreparation=preparations_.remove(key);
+			if(preparedDataSet!=null)
+				put(key, preparedDataSet);
+		}
+		finishedPreparation.complete(preparedDataSet);
+		
+		return preparedDataSet;
+	}
+	
+	private void put(String key, CompactPreparedDataSet preparedDataSet)
+	{
+		long sizeInBytes=preparedDataSet.GetSizeInBytes();
+		if(sizeInBytes>maximumSizeInBytes_)
+		{
+			System.out.println("The prepared data set of "+(sizeInBytes/(1024*1024))+" MB is not kept in the cache of "+(maximumSizeInBytes_/(1024*1024))+" MB");
+			return;
+		}
+		
+		var iterator=preparedDataSets_.entrySet().iterator();
+		while(sizeInBytes_+sizeInBytes>maximumSizeInBytes_ && iterator.hasNext())
+		{
+			var droppedPreparedDataSet=iterator.next().getValue();
+			sizeInBytes_-=droppedPreparedDataSet.GetSizeInBytes();
+			iterator.remove();
+			droppedPreparedDataSet.Release();
+		}
+		
+		preparedDataSet.Acquire();
+		preparedDataSets_.put(key, preparedDataSet);
+		sizeInBytes_+=sizeInBytes;
+	}
+	
+	public synchronized int GetNumberOfPreparedDataSets()
+	{
+		return preparedDataSets_.size();
+	}
+	
+	public synchronized long GetSizeInBytes()
+	{
+		return sizeInBytes_;
+	}
+	
+	public long GetMaximumSizeInBytes()
+	{
+		return maximumSizeInBytes_;
+	}
+	
+	public synchronized long GetHits()
+	{
+		return hits_;
+	}
+	
+	public synchronized long GetMisses()
+	{
+		return misses_;
+	}
+}
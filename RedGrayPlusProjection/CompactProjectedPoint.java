@@ -12,6 +12,9 @@
 
 package RedGrayPlusProjection;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.PriorityQueue;
@@ -397,4 +400,65 @@ public class CompactProjectedPoint
 	{
 		hasReplicationFailed_=true;
 	}
+	
+	/**
+	 * The frozen, ineffective, replication failed and gray flags of the point packed in the bits 1, 2, 4 and 8, as they are written by checkpoints.
+	 */
+	public int GetFlags()
+	{
+		return (isFrozen_?1:0)|(isInEffective_?2:0)|(hasReplicationFailed_?4:0)|(isGray_?8:0);
+	}
+	
+	public void SetFlags(int flags)
+	{
+		isFrozen_=(flags&1)!=0;
+		isInEffective_=(flags&2)!=0;
+		hasReplicationFailed_=(flags&4)!=0;
+		isGray_=(flags&8)!=0;
+	}
+	
+	/**
+	 * Writes everything of the point except its data instance and its neighbors, which a checkpoint writes as indices (see CompactProjectionCheckpoint).
+	 */
+	public void WriteState(DataOutputStream outputStream) throws IOException
+	{
+		outputStream.writeDouble(x_);
+		outputStream.writeDouble(y_);
+		outputStream.writeDouble(additionalX_);
+		outputStream.writeDouble(additionalY_);
+		outputStream.writeInt(projectionIndex_);
+		outputStream.writeInt(tempCloneIndex_);
+		outputStream.writeByte(GetFlags());
+		outputStream.writeDouble(effectiveWeight_);
+		
+		outputStream.writeInt(positivePressures_.size());
+		for(int i=0;i<positivePressures_.size();i++)
+			outputStream.writeDouble(positivePressures_.get(i));
+		
+		outputStream.writeInt(negativePressures_.size());
+		for(int i=0;i<negativePressures_.size();i++)
+			outputStream.writeDouble(negativePressures_.get(i));
+	}
+	
+	public void ReadState(DataInputStream inputStream) throws IOException
+	{
+		x_=inputStream.readDouble();
+		y_=inputStream.readDouble();
+		additionalX_=inputStream.readDouble();
+		additionalY_=inputStream.readDouble();
+		projectionIndex_=inputStream.readInt();
+		tempCloneIndex_=inputStream.readInt();
+		SetFlags(inputStream.readByte());
+		effectiveWeight_=inputStream.readDouble();
+		
+		positivePressures_.clear();
+		int numberOfPositivePressures=inputStream.readInt();
+		for(int i=0;i<numberOfPositivePressures;i++)
+			positivePressures_.add(inputStream.readDouble());
+		
+		negativePressures_.clear();
+		int numberOfNegativePressures=inputStream.readInt();
+		for(int i=0;i<numberOfNegativePressures;i++)
+			negativePressures_.add(inputStream.readDouble());
+	}
 }
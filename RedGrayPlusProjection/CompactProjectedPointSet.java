@@ -26,6 +26,15 @@ public class CompactProjectedPointSet
 		projectedPoints_=new ArrayList<CompactProjectedPoint>();
 	}
 		
+	/**
+	 * A set of given projected points, for example the points of a step read from a checkpoint step log (see CompactProjectionCheckpoint).
+	 */
+	public CompactProjectedPointSet(CompactDataInstanceSet dataInstanceSet, ArrayList<CompactProjectedPoint> projectedPoints)
+	{
+		dataInstanceSet_=dataInstanceSet;
+		projectedPoints_=projectedPoints;
+	}
+	
 	public CompactProjectedPointSet(CompactDataInstanceSet dataInstanceSet)
 	{
 		this(dataInstanceSet, true, false);
@@ -0,0 +1,420 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Checkpoints of the layout of a Red Gray Plus projection after given iterations, by default the phase boundaries: the start of the replication (iteration 501),
+ * of the third phase (iteration 951) and of the fourth phase (iteration 1341). A checkpoint is a binary snapshot of the projected points of all data instances
+ * with their flags, pressures and neighbors, and of the state of the iterations. The steps of the projection are appended to a step log as they are made and
+ * each checkpoint records how much of the log belongs to it, so a resumed projection has all the steps of an uninterrupted one.
+ * The steps are logged without their neighborhood graphs. All of them are kept because the outputs are scaled to the box of all the steps,
+ * so the log takes about 25 bytes per projected point for each of the 1830 iterations.
+ */
+public class CompactProjectionCheckpoint
+{
+	private static final int MAGIC=0x52475043;
+	private static final int VERSION=1;
+	private static final String CHECKPOINT_FILE_NAME="projection.rgpcheckpoint";
+	private static final String STEP_LOG_FILE_NAME="projection.rgpsteps";
+	
+	private String folderName_;
+	private HashSet<Integer> iterations_;
+	private String configurationKey_;
+	private boolean resume_;
+	private FileOutputStream stepLogFileStream_;
+	private DataOutputStream stepLog_;
+	private int numberOfLoggedSteps_;
+	
+	// The state of the iterations of the latest checkpoint, read by Resume.
+	private int totalStep_;
+	private int step_;
+	private double temperature_;
+	private int numberOfReplications_;
+	private boolean replicationStarted_;
+	private boolean isThirdPhaseStarted_;
+	private boolean isForthPhaseStarted_;
+	private double frozenFrameX_;
+	private double frozenFrameY_;
+	private double frozenFrameX1_;
+	private double frozenFrameY1_;
+	private double maximumOriginalDistance_;
+	private double maximumVisualDistance_;
+	
+	private CompactProjectionCheckpoint(String folderName, HashSet<Integer> iterations, String configurationKey, boolean resume)
+	{
+		folderName_=folderName;
+		iterations_=iterations;
+		configurationKey_=configurationKey;
+		resume_=resume;
+		stepLogFileStream_=null;
+		stepLog_=null;
+		numberOfLoggedSteps_=0;
+	}
+	
+	/**
+	 * The checkpoints of a projection, or null if the parameters have no CheckpointFolderName. The configuration key keeps a projection from resuming
+	 * from the checkpoint of another projection method, data size or projection parameters, or of other prepared data: it has the key of the prepared
+	 * data set (see CompactCommandLineInterface.GetPreparationKey), with the attributes which change the distances and the path, length and modification time of the input files.
+	 */
+	public static CompactProjectionCheckpoint Create(HashMap<String,String> parameters, String projectionMethodName, int numberOfPoints, int numberOfNeighbors) throws Exception
+	{
+		if(!parameters.containsKey("CheckpointFolderName"))
+			return null;
+		
+		var iterations=new HashSet<Integer>();
+		String checkpointIterations=parameters.getOrDefault("CheckpointIterations", "phases").toLowerCase();
+		if(checkpointIterations.compareTo("phases")==0)
+		{
+			iterations.add(501);
+			iterations.add(951);
+			iterations.add(1341);
+		}
+		else
+		{
+			try
+			{
+				for(var iteration : checkpointIterations.split(","))
+					iterations.add(Integer.parseInt(iteration.trim()));
+			}
+			catch (NumberFormatException e)
+			{
+				throw new Exception("Bad checkpoint iterations:"+parameters.get("CheckpointIterations"));
+			}
+		}
+		
+		String configurationKey=projectionMethodName+","+numberOfPoints+","+numberOfNeighbors+","+
+				parameters.getOrDefault("VisualDensityAdjustmentParameter", "0.9")+","+parameters.getOrDefault("OverrideMaxNumberOfReplicates", "")+","+
+				CompactCommandLineInterface.GetPreparationKey(parameters);
+		boolean resume=parameters.getOrDefault("ResumeFromCheckpoint", "false").toLowerCase().compareTo("true")==0;
+		
+		return new CompactProjectionCheckpoint(parameters.get("CheckpointFolderName"), iterations, configurationKey, resume);
+	}
+	
+	public boolean IsCheckpointIteration(int totalStep)
+	{
+		return iterations_.contains(totalStep+1);
+	}
+	
+	/**
+	 * Starts a new step log for a projection which is not resumed. The checkpoint of an earlier projection in the folder is deleted first,
+	 * so a projection which stops before its first checkpoint can not be resumed from a checkpoint whose steps are no longer in the log.
+	 */
+	public void Start() throws IOException
+	{
+		new File(folderName_).mkdirs();
+		Files.deleteIfExists(new File(folderName_, CHECKPOINT_FILE_NAME).toPath());
+		stepLogFileStream_=new FileOutputStream(new File(folderName_, STEP_LOG_FILE_NAME));
+		stepLog_=new DataOutputStream(new BufferedOutputStream(stepLogFileStream_, 1<<16));
+		numberOfLoggedSteps_=0;
+	}
+	
+	public void LogStep(CompactProjectionStep projectionStep) throws IOException
+	{
+		stepLog_.writeUTF(projectionStep.GetName());
+		stepLog_.writeDouble(projectionStep.GetRedAndGrayTrustworthiness());
+		stepLog_.writeDouble(projectionStep.GetRedTrustworthiness());
+		
+		var projectedPoints=projectionStep.GetProjectedPointSet().GetProjectedPoints();
+		stepLog_.writeInt(projectedPoints.size());
+		for(int i=0;i<projectedPoints.size();i++)
+		{
+			var projectedPoint=projectedPoints.get(i);
+			stepLog_.writeInt(projectedPoint.GetDataInstance().GetIndexInDataInstanceSet());
+			stepLog_.writeInt(projectedPoint.GetProjectionIndex());
+			stepLog_.writeDouble(projectedPoint.GetX());
+			stepLog_.writeDouble(projectedPoint.GetY());
+			stepLog_.writeByte(projectedPoint.GetFlags());
+		}
+		
+		numberOfLoggedSteps_++;
+	}
+	
+	/**
+	 * Writes the checkpoint after the iteration with the given state, replacing the previous checkpoint only when the new one is complete.
+	 */
+	public void Write(CompactDataInstanceSet dataInstanceSet, int totalStep, int step, double temperature, int numberOfReplications, boolean replicationStarted,
+			boolean isThirdPhaseStarted, boolean isForthPhaseStarted, double frozenFrameX, double frozenFrameY, double frozenFrameX1, double frozenFrameY1,
+			double maximumOriginalDistance, double maximumVisualDistance) throws IOException
+	{
+		stepLog_.flush();
+		long stepLogLength=stepLogFileStream_.getChannel().position();
+		
+		var dataInstances=dataInstanceSet.GetDataInstances();
+		var temporaryFile=new File(folderName_, CHECKPOINT_FILE_NAME+".tmp");
+		try(var outputStream=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 1<<16)))
+		{
+			outputStream.writeInt(MAGIC);
+			outputStream.writeInt(VERSION);
+			outputStream.writeUTF(configurationKey_);
+			
+			outputStream.writeInt(totalStep);
+			outputStream.writeInt(step);
+			outputStream.writeDouble(temperature);
+			outputStream.writeInt(numberOfReplications);
+			outputStream.writeBoolean(replicationStarted);
+			outputStream.writeBoolean(isThirdPhaseStarted);
+			outputStream.writeBoolean(isForthPhaseStarted);
+			outputStream.writeDouble(frozenFrameX);
+			outputStream.writeDouble(frozenFrameY);
+			outputStream.writeDouble(frozenFrameX1);
+			outputStream.writeDouble(frozenFrameY1);
+			outputStream.writeDouble(maximumOriginalDistance);
+			outputStream.writeDouble(maximumVisualDistance);
+			
+			outputStream.writeInt(numberOfLoggedSteps_);
+			outputStream.writeLong(stepLogLength);
+			
+			outputStream.writeInt(dataInstances.size());
+			for(int i=0;i<dataInstances.size();i++)
+			{
+				var projectedPoints=dataInstances.get(i).GetProjectedPoints();
+				outputStream.writeInt(projectedPoints.size());
+				for(int k=0;k<projectedPoints.size();k++)
+					projectedPoints.get(k).WriteState(outputStream);
+			}
+			
+			// The neighbors are written as the index of their data instance and their index among its projected points.
+			for(int i=0;i<dataInstances.size();i++)
+			{
+				var projectedPoints=dataInstances.get(i).GetProjectedPoints();
+				for(int k=0;k<projectedPoints.size();k++)
+				{
+					var neighbors=projectedPoints.get(k).GetNeighbors();
+					outputStream.writeInt(neighbors.size());
+					for(int j=0;j<neighbors.size();j++)
+					{
+						var neighbor=neighbors.get(j);
+						var neighborDataInstance=neighbor.GetDataInstance();
+						outputStream.writeInt(neighborDataInstance.GetIndexInDataInstanceSet());
+						outputStream.writeInt(neighborDataInstance.GetProjectedPoints().indexOf(neighbor));
+					}
+				}
+			}
+		}
+		
+		var checkpointFile=new File(folderName_, CHECKPOINT_FILE_NAME);
+		try
+		{
+			Files.move(temporaryFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(temporaryFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		System.out.println("Wrote the checkpoint of iteration "+(totalStep+1)+" to "+folderName_);
+	}
+	
+	/**
+	 * Restores the projected points of the data instances and the steps of the latest checkpoint if the projection is to be resumed and there is a checkpoint,
+	 * and continues its step log. Returns false, without changing anything, otherwise.
+	 */
+	public boolean Resume(CompactDataInstanceSet dataInstanceSet, ArrayList<CompactProjectionStep> projectionSteps) throws Exception
+	{
+		var checkpointFile=new File(folderName_, CHECKPOINT_FILE_NAME);
+		if(!resume_ || !checkpointFile.exists())
+		{
+			if(resume_)
+				System.out.println("There is no checkpoint to resume from in "+folderName_+", starting from the first iteration");
+			return false;
+		}
+		
+		var dataInstances=dataInstanceSet.GetDataInstances();
+		long stepLogLength;
+		try(var inputStream=new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile), 1<<16)))
+		{
+			if(inputStream.readInt()!=MAGIC || inputStream.readInt()!=VERSION)
+				throw new Exception("Bad checkpoint file:"+checkpointFile);
+			
+			if(inputStream.readUTF().compareTo(configurationKey_)!=0)
+				throw new Exception("The checkpoint in "+folderName_+" is of another projection method, data set or projection parameters");
+			
+			totalStep_=inputStream.readInt();
+			step_=inputStream.readInt();
+			temperature_=inputStream.readDouble();
+			numberOfReplications_=inputStream.readInt();
+			replicationStarted_=inputStream.readBoolean();
+			isThirdPhaseStarted_=inputStream.readBoolean();
+			isForthPhaseStarted_=inputStream.readBoolean();
+			frozenFrameX_=inputStream.readDouble();
+			frozenFrameY_=inputStream.readDouble();
+			frozenFrameX1_=inputStream.readDouble();
+			frozenFrameY1_=inputStream.readDouble();
+			maximumOriginalDistance_=inputStream.readDouble();
+			maximumVisualDistance_=inputStream.readDouble();
+			
+			numberOfLoggedSteps_=inputStream.readInt();
+			stepLogLength=inputStream.readLong();
+			
+			if(inputStream.readInt()!=dataInstances.size())
+				throw new Exception("The checkpoint in "+folderName_+" is of another data set");
+			
+			for(int i=0;i<dataInstances.size();i++)
+			{
+				var dataInstance=dataInstances.get(i);
+				var projectedPoints=dataInstance.GetProjectedPoints();
+				projectedPoints.clear();
+				int numberOfProjectedPoints=inputStream.readInt();
+				for(int k=0;k<numberOfProjectedPoints;k++)
+				{
+					var projectedPoint=new CompactProjectedPoint(0, 0, dataInstance);
+					projectedPoint.ReadState(inputStream);
+					projectedPoints.add(projectedPoint);
+				}
+			}
+			
+			for(int i=0;i<dataInstances.size();i++)
+			{
+				var projectedPoints=dataInstances.get(i).GetProjectedPoints();
+				for(int k=0;k<projectedPoints.size();k++)
+				{
+					var neighbors=projectedPoints.get(k).GetNeighbors();
+					int numberOfNeighbors=inputStream.readInt();
+					for(int j=0;j<numberOfNeighbors;j++)
+					{
+						int dataInstanceIndex=inputStream.readInt();
+						int projectedPointIndex=inputStream.readInt();
+						neighbors.add(dataInstances.get(dataInstanceIndex).GetProjectedPoints().get(projectedPointIndex));
+					}
+				}
+			}
+		}
+		
+		var stepLogFile=new File(folderName_, STEP_LOG_FILE_NAME);
+		try(var inputStream=new DataInputStream(new BufferedInputStream(new FileInputStream(stepLogFile), 1<<16)))
+		{
+			for(int s=0;s<numberOfLoggedSteps_;s++)
+			{
+				String name=inputStream.readUTF();
+				double redAndGrayTrustworthiness=inputStream.readDouble();
+				double redTrustworthiness=inputStream.readDouble();
+				
+				int numberOfProjectedPoints=inputStream.readInt();
+				var projectedPoints=new ArrayList<CompactProjectedPoint>(numberOfProjectedPoints);
+				for(int i=0;i<numberOfProjectedPoints;i++)
+				{
+					var dataInstance=dataInstances.get(inputStream.readInt());
+					int projectionIndex=inputStream.readInt();
+					double x=inputStream.readDouble();
+					double y=inputStream.readDouble();
+					int flags=inputStream.readByte();
+					
+					var projectedPoint=new CompactProjectedPoint(x, y, dataInstance, projectionIndex);
+					projectedPoint.SetFlags(flags);
+					projectedPoints.add(projectedPoint);
+				}
+				
+				projectionSteps.add(new CompactProjectionStep(name, new CompactProjectedPointSet(dataInstanceSet, projectedPoints), redAndGrayTrustworthiness, redTrustworthiness));
+			}
+		}
+		
+		// The steps after the checkpoint are made again, so they are cut from the log before it is continued.
+		try(var randomAccessFile=new RandomAccessFile(stepLogFile, "rw"))
+		{
+			randomAccessFile.setLength(stepLogLength);
+		}
+		stepLogFileStream_=new FileOutputStream(stepLogFile, true);
+		stepLog_=new DataOutputStream(new BufferedOutputStream(stepLogFileStream_, 1<<16));
+		
+		System.out.println("Resuming from the checkpoint of iteration "+(totalStep_+1)+" in "+folderName_);
+		return true;
+	}
+	
+	public int GetTotalStep()
+	{
+		return totalStep_;
+	}
+	
+	public int GetStep()
+	{
+		return step_;
+	}
+	
+	public double GetTemperature()
+	{
+		return temperature_;
+	}
+	
+	public int GetNumberOfReplications()
+	{
+		return numberOfReplications_;
+	}
+	
+	public boolean IsReplicationStarted()
+	{
+		return replicationStarted_;
+	}
+	
+	public boolean IsThirdPhaseStarted()
+	{
+		return isThirdPhaseStarted_;
+	}
+	
+	public boolean IsForthPhaseStarted()
+	{
+		return isForthPhaseStarted_;
+	}
+	
+	public double GetFrozenFrameX()
+	{
+		return frozenFrameX_;
+	}
+	
+	public double GetFrozenFrameY()
+	{
+		return frozenFrameY_;
+	}
+	
+	public double GetFrozenFrameX1()
+	{
+		return frozenFrameX1_;
+	}
+	
+	public double GetFrozenFrameY1()
+	{
+		return frozenFrameY1_;
+	}
+	
+	public double GetMaximumOriginalDistance()
+	{
+		return maximumOriginalDistance_;
+	}
+	
+	public double GetMaximumVisualDistance()
+	{
+		return maximumVisualDistance_;
+	}
+	
+	public void Close() throws IOException
+	{
+		if(stepLog_!=null)
+			stepLog_.close();
+		stepLog_=null;
+		stepLogFileStream_=null;
+	}
+}
@@ -19,11 +19,10 @@ import java.util.PriorityQueue;
 public class CompactProjectionEvaluator
 {
 	private int neighborhoodSize_;
-	private static int staticNeighborhoodSize_=10;
 	
-	public CompactProjectionEvaluator()
+	public CompactProjectionEvaluator(int neighborhoodSize)
 	{
-		neighborhoodSize_=staticNeighborhoodSize_;
+		neighborhoodSize_=neighborhoodSize;
 	}
 	
 	public double EvaluateProjectionTrustworthinessForStrictRedGrayProjection(CompactProjectedPointSet projectedPointSet, boolean forRedLayer)
@@ -202,12 +201,6 @@ public class CompactProjectionEvaluator
 		return 1- (2*sum)/(N*((double)k)*(2*N-3*k-1));
 	}
 	
-	
-	public static void SetStaticNeighborhoodSize(int staticNeighborhoodSize)
-	{
-		staticNeighborhoodSize_=staticNeighborhoodSize;
-	}
-	
 	public double EvaluateProjectionTrustworthinessMultiThreadedForStrictRedGrayProjection(CompactProjectedPointSet projectedPointSet, boolean forRedLayer,int numberOfThreads) throws InterruptedException
 	{
 		// Look at the following preprint on arXiv for more information about the extended definition of trustworthiness and Strict Red Gray projections:
@@ -18,4 +18,21 @@ import java.util.HashMap;
 public abstract class CompactProjectionMethod
 {	
 	public abstract CompactProjectionOutput Project(CompactDataInstanceSet dataInstanceSet, HashMap<String,String> parameters) throws Exception;
+	
+	/**
+	 * Projects a new view of a prepared data set, using its neighborhood size for evaluation and the number of threads in the parameters if there is one.
+	 * The data instance set of the output is the view.
+	 */
+	public CompactProjectionOutput Project(CompactPreparedDataSet preparedDataSet, HashMap<String,String> parameters) throws Exception
+	{
+		var dataInstanceSet=preparedDataSet.CreateDataInstanceSet();
+		dataInstanceSet.SetNeighborhoodSizeForEvaluation(preparedDataSet.GetNeighborhoodSizeForEvaluation());
+		if(parameters.containsKey("NumberOfThreads"))
+			dataInstanceSet.SetNumberOfThreads(Integer.parseInt(parameters.get("NumberOfThreads")));
+		
+		var projectionOutput=Project(dataInstanceSet, parameters);
+		projectionOutput.SetDataInstanceSet(dataInstanceSet);
+		
+		return projectionOutput;
+	}
 }
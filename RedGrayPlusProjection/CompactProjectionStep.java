@@ -34,6 +34,17 @@ public class CompactProjectionStep
 		return projectedPointSet_;
 	}
 	
+	/**
+	 * A step whose trustworthiness is already known, for example a step read from a checkpoint step log (see CompactProjectionCheckpoint).
+	 */
+	public CompactProjectionStep(String name, CompactProjectedPointSet projectedPointSet, double redAndGrayTrustworthiness, double redTrustworthiness)
+	{
+		name_=name;
+		projectedPointSet_=projectedPointSet;
+		redAndGrayTrustworthiness_=redAndGrayTrustworthiness;
+		redTrustworthiness_=redTrustworthiness;
+	}
+	
 	public CompactProjectionStep(String name, CompactProjectedPointSet projectedPointSet) throws Exception
 	{
 		this(name,projectedPointSet,1);
@@ -49,7 +60,7 @@ public class CompactProjectionStep
 	
 	private void computeMetrics(int numberOfThreads) throws Exception
 	{
-		var projecteionEvaluator=new CompactProjectionEvaluator();
+		var projecteionEvaluator=new CompactProjectionEvaluator(projectedPointSet_.GetDataInstanceSet().GetNeighborhoodSizeForEvaluation());
 		
 		if(numberOfThreads==1)
 		{
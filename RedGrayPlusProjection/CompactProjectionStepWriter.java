@@ -36,14 +36,14 @@ public class CompactProjectionStepWriter
 				
 				if(i==0)
 				{
-					if(dataInstance.GetFeaturesForEvaluation().size()>0)
+					if(dataInstance.GetNumberOfFeaturesForEvaluation()>0)
 					{
-						for(int j=0;j<dataInstance.GetFeaturesForEvaluation().size();j++)
+						for(int j=0;j<dataInstance.GetNumberOfFeaturesForEvaluation();j++)
 							printWriter.write("Original_feature_"+ (j+1) +",");
 					}
 					else
 					{
-						for(int j=0;j<dataInstance.GetFeatures().size();j++)
+						for(int j=0;j<dataInstance.GetNumberOfFeatures();j++)
 							printWriter.write("Original_feature_"+ (j+1) +",");
 					}
 					
@@ -55,15 +55,15 @@ public class CompactProjectionStepWriter
 				printWriter.write(projectedPoint.GetX()+",");
 				printWriter.write(projectedPoint.GetY()+",");
 				
-				if(dataInstance.GetFeaturesForEvaluation().size()>0)
+				if(dataInstance.GetNumberOfFeaturesForEvaluation()>0)
 				{
-					for(int j=0;j<dataInstance.GetFeaturesForEvaluation().size();j++)
-						printWriter.write(dataInstance.GetFeaturesForEvaluation().get(j)+",");
+					for(int j=0;j<dataInstance.GetNumberOfFeaturesForEvaluation();j++)
+						printWriter.write(dataInstance.GetFeatureForEvaluation(j)+",");
 				}
 				else
 				{
-					for(int j=0;j<dataInstance.GetFeatures().size();j++)
-						printWriter.write(dataInstance.GetFeatures().get(j)+",");
+					for(int j=0;j<dataInstance.GetNumberOfFeatures();j++)
+						printWriter.write(dataInstance.GetFeature(j)+",");
 				}
 				
 				printWriter.write(dataInstance.GetClass(0)+",");
@@ -15,28 +15,61 @@ package RedGrayPlusProjection;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 public class CompactScriptRunner
 {
+	// Daemon threads, so a step or a reader left waiting on a script never keeps the program from exiting.
+	private static final ExecutorService SCRIPT_EXECUTOR=Executors.newCachedThreadPool(runnable->
+	{
+		var thread=new Thread(runnable, "script runner");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/**
+	 * Runs the UMAP script on a CSV copy of the data instances and gives the name of the CSV file of its result, or null if the script gives no result.
+	 * The caller deletes the result file after reading it (see ReadUmapTo30DimensionsEmbedding).
+	 */
 	public static String RunUmapTo30Dimensions(String fileName, HashMap<String,String> parameters, CompactDataInstanceSet dataInstanceSet) throws IOException, InterruptedException
 	{
 		String outputFolderName=parameters.get("OutputFolderName");
 		String tempFolderName=new File(new File(outputFolderName),"/Temp/").getCanonicalPath();
 		new File(tempFolderName).mkdirs();
 		
-		String tempFileName1=new File(new File(tempFolderName),"/input_temp.csv").getCanonicalPath();
+		var inputFile=createExchangeFile(tempFolderName, "_input.csv");
+		try
+		{
+			return runUmapTo30Dimensions(inputFile, parameters, dataInstanceSet);
+		}
+		finally
+		{
+			inputFile.delete();
+			new File(exchangeFileName(inputFile, "_input.csv", ".py")).delete();
+		}
+	}
+	
+	private static String runUmapTo30Dimensions(File inputFile, HashMap<String,String> parameters, CompactDataInstanceSet dataInstanceSet) throws IOException
+	{
+		String tempFileName1=inputFile.getCanonicalPath();
 		
 		boolean isDistanceInput=false;
-		if(parameters.get("InputFileType").toLowerCase().compareTo("csv_distance")==0)
+		if(parameters.get("InputFileType").toLowerCase().compareTo("csv_distance")==0 || parameters.get("InputFileType").toLowerCase().compareTo("npy_distance")==0)
 			isDistanceInput=true;
 		
 		var dataInstances=dataInstanceSet.GetDataInstances();
 		
-		int numberOfDimensions=dataInstanceSet.GetDataInstances().get(0).GetFeatures().size();
+		int numberOfDimensions=dataInstanceSet.GetDataInstances().get(0).GetNumberOfFeatures();
 		if(isDistanceInput)
 			numberOfDimensions=dataInstances.size();
 		
@@ -58,8 +91,8 @@ public class CompactScriptRunner
 				}
 				else
 				{
-					for(int j=0;j<dataInstance.GetFeatures().size();j++)
-						printWriter.write(dataInstance.GetFeatures().get(j)+",");
+					for(int j=0;j<dataInstance.GetNumberOfFeatures();j++)
+						printWriter.write(dataInstance.GetFeature(j)+",");
 				}
 				
 				printWriter.write(dataInstance.GetClass(0)+"\n");
@@ -70,8 +103,8 @@ public class CompactScriptRunner
 			return null;
 		}
 		
-		String tempFileName2=new File(new File(tempFolderName),"/umap_30dim_temp.py").getCanonicalPath();
-		String tempFileName3=new File(new File(tempFolderName),"/umap_30dim_temp_projected.csv").getCanonicalPath();
+		String tempFileName2=exchangeFileName(inputFile, "_input.csv", ".py");
+		String tempFileName3=exchangeFileName(inputFile, "_input.csv", "_projected.csv");
 		
 		int afterUmapTo30DimensionsMaxRows=-1;
 		if(parameters.containsKey("AfterUmapTo30DimensionsMaxRows"))
@@ -89,20 +122,185 @@ public class CompactScriptRunner
 		}
 		
 		
+		runUmapScript(tempFileName2);
+		
+		if(!new File(tempFileName3).exists())
+			return null;
+		
+		return tempFileName3;
+	}
+		
+	/**
+	 * The same UMAP reduction as RunUmapTo30Dimensions, exchanging the data with the script as .npy files instead of CSV text.
+	 * The features (or the dissimilarity rows) are written as float32, which is the type umap.UMAP converts its input to anyway, and only the reduced coordinates are read back,
+	 * as an embedding of 30 values per data instance for CompactPreReduction.SetReducedFeatures. Returns null if the script gives no result.
+	 * With useWorker the reduction runs in the CompactUmapWorker shared by all the configurations instead of a new Python process.
+	 */
+	public static double[] RunUmapTo30DimensionsWithNpy(HashMap<String,String> parameters, CompactDataInstanceSet dataInstanceSet, boolean useWorker) throws IOException
+	{
+		String outputFolderName=parameters.get("OutputFolderName");
+		String tempFolderName=new File(new File(outputFolderName),"/Temp/").getCanonicalPath();
+		new File(tempFolderName).mkdirs();
+		
+		var inputFile=createExchangeFile(tempFolderName, "_input.npy");
+		try
+		{
+			return runUmapTo30DimensionsWithNpy(inputFile, parameters, dataInstanceSet, useWorker);
+		}
+		finally
+		{
+			inputFile.delete();
+			new File(exchangeFileName(inputFile, "_input.npy", ".py")).delete();
+			new File(exchangeFileName(inputFile, "_input.npy", "_projected.npy")).delete();
+		}
+	}
+	
+	private static double[] runUmapTo30DimensionsWithNpy(File inputFile, HashMap<String,String> parameters, CompactDataInstanceSet dataInstanceSet, boolean useWorker) throws IOException
+	{
+		String tempFileName1=inputFile.getCanonicalPath();
+		String tempFileName2=exchangeFileName(inputFile, "_input.npy", ".py");
+		String tempFileName3=exchangeFileName(inputFile, "_input.npy", "_projected.npy");
+		
+		boolean isDistanceInput=false;
+		if(parameters.get("InputFileType").toLowerCase().compareTo("csv_distance")==0 || parameters.get("InputFileType").toLowerCase().compareTo("npy_distance")==0)
+			isDistanceInput=true;
+		
+		var dataInstances=dataInstanceSet.GetDataInstances();
+		
+		int numberOfDimensions=dataInstances.get(0).GetNumberOfFeatures();
+		if(isDistanceInput)
+			numberOfDimensions=dataInstances.size();
+		
+		final boolean isDistanceRows=isDistanceInput;
+		CompactNpyFile.WriteFloats(tempFileName1, dataInstances.size(), numberOfDimensions, (row, values)->
+		{
+			var dataInstance=dataInstances.get(row);
+			if(isDistanceRows)
+			{
+				for(int j=0;j<dataInstances.size();j++)
+					values[j]=dataInstance.DistanceTo(dataInstances.get(j));
+			}
+			else
+			{
+				for(int j=0;j<values.length;j++)
+					values[j]=dataInstance.GetFeature(j);
+			}
+		});
+		
+		new File(tempFileName3).delete();
+		
+		if(useWorker)
+		{
+			System.out.println("");
+			System.out.println("Running UMAP to 30 dimensions in the Python worker");
+			boolean isReduced=CompactUmapWorker.GetWorker().Reduce(tempFileName1, tempFileName3, 30, isDistanceInput);
+			System.out.println("Finished running UMAP to 30 dimensions in the Python worker");
+			System.out.println("");
+			if(!isReduced)
+				return null;
+		}
+		else
+		{
+			try(var printWriter=new PrintWriter(new File(tempFileName2)))
+			{
+				printWriter.write(umapTo30DimensionsNpyScript(tempFileName1, tempFileName3, isDistanceInput));
+			}
+			
+			runUmapScript(tempFileName2);
+		}
+		
+		if(!new File(tempFileName3).exists())
+			return null;
+		
+		var npyFile=CompactNpyFile.Open(tempFileName3);
+		try
+		{
+			int numberOfRows=npyFile.GetNumberOfRows();
+			if(numberOfRows!=dataInstances.size() || npyFile.GetNumberOfColumns()!=30)
+				throw new IOException("The UMAP script gave "+numberOfRows+" rows of "+npyFile.GetNumberOfColumns()+" values for "+dataInstances.size()+" data instances");
+			
+			var embedding=new double[numberOfRows*30];
+			npyFile.ReadDoubles(0, embedding, 0, embedding.length);
+			
+			return embedding;
+		}
+		finally
+		{
+			npyFile.Close();
+		}
+	}
+	
+	/**
+	 * The projected features of the file written by the script of RunUmapTo30Dimensions, as an embedding of 30 values per data instance for CompactPreReduction.SetReducedFeatures.
+	 */
+	public static double[] ReadUmapTo30DimensionsEmbedding(String projectedFileName, int numberOfThreads) throws Exception
+	{
+		var dataInstanceReader=new CompactDataInstanceReader();
+		dataInstanceReader.SetNumberOfThreads(numberOfThreads);
+		var dataInstances=dataInstanceReader.ReadExternalProjectedDataSetAsInput(projectedFileName).GetDataInstances();
+		
+		var embedding=new double[dataInstances.size()*30];
+		for(int i=0;i<dataInstances.size();i++)
+		{
+			var dataInstance=dataInstances.get(i);
+			if(dataInstance.GetNumberOfFeatures()!=30)
+				throw new IOException("The UMAP script gave "+dataInstance.GetNumberOfFeatures()+" projected features");
+			for(int j=0;j<30;j++)
+				embedding[i*30+j]=dataInstance.GetFeature(j);
+		}
+		
+		return embedding;
+	}
+	
+	/**
+	 * A new input file for the UMAP script in the temporary folder, with a name no other run uses, so configurations running at the same time with the same output folder
+	 * never exchange their data through the same files. The script and its result are named after it (see exchangeFileName), and all of them are deleted after the result is read.
+	 */
+	private static File createExchangeFile(String tempFolderName, String suffix) throws IOException
+	{
+		return File.createTempFile("umap_30dim_", suffix, new File(tempFolderName)).getCanonicalFile();
+	}
+	
+	private static String exchangeFileName(File inputFile, String inputSuffix, String suffix)
+	{
+		String inputFileName=inputFile.getPath();
+		return inputFileName.substring(0, inputFileName.length()-inputSuffix.length())+suffix;
+	}
+	
+	/**
+	 * Runs a step which mostly waits for a script on a thread of its own, so the program can do other work meanwhile.
+	 * The exception of the step, if any, is the cause of the CompletionException of the future.
+	 */
+	public static <T> CompletableFuture<T> SupplyAsync(Callable<T> step)
+	{
+		return CompletableFuture.supplyAsync(()->
+		{
+			try
+			{
+				return step.call();
+			}
+			catch (Exception e)
+			{
+				throw new CompletionException(e);
+			}
+		}, SCRIPT_EXECUTOR);
+	}
+	
+	private static void runUmapScript(String scriptFileName)
+	{
 		try
 		{
 			System.out.println("");
 			System.out.println("Running script that calls UMAP to 30 dimensions");
 			
-			Process process = Runtime.getRuntime().exec(new String[]{"python", tempFileName2});
+			Process process = Runtime.getRuntime().exec(new String[]{"python", scriptFileName});
+			
+			// Both outputs are read on threads of their own, so the script never blocks on a full pipe, whichever of the two it writes more to.
+			var outputDrained=drainAsync(process.getInputStream(), System.out);
+			var errorDrained=drainAsync(process.getErrorStream(), System.err);
 			
-			var bufferReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-	        String line=null;
-
-	        while((line=bufferReader.readLine()) != null)
-	            System.out.println(line);
-	        
 			int exitCode=process.waitFor();
+			CompletableFuture.allOf(outputDrained, errorDrained).join();
 			System.out.println("Finished running script that calls UMAP to 30 dimensions");
 			System.out.println("");
 		}
@@ -110,10 +308,41 @@ public class CompactScriptRunner
 			System.out.println("Error");
 			System.out.println(e.getMessage());
 		}
-				
-		return tempFileName3;
 	}
+	
+	private static CompletableFuture<Void> drainAsync(InputStream inputStream, PrintStream printStream)
+	{
+		return CompletableFuture.runAsync(()->
+		{
+			try(var bufferReader = new BufferedReader(new InputStreamReader(inputStream)))
+			{
+				String line=null;
+				while((line=bufferReader.readLine()) != null)
+					printStream.println(line);
+			}
+			catch (IOException e)
+			{
+			}
+		}, SCRIPT_EXECUTOR);
+	}
+	
+	private static String umapTo30DimensionsNpyScript(String inputFileName, String outputFileName, boolean isDistanceInput)
+	{
+		var stringBuilder=new StringBuilder();
+		stringBuilder.append("import numpy\n");
+		stringBuilder.append("import umap\n");
+		stringBuilder.append("    \n");
+		stringBuilder.append("dataFeatures=numpy.load(r'"+inputFileName+"', mmap_mode='r')\n");
+		if(isDistanceInput)
+			stringBuilder.append("projectionMethod= umap.UMAP(random_state=10, n_components=30, metric=\"precomputed\")\n");
+		else
+			stringBuilder.append("projectionMethod= umap.UMAP(random_state=10, n_components=30)\n");
+		stringBuilder.append("transformedData= projectionMethod.fit_transform(dataFeatures)\n");
+		stringBuilder.append("numpy.save(r'"+outputFileName+"', numpy.ascontiguousarray(transformedData, dtype=numpy.float32))\n");
 		
+		return stringBuilder.toString();
+	}
+	
 	private static String umapTo30DimensionsScript(String inputFileName,int numberOfInputDimensions, String outputFileName,int afterUmapTo30DimensionsMaxRows, boolean isDistanceInput)
 	{
 		var stringBuilder=new StringBuilder();
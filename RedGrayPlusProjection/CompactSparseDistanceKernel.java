@@ -0,0 +1,200 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+package RedGrayPlusProjection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes distance matrices of data instances with sparse features (see CompactSparseFeatureMatrix) from the dot products of their non-zero features,
+ * instead of the dense tiles of CompactDistanceKernel which would cost the full number of features for every pair.
+ * Each row is scattered once into a dense array and the rows after it gather from it, so a pair costs the number of non-zero features of one row.
+ * Only the upper triangle is computed and blocks of rows are spread over a fork join pool.
+ */
+public class CompactSparseDistanceKernel
+{
+	private static final int ROWS_PER_TASK=16;
+	
+	private CompactSparseFeatureMatrix featureMatrix_;
+	private int[] featureRows_;
+	private boolean isCosine_;
+	
+	public CompactSparseDistanceKernel(ArrayList<CompactDataInstance> dataInstances)
+	{
+		featureMatrix_=null;
+		featureRows_=new int[dataInstances.size()];
+		for(int i=0;i<dataInstances.size();i++)
+		{
+			var dataInstance=dataInstances.get(i);
+			if(featureMatrix_==null)
+				featureMatrix_=(CompactSparseFeatureMatrix)dataInstance.GetFeatureMatrix();
+			else if(dataInstance.GetFeatureMatrix()!=featureMatrix_)
+				throw new IllegalArgumentException("The data instances are not rows of the same sparse feature matrix");
+			featureRows_[i]=dataInstance.GetFeatureRow();
+		}
+	}
+	
+	/**
+	 * If the features of the data instances are the rows of one sparse feature matrix.
+	 */
+	public static boolean IsApplicable(ArrayList<CompactDataInstance> dataInstances)
+	{
+		if(dataInstances.size()==0 || !(dataInstances.get(0).GetFeatureMatrix() instanceof CompactSparseFeatureMatrix))
+			return false;
+		
+		var featureMatrix=dataInstances.get(0).GetFeatureMatrix();
+		for(int i=0;i<dataInstances.size();i++)
+			if(dataInstances.get(i).GetFeatureMatrix()!=featureMatrix)
+				return false;
+		
+		return true;
+	}
+	
+	public void ComputeEuclideanDistances(CompactWritableDistanceMatrix distances, int numberOfThreads)
+	{
+		isCosine_=false;
+		computeRows(distances, numberOfThreads);
+	}
+	
+	/**
+	 * Writes one minus the cosine similarity, the same values as the "Cosine for original space" transform.
+	 */
+	public void ComputeCosineDistances(CompactWritableDistanceMatrix distances, int numberOfThreads)
+	{
+		isCosine_=true;
+		computeRows(distances, numberOfThreads);
+	}
+	
+	/**
+	 * The nearest neighbors of every data instance by euclidean distance, sorted by distance, without a distance matrix.
+	 * Each row is compared with all the other rows, so a row costs the number of non-zero features of the whole matrix.
+	 */
+	public void ComputeEuclideanNearestNeighbors(int[][] nearestIndices, double[][] nearestDistances, int numberOfThreads)
+	{
+		isCosine_=false;
+		var forkJoinPool=new ForkJoinPool(Math.max(1, numberOfThreads));
+		try
+		{
+			forkJoinPool.invoke(new RowTask(null, nearestIndices, nearestDistances, 0, featureRows_.length));
+		}
+		finally
+		{
+			forkJoinPool.shutdown();
+		}
+	}
+	
+	private void computeRows(CompactWritableDistanceMatrix distances, int numberOfThreads)
+	{
+		var forkJoinPool=new ForkJoinPool(Math.max(1, numberOfThreads));
+		try
+		{
+			forkJoinPool.invoke(new RowTask(distances, null, null, 0, featureRows_.length));
+		}
+		finally
+		{
+			forkJoinPool.shutdown();
+		}
+	}
+	
+	/**
+	 * The distance from the dot product of the rows, with the same operations in the same order as CompactSparseFeatureMatrix.CosineDistance for the cosine distance.
+	 */
+	private double distance(int index1, int index2, double dotProduct)
+	{
+		int row1=Math.min(featureRows_[index1], featureRows_[index2]);
+		int row2=Math.max(featureRows_[index1], featureRows_[index2]);
+		double squaredNorm1=featureMatrix_.GetSquaredNorm(row1);
+		double squaredNorm2=featureMatrix_.GetSquaredNorm(row2);
+		
+		if(isCosine_)
+			return 1-dotProduct/Math.sqrt(Math.max(squaredNorm1, 1e-7))/Math.sqrt(Math.max(squaredNorm2, 1e-7));
+		
+		if(index1==index2)
+			return 0;
+		return Math.sqrt(Math.max(squaredNorm1+squaredNorm2-2*dotProduct, 0));
+	}
+	
+	private class RowTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private CompactWritableDistanceMatrix distances_;
+		private int[][] nearestIndices_;
+		private double[][] nearestDistances_;
+		private int start_;
+		private int end_;
+		
+		/**
+		 * Either the distances are written or, if they are null, the nearest neighbors are found.
+		 */
+		public RowTask(CompactWritableDistanceMatrix distances, int[][] nearestIndices, double[][] nearestDistances, int start, int end)
+		{
+			distances_=distances;
+			nearestIndices_=nearestIndices;
+			nearestDistances_=nearestDistances;
+			start_=start;
+			end_=end;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(end_-start_>ROWS_PER_TASK)
+			{
+				int middle=(start_+end_)>>>1;
+				invokeAll(new RowTask(distances_, nearestIndices_, nearestDistances_, start_, middle),
+						new RowTask(distances_, nearestIndices_, nearestDistances_, middle, end_));
+				return;
+			}
+			
+			int size=featureRows_.length;
+			var dense=new double[featureMatrix_.GetNumberOfFeatures()];
+			
+			if(distances_==null)
+			{
+				for(int i=start_;i<end_;i++)
+				{
+					featureMatrix_.ScatterRow(featureRows_[i], dense);
+					int count=0;
+					for(int j=0;j<size;j++)
+						if(i!=j)
+							count=CompactDistanceTransformer.InsertSorted(nearestDistances_[i], nearestIndices_[i], count,
+									distance(i, j, featureMatrix_.GatherDotProduct(featureRows_[j], dense)), j);
+					featureMatrix_.ClearRow(featureRows_[i], dense);
+					
+					if(count<nearestDistances_[i].length)
+					{
+						nearestDistances_[i]=Arrays.copyOf(nearestDistances_[i], count);
+						nearestIndices_[i]=Arrays.copyOf(nearestIndices_[i], count);
+					}
+				}
+				return;
+			}
+			
+			boolean isSymmetric=distances_.IsSymmetric();
+			for(int i=start_;i<end_;i++)
+			{
+				featureMatrix_.ScatterRow(featureRows_[i], dense);
+				for(int j=i;j<size;j++)
+				{
+					double distance=distance(i, j, featureMatrix_.GatherDotProduct(featureRows_[j], dense));
+					distances_.Set(i, j, distance);
+					if(!isSymmetric)
+						distances_.Set(j, i, distance);
+				}
+				featureMatrix_.ClearRow(featureRows_[i], dense);
+			}
+		}
+	}
+}
@@ -0,0 +1,308 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+package RedGrayPlusProjection;
+
+import java.util.Arrays;
+
+/**
+ * A feature matrix in compressed sparse row form: the column indices (in ascending order) and values of the non-zero features of each row.
+ * Distances between two rows of the same matrix are merge joins over their non-zero features, so their cost depends on the number of non-zero features only.
+ */
+public class CompactSparseFeatureMatrix extends CompactFeatureMatrix
+{
+	private int numberOfRows_;
+	private int numberOfFeatures_;
+	private int[] rowStarts_;
+	private int[] columnIndices_;
+	private double[] values_;
+	private double[] squaredNorms_;
+	
+	public CompactSparseFeatureMatrix(int numberOfFeatures)
+	{
+		numberOfRows_=0;
+		numberOfFeatures_=numberOfFeatures;
+		rowStarts_=new int[1024];
+		columnIndices_=new int[1024];
+		values_=new double[1024];
+		squaredNorms_=new double[1024];
+	}
+	
+	/**
+	 * A matrix of rows already in compressed sparse row form, with ascending column indices and no zero values in each row, such as the arrays of another matrix.
+	 */
+	public CompactSparseFeatureMatrix(int numberOfFeatures, int numberOfRows, int[] rowStarts, int[] columnIndices, double[] values)
+	{
+		numberOfRows_=numberOfRows;
+		numberOfFeatures_=numberOfFeatures;
+		rowStarts_=rowStarts;
+		columnIndices_=columnIndices;
+		values_=values;
+		squaredNorms_=new double[numberOfRows];
+		
+		for(int row=0;row<numberOfRows;row++)
+		{
+			double squaredNorm=0;
+			for(int i=rowStarts_[row];i<rowStarts_[row+1];i++)
+				squaredNorm+=values_[i]*values_[i];
+			squaredNorms_[row]=squaredNorm;
+		}
+	}
+	
+	/**
+	 * Appends a row given by the indices and values of its features, in any order. Zero values are not stored and for repeated indices the last value is kept.
+	 */
+	public void AddRow(int[] indices, double[] values, int count)
+	{
+		// The index and the position are packed in one long, so sorting primitives orders by index and keeps repeated indices in their order.
+		var order=new long[count];
+		for(int i=0;i<count;i++)
+			order[i]=((long)indices[i]<<32)|i;
+		Arrays.sort(order);
+		
+		if(numberOfRows_+2>rowStarts_.length)
+		{
+			rowStarts_=Arrays.copyOf(rowStarts_, rowStarts_.length*2);
+			squaredNorms_=Arrays.copyOf(squaredNorms_, squaredNorms_.length*2);
+		}
+		
+		int start=rowStarts_[numberOfRows_];
+		int end=start;
+		if((long)start+count>Integer.MAX_VALUE-8)
+			throw new IllegalArgumentException("Too many non-zero features for a sparse feature matrix");
+		if(start+count>columnIndices_.length)
+		{
+			int newLength=(int)Math.min(Integer.MAX_VALUE-8, Math.max((long)start+count, (long)columnIndices_.length*2));
+			columnIndices_=Arrays.copyOf(columnIndices_, newLength);
+			values_=Arrays.copyOf(values_, newLength);
+		}
+		
+		for(int i=0;i<count;i++)
+		{
+			int index=indices[(int)order[i]];
+			double value=values[(int)order[i]];
+			if(index<0 || index>=numberOfFeatures_)
+				throw new IllegalArgumentException("Feature index "+index+" is not in the range of the "+numberOfFeatures_+" features");
+			
+			if(i+1<count && indices[(int)order[i+1]]==index)
+				continue;
+			if(value==0)
+				continue;
+			
+			columnIndices_[end]=index;
+			values_[end]=value;
+			end++;
+		}
+		
+		double squaredNorm=0;
+		for(int i=start;i<end;i++)
+			squaredNorm+=values_[i]*values_[i];
+		squaredNorms_[numberOfRows_]=squaredNorm;
+		
+		numberOfRows_++;
+		rowStarts_[numberOfRows_]=end;
+	}
+	
+	/**
+	 * Releases the spare capacity left by AddRow.
+	 */
+	public void Trim()
+	{
+		rowStarts_=Arrays.copyOf(rowStarts_, numberOfRows_+1);
+		squaredNorms_=Arrays.copyOf(squaredNorms_, numberOfRows_);
+		columnIndices_=Arrays.copyOf(columnIndices_, rowStarts_[numberOfRows_]);
+		values_=Arrays.copyOf(values_, rowStarts_[numberOfRows_]);
+	}
+	
+	@Override
+	public int GetNumberOfRows()
+	{
+		return numberOfRows_;
+	}
+	
+	@Override
+	public int GetNumberOfFeatures()
+	{
+		return numberOfFeatures_;
+	}
+	
+	public int GetNumberOfNonZeros(int row)
+	{
+		return rowStarts_[row+1]-rowStarts_[row];
+	}
+	
+	@Override
+	public double Get(int row, int feature)
+	{
+		int position=Arrays.binarySearch(columnIndices_, rowStarts_[row], rowStarts_[row+1], feature);
+		if(position<0)
+			return 0;
+		return values_[position];
+	}
+	
+	/**
+	 * Only features which are already non-zero can be changed, because the structure of the rows is fixed.
+	 */
+	@Override
+	public void Set(int row, int feature, double value)
+	{
+		int position=Arrays.binarySearch(columnIndices_, rowStarts_[row], rowStarts_[row+1], feature);
+		if(position<0)
+			throw new UnsupportedOperationException("A zero feature of a sparse feature matrix can not be changed");
+		
+		squaredNorms_[row]+=value*value-values_[position]*values_[position];
+		values_[position]=value;
+	}
+	
+	@Override
+	public long GetSizeInBytes()
+	{
+		return rowStarts_.length*4L+columnIndices_.length*4L+values_.length*8L+squaredNorms_.length*8L;
+	}
+	
+	@Override
+	public void CopyRow(int row, double[] destination)
+	{
+		Arrays.fill(destination, 0, numberOfFeatures_, 0);
+		for(int i=rowStarts_[row];i<rowStarts_[row+1];i++)
+			destination[columnIndices_[i]]=values_[i];
+	}
+	
+	public int GetRowStart(int row)
+	{
+		return rowStarts_[row];
+	}
+	
+	public int GetRowEnd(int row)
+	{
+		return rowStarts_[row+1];
+	}
+	
+	/**
+	 * The column indices of all the rows one after another, the ones of a row being from GetRowStart to GetRowEnd.
+	 */
+	public int[] GetColumnIndices()
+	{
+		return columnIndices_;
+	}
+	
+	public double[] GetValues()
+	{
+		return values_;
+	}
+	
+	public double GetSquaredNorm(int row)
+	{
+		return squaredNorms_[row];
+	}
+	
+	public double DotProduct(int row1, int row2)
+	{
+		int position1=rowStarts_[row1];
+		int end1=rowStarts_[row1+1];
+		int position2=rowStarts_[row2];
+		int end2=rowStarts_[row2+1];
+		
+		double dotProduct=0;
+		while(position1<end1 && position2<end2)
+		{
+			int index1=columnIndices_[position1];
+			int index2=columnIndices_[position2];
+			if(index1==index2)
+			{
+				dotProduct+=values_[position1]*values_[position2];
+				position1++;
+				position2++;
+			}
+			else if(index1<index2)
+				position1++;
+			else
+				position2++;
+		}
+		
+		return dotProduct;
+	}
+	
+	/**
+	 * Writes the non-zero features of a row into a dense array of zeros, so the dot products of many rows with it are found with GatherDotProduct
+	 * without the branches of a merge join. ClearRow puts the zeros back.
+	 */
+	public void ScatterRow(int row, double[] dense)
+	{
+		for(int i=rowStarts_[row];i<rowStarts_[row+1];i++)
+			dense[columnIndices_[i]]=values_[i];
+	}
+	
+	public void ClearRow(int row, double[] dense)
+	{
+		for(int i=rowStarts_[row];i<rowStarts_[row+1];i++)
+			dense[columnIndices_[i]]=0;
+	}
+	
+	public double GatherDotProduct(int row, double[] dense)
+	{
+		double dotProduct=0;
+		for(int i=rowStarts_[row];i<rowStarts_[row+1];i++)
+			dotProduct+=values_[i]*dense[columnIndices_[i]];
+		
+		return dotProduct;
+	}
+	
+	public double SquaredEuclideanDistance(int row1, int row2)
+	{
+		int position1=rowStarts_[row1];
+		int end1=rowStarts_[row1+1];
+		int position2=rowStarts_[row2];
+		int end2=rowStarts_[row2+1];
+		
+		double sum=0;
+		while(position1<end1 || position2<end2)
+		{
+			int index1=position1<end1?columnIndices_[position1]:Integer.MAX_VALUE;
+			int index2=position2<end2?columnIndices_[position2]:Integer.MAX_VALUE;
+			double difference;
+			if(index1==index2)
+			{
+				difference=values_[position1]-values_[position2];
+				position1++;
+				position2++;
+			}
+			else if(index1<index2)
+			{
+				difference=values_[position1];
+				position1++;
+			}
+			else
+			{
+				difference=values_[position2];
+				position2++;
+			}
+			sum+=difference*difference;
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * One minus the cosine similarity with the same clamping of the squared norms as the "Cosine for original space" transform.
+	 */
+	public double CosineDistance(int row1, int row2)
+	{
+		if(row1>row2)
+		{
+			int temp=row1;
+			row1=row2;
+			row2=temp;
+		}
+		
+		return 1-DotProduct(row1, row2)/Math.sqrt(Math.max(squaredNorms_[row1], 1e-7))/Math.sqrt(Math.max(squaredNorms_[row2], 1e-7));
+	}
+}
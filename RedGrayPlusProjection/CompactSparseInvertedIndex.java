@@ -0,0 +1,274 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+package RedGrayPlusProjection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An inverted index of a sparse feature matrix: for each feature, the rows in which it is not zero.
+ * Two rows without a common non-zero feature have a dot product of zero and a cosine distance of exactly one,
+ * so the rows found through the index of the features of a row are the only candidates which have to be scored,
+ * at a cost which is the total length of those lists instead of the number of rows times the number of features.
+ * A row without non-zero features is not even its own candidate, which is right since its cosine distance to itself is one as well.
+ */
+public class CompactSparseInvertedIndex
+{
+	private static final int ROWS_PER_TASK=16;
+	
+	private CompactSparseFeatureMatrix featureMatrix_;
+	private int[] featureStarts_;
+	private int[] rows_;
+	private double[] values_;
+	
+	public CompactSparseInvertedIndex(CompactSparseFeatureMatrix featureMatrix)
+	{
+		featureMatrix_=featureMatrix;
+		int numberOfFeatures=featureMatrix.GetNumberOfFeatures();
+		int numberOfRows=featureMatrix.GetNumberOfRows();
+		int[] columnIndices=featureMatrix.GetColumnIndices();
+		double[] values=featureMatrix.GetValues();
+		int numberOfNonZeros=featureMatrix.GetRowStart(numberOfRows);
+		
+		featureStarts_=new int[numberOfFeatures+1];
+		for(int i=0;i<numberOfNonZeros;i++)
+			featureStarts_[columnIndices[i]+1]++;
+		for(int k=0;k<numberOfFeatures;k++)
+			featureStarts_[k+1]+=featureStarts_[k];
+		
+		// Going through the rows in order leaves the rows of each list in ascending order.
+		rows_=new int[numberOfNonZeros];
+		values_=new double[numberOfNonZeros];
+		var positions=Arrays.copyOf(featureStarts_, numberOfFeatures);
+		for(int row=0;row<numberOfRows;row++)
+			for(int i=featureMatrix.GetRowStart(row);i<featureMatrix.GetRowEnd(row);i++)
+			{
+				int position=positions[columnIndices[i]]++;
+				rows_[position]=row;
+				values_[position]=values[i];
+			}
+	}
+	
+	/**
+	 * If the features of the data instance at each index are the row with the same index of one sparse feature matrix, the way CompactDataInstanceSet.SetFeatureMatrix makes them.
+	 */
+	public static boolean IsApplicable(ArrayList<CompactDataInstance> dataInstances)
+	{
+		if(dataInstances.size()==0 || !(dataInstances.get(0).GetFeatureMatrix() instanceof CompactSparseFeatureMatrix))
+			return false;
+		
+		var featureMatrix=dataInstances.get(0).GetFeatureMatrix();
+		if(featureMatrix.GetNumberOfRows()!=dataInstances.size())
+			return false;
+		
+		for(int i=0;i<dataInstances.size();i++)
+			if(dataInstances.get(i).GetFeatureMatrix()!=featureMatrix || dataInstances.get(i).GetFeatureRow()!=i)
+				return false;
+		
+		return true;
+	}
+	
+	/**
+	 * Adds the dot products of a row with the rows from firstRow on which share a non-zero feature with it, and lists those rows as the candidates.
+	 * The dot products of the candidates have to be set back to zero by the caller. The products are added in ascending order of the features,
+	 * the same order as CompactSparseFeatureMatrix.DotProduct, so both give the same values.
+	 */
+	public int AccumulateDotProducts(int row, int firstRow, double[] dotProducts, boolean[] isCandidate, int[] candidates)
+	{
+		int[] columnIndices=featureMatrix_.GetColumnIndices();
+		double[] values=featureMatrix_.GetValues();
+		int numberOfCandidates=0;
+		
+		for(int i=featureMatrix_.GetRowStart(row);i<featureMatrix_.GetRowEnd(row);i++)
+		{
+			int feature=columnIndices[i];
+			double value=values[i];
+			int start=featureStarts_[feature];
+			int end=featureStarts_[feature+1];
+			if(firstRow>0)
+			{
+				start=Arrays.binarySearch(rows_, start, end, firstRow);
+				if(start<0)
+					start=-start-1;
+			}
+			
+			for(int position=start;position<end;position++)
+			{
+				int otherRow=rows_[position];
+				dotProducts[otherRow]+=value*values_[position];
+				if(!isCandidate[otherRow])
+				{
+					isCandidate[otherRow]=true;
+					candidates[numberOfCandidates++]=otherRow;
+				}
+			}
+		}
+		
+		return numberOfCandidates;
+	}
+	
+	private double cosineDistance(int row1, int row2, double dotProduct)
+	{
+		double squaredNorm1=featureMatrix_.GetSquaredNorm(Math.min(row1, row2));
+		double squaredNorm2=featureMatrix_.GetSquaredNorm(Math.max(row1, row2));
+		return 1-dotProduct/Math.sqrt(Math.max(squaredNorm1, 1e-7))/Math.sqrt(Math.max(squaredNorm2, 1e-7));
+	}
+	
+	/**
+	 * The cosine distances from a row to all the rows, the same values as CompactSparseFeatureMatrix.CosineDistance.
+	 */
+	public void ComputeCosineRow(int row, double[] distances, double[] dotProducts, boolean[] isCandidate, int[] candidates)
+	{
+		Arrays.fill(distances, 1.0);
+		int numberOfCandidates=AccumulateDotProducts(row, 0, dotProducts, isCandidate, candidates);
+		for(int i=0;i<numberOfCandidates;i++)
+		{
+			int otherRow=candidates[i];
+			distances[otherRow]=cosineDistance(row, otherRow, dotProducts[otherRow]);
+			dotProducts[otherRow]=0;
+			isCandidate[otherRow]=false;
+		}
+	}
+	
+	/**
+	 * Writes the cosine distances of all the pairs, scoring only the pairs which share a non-zero feature.
+	 */
+	public void ComputeCosineDistances(CompactWritableDistanceMatrix distances, int numberOfThreads)
+	{
+		var forkJoinPool=new ForkJoinPool(Math.max(1, numberOfThreads));
+		try
+		{
+			forkJoinPool.invoke(new RowTask(distances, null, 0, featureMatrix_.GetNumberOfRows()));
+		}
+		finally
+		{
+			forkJoinPool.shutdown();
+		}
+	}
+	
+	/**
+	 * The smallest cosine distances from each row to the other rows, used for the radii of the "Neighbourhood normalized for original space" transform.
+	 * The rows which are not candidates of a row are all at a distance of one from it.
+	 */
+	public double[][] ComputeNearestCosineDistances(int numberOfNeighbors, int numberOfThreads)
+	{
+		int numberOfRows=featureMatrix_.GetNumberOfRows();
+		var nearestDistances=new double[numberOfRows][Math.max(1, Math.min(numberOfNeighbors, numberOfRows-1))];
+		
+		var forkJoinPool=new ForkJoinPool(Math.max(1, numberOfThreads));
+		try
+		{
+			forkJoinPool.invoke(new RowTask(null, nearestDistances, 0, numberOfRows));
+		}
+		finally
+		{
+			forkJoinPool.shutdown();
+		}
+		
+		return nearestDistances;
+	}
+	
+	private class RowTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private CompactWritableDistanceMatrix distances_;
+		private double[][] nearestDistances_;
+		private int start_;
+		private int end_;
+		
+		public RowTask(CompactWritableDistanceMatrix distances, double[][] nearestDistances, int start, int end)
+		{
+			distances_=distances;
+			nearestDistances_=nearestDistances;
+			start_=start;
+			end_=end;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(end_-start_>ROWS_PER_TASK)
+			{
+				int middle=(start_+end_)>>>1;
+				invokeAll(new RowTask(distances_, nearestDistances_, start_, middle),
+						new RowTask(distances_, nearestDistances_, middle, end_));
+				return;
+			}
+			
+			int numberOfRows=featureMatrix_.GetNumberOfRows();
+			var dotProducts=new double[numberOfRows];
+			var isCandidate=new boolean[numberOfRows];
+			var candidates=new int[numberOfRows];
+			
+			for(int row=start_;row<end_;row++)
+			{
+				if(distances_!=null)
+					computeDistanceRow(row, dotProducts, isCandidate, candidates);
+				else
+					computeNearestDistances(row, dotProducts, isCandidate, candidates);
+			}
+		}
+		
+		private void computeDistanceRow(int row, double[] dotProducts, boolean[] isCandidate, int[] candidates)
+		{
+			int numberOfRows=featureMatrix_.GetNumberOfRows();
+			boolean isSymmetric=distances_.IsSymmetric();
+			
+			for(int j=row;j<numberOfRows;j++)
+			{
+				distances_.Set(row, j, 1.0);
+				if(!isSymmetric)
+					distances_.Set(j, row, 1.0);
+			}
+			
+			int numberOfCandidates=AccumulateDotProducts(row, row, dotProducts, isCandidate, candidates);
+			for(int i=0;i<numberOfCandidates;i++)
+			{
+				int otherRow=candidates[i];
+				double distance=cosineDistance(row, otherRow, dotProducts[otherRow]);
+				distances_.Set(row, otherRow, distance);
+				if(!isSymmetric)
+					distances_.Set(otherRow, row, distance);
+				dotProducts[otherRow]=0;
+				isCandidate[otherRow]=false;
+			}
+		}
+		
+		private void computeNearestDistances(int row, double[] dotProducts, boolean[] isCandidate, int[] candidates)
+		{
+			int numberOfRows=featureMatrix_.GetNumberOfRows();
+			var nearestDistances=nearestDistances_[row];
+			int count=0;
+			
+			int numberOfCandidates=AccumulateDotProducts(row, 0, dotProducts, isCandidate, candidates);
+			int numberOfOtherCandidates=0;
+			for(int i=0;i<numberOfCandidates;i++)
+			{
+				int otherRow=candidates[i];
+				if(otherRow!=row)
+				{
+					count=CompactDistanceTransformer.InsertSorted(nearestDistances, count, cosineDistance(row, otherRow, dotProducts[otherRow]));
+					numberOfOtherCandidates++;
+				}
+				dotProducts[otherRow]=0;
+				isCandidate[otherRow]=false;
+			}
+			
+			int numberOfRowsAtDistanceOne=numberOfRows-1-numberOfOtherCandidates;
+			for(int i=0;i<Math.min(numberOfRowsAtDistanceOne, nearestDistances.length);i++)
+				count=CompactDistanceTransformer.InsertSorted(nearestDistances, count, 1.0);
+		}
+	}
+}
@@ -0,0 +1,472 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A Java implementation of the UMAP embedding (McInnes, Healy and Melville) that the script of CompactScriptRunner.RunUmapTo30Dimensions computes in Python,
+ * with the same default parameters of umap.UMAP: 15 neighbours, min_dist 0.1, spread 1, 5 negative samples per positive sample and 500 epochs (200 above 10000 data instances).
+ * The fuzzy simplicial set is built from the exact nearest neighbours of CompactDistanceKernel, or of the dissimilarity rows for a dissimilarity input (metric "precomputed"),
+ * and the layout starts from the PCA (or classical MDS) embedding of CompactPreReduction instead of the spectral embedding of the graph.
+ * The epochs of stochastic gradient descent are split over the threads by blocks of edges which update the shared embedding without locks, like the parallel mode of umap-learn.
+ * Each block has its own random numbers, so the result depends only on the seed when one thread is used, and differs slightly from run to run with more threads.
+ */
+public class CompactUmapEmbedding
+{
+	private static final int NUMBER_OF_NEIGHBORS=15;
+	private static final int NEGATIVE_SAMPLE_RATE=5;
+	private static final double GRADIENT_CLIP=4;
+	private static final int EDGES_PER_TASK=4096;
+	private static final int ROWS_PER_TASK=64;
+	
+	// The parameters of the curve 1/(1+a*d^(2b)) which umap-learn fits for min_dist 0.1 and spread 1.
+	private static final double A=1.576943460405378;
+	private static final double B=0.8950608781227859;
+	
+	public static CompactDataInstanceSet ReduceWithUmap(CompactDataInstanceSet dataInstanceSet, int numberOfDimensions, int maxRows, CompactFeatureStorage featureStorage, int numberOfThreads, long seed)
+	{
+		int size=dataInstanceSet.GetDataInstances().size();
+		
+		var forkJoinPool=new ForkJoinPool(Math.max(1, numberOfThreads));
+		try
+		{
+			double[] embedding=null;
+			if(size<2)
+				embedding=new double[size*numberOfDimensions];
+			else
+			{
+				int numberOfNeighbors=Math.min(NUMBER_OF_NEIGHBORS-1, size-1);
+				var nearestIndices=new int[size][numberOfNeighbors];
+				var nearestDistances=new double[size][numberOfNeighbors];
+				computeNearestNeighbors(dataInstanceSet, nearestIndices, nearestDistances, numberOfThreads, forkJoinPool);
+				
+				int numberOfEpochs=size<=10000?500:200;
+				var graph=new FuzzySimplicialSet(nearestIndices, nearestDistances, numberOfEpochs);
+				
+				embedding=initialEmbedding(dataInstanceSet, numberOfDimensions, seed, forkJoinPool);
+				optimizeLayout(embedding, numberOfDimensions, size, graph, numberOfEpochs, seed, forkJoinPool);
+			}
+			
+			return CompactPreReduction.CreateReducedDataInstanceSet(dataInstanceSet, embedding, numberOfDimensions, maxRows, featureStorage);
+		}
+		finally
+		{
+			forkJoinPool.shutdown();
+		}
+	}
+	
+	private static void computeNearestNeighbors(CompactDataInstanceSet dataInstanceSet, int[][] nearestIndices, double[][] nearestDistances, int numberOfThreads, ForkJoinPool forkJoinPool)
+	{
+		int size=dataInstanceSet.GetDataInstances().size();
+		
+		// Sparse features keep their compressed rows instead of being copied into the dense rows of CompactDistanceKernel.
+		if(!dataInstanceSet.GetUseDissimilarityInsteadOfDistance() && CompactSparseDistanceKernel.IsApplicable(dataInstanceSet.GetDataInstances()))
+		{
+			new CompactSparseDistanceKernel(dataInstanceSet.GetDataInstances()).ComputeEuclideanNearestNeighbors(nearestIndices, nearestDistances, numberOfThreads);
+			return;
+		}
+		
+		if(!dataInstanceSet.GetUseDissimilarityInsteadOfDistance())
+		{
+			new CompactDistanceKernel(dataInstanceSet.GetDataInstances(), false).ComputeEuclideanNearestNeighbors(nearestIndices, nearestDistances, numberOfThreads);
+			return;
+		}
+		
+		forkJoinPool.invoke(new RangeTask(0, size, ROWS_PER_TASK, (start, end)->
+		{
+			for(int i=start;i<end;i++)
+			{
+				int count=0;
+				for(int j=0;j<size;j++)
+					if(i!=j)
+						count=CompactDistanceTransformer.InsertSorted(nearestDistances[i], nearestIndices[i], count, dataInstanceSet.GetDisSimilarity(i, j), j);
+			}
+		}));
+	}
+	
+	/**
+	 * The PCA embedding scaled so its largest coordinate is 10, with gaussian noise of deviation 0.0001 (the "noisy_scale_coords" of umap-learn),
+	 * and then every dimension rescaled to [0, 10] like umap-learn does before the optimization. Dimensions beyond the rank of the data are noise only.
+	 */
+	private static double[] initialEmbedding(CompactDataInstanceSet dataInstanceSet, int numberOfDimensions, long seed, ForkJoinPool forkJoinPool)
+	{
+		int size=dataInstanceSet.GetDataInstances().size();
+		
+		var pcaEmbedding=CompactPreReduction.ComputePcaEmbedding(dataInstanceSet, numberOfDimensions, seed, forkJoinPool);
+		int numberOfPcaDimensions=pcaEmbedding.length/size;
+		
+		double maxCoordinate=0;
+		for(int i=0;i<pcaEmbedding.length;i++)
+			maxCoordinate=Math.max(maxCoordinate, Math.abs(pcaEmbedding[i]));
+		double expansion=maxCoordinate>0?10.0/maxCoordinate:0;
+		
+		var random=new Random(seed);
+		var embedding=new double[size*numberOfDimensions];
+		for(int i=0;i<size;i++)
+			for(int d=0;d<numberOfDimensions;d++)
+			{
+				double coordinate=d<numberOfPcaDimensions?pcaEmbedding[i*numberOfPcaDimensions+d]*expansion:0;
+				embedding[i*numberOfDimensions+d]=coordinate+random.nextGaussian()*0.0001;
+			}
+		
+		for(int d=0;d<numberOfDimensions;d++)
+		{
+			double min=Double.POSITIVE_INFINITY;
+			double max=Double.NEGATIVE_INFINITY;
+			for(int i=0;i<size;i++)
+			{
+				min=Math.min(min, embedding[i*numberOfDimensions+d]);
+				max=Math.max(max, embedding[i*numberOfDimensions+d]);
+			}
+			double scale=max>min?10.0/(max-min):0;
+			for(int i=0;i<size;i++)
+				embedding[i*numberOfDimensions+d]=(embedding[i*numberOfDimensions+d]-min)*scale;
+		}
+		
+		return embedding;
+	}
+	
+	/**
+	 * The stochastic gradient descent of umap-learn ("optimize_layout_euclidean"): every edge is sampled in proportion to its weight and pulls its two ends together,
+	 * and each sample is followed by negative samples which push its head away from random data instances. The learning rate decreases linearly from 1 to 0.
+	 */
+	private static void optimizeLayout(double[] embedding, int numberOfDimensions, int size, FuzzySimplicialSet graph, int numberOfEpochs, long seed, ForkJoinPool forkJoinPool)
+	{
+		int numberOfEdges=graph.GetNumberOfEdges();
+		var heads=graph.GetHeads();
+		var tails=graph.GetTails();
+		var epochsPerSample=graph.GetEpochsPerSample();
+		
+		var epochsPerNegativeSample=new double[numberOfEdges];
+		var epochOfNextSample=new double[numberOfEdges];
+		var epochOfNextNegativeSample=new double[numberOfEdges];
+		for(int i=0;i<numberOfEdges;i++)
+		{
+			epochsPerNegativeSample[i]=epochsPerSample[i]/NEGATIVE_SAMPLE_RATE;
+			epochOfNextSample[i]=epochsPerSample[i];
+			epochOfNextNegativeSample[i]=epochsPerNegativeSample[i];
+		}
+		
+		for(int epoch=0;epoch<numberOfEpochs;epoch++)
+		{
+			final int n=epoch;
+			final double alpha=1.0-epoch/(double)numberOfEpochs;
+			
+			forkJoinPool.invoke(new RangeTask(0, numberOfEdges, EDGES_PER_TASK, (start, end)->
+			{
+				var random=new SplittableRandom(seed*1000003L+n*65537L+start);
+				
+				for(int i=start;i<end;i++)
+				{
+					if(epochOfNextSample[i]>n)
+						continue;
+					
+					int headOffset=heads[i]*numberOfDimensions;
+					int tailOffset=tails[i]*numberOfDimensions;
+					
+					double squaredDistance=squaredDistance(embedding, headOffset, tailOffset, numberOfDimensions);
+					double gradientCoefficient=0;
+					if(squaredDistance>0)
+					{
+						double power=Math.pow(squaredDistance, B);
+						gradientCoefficient=(-2.0*A*B*power/squaredDistance)/(A*power+1.0);
+					}
+					
+					for(int d=0;d<numberOfDimensions;d++)
+					{
+						double gradient=clip(gradientCoefficient*(embedding[headOffset+d]-embedding[tailOffset+d]));
+						embedding[headOffset+d]+=gradient*alpha;
+						embedding[tailOffset+d]-=gradient*alpha;
+					}
+					
+					epochOfNextSample[i]+=epochsPerSample[i];
+					
+					int numberOfNegativeSamples=(int)((n-epochOfNextNegativeSample[i])/epochsPerNegativeSample[i]);
+					for(int p=0;p<numberOfNegativeSamples;p++)
+					{
+						int other=random.nextInt(size);
+						int otherOffset=other*numberOfDimensions;
+						
+						squaredDistance=squaredDistance(embedding, headOffset, otherOffset, numberOfDimensions);
+						if(squaredDistance>0)
+							gradientCoefficient=(2.0*B)/((0.001+squaredDistance)*(A*Math.pow(squaredDistance, B)+1.0));
+						else if(heads[i]==other)
+							continue;
+						else
+							gradientCoefficient=0;
+						
+						if(gradientCoefficient>0)
+							for(int d=0;d<numberOfDimensions;d++)
+								embedding[headOffset+d]+=clip(gradientCoefficient*(embedding[headOffset+d]-embedding[otherOffset+d]))*alpha;
+					}
+					
+					epochOfNextNegativeSample[i]+=numberOfNegativeSamples*epochsPerNegativeSample[i];
+				}
+			}));
+		}
+	}
+	
+	private static double squaredDistance(double[] embedding, int offset1, int offset2, int numberOfDimensions)
+	{
+		double squaredDistance=0;
+		for(int d=0;d<numberOfDimensions;d++)
+		{
+			double difference=embedding[offset1+d]-embedding[offset2+d];
+			squaredDistance+=difference*difference;
+		}
+		return squaredDistance;
+	}
+	
+	private static double clip(double value)
+	{
+		return Math.max(-GRADIENT_CLIP, Math.min(GRADIENT_CLIP, value));
+	}
+	
+	/**
+	 * The edges of the fuzzy union of the local fuzzy simplicial sets of all the data instances ("fuzzy_simplicial_set" of umap-learn with local_connectivity 1),
+	 * in both directions and grouped by head, without the edges too weak to be sampled in numberOfEpochs epochs, and with how many epochs apart each edge is sampled.
+	 */
+	private static class FuzzySimplicialSet
+	{
+		private static final int NUMBER_OF_SEARCH_ITERATIONS=64;
+		private static final double SEARCH_TOLERANCE=1e-5;
+		private static final double MIN_K_DIST_SCALE=1e-3;
+		
+		private int numberOfEdges_;
+		private int[] heads_;
+		private int[] tails_;
+		private double[] epochsPerSample_;
+		
+		public FuzzySimplicialSet(int[][] nearestIndices, double[][] nearestDistances, int numberOfEpochs)
+		{
+			int size=nearestIndices.length;
+			
+			double meanDistance=0;
+			int numberOfDistances=0;
+			for(int i=0;i<size;i++)
+				for(int j=0;j<nearestDistances[i].length;j++)
+				{
+					meanDistance+=nearestDistances[i][j];
+					numberOfDistances++;
+				}
+			meanDistance/=Math.max(1, numberOfDistances+size);
+			
+			// The membership strengths of the directed k nearest neighbour graph, exp(-(distance-rho)/sigma) with rho the distance to the nearest neighbour.
+			var memberships=new double[size][];
+			for(int i=0;i<size;i++)
+			{
+				var distances=nearestDistances[i];
+				
+				double rho=0;
+				for(int j=0;j<distances.length;j++)
+					if(distances[j]>0)
+					{
+						rho=distances[j];
+						break;
+					}
+				
+				double sigma=smoothDistance(distances, rho);
+				
+				double meanIthDistance=0;
+				for(int j=0;j<distances.length;j++)
+					meanIthDistance+=distances[j];
+				meanIthDistance/=distances.length+1;
+				sigma=Math.max(sigma, MIN_K_DIST_SCALE*(rho>0?meanIthDistance:meanDistance));
+				
+				memberships[i]=new double[distances.length];
+				for(int j=0;j<distances.length;j++)
+				{
+					if(distances[j]-rho<=0 || sigma==0)
+						memberships[i][j]=1;
+					else
+						memberships[i][j]=Math.exp(-(distances[j]-rho)/sigma);
+				}
+			}
+			
+			// The fuzzy union w(i,j)+w(j,i)-w(i,j)*w(j,i). An edge found from both ends is added once from each end, and an edge found from one end is added in both directions.
+			var numberOfEdgesPerHead=new int[size+1];
+			for(int i=0;i<size;i++)
+				for(int j=0;j<nearestIndices[i].length;j++)
+				{
+					numberOfEdgesPerHead[i]++;
+					if(indexOf(nearestIndices[nearestIndices[i][j]], i)==-1)
+						numberOfEdgesPerHead[nearestIndices[i][j]]++;
+				}
+			
+			var edgeStarts=new int[size+1];
+			for(int i=0;i<size;i++)
+				edgeStarts[i+1]=edgeStarts[i]+numberOfEdgesPerHead[i];
+			
+			int totalNumberOfEdges=edgeStarts[size];
+			var heads=new int[totalNumberOfEdges];
+			var tails=new int[totalNumberOfEdges];
+			var weights=new double[totalNumberOfEdges];
+			var positions=edgeStarts.clone();
+			double maxWeight=0;
+			for(int i=0;i<size;i++)
+				for(int j=0;j<nearestIndices[i].length;j++)
+				{
+					int other=nearestIndices[i][j];
+					int reversePosition=indexOf(nearestIndices[other], i);
+					double membership=memberships[i][j];
+					double reverseMembership=reversePosition!=-1?memberships[other][reversePosition]:0;
+					double weight=membership+reverseMembership-membership*reverseMembership;
+					maxWeight=Math.max(maxWeight, weight);
+					
+					heads[positions[i]]=i;
+					tails[positions[i]]=other;
+					weights[positions[i]]=weight;
+					positions[i]++;
+					
+					if(reversePosition==-1)
+					{
+						heads[positions[other]]=other;
+						tails[positions[other]]=i;
+						weights[positions[other]]=weight;
+						positions[other]++;
+					}
+				}
+			
+			numberOfEdges_=0;
+			for(int i=0;i<totalNumberOfEdges;i++)
+				if(weights[i]>0 && weights[i]>=maxWeight/numberOfEpochs)
+				{
+					heads[numberOfEdges_]=heads[i];
+					tails[numberOfEdges_]=tails[i];
+					weights[numberOfEdges_]=weights[i];
+					numberOfEdges_++;
+				}
+			
+			heads_=heads;
+			tails_=tails;
+			epochsPerSample_=new double[numberOfEdges_];
+			for(int i=0;i<numberOfEdges_;i++)
+				epochsPerSample_[i]=maxWeight/weights[i];
+		}
+		
+		public int GetNumberOfEdges()
+		{
+			return numberOfEdges_;
+		}
+		
+		public int[] GetHeads()
+		{
+			return heads_;
+		}
+		
+		public int[] GetTails()
+		{
+			return tails_;
+		}
+		
+		public double[] GetEpochsPerSample()
+		{
+			return epochsPerSample_;
+		}
+		
+		/**
+		 * The binary search of umap-learn ("smooth_knn_dist") for the sigma which makes the memberships of the neighbours sum to log2 of the number of neighbours,
+		 * counting the data instance itself as its first neighbour like umap-learn does.
+		 */
+		private static double smoothDistance(double[] distances, double rho)
+		{
+			double target=Math.log(distances.length+1)/Math.log(2);
+			double low=0;
+			double high=Double.POSITIVE_INFINITY;
+			double middle=1;
+			
+			for(int iteration=0;iteration<NUMBER_OF_SEARCH_ITERATIONS;iteration++)
+			{
+				double sum=0;
+				for(int j=0;j<distances.length;j++)
+				{
+					double distance=distances[j]-rho;
+					if(distance>0)
+						sum+=Math.exp(-(distance/middle));
+					else
+						sum+=1;
+				}
+				
+				if(Math.abs(sum-target)<SEARCH_TOLERANCE)
+					break;
+				
+				if(sum>target)
+				{
+					high=middle;
+					middle=(low+high)/2.0;
+				}
+				else
+				{
+					low=middle;
+					if(high==Double.POSITIVE_INFINITY)
+						middle*=2;
+					else
+						middle=(low+high)/2.0;
+				}
+			}
+			
+			return middle;
+		}
+		
+		private static int indexOf(int[] indices, int index)
+		{
+			for(int i=0;i<indices.length;i++)
+				if(indices[i]==index)
+					return i;
+			return -1;
+		}
+	}
+	
+	private interface RangeBody
+	{
+		void Compute(int start, int end);
+	}
+	
+	private static class RangeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private int start_;
+		private int end_;
+		private int grainSize_;
+		private RangeBody rangeBody_;
+		
+		public RangeTask(int start, int end, int grainSize, RangeBody rangeBody)
+		{
+			start_=start;
+			end_=end;
+			grainSize_=grainSize;
+			rangeBody_=rangeBody;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(end_-start_>grainSize_)
+			{
+				// Splits at multiples of the grain size, so the blocks (and their random numbers) do not depend on the number of threads.
+				int middle=start_+((end_-start_)/grainSize_/2)*grainSize_;
+				if(middle==start_)
+					middle=start_+grainSize_;
+				invokeAll(new RangeTask(start_, middle, grainSize_, rangeBody_), new RangeTask(middle, end_, grainSize_, rangeBody_));
+				return;
+			}
+			
+			rangeBody_.Compute(start_, end_);
+		}
+	}
+}
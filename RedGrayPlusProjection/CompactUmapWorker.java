@@ -0,0 +1,159 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One Python process which imports umap (and compiles its numba functions) once and then runs the UMAP reductions of all the configurations run by the program.
+ * A job is a line on the standard input of the worker and the worker answers it with a line starting with RESPONSE_PREFIX on its standard output.
+ * The data goes through .npy files like in CompactScriptRunner.RunUmapTo30DimensionsWithNpy. The rest of the standard output of the worker is printed as it comes,
+ * and its standard error goes to the standard error of the program, so the worker never blocks on a full pipe.
+ * The worker exits when its standard input is closed, by Close or at the latest when the program exits.
+ */
+public class CompactUmapWorker
+{
+	private static final String RESPONSE_PREFIX="RGP_UMAP_WORKER ";
+	
+	private static CompactUmapWorker worker_;
+	private static boolean isShutdownHookAdded_=false;
+	
+	private Process process_;
+	private BufferedWriter writer_;
+	private BufferedReader reader_;
+	
+	private CompactUmapWorker() throws IOException
+	{
+		var scriptFile=File.createTempFile("umap_worker_", ".py");
+		scriptFile.deleteOnExit();
+		try(var printWriter=new PrintWriter(scriptFile, StandardCharsets.UTF_8))
+		{
+			printWriter.write(workerScript());
+		}
+		
+		var processBuilder=new ProcessBuilder("python", "-u", scriptFile.getCanonicalPath());
+		processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		process_=processBuilder.start();
+		writer_=new BufferedWriter(new OutputStreamWriter(process_.getOutputStream(), StandardCharsets.UTF_8));
+		reader_=new BufferedReader(new InputStreamReader(process_.getInputStream(), StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * The worker shared by all the configurations, started on the first call and started again if it has exited.
+	 */
+	public static synchronized CompactUmapWorker GetWorker() throws IOException
+	{
+		if(worker_==null || !worker_.process_.isAlive())
+		{
+			System.out.println("Starting the Python UMAP worker");
+			worker_=new CompactUmapWorker();
+		}
+		
+		if(!isShutdownHookAdded_)
+		{
+			Runtime.getRuntime().addShutdownHook(new Thread(()->
+			{
+				synchronized(CompactUmapWorker.class)
+				{
+					if(worker_!=null)
+						worker_.Close();
+				}
+			}));
+			isShutdownHookAdded_=true;
+		}
+		
+		return worker_;
+	}
+	
+	/**
+	 * Reduces the float32 .npy array in inputFileName to numberOfComponents dimensions and writes the result to outputFileName as a float32 .npy array.
+	 * Returns false if the worker reported an error or exited.
+	 */
+	public synchronized boolean Reduce(String inputFileName, String outputFileName, int numberOfComponents, boolean isDistanceInput) throws IOException
+	{
+		try
+		{
+			writer_.write("reduce\t"+inputFileName+"\t"+outputFileName+"\t"+numberOfComponents+"\t"+(isDistanceInput?"precomputed":"euclidean")+"\n");
+			writer_.flush();
+		}
+		catch (IOException e)
+		{
+			System.out.println("The Python UMAP worker has exited");
+			return false;
+		}
+		
+		String line=null;
+		while((line=reader_.readLine())!=null)
+		{
+			if(!line.startsWith(RESPONSE_PREFIX))
+			{
+				System.out.println(line);
+				continue;
+			}
+			
+			String response=line.substring(RESPONSE_PREFIX.length());
+			if(response.compareTo("ok")==0)
+				return true;
+			
+			System.out.println("The Python UMAP worker failed: "+response);
+			return false;
+		}
+		
+		System.out.println("The Python UMAP worker has exited");
+		return false;
+	}
+	
+	public synchronized void Close()
+	{
+		try
+		{
+			writer_.close();
+			process_.waitFor();
+		}
+		catch (IOException | InterruptedException e)
+		{
+			process_.destroy();
+		}
+	}
+	
+	private static String workerScript()
+	{
+		var stringBuilder=new StringBuilder();
+		stringBuilder.append("import sys\n");
+		stringBuilder.append("import numpy\n");
+		stringBuilder.append("import umap\n");
+		stringBuilder.append("    \n");
+		stringBuilder.append("for line in sys.stdin:\n");
+		stringBuilder.append("    fields=line.rstrip('\\n').split('\\t')\n");
+		stringBuilder.append("    if len(fields)!=5 or fields[0]!='reduce':\n");
+		stringBuilder.append("        print('"+RESPONSE_PREFIX+"error bad job', flush=True)\n");
+		stringBuilder.append("        continue\n");
+		stringBuilder.append("    try:\n");
+		stringBuilder.append("        dataFeatures=numpy.load(fields[1], mmap_mode='r')\n");
+		stringBuilder.append("        projectionMethod= umap.UMAP(random_state=10, n_components=int(fields[3]), metric=fields[4])\n");
+		stringBuilder.append("        transformedData= projectionMethod.fit_transform(dataFeatures)\n");
+		stringBuilder.append("        numpy.save(fields[2], numpy.ascontiguousarray(transformedData, dtype=numpy.float32))\n");
+		stringBuilder.append("        print('"+RESPONSE_PREFIX+"ok', flush=True)\n");
+		stringBuilder.append("    except Exception as e:\n");
+		stringBuilder.append("        print('"+RESPONSE_PREFIX+"error '+str(e).replace('\\n', ' '), flush=True)\n");
+		
+		return stringBuilder.toString();
+	}
+}
@@ -0,0 +1,22 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+/**
+ * A distance matrix which stores its values, so they can be written. The distance kernels, the transforms which work in place and CopyTo only write to these;
+ * a lazy matrix (see CompactLazyDistanceMatrix) computes its values instead and changes them only through its transform parameters.
+ */
+public abstract class CompactWritableDistanceMatrix extends CompactDistanceMatrix
+{
+	public abstract void Set(int index1, int index2, double distance);
+}
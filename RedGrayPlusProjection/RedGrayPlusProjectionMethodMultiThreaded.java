@@ -55,282 +55,326 @@ public class RedGrayPlusProjectionMethodMultiThreaded extends CompactProjectionM
 		
 		boolean displayNeighborhoodGraph=(parameters.getOrDefault("DisplayNeighborhoodGraph", "false").compareTo("true")==0);
 		
-		dataInstanceSet.ComputeNeighbors(numberOfNeighbors);
-		
-		var random = new Random();
-		random.setSeed(76213290821348841l);
-		
-		for(int i=0;i<1;i++)
-		{	
-			for(int j=0;j<dataInstances.size();j++)
-			{
-				var dataInstance=dataInstances.get(j);
-				var projectedPoints=dataInstance.GetProjectedPoints();
-				var projectedPoint=new CompactProjectedPoint(random.nextDouble()*width,random.nextDouble()*height, dataInstance);
-				if(i==0)
-					projectedPoints.clear();
-				projectedPoints.add(projectedPoint);
-				projectedPoint.SetProjectionIndex(i);
-			}
-		}
-		
-		for(int i=0;i<dataInstances.size();i++)
-		{
-			var dataInstance1=dataInstances.get(i);
-			for(int j=0;j<dataInstance1.GetNeighbors().size();j++)
-			{
-				var dataInstance2=dataInstance1.GetNeighbors().get(j);
-				dataInstance1.GetProjectedPoints().get(0).GetNeighbors().add(dataInstance2.GetProjectedPoints().get(0));
-			}
-		}
-		
-		var initialProjectedPointSet=new CompactProjectedPointSet(dataInstanceSet);
-		
-		projectionSteps.add(new CompactProjectionStep("Initial random", initialProjectedPointSet));
-		
-		int numberOfSteps=1000;
-		
-		double initialTemperature=100;
-		double temperature=initialTemperature;
-		double idealDistance=Math.sqrt((width*height)/numberOfPoints);
-		double idealDistanceSquared=Math.pow(idealDistance, 2);
-		double epsilon=1e-9;
-		
-		double maximumOriginalDistance=dataInstanceSet.GetMaximumDistance();
-		
-		double visualDensityVariationParameter=Double.parseDouble(parameters.getOrDefault("VisualDensityAdjustmentParameter", "0.9"));
-		double originalDataImpactFactor=0.5;
-		
-		double maximumVisualDistance=initialProjectedPointSet.GetMaximumDistance();
-		
-		int numberOfReplications=1;
-		int replicationInterval=1;
-		boolean replicationStarted=false;
-		
-		double[] angleCosines=new double[36];
-		double[] angleSines=new double[36];
-		
-		for(int angleIndex=0;angleIndex<36;angleIndex++)
+		var checkpoint=CompactProjectionCheckpoint.Create(parameters, getClass().getSimpleName(), numberOfPoints, numberOfNeighbors);
+		try
 		{
-			double angle=(Math.PI/18.0)*angleIndex;
-			angleCosines[angleIndex]=Math.cos(angle);
-			angleSines[angleIndex]=Math.sin(angle);
-		}
-		
-		double frozenFrameX=0;
-		double frozenFrameY=0;
-		double frozenFrameX1=0;
-		double frozenFrameY1=0;
-		
-		boolean isThirdPhaseStarted=false;
-		boolean isForthPhaseStarted=false;
-		
-		int totalStep=-1;
-		
-		for(int step=0;step<numberOfSteps;step++)
-		{
-			totalStep++;
-			if((totalStep+1)%100==1)
-				System.out.println(String.format("Starting iteration %04d of 1830 | timestamp:", totalStep+1) + System.currentTimeMillis());
-			
+			boolean isResumed=checkpoint!=null && checkpoint.Resume(dataInstanceSet, projectionSteps);
 			
-			// Repulsive forces
-			var threads=new ArrayList<Thread>();
-			for(int threadId=0;threadId<numberOfThreads;threadId++)
+			CompactProjectedPointSet initialProjectedPointSet=null;
+			if(!isResumed)
 			{
-				var repulsiveForcesCalculator= new RepulsiveForcesCalculator(threadId, 
-						epsilon, idealDistanceSquared,
-						numberOfReplications, replicationStarted, step, replicationInterval,
-						angleCosines, angleSines, dataInstanceSet.GetDataInstances(),numberOfThreads);
+				dataInstanceSet.ComputeNeighbors(numberOfNeighbors);
+				
+				var random = new Random();
+				random.setSeed(76213290821348841l);
+				
+				for(int i=0;i<1;i++)
+				{	
+					for(int j=0;j<dataInstances.size();j++)
+					{
+						var dataInstance=dataInstances.get(j);
+						var projectedPoints=dataInstance.GetProjectedPoints();
+						var projectedPoint=new CompactProjectedPoint(random.nextDouble()*width,random.nextDouble()*height, dataInstance);
+						if(i==0)
+							projectedPoints.clear();
+						projectedPoints.add(projectedPoint);
+						projectedPoint.SetProjectionIndex(i);
+					}
+				}
+				
+				for(int i=0;i<dataInstances.size();i++)
+				{
+					var dataInstance1=dataInstances.get(i);
+					for(int j=0;j<dataInstance1.GetNeighbors().size();j++)
+					{
+						var dataInstance2=dataInstance1.GetNeighbors().get(j);
+						dataInstance1.GetProjectedPoints().get(0).GetNeighbors().add(dataInstance2.GetProjectedPoints().get(0));
+					}
+				}
+				
+				initialProjectedPointSet=new CompactProjectedPointSet(dataInstanceSet);
 				
-				var thread=new Thread(repulsiveForcesCalculator);
-				threads.add(thread);
-				thread.start();
+				projectionSteps.add(new CompactProjectionStep("Initial random", initialProjectedPointSet));
+				
+				if(checkpoint!=null)
+				{
+					checkpoint.Start();
+					checkpoint.LogStep(projectionSteps.get(0));
+				}
 			}
 			
-			for(int threadId=0;threadId<numberOfThreads;threadId++)
-			{
-				threads.get(threadId).join();
-			}
+			int numberOfSteps=1000;
 			
-			// Attractive forces
-			threads=new ArrayList<Thread>();
-			for(int threadId=0;threadId<numberOfThreads;threadId++)
-			{
-				var attractiveForcesCalculator= new AttractiveForcesCalculator(threadId, 
-						epsilon, idealDistance,
-						numberOfReplications, replicationStarted, step, replicationInterval,
-						angleCosines, angleSines, maximumOriginalDistance,
-						maximumVisualDistance, visualDensityVariationParameter,
-						originalDataImpactFactor,dataInstanceSet.GetDataInstances(),numberOfThreads, true);
-				
-				var thread=new Thread(attractiveForcesCalculator);
-				threads.add(thread);
-				thread.start();
-			}
+			double initialTemperature=100;
+			double temperature=initialTemperature;
+			double idealDistance=Math.sqrt((width*height)/numberOfPoints);
+			double idealDistanceSquared=Math.pow(idealDistance, 2);
+			double epsilon=1e-9;
 			
-			for(int threadId=0;threadId<numberOfThreads;threadId++)
-			{
-				threads.get(threadId).join();
-			}
+			double maximumOriginalDistance=isResumed?checkpoint.GetMaximumOriginalDistance():dataInstanceSet.GetMaximumDistance();
 			
-			threads=new ArrayList<Thread>();
-			for(int threadId=0;threadId<numberOfThreads;threadId++)
-			{
-				var attractiveForcesCalculator= new AttractiveForcesCalculator(threadId, 
-						epsilon, idealDistance,
-						numberOfReplications, replicationStarted, step, replicationInterval,
-						angleCosines, angleSines, maximumOriginalDistance,
-						maximumVisualDistance, visualDensityVariationParameter,
-						originalDataImpactFactor,dataInstanceSet.GetDataInstances(),numberOfThreads, false);
-				
-				var thread=new Thread(attractiveForcesCalculator);
-				threads.add(thread);
-				thread.start();
-			}
+			double visualDensityVariationParameter=Double.parseDouble(parameters.getOrDefault("VisualDensityAdjustmentParameter", "0.9"));
+			double originalDataImpactFactor=0.5;
+			
+			double maximumVisualDistance=isResumed?checkpoint.GetMaximumVisualDistance():initialProjectedPointSet.GetMaximumDistance();
+			
+			int numberOfReplications=1;
+			int replicationInterval=1;
+			boolean replicationStarted=false;
 			
-			for(int threadId=0;threadId<numberOfThreads;threadId++)
+			double[] angleCosines=new double[36];
+			double[] angleSines=new double[36];
+			
+			for(int angleIndex=0;angleIndex<36;angleIndex++)
 			{
-				threads.get(threadId).join();
+				double angle=(Math.PI/18.0)*angleIndex;
+				angleCosines[angleIndex]=Math.cos(angle);
+				angleSines[angleIndex]=Math.sin(angle);
 			}
 			
-			CompactProjectedPoint selectedProjectedPoint=null;
-			int selectedAngleIndex=0;
+			double frozenFrameX=0;
+			double frozenFrameY=0;
+			double frozenFrameX1=0;
+			double frozenFrameY1=0;
+			
+			boolean isThirdPhaseStarted=false;
+			boolean isForthPhaseStarted=false;
 			
+			int totalStep=-1;
+			int firstStep=0;
+			
+			if(isResumed)
+			{
+				totalStep=checkpoint.GetTotalStep();
+				firstStep=checkpoint.GetStep()+1;
+				temperature=checkpoint.GetTemperature();
+				numberOfReplications=checkpoint.GetNumberOfReplications();
+				replicationStarted=checkpoint.IsReplicationStarted();
+				isThirdPhaseStarted=checkpoint.IsThirdPhaseStarted();
+				isForthPhaseStarted=checkpoint.IsForthPhaseStarted();
+				frozenFrameX=checkpoint.GetFrozenFrameX();
+				frozenFrameY=checkpoint.GetFrozenFrameY();
+				frozenFrameX1=checkpoint.GetFrozenFrameX1();
+				frozenFrameY1=checkpoint.GetFrozenFrameY1();
+			}
 			
-			for(int i=0;i<dataInstances.size();i++)
+			for(int step=firstStep;step<numberOfSteps;step++)
 			{
-				var dataInstance=dataInstances.get(i);
-				for(int k=0;k<dataInstance.GetProjectedPoints().size();k++)
+				totalStep++;
+				if((totalStep+1)%100==1)
+					System.out.println(String.format("Starting iteration %04d of 1830 | timestamp:", totalStep+1) + System.currentTimeMillis());
+				
+				
+				// Repulsive forces
+				var threads=new ArrayList<Thread>();
+				for(int threadId=0;threadId<numberOfThreads;threadId++)
+				{
+					var repulsiveForcesCalculator= new RepulsiveForcesCalculator(threadId, 
+							epsilon, idealDistanceSquared,
+							numberOfReplications, replicationStarted, step, replicationInterval,
+							angleCosines, angleSines, dataInstanceSet.GetDataInstances(),numberOfThreads);
+					
+					var thread=new Thread(repulsiveForcesCalculator);
+					threads.add(thread);
+					thread.start();
+				}
+				
+				for(int threadId=0;threadId<numberOfThreads;threadId++)
+				{
+					threads.get(threadId).join();
+				}
+				
+				// Attractive forces
+				threads=new ArrayList<Thread>();
+				for(int threadId=0;threadId<numberOfThreads;threadId++)
+				{
+					var attractiveForcesCalculator= new AttractiveForcesCalculator(threadId, 
+							epsilon, idealDistance,
+							numberOfReplications, replicationStarted, step, replicationInterval,
+							angleCosines, angleSines, maximumOriginalDistance,
+							maximumVisualDistance, visualDensityVariationParameter,
+							originalDataImpactFactor,dataInstanceSet.GetDataInstances(),numberOfThreads, true);
+					
+					var thread=new Thread(attractiveForcesCalculator);
+					threads.add(thread);
+					thread.start();
+				}
+				
+				for(int threadId=0;threadId<numberOfThreads;threadId++)
+				{
+					threads.get(threadId).join();
+				}
+				
+				threads=new ArrayList<Thread>();
+				for(int threadId=0;threadId<numberOfThreads;threadId++)
+				{
+					var attractiveForcesCalculator= new AttractiveForcesCalculator(threadId, 
+							epsilon, idealDistance,
+							numberOfReplications, replicationStarted, step, replicationInterval,
+							angleCosines, angleSines, maximumOriginalDistance,
+							maximumVisualDistance, visualDensityVariationParameter,
+							originalDataImpactFactor,dataInstanceSet.GetDataInstances(),numberOfThreads, false);
+					
+					var thread=new Thread(attractiveForcesCalculator);
+					threads.add(thread);
+					thread.start();
+				}
+				
+				for(int threadId=0;threadId<numberOfThreads;threadId++)
+				{
+					threads.get(threadId).join();
+				}
+				
+				CompactProjectedPoint selectedProjectedPoint=null;
+				int selectedAngleIndex=0;
+				
+				
+				for(int i=0;i<dataInstances.size();i++)
 				{
-					var projectedPoint=dataInstance.GetProjectedPoints().get(k);
-					if(numberOfReplications>0 && replicationStarted && step%replicationInterval==0)
+					var dataInstance=dataInstances.get(i);
+					for(int k=0;k<dataInstance.GetProjectedPoints().size();k++)
 					{
-						for(int angleIndex=0;angleIndex<36;angleIndex++)
+						var projectedPoint=dataInstance.GetProjectedPoints().get(k);
+						if(numberOfReplications>0 && replicationStarted && step%replicationInterval==0)
 						{
-							if(projectedPoint.HasReplicationFailed())
-								continue;
-							
-							if(projectedPoint.IsGray())
-								continue;
-							
-							if(selectedProjectedPoint==null)
+							for(int angleIndex=0;angleIndex<36;angleIndex++)
 							{
-								selectedProjectedPoint=projectedPoint;
-								selectedAngleIndex=angleIndex;
+								if(projectedPoint.HasReplicationFailed())
+									continue;
+								
+								if(projectedPoint.IsGray())
+									continue;
+								
+								if(selectedProjectedPoint==null)
+								{
+									selectedProjectedPoint=projectedPoint;
+									selectedAngleIndex=angleIndex;
+								}
+								else if(projectedPoint.ReplicationPressure(angleIndex)>selectedProjectedPoint.ReplicationPressure(selectedAngleIndex))
+								{
+									selectedProjectedPoint=projectedPoint;
+									selectedAngleIndex=angleIndex;
+								}		
 							}
-							else if(projectedPoint.ReplicationPressure(angleIndex)>selectedProjectedPoint.ReplicationPressure(selectedAngleIndex))
-							{
-								selectedProjectedPoint=projectedPoint;
-								selectedAngleIndex=angleIndex;
-							}		
 						}
-					}
-					
-					double additionalSize=Math.sqrt(Math.pow(projectedPoint.GetAdditionalX(),2)+Math.pow(projectedPoint.GetAdditionalY(), 2));
-					
-					if(additionalSize>epsilon && !projectedPoint.IsFrozen())
-					{
-						projectedPoint.SetX(projectedPoint.GetX()+ (projectedPoint.GetAdditionalX()/additionalSize)*Math.min(additionalSize,temperature));
-						projectedPoint.SetY(projectedPoint.GetY()+ (projectedPoint.GetAdditionalY()/additionalSize)*Math.min(additionalSize,temperature));
 						
-						if(replicationStarted)
+						double additionalSize=Math.sqrt(Math.pow(projectedPoint.GetAdditionalX(),2)+Math.pow(projectedPoint.GetAdditionalY(), 2));
+						
+						if(additionalSize>epsilon && !projectedPoint.IsFrozen())
 						{
-							projectedPoint.SetX(Math.max(frozenFrameX,Math.min(projectedPoint.GetX(), frozenFrameX1)));
-							projectedPoint.SetY(Math.max(frozenFrameY,Math.min(projectedPoint.GetY(), frozenFrameY1)));
+							projectedPoint.SetX(projectedPoint.GetX()+ (projectedPoint.GetAdditionalX()/additionalSize)*Math.min(additionalSize,temperature));
+							projectedPoint.SetY(projectedPoint.GetY()+ (projectedPoint.GetAdditionalY()/additionalSize)*Math.min(additionalSize,temperature));
+							
+							if(replicationStarted)
+							{
+								projectedPoint.SetX(Math.max(frozenFrameX,Math.min(projectedPoint.GetX(), frozenFrameX1)));
+								projectedPoint.SetY(Math.max(frozenFrameY,Math.min(projectedPoint.GetY(), frozenFrameY1)));
+							}
 						}
 					}
 				}
-			}
-						
-			if(step==501)
-			{
-				var projectedPointSet=new CompactProjectedPointSet(dataInstanceSet,false,false);
-				int outlierCount=projectedPointSet.GetPressureOutlierCount();
-				if(parameters.containsKey("OverrideMaxNumberOfReplicates"))
-					outlierCount= Integer.parseInt(parameters.get("OverrideMaxNumberOfReplicates"));
-				numberOfReplications=outlierCount;
-			}
-			else if(numberOfReplications>0 && replicationStarted && step%replicationInterval==0)
-			{
-				double selectedAngle=(Math.PI/18.0)*selectedAngleIndex;
-				//selectedProjectedPoint.ReplicateBasedOnAngle(selectedAngle,dataInstanceSet);
-				if(selectedProjectedPoint!=null)
+							
+				if(step==501)
 				{
-					selectedProjectedPoint.SetIsInEffective(true);
-					numberOfReplications--;
+					var projectedPointSet=new CompactProjectedPointSet(dataInstanceSet,false,false);
+					int outlierCount=projectedPointSet.GetPressureOutlierCount();
+					if(parameters.containsKey("OverrideMaxNumberOfReplicates"))
+						outlierCount= Integer.parseInt(parameters.get("OverrideMaxNumberOfReplicates"));
+					numberOfReplications=outlierCount;
+				}
+				else if(numberOfReplications>0 && replicationStarted && step%replicationInterval==0)
+				{
+					double selectedAngle=(Math.PI/18.0)*selectedAngleIndex;
+					//selectedProjectedPoint.ReplicateBasedOnAngle(selectedAngle,dataInstanceSet);
+					if(selectedProjectedPoint!=null)
+					{
+						selectedProjectedPoint.SetIsInEffective(true);
+						numberOfReplications--;
+					}
 				}
-			}
-			
-			if(step==500)
-			{
-				replicationStarted=true;
-								
-				var containingBox=new CompactProjectedPointSet(dataInstanceSet,false,false).GetContainingBox();
-				frozenFrameX=containingBox.GetCorner1().get(0);
-				frozenFrameY=containingBox.GetCorner1().get(1);
-				frozenFrameX1=containingBox.GetCorner2().get(0);
-				frozenFrameY1=containingBox.GetCorner2().get(1);
 				
-				double increaseX=(frozenFrameX1-frozenFrameX)*0.05;
-				double increaseY=(frozenFrameY1-frozenFrameY)*0.05;
+				if(step==500)
+				{
+					replicationStarted=true;
+									
+					var containingBox=new CompactProjectedPointSet(dataInstanceSet,false,false).GetContainingBox();
+					frozenFrameX=containingBox.GetCorner1().get(0);
+					frozenFrameY=containingBox.GetCorner1().get(1);
+					frozenFrameX1=containingBox.GetCorner2().get(0);
+					frozenFrameY1=containingBox.GetCorner2().get(1);
+					
+					double increaseX=(frozenFrameX1-frozenFrameX)*0.05;
+					double increaseY=(frozenFrameY1-frozenFrameY)*0.05;
+					
+					frozenFrameX=frozenFrameX-increaseX;
+					frozenFrameX1=frozenFrameX1+increaseX;
+					frozenFrameY=frozenFrameY-increaseX;
+					frozenFrameY1=frozenFrameY1+increaseY;
+				}
 				
-				frozenFrameX=frozenFrameX-increaseX;
-				frozenFrameX1=frozenFrameX1+increaseX;
-				frozenFrameY=frozenFrameY-increaseX;
-				frozenFrameY1=frozenFrameY1+increaseY;
-			}
-			
-			if(step==950 && !isThirdPhaseStarted)
-			{
-				isThirdPhaseStarted=true;
-				step=510;
-				for(int i=0;i<dataInstances.size();i++)
+				if(step==950 && !isThirdPhaseStarted)
 				{
-					var dataInstance=dataInstances.get(i);
-					int numberOfProjections=dataInstance.GetProjectedPoints().size();
-					for(int k=0;k<numberOfProjections;k++)
+					isThirdPhaseStarted=true;
+					step=510;
+					for(int i=0;i<dataInstances.size();i++)
 					{
-						var projectedPoint=dataInstance.GetProjectedPoints().get(k);
-						if(projectedPoint.IsInEffective())
+						var dataInstance=dataInstances.get(i);
+						int numberOfProjections=dataInstance.GetProjectedPoints().size();
+						for(int k=0;k<numberOfProjections;k++)
 						{
-							projectedPoint.SetIsInEffective(false);
+							var projectedPoint=dataInstance.GetProjectedPoints().get(k);
+							if(projectedPoint.IsInEffective())
+							{
+								projectedPoint.SetIsInEffective(false);
+							}
+							
+							else
+								projectedPoint.SetIsFrozen(true);
 						}
-						
-						else
-							projectedPoint.SetIsFrozen(true);
 					}
 				}
-			}
-			
-			if(step==900  && isThirdPhaseStarted && !isForthPhaseStarted)
-			{
-				isForthPhaseStarted=true;
-				step=510;
-				for(int i=0;i<dataInstances.size();i++)
+				
+				if(step==900  && isThirdPhaseStarted && !isForthPhaseStarted)
 				{
-					var dataInstance=dataInstances.get(i);
-					int numberOfProjections=dataInstance.GetProjectedPoints().size();
-					for(int k=0;k<numberOfProjections;k++)
+					isForthPhaseStarted=true;
+					step=510;
+					for(int i=0;i<dataInstances.size();i++)
 					{
-						var projectedPoint=dataInstance.GetProjectedPoints().get(k);
-						if(projectedPoint.IsGray())
+						var dataInstance=dataInstances.get(i);
+						int numberOfProjections=dataInstance.GetProjectedPoints().size();
+						for(int k=0;k<numberOfProjections;k++)
 						{
-							projectedPoint.ReplicateBasedOnAngles();;
+							var projectedPoint=dataInstance.GetProjectedPoints().get(k);
+							if(projectedPoint.IsGray())
+							{
+								projectedPoint.ReplicateBasedOnAngles();;
+							}
 						}
 					}
 				}
+				
+				temperature=initialTemperature-((step+1.0)/numberOfSteps)*initialTemperature;
+				if(displayNeighborhoodGraph)
+					projectionSteps.add(new CompactProjectionStep(""+(totalStep+1), new CompactProjectedPointSet(dataInstanceSet,true,true),numberOfThreads));
+				else
+					projectionSteps.add(new CompactProjectionStep(""+(totalStep+1), new CompactProjectedPointSet(dataInstanceSet,true,false),numberOfThreads));
+				
+				if(checkpoint!=null)
+				{
+					checkpoint.LogStep(projectionSteps.get(projectionSteps.size()-1));
+					if(checkpoint.IsCheckpointIteration(totalStep))
+						checkpoint.Write(dataInstanceSet, totalStep, step, temperature, numberOfReplications, replicationStarted, isThirdPhaseStarted, isForthPhaseStarted,
+								frozenFrameX, frozenFrameY, frozenFrameX1, frozenFrameY1, maximumOriginalDistance, maximumVisualDistance);
+				}
 			}
 			
-			temperature=initialTemperature-((step+1.0)/numberOfSteps)*initialTemperature;
-			if(displayNeighborhoodGraph)
-				projectionSteps.add(new CompactProjectionStep(""+(totalStep+1), new CompactProjectedPointSet(dataInstanceSet,true,true),numberOfThreads));
-			else
-				projectionSteps.add(new CompactProjectionStep(""+(totalStep+1), new CompactProjectedPointSet(dataInstanceSet,true,false),numberOfThreads));
+			return new CompactProjectionOutput("Red Gray Plus projection", projectionSteps);
+		}
+		finally
+		{
+			if(checkpoint!=null)
+				checkpoint.Close();
 		}
-			
-		
-		return new CompactProjectionOutput("Red Gray Plus projection", projectionSteps);
 	}
 	
 	private class RepulsiveForcesCalculator implements Runnable
@@ -49,105 +49,182 @@ public class RedGrayPlusProjectionMethodSingleThreaded extends CompactProjection
 		
 		boolean displayNeighborhoodGraph=(parameters.getOrDefault("DisplayNeighborhoodGraph", "false").compareTo("true")==0);
 		
-		dataInstanceSet.ComputeNeighbors(numberOfNeighbors);
-		
-		var random = new Random();
-		random.setSeed(76213290821348841l);
-		
-		for(int i=0;i<1;i++)
-		{	
-			for(int j=0;j<dataInstances.size();j++)
+		var checkpoint=CompactProjectionCheckpoint.Create(parameters, getClass().getSimpleName(), numberOfPoints, numberOfNeighbors);
+		try
+		{
+			boolean isResumed=checkpoint!=null && checkpoint.Resume(dataInstanceSet, projectionSteps);
+			
+			CompactProjectedPointSet initialProjectedPointSet=null;
+			if(!isResumed)
 			{
-				var dataInstance=dataInstances.get(j);
-				var projectedPoints=dataInstance.GetProjectedPoints();
-				var projectedPoint=new CompactProjectedPoint(random.nextDouble()*width,random.nextDouble()*height, dataInstance);
-				if(i==0)
-					projectedPoints.clear();
-				projectedPoints.add(projectedPoint);
-				projectedPoint.SetProjectionIndex(i);
+				dataInstanceSet.ComputeNeighbors(numberOfNeighbors);
+				
+				var random = new Random();
+				random.setSeed(76213290821348841l);
+				
+				for(int i=0;i<1;i++)
+				{	
+					for(int j=0;j<dataInstances.size();j++)
+					{
+						var dataInstance=dataInstances.get(j);
+						var projectedPoints=dataInstance.GetProjectedPoints();
+						var projectedPoint=new CompactProjectedPoint(random.nextDouble()*width,random.nextDouble()*height, dataInstance);
+						if(i==0)
+							projectedPoints.clear();
+						projectedPoints.add(projectedPoint);
+						projectedPoint.SetProjectionIndex(i);
+					}
+				}
+				
+				for(int i=0;i<dataInstances.size();i++)
+				{
+					var dataInstance1=dataInstances.get(i);
+					for(int j=0;j<dataInstance1.GetNeighbors().size();j++)
+					{
+						var dataInstance2=dataInstance1.GetNeighbors().get(j);
+						dataInstance1.GetProjectedPoints().get(0).GetNeighbors().add(dataInstance2.GetProjectedPoints().get(0));
+					}
+				}
+				
+				initialProjectedPointSet=new CompactProjectedPointSet(dataInstanceSet);
+				
+				projectionSteps.add(new CompactProjectionStep("Initial random", initialProjectedPointSet));
+				
+				if(checkpoint!=null)
+				{
+					checkpoint.Start();
+					checkpoint.LogStep(projectionSteps.get(0));
+				}
 			}
-		}
-		
-		for(int i=0;i<dataInstances.size();i++)
-		{
-			var dataInstance1=dataInstances.get(i);
-			for(int j=0;j<dataInstance1.GetNeighbors().size();j++)
+			
+			int numberOfSteps=1000;
+			
+			double initialTemperature=100;
+			double temperature=initialTemperature;
+			double idealDistance=Math.sqrt((width*height)/numberOfPoints);
+			double idealDistanceSquared=Math.pow(idealDistance, 2);
+			double epsilon=1e-9;
+			
+			double maximumOriginalDistance=isResumed?checkpoint.GetMaximumOriginalDistance():dataInstanceSet.GetMaximumDistance();
+			
+			double visualDensityVariationParameter=Double.parseDouble(parameters.getOrDefault("VisualDensityAdjustmentParameter", "0.9"));
+			double originalDataImpactFactor=0.5;
+			
+			double maximumVisualDistance=isResumed?checkpoint.GetMaximumVisualDistance():initialProjectedPointSet.GetMaximumDistance();
+			
+			int numberOfReplications=1;
+			int replicationInterval=1;
+			boolean replicationStarted=false;
+			
+			double[] angleCosines=new double[36];
+			double[] angleSines=new double[36];
+			
+			for(int angleIndex=0;angleIndex<36;angleIndex++)
 			{
-				var dataInstance2=dataInstance1.GetNeighbors().get(j);
-				dataInstance1.GetProjectedPoints().get(0).GetNeighbors().add(dataInstance2.GetProjectedPoints().get(0));
+				double angle=(Math.PI/18.0)*angleIndex;
+				angleCosines[angleIndex]=Math.cos(angle);
+				angleSines[angleIndex]=Math.sin(angle);
 			}
-		}
-		
-		var initialProjectedPointSet=new CompactProjectedPointSet(dataInstanceSet);
-		
-		projectionSteps.add(new CompactProjectionStep("Initial random", initialProjectedPointSet));
-		
-		int numberOfSteps=1000;
-		
-		double initialTemperature=100;
-		double temperature=initialTemperature;
-		double idealDistance=Math.sqrt((width*height)/numberOfPoints);
-		double idealDistanceSquared=Math.pow(idealDistance, 2);
-		double epsilon=1e-9;
-		
-		double maximumOriginalDistance=dataInstanceSet.GetMaximumDistance();
-		
-		double visualDensityVariationParameter=Double.parseDouble(parameters.getOrDefault("VisualDensityAdjustmentParameter", "0.9"));
-		double originalDataImpactFactor=0.5;
-		
-		double maximumVisualDistance=initialProjectedPointSet.GetMaximumDistance();
-		
-		int numberOfReplications=1;
-		int replicationInterval=1;
-		boolean replicationStarted=false;
-		
-		double[] angleCosines=new double[36];
-		double[] angleSines=new double[36];
-		
-		for(int angleIndex=0;angleIndex<36;angleIndex++)
-		{
-			double angle=(Math.PI/18.0)*angleIndex;
-			angleCosines[angleIndex]=Math.cos(angle);
-			angleSines[angleIndex]=Math.sin(angle);
-		}
-		
-		double frozenFrameX=0;
-		double frozenFrameY=0;
-		double frozenFrameX1=0;
-		double frozenFrameY1=0;
-		
-		boolean isThirdPhaseStarted=false;
-		boolean isForthPhaseStarted=false;
-		
-		int totalStep=-1;
-		
-		for(int step=0;step<numberOfSteps;step++)
-		{
-			totalStep++;
-			if((totalStep+1)%100==1)
-				System.out.println(String.format("Starting iteration %04d of 1830 | timestamp:", totalStep+1) + System.currentTimeMillis());
 			
+			double frozenFrameX=0;
+			double frozenFrameY=0;
+			double frozenFrameX1=0;
+			double frozenFrameY1=0;
+			
+			boolean isThirdPhaseStarted=false;
+			boolean isForthPhaseStarted=false;
 			
-			// Repulsive forces
-			for(int i=0;i<dataInstances.size();i++)
+			int totalStep=-1;
+			int firstStep=0;
+			
+			if(isResumed)
+			{
+				totalStep=checkpoint.GetTotalStep();
+				firstStep=checkpoint.GetStep()+1;
+				temperature=checkpoint.GetTemperature();
+				numberOfReplications=checkpoint.GetNumberOfReplications();
+				replicationStarted=checkpoint.IsReplicationStarted();
+				isThirdPhaseStarted=checkpoint.IsThirdPhaseStarted();
+				isForthPhaseStarted=checkpoint.IsForthPhaseStarted();
+				frozenFrameX=checkpoint.GetFrozenFrameX();
+				frozenFrameY=checkpoint.GetFrozenFrameY();
+				frozenFrameX1=checkpoint.GetFrozenFrameX1();
+				frozenFrameY1=checkpoint.GetFrozenFrameY1();
+			}
+			
+			for(int step=firstStep;step<numberOfSteps;step++)
 			{
-				var dataInstance1=dataInstances.get(i);
-				for(int k=0;k<dataInstance1.GetProjectedPoints().size();k++)
+				totalStep++;
+				if((totalStep+1)%100==1)
+					System.out.println(String.format("Starting iteration %04d of 1830 | timestamp:", totalStep+1) + System.currentTimeMillis());
+				
+				
+				// Repulsive forces
+				for(int i=0;i<dataInstances.size();i++)
 				{
-					var projectedPoint1=dataInstance1.GetProjectedPoints().get(k);
-					projectedPoint1.SetAdditionalX(0);
-					projectedPoint1.SetAdditionalY(0);
-					projectedPoint1.ResetPressures();
-					for(int j=0;j<dataInstances.size();j++)
+					var dataInstance1=dataInstances.get(i);
+					for(int k=0;k<dataInstance1.GetProjectedPoints().size();k++)
 					{
-						var dataInstance2=dataInstances.get(j);
-						
-						for(int t=0;t<dataInstance2.GetProjectedPoints().size();t++)
+						var projectedPoint1=dataInstance1.GetProjectedPoints().get(k);
+						projectedPoint1.SetAdditionalX(0);
+						projectedPoint1.SetAdditionalY(0);
+						projectedPoint1.ResetPressures();
+						for(int j=0;j<dataInstances.size();j++)
 						{
-							if(i==j && t==k)
-								continue;
+							var dataInstance2=dataInstances.get(j);
 							
-							var projectedPoint2=dataInstance2.GetProjectedPoints().get(t);
+							for(int t=0;t<dataInstance2.GetProjectedPoints().size();t++)
+							{
+								if(i==j && t==k)
+									continue;
+								
+								var projectedPoint2=dataInstance2.GetProjectedPoints().get(t);
+								
+								if(projectedPoint1.IsInEffective() || projectedPoint2.IsInEffective())
+									continue;
+								
+								double deltaX=projectedPoint1.GetX()-projectedPoint2.GetX();
+								double deltaY=projectedPoint1.GetY()-projectedPoint2.GetY();
+								double deltaSize=Math.sqrt(Math.pow(deltaX, 2)+Math.pow(deltaY, 2));
+								
+								if(deltaSize<epsilon)
+									deltaSize=epsilon;
+								
+								double repulsiveForce=idealDistanceSquared/deltaSize;
+								
+								double vec2X=(deltaX/deltaSize)*repulsiveForce;
+								double vec2Y=(deltaY/deltaSize)*repulsiveForce;
+								
+								if(numberOfReplications>0 && replicationStarted && step%replicationInterval==0)
+								{
+									for(int angleIndex=0;angleIndex<36;angleIndex++)
+									{
+										double vec1X=angleCosines[angleIndex];
+										double vec1Y=angleSines[angleIndex];
+										
+										double pressure1=(vec1X*vec2X+vec1Y*vec2Y);
+										projectedPoint1.AddToPressures(pressure1, angleIndex);
+									}
+								}
+								
+								projectedPoint1.SetAdditionalX(projectedPoint1.GetAdditionalX()+(deltaX/deltaSize)*repulsiveForce);
+								projectedPoint1.SetAdditionalY(projectedPoint1.GetAdditionalY()+(deltaY/deltaSize)*repulsiveForce);
+							}
+						}
+					}
+				}
+				
+				// Attractive forces
+				for(int i=0;i<dataInstances.size();i++)
+				{
+					var dataInstance1=dataInstances.get(i);
+					for(int k=0;k<dataInstance1.GetProjectedPoints().size();k++)
+					{
+						var projectedPoint1=dataInstance1.GetProjectedPoints().get(k);
+						var neighbors=projectedPoint1.GetNeighbors();
+						for(int j=0;j<neighbors.size();j++)
+						{
+							var projectedPoint2=neighbors.get(j);
 							
 							if(projectedPoint1.IsInEffective() || projectedPoint2.IsInEffective())
 								continue;
@@ -159,10 +236,24 @@ public class RedGrayPlusProjectionMethodSingleThreaded extends CompactProjection
 							if(deltaSize<epsilon)
 								deltaSize=epsilon;
 							
-							double repulsiveForce=idealDistanceSquared/deltaSize;
+							double attractiveForce=Math.pow(deltaSize/idealDistance, 1-visualDensityVariationParameter);
+							
+							double originalDistance=dataInstance1.DistanceTo(projectedPoint2.GetDataInstance());
+							originalDistance/=maximumOriginalDistance;
+							
+							double attractiveForce2=originalDistance-deltaSize/maximumVisualDistance;
+							if(attractiveForce2>0)
+								attractiveForce2=Math.min(attractiveForce2, Math.abs(attractiveForce)*originalDataImpactFactor);
+							else
+								attractiveForce2=Math.max(attractiveForce2, Math.abs(attractiveForce)*(-originalDataImpactFactor));
+							
+							attractiveForce+=attractiveForce2;
+							
+							double vec2X=-(deltaX/deltaSize)*attractiveForce;
+							double vec2Y=-(deltaY/deltaSize)*attractiveForce;
 							
-							double vec2X=(deltaX/deltaSize)*repulsiveForce;
-							double vec2Y=(deltaY/deltaSize)*repulsiveForce;
+							double vec3X=(deltaX/deltaSize)*attractiveForce;
+							double vec3Y=(deltaY/deltaSize)*attractiveForce;
 							
 							if(numberOfReplications>0 && replicationStarted && step%replicationInterval==0)
 							{
@@ -173,219 +264,172 @@ public class RedGrayPlusProjectionMethodSingleThreaded extends CompactProjection
 									
 									double pressure1=(vec1X*vec2X+vec1Y*vec2Y);
 									projectedPoint1.AddToPressures(pressure1, angleIndex);
+									
+									double pressure2=(vec1X*vec3X+vec1Y*vec3Y);
+									projectedPoint2.AddToPressures(pressure2, angleIndex);
 								}
 							}
 							
-							projectedPoint1.SetAdditionalX(projectedPoint1.GetAdditionalX()+(deltaX/deltaSize)*repulsiveForce);
-							projectedPoint1.SetAdditionalY(projectedPoint1.GetAdditionalY()+(deltaY/deltaSize)*repulsiveForce);
+							
+							projectedPoint1.SetAdditionalX(projectedPoint1.GetAdditionalX()-(deltaX/deltaSize)*attractiveForce*projectedPoint1.GetEffectiveWeight());
+							projectedPoint1.SetAdditionalY(projectedPoint1.GetAdditionalY()-(deltaY/deltaSize)*attractiveForce*projectedPoint1.GetEffectiveWeight());
+							
+							projectedPoint2.SetAdditionalX(projectedPoint2.GetAdditionalX()+(deltaX/deltaSize)*attractiveForce*projectedPoint2.GetEffectiveWeight());
+							projectedPoint2.SetAdditionalY(projectedPoint2.GetAdditionalY()+(deltaY/deltaSize)*attractiveForce*projectedPoint2.GetEffectiveWeight());
 						}
 					}
 				}
-			}
-			
-			// Attractive forces
-			for(int i=0;i<dataInstances.size();i++)
-			{
-				var dataInstance1=dataInstances.get(i);
-				for(int k=0;k<dataInstance1.GetProjectedPoints().size();k++)
+				
+				
+				CompactProjectedPoint selectedProjectedPoint=null;
+				int selectedAngleIndex=0;
+				
+				
+				for(int i=0;i<dataInstances.size();i++)
 				{
-					var projectedPoint1=dataInstance1.GetProjectedPoints().get(k);
-					var neighbors=projectedPoint1.GetNeighbors();
-					for(int j=0;j<neighbors.size();j++)
+					var dataInstance=dataInstances.get(i);
+					for(int k=0;k<dataInstance.GetProjectedPoints().size();k++)
 					{
-						var projectedPoint2=neighbors.get(j);
-						
-						if(projectedPoint1.IsInEffective() || projectedPoint2.IsInEffective())
-							continue;
-						
-						double deltaX=projectedPoint1.GetX()-projectedPoint2.GetX();
-						double deltaY=projectedPoint1.GetY()-projectedPoint2.GetY();
-						double deltaSize=Math.sqrt(Math.pow(deltaX, 2)+Math.pow(deltaY, 2));
-						
-						if(deltaSize<epsilon)
-							deltaSize=epsilon;
-						
-						double attractiveForce=Math.pow(deltaSize/idealDistance, 1-visualDensityVariationParameter);
-						
-						double originalDistance=dataInstance1.DistanceTo(projectedPoint2.GetDataInstance());
-						originalDistance/=maximumOriginalDistance;
-						
-						double attractiveForce2=originalDistance-deltaSize/maximumVisualDistance;
-						if(attractiveForce2>0)
-							attractiveForce2=Math.min(attractiveForce2, Math.abs(attractiveForce)*originalDataImpactFactor);
-						else
-							attractiveForce2=Math.max(attractiveForce2, Math.abs(attractiveForce)*(-originalDataImpactFactor));
-						
-						attractiveForce+=attractiveForce2;
-						
-						double vec2X=-(deltaX/deltaSize)*attractiveForce;
-						double vec2Y=-(deltaY/deltaSize)*attractiveForce;
-						
-						double vec3X=(deltaX/deltaSize)*attractiveForce;
-						double vec3Y=(deltaY/deltaSize)*attractiveForce;
-						
+						var projectedPoint=dataInstance.GetProjectedPoints().get(k);
 						if(numberOfReplications>0 && replicationStarted && step%replicationInterval==0)
 						{
 							for(int angleIndex=0;angleIndex<36;angleIndex++)
 							{
-								double vec1X=angleCosines[angleIndex];
-								double vec1Y=angleSines[angleIndex];
+								if(projectedPoint.HasReplicationFailed())
+									continue;
 								
-								double pressure1=(vec1X*vec2X+vec1Y*vec2Y);
-								projectedPoint1.AddToPressures(pressure1, angleIndex);
+								if(projectedPoint.IsGray())
+									continue;
 								
-								double pressure2=(vec1X*vec3X+vec1Y*vec3Y);
-								projectedPoint2.AddToPressures(pressure2, angleIndex);
+								if(selectedProjectedPoint==null)
+								{
+									selectedProjectedPoint=projectedPoint;
+									selectedAngleIndex=angleIndex;
+								}
+								else if(projectedPoint.ReplicationPressure(angleIndex)>selectedProjectedPoint.ReplicationPressure(selectedAngleIndex))
+								{
+									selectedProjectedPoint=projectedPoint;
+									selectedAngleIndex=angleIndex;
+								}		
 							}
 						}
 						
+						double additionalSize=Math.sqrt(Math.pow(projectedPoint.GetAdditionalX(),2)+Math.pow(projectedPoint.GetAdditionalY(), 2));
 						
-						projectedPoint1.SetAdditionalX(projectedPoint1.GetAdditionalX()-(deltaX/deltaSize)*attractiveForce*projectedPoint1.GetEffectiveWeight());
-						projectedPoint1.SetAdditionalY(projectedPoint1.GetAdditionalY()-(deltaY/deltaSize)*attractiveForce*projectedPoint1.GetEffectiveWeight());
-						
-						projectedPoint2.SetAdditionalX(projectedPoint2.GetAdditionalX()+(deltaX/deltaSize)*attractiveForce*projectedPoint2.GetEffectiveWeight());
-						projectedPoint2.SetAdditionalY(projectedPoint2.GetAdditionalY()+(deltaY/deltaSize)*attractiveForce*projectedPoint2.GetEffectiveWeight());
-					}
-				}
-			}
-			
-			
-			CompactProjectedPoint selectedProjectedPoint=null;
-			int selectedAngleIndex=0;
-			
-			
-			for(int i=0;i<dataInstances.size();i++)
-			{
-				var dataInstance=dataInstances.get(i);
-				for(int k=0;k<dataInstance.GetProjectedPoints().size();k++)
-				{
-					var projectedPoint=dataInstance.GetProjectedPoints().get(k);
-					if(numberOfReplications>0 && replicationStarted && step%replicationInterval==0)
-					{
-						for(int angleIndex=0;angleIndex<36;angleIndex++)
+						if(additionalSize>epsilon && !projectedPoint.IsFrozen())
 						{
-							if(projectedPoint.HasReplicationFailed())
-								continue;
-							
-							if(projectedPoint.IsGray())
-								continue;
+							projectedPoint.SetX(projectedPoint.GetX()+ (projectedPoint.GetAdditionalX()/additionalSize)*Math.min(additionalSize,temperature));
+							projectedPoint.SetY(projectedPoint.GetY()+ (projectedPoint.GetAdditionalY()/additionalSize)*Math.min(additionalSize,temperature));
 							
-							if(selectedProjectedPoint==null)
+							if(replicationStarted)
 							{
-								selectedProjectedPoint=projectedPoint;
-								selectedAngleIndex=angleIndex;
+								projectedPoint.SetX(Math.max(frozenFrameX,Math.min(projectedPoint.GetX(), frozenFrameX1)));
+								projectedPoint.SetY(Math.max(frozenFrameY,Math.min(projectedPoint.GetY(), frozenFrameY1)));
 							}
-							else if(projectedPoint.ReplicationPressure(angleIndex)>selectedProjectedPoint.ReplicationPressure(selectedAngleIndex))
-							{
-								selectedProjectedPoint=projectedPoint;
-								selectedAngleIndex=angleIndex;
-							}		
 						}
 					}
-					
-					double additionalSize=Math.sqrt(Math.pow(projectedPoint.GetAdditionalX(),2)+Math.pow(projectedPoint.GetAdditionalY(), 2));
-					
-					if(additionalSize>epsilon && !projectedPoint.IsFrozen())
+				}
+							
+				if(step==501)
+				{
+					var projectedPointSet=new CompactProjectedPointSet(dataInstanceSet,false,false);
+					int outlierCount=projectedPointSet.GetPressureOutlierCount();
+					if(parameters.containsKey("OverrideMaxNumberOfReplicates"))
+						outlierCount= Integer.parseInt(parameters.get("OverrideMaxNumberOfReplicates"));
+					numberOfReplications=outlierCount;
+				}
+				else if(numberOfReplications>0 && replicationStarted && step%replicationInterval==0)
+				{
+					double selectedAngle=(Math.PI/18.0)*selectedAngleIndex;
+					//selectedProjectedPoint.ReplicateBasedOnAngle(selectedAngle,dataInstanceSet);
+					if(selectedProjectedPoint!=null)
 					{
-						projectedPoint.SetX(projectedPoint.GetX()+ (projectedPoint.GetAdditionalX()/additionalSize)*Math.min(additionalSize,temperature));
-						projectedPoint.SetY(projectedPoint.GetY()+ (projectedPoint.GetAdditionalY()/additionalSize)*Math.min(additionalSize,temperature));
-						
-						if(replicationStarted)
-						{
-							projectedPoint.SetX(Math.max(frozenFrameX,Math.min(projectedPoint.GetX(), frozenFrameX1)));
-							projectedPoint.SetY(Math.max(frozenFrameY,Math.min(projectedPoint.GetY(), frozenFrameY1)));
-						}
+						selectedProjectedPoint.SetIsInEffective(true);
+						numberOfReplications--;
 					}
 				}
-			}
-						
-			if(step==501)
-			{
-				var projectedPointSet=new CompactProjectedPointSet(dataInstanceSet,false,false);
-				int outlierCount=projectedPointSet.GetPressureOutlierCount();
-				if(parameters.containsKey("OverrideMaxNumberOfReplicates"))
-					outlierCount= Integer.parseInt(parameters.get("OverrideMaxNumberOfReplicates"));
-				numberOfReplications=outlierCount;
-			}
-			else if(numberOfReplications>0 && replicationStarted && step%replicationInterval==0)
-			{
-				double selectedAngle=(Math.PI/18.0)*selectedAngleIndex;
-				//selectedProjectedPoint.ReplicateBasedOnAngle(selectedAngle,dataInstanceSet);
-				if(selectedProjectedPoint!=null)
+				
+				if(step==500)
 				{
-					selectedProjectedPoint.SetIsInEffective(true);
-					numberOfReplications--;
+					replicationStarted=true;
+									
+					var containingBox=new CompactProjectedPointSet(dataInstanceSet,false,false).GetContainingBox();
+					frozenFrameX=containingBox.GetCorner1().get(0);
+					frozenFrameY=containingBox.GetCorner1().get(1);
+					frozenFrameX1=containingBox.GetCorner2().get(0);
+					frozenFrameY1=containingBox.GetCorner2().get(1);
+					
+					double increaseX=(frozenFrameX1-frozenFrameX)*0.05;
+					double increaseY=(frozenFrameY1-frozenFrameY)*0.05;
+					
+					frozenFrameX=frozenFrameX-increaseX;
+					frozenFrameX1=frozenFrameX1+increaseX;
+					frozenFrameY=frozenFrameY-increaseX;
+					frozenFrameY1=frozenFrameY1+increaseY;
 				}
-			}
-			
-			if(step==500)
-			{
-				replicationStarted=true;
-								
-				var containingBox=new CompactProjectedPointSet(dataInstanceSet,false,false).GetContainingBox();
-				frozenFrameX=containingBox.GetCorner1().get(0);
-				frozenFrameY=containingBox.GetCorner1().get(1);
-				frozenFrameX1=containingBox.GetCorner2().get(0);
-				frozenFrameY1=containingBox.GetCorner2().get(1);
-				
-				double increaseX=(frozenFrameX1-frozenFrameX)*0.05;
-				double increaseY=(frozenFrameY1-frozenFrameY)*0.05;
 				
-				frozenFrameX=frozenFrameX-increaseX;
-				frozenFrameX1=frozenFrameX1+increaseX;
-				frozenFrameY=frozenFrameY-increaseX;
-				frozenFrameY1=frozenFrameY1+increaseY;
-			}
-			
-			if(step==950 && !isThirdPhaseStarted)
-			{
-				isThirdPhaseStarted=true;
-				step=510;
-				for(int i=0;i<dataInstances.size();i++)
+				if(step==950 && !isThirdPhaseStarted)
 				{
-					var dataInstance=dataInstances.get(i);
-					int numberOfProjections=dataInstance.GetProjectedPoints().size();
-					for(int k=0;k<numberOfProjections;k++)
+					isThirdPhaseStarted=true;
+					step=510;
+					for(int i=0;i<dataInstances.size();i++)
 					{
-						var projectedPoint=dataInstance.GetProjectedPoints().get(k);
-						if(projectedPoint.IsInEffective())
+						var dataInstance=dataInstances.get(i);
+						int numberOfProjections=dataInstance.GetProjectedPoints().size();
+						for(int k=0;k<numberOfProjections;k++)
 						{
-							projectedPoint.SetIsInEffective(false);
+							var projectedPoint=dataInstance.GetProjectedPoints().get(k);
+							if(projectedPoint.IsInEffective())
+							{
+								projectedPoint.SetIsInEffective(false);
+							}
+							
+							else
+								projectedPoint.SetIsFrozen(true);
 						}
-						
-						else
-							projectedPoint.SetIsFrozen(true);
 					}
 				}
-			}
-			
-			if(step==900  && isThirdPhaseStarted && !isForthPhaseStarted)
-			{
-				isForthPhaseStarted=true;
-				step=510;
-				for(int i=0;i<dataInstances.size();i++)
+				
+				if(step==900  && isThirdPhaseStarted && !isForthPhaseStarted)
 				{
-					var dataInstance=dataInstances.get(i);
-					int numberOfProjections=dataInstance.GetProjectedPoints().size();
-					for(int k=0;k<numberOfProjections;k++)
+					isForthPhaseStarted=true;
+					step=510;
+					for(int i=0;i<dataInstances.size();i++)
 					{
-						var projectedPoint=dataInstance.GetProjectedPoints().get(k);
-						if(projectedPoint.IsGray())
+						var dataInstance=dataInstances.get(i);
+						int numberOfProjections=dataInstance.GetProjectedPoints().size();
+						for(int k=0;k<numberOfProjections;k++)
 						{
-							projectedPoint.ReplicateBasedOnAngles();;
+							var projectedPoint=dataInstance.GetProjectedPoints().get(k);
+							if(projectedPoint.IsGray())
+							{
+								projectedPoint.ReplicateBasedOnAngles();;
+							}
 						}
 					}
 				}
+				
+				temperature=initialTemperature-((step+1.0)/numberOfSteps)*initialTemperature;
+				if(displayNeighborhoodGraph)
+					projectionSteps.add(new CompactProjectionStep(""+(totalStep+1), new CompactProjectedPointSet(dataInstanceSet,true,true)));
+				else
+					projectionSteps.add(new CompactProjectionStep(""+(totalStep+1), new CompactProjectedPointSet(dataInstanceSet,true,false)));
+				
+				if(checkpoint!=null)
+				{
+					checkpoint.LogStep(projectionSteps.get(projectionSteps.size()-1));
+					if(checkpoint.IsCheckpointIteration(totalStep))
+						checkpoint.Write(dataInstanceSet, totalStep, step, temperature, numberOfReplications, replicationStarted, isThirdPhaseStarted, isForthPhaseStarted,
+								frozenFrameX, frozenFrameY, frozenFrameX1, frozenFrameY1, maximumOriginalDistance, maximumVisualDistance);
+				}
 			}
 			
-			temperature=initialTemperature-((step+1.0)/numberOfSteps)*initialTemperature;
-			if(displayNeighborhoodGraph)
-				projectionSteps.add(new CompactProjectionStep(""+(totalStep+1), new CompactProjectedPointSet(dataInstanceSet,true,true)));
-			else
-				projectionSteps.add(new CompactProjectionStep(""+(totalStep+1), new CompactProjectedPointSet(dataInstanceSet,true,false)));
+			return new CompactProjectionOutput("Red Gray Plus projection", projectionSteps);
+		}
+		finally
+		{
+			if(checkpoint!=null)
+				checkpoint.Close();
 		}
-			
-		
-		return new CompactProjectionOutput("Red Gray Plus projection", projectionSteps);
 	}
 }
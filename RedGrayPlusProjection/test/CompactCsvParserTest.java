@@ -0,0 +1,112 @@
+/**
+ * This file belongs to the Red Gray Plus projection tool project.
+ * 
+ * Code author: Farshad Barahimi
+ * Research contributors: Farshad Barahimi and Dr. Fernando Paulovich
+ * 
+ * © 2019-2021 Dr. Fernando Paulovich and Farshad Barahimi. Licensed under the Academic Free License version 3.0 (https://opensource.org/licenses/AFL-3.0).
+ * 
+ * The Red Gray Plus projection tool project is an academic research project reflecting the Red Gray Projection method which is described in the following preprint on arXiv:
+ * Farshad Barahimi and Fernando Paulovich, “Multi-point dimensionality reduction to improve projection layout reliability.” , arXiv preprint (2021).
+ */
+
+package RedGrayPlusProjection;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Checks that the numbers CompactCsvParser parses from the bytes are the same doubles Double.parseDouble gives, for edge inputs around the limits of its
+ * fast path and for random numbers written like the UMAP script and the projection outputs write them. Exits with status 1 after printing the differences.
+ * Run with: javac -d out *.java test/*.java && java -cp out RedGrayPlusProjection.CompactCsvParserTest
+ */
+public class CompactCsvParserTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		var numbers=new ArrayList<String>();
+		
+		String[] edgeNumbers= {"0","-0","+0","0.0","-0.0","1","-1","+1.5",".5","-.5","5.","0.1","0.2","0.3","1e22","1e23","1e-22","1e-23","123456789012345678e4",
+				"0.09500000000000000111","0.9999999999999999999","-0.09876543210987654321","9223372036854775807","9223372036854775808","-9223372036854775808",
+				"999999999999999999","9999999999999999999","99999999999999999999","123456789012345678","1234567890123456789","0.000000000000000000123456789012345678",
+				"9007199254740992","9007199254740993","-9007199254740993","9007199254740991e3","4.9e-324","2.2250738585072014e-308","1.7976931348623157e308","1e400","-1e400",
+				"1E5","1e+5","2.5E-3","00000000000000000000000012.5","0.00000000000000000000000000125","12.50000000000000000000","NaN","Infinity","-Infinity"};
+		for(var edgeNumber : edgeNumbers)
+			numbers.add(edgeNumber);
+		
+		var random=new Random(1);
+		for(int i=0;i<20000;i++)
+		{
+			double value=(random.nextDouble()-0.5)*Math.pow(10, random.nextInt(40)-20);
+			numbers.add(String.format(Locale.ROOT, "%.20f", value));
+			numbers.add(String.format(Locale.ROOT, "%.17g", value));
+			numbers.add(Double.toString(value));
+			
+			var digits=new StringBuilder();
+			int numberOfDigits=1+random.nextInt(24);
+			int pointPosition=random.nextInt(numberOfDigits+1);
+			if(random.nextBoolean())
+				digits.append('-');
+			for(int k=0;k<numberOfDigits;k++)
+			{
+				if(k==pointPosition)
+					digits.append('.');
+				digits.append((char)('0'+random.nextInt(10)));
+			}
+			numbers.add(digits.toString());
+		}
+		
+		var file=File.createTempFile("CompactCsvParserTest", ".csv");
+		file.deleteOnExit();
+		try(var writer=new PrintWriter(file, "UTF-8"))
+		{
+			// A line with one token ends the data, so every number is written twice.
+			for(var number : numbers)
+				writer.print(number+","+number+"\n");
+		}
+		
+		var parsedNumbers=new ArrayList<Double>();
+		var parser=new CompactCsvParser(file.getPath(), CompactCsvParser.NO_COLUMN, CompactCsvParser.NO_COLUMN, false, 2);
+		try
+		{
+			parser.Parse((lines, line)->
+			{
+				lines.ThrowIfError(line);
+				parsedNumbers.add(lines.GetFeature(line, 0));
+				return true;
+			});
+		}
+		finally
+		{
+			parser.Close();
+		}
+		
+		int numberOfDifferences=0;
+		if(parsedNumbers.size()!=numbers.size())
+		{
+			System.out.println("Parsed "+parsedNumbers.size()+" numbers instead of "+numbers.size());
+			numberOfDifferences++;
+		}
+		
+		for(int i=0;i<Math.min(numbers.size(), parsedNumbers.size());i++)
+		{
+			double expected=Double.parseDouble(numbers.get(i));
+			if(Double.doubleToRawLongBits(expected)!=Double.doubleToRawLongBits(parsedNumbers.get(i)))
+			{
+				System.out.println(numbers.get(i)+": parsed "+parsedNumbers.get(i)+" instead of "+expected);
+				numberOfDifferences++;
+			}
+		}
+		
+		if(numberOfDifferences>0)
+		{
+			System.out.println(numberOfDifferences+" differences");
+			System.exit(1);
+		}
+		
+		System.out.println("All "+numbers.size()+" numbers are parsed as by Double.parseDouble");
+	}
+}